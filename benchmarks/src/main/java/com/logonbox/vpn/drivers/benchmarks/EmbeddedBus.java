@@ -0,0 +1,199 @@
+/**
+ * Copyright © 2023 LogonBox Limited (support@logonbox.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the “Software”), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies
+ * or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.logonbox.vpn.drivers.benchmarks;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Optional;
+
+import org.freedesktop.dbus.bin.EmbeddedDBusDaemon;
+import org.freedesktop.dbus.connections.BusAddress;
+import org.freedesktop.dbus.connections.impl.DBusConnection;
+import org.freedesktop.dbus.connections.impl.DBusConnectionBuilder;
+import org.freedesktop.dbus.connections.impl.DirectConnection;
+import org.freedesktop.dbus.connections.impl.DirectConnectionBuilder;
+import org.freedesktop.dbus.connections.transports.TransportBuilder;
+import org.freedesktop.dbus.exceptions.DBusException;
+
+import com.logonbox.vpn.drivers.remote.controller.BusRemotePlatformService;
+import com.logonbox.vpn.drivers.remote.lib.RemotePlatformService;
+import com.logonbox.vpn.drivers.remote.node.DirectRemoteNode;
+import com.logonbox.vpn.drivers.remote.node.RemotePlatformServiceDelegate;
+
+/**
+ * A node exporting a {@link FakePlatformService}, and a controller using it
+ * through {@link BusRemotePlatformService}, both in this process. Either a
+ * D-Bus daemon runs in this process too, with the node and controller each on
+ * their own connection to it, or the controller connects straight to a
+ * {@link DirectRemoteNode}. Every call made through {@link #service()} makes
+ * the full trip over a socket, marshalling and all, just as it would between
+ * processes on the same host.
+ */
+final class EmbeddedBus implements Closeable {
+
+	private final FakePlatformService platform;
+	private final BusRemotePlatformService service;
+	private final Optional<DBusConnection> nodeConnection;
+	private final Optional<RemotePlatformServiceDelegate> node;
+	/* Closed in reverse order of opening */
+	private final Deque<Closeable> resources;
+
+	private EmbeddedBus(FakePlatformService platform, BusRemotePlatformService service,
+			Optional<DBusConnection> nodeConnection, Optional<RemotePlatformServiceDelegate> node,
+			Deque<Closeable> resources) {
+		this.platform = platform;
+		this.service = service;
+		this.nodeConnection = nodeConnection;
+		this.node = node;
+		this.resources = resources;
+	}
+
+	/**
+	 * Start the daemon, node and controller.
+	 *
+	 * @param adapters number of adapters on the node
+	 * @param peers    number of peers on each adapter
+	 * @param cacheTtl how long the controller may cache results for
+	 * @return bus
+	 * @throws DBusException on error
+	 * @throws IOException   on error
+	 */
+	static EmbeddedBus start(int adapters, int peers, Optional<Duration> cacheTtl) throws DBusException, IOException {
+		var platform = new FakePlatformService(adapters, peers, 0);
+		var resources = new ArrayDeque<Closeable>();
+		try {
+			var address = dynamicAddress();
+			var busAddress = BusAddress.of(address);
+			var daemon = new EmbeddedDBusDaemon(
+					busAddress.isListeningSocket() ? busAddress : busAddress.getListenerAddress());
+			resources.push(daemon);
+			daemon.startInBackgroundAndWait(Duration.ofSeconds(10).toMillis());
+
+			var nodeConnection = DBusConnectionBuilder.forAddress(address).withShared(false).build();
+			resources.push(nodeConnection);
+			nodeConnection.requestBusName(RemotePlatformService.BUS_NAME);
+			var node = new RemotePlatformServiceDelegate(platform, nodeConnection);
+			resources.push(node);
+
+			var controllerConnection = DBusConnectionBuilder.forAddress(address).withShared(false).build();
+			resources.push(controllerConnection);
+			var service = new BusRemotePlatformService(RemotePlatformService.BUS_NAME, platform,
+					controllerConnection, cacheTtl);
+			return new EmbeddedBus(platform, service, Optional.of(nodeConnection), Optional.of(node), resources);
+		} catch (DBusException | RuntimeException e) {
+			close(resources);
+			throw e;
+		}
+	}
+
+	/**
+	 * Start the node and controller, with the controller connected straight to
+	 * the node rather than through a daemon.
+	 *
+	 * @param adapters number of adapters on the node
+	 * @param peers    number of peers on each adapter
+	 * @param cacheTtl how long the controller may cache results for
+	 * @return bus
+	 * @throws DBusException on error
+	 * @throws IOException   on error
+	 */
+	static EmbeddedBus startDirect(int adapters, int peers, Optional<Duration> cacheTtl)
+			throws DBusException, IOException {
+		var platform = new FakePlatformService(adapters, peers, 0);
+		var resources = new ArrayDeque<Closeable>();
+		try {
+			var node = new DirectRemoteNode.Builder(platform, dynamicAddress()).build().start();
+			resources.push(node);
+
+			var controllerConnection = connectDirect(node.address());
+			resources.push(controllerConnection);
+			var service = new BusRemotePlatformService(platform, controllerConnection, cacheTtl);
+			return new EmbeddedBus(platform, service, Optional.empty(), Optional.empty(), resources);
+		} catch (DBusException | RuntimeException e) {
+			close(resources);
+			throw e;
+		}
+	}
+
+	FakePlatformService platform() {
+		return platform;
+	}
+
+	RemotePlatformServiceDelegate node() {
+		return node.orElseThrow(() -> new IllegalStateException("Node is not in this process."));
+	}
+
+	DBusConnection nodeConnection() {
+		return nodeConnection.orElseThrow(() -> new IllegalStateException("Node is not in this process."));
+	}
+
+	BusRemotePlatformService service() {
+		return service;
+	}
+
+	@Override
+	public void close() throws IOException {
+		close(resources);
+	}
+
+	private static String dynamicAddress() {
+		var types = TransportBuilder.getRegisteredBusTypes();
+		if (types.isEmpty())
+			throw new IllegalStateException("No D-Bus transports on the classpath.");
+		return TransportBuilder.createDynamicSession(types.contains("UNIX") ? "UNIX" : types.get(0), false);
+	}
+
+	/* The node listens in the background, so may not be ready straight away */
+	private static DirectConnection connectDirect(String address) throws DBusException {
+		var until = System.currentTimeMillis() + Duration.ofSeconds(10).toMillis();
+		while (true) {
+			try {
+				return DirectConnectionBuilder.forAddress(address).build();
+			} catch (DBusException dbe) {
+				if (System.currentTimeMillis() > until)
+					throw dbe;
+				try {
+					Thread.sleep(50);
+				} catch (InterruptedException ie) {
+					Thread.currentThread().interrupt();
+					throw dbe;
+				}
+			}
+		}
+	}
+
+	private static void close(Deque<Closeable> resources) throws IOException {
+		IOException first = null;
+		while (!resources.isEmpty()) {
+			try {
+				resources.pop().close();
+			} catch (IOException ioe) {
+				if (first == null)
+					first = ioe;
+			}
+		}
+		if (first != null)
+			throw first;
+	}
+}
@@ -0,0 +1,556 @@
+/**
+ * Copyright © 2023 LogonBox Limited (support@logonbox.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the “Software”), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies
+ * or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.logonbox.vpn.drivers.benchmarks;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.UnknownHostException;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Random;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.logonbox.vpn.drivers.lib.DNSProvider;
+import com.logonbox.vpn.drivers.lib.NATMode;
+import com.logonbox.vpn.drivers.lib.NativeComponents;
+import com.logonbox.vpn.drivers.lib.PeerListener;
+import com.logonbox.vpn.drivers.lib.PlatformService;
+import com.logonbox.vpn.drivers.lib.StartRequest;
+import com.logonbox.vpn.drivers.lib.SystemConfiguration;
+import com.logonbox.vpn.drivers.lib.SystemContext;
+import com.logonbox.vpn.drivers.lib.VpnAdapter;
+import com.logonbox.vpn.drivers.lib.VpnAdapterConfiguration;
+import com.logonbox.vpn.drivers.lib.VpnAddress;
+import com.logonbox.vpn.drivers.lib.VpnConfiguration;
+import com.logonbox.vpn.drivers.lib.VpnInterfaceInformation;
+import com.logonbox.vpn.drivers.lib.VpnPeer;
+import com.logonbox.vpn.drivers.lib.VpnPeerInformation;
+import com.sshtools.liftlib.commands.SystemCommands;
+
+/**
+ * An in-memory {@link PlatformService} with a fixed number of adapters, each
+ * with a fixed number of peers, for benchmarking the layers above the platform
+ * without touching any real interfaces. Peers may be added and removed, and
+ * traffic counters advance a little on every read, but nothing else changes.
+ * <p>
+ * Content is generated from a seed so is the same on every run, and keys are
+ * random bytes of the right length rather than real key pairs.
+ */
+final class FakePlatformService implements PlatformService<FakePlatformService.FakeAddress>, SystemContext {
+
+	final static class FakeAddress implements VpnAddress {
+		private final String nativeName;
+		private int mtu = 1420;
+		private boolean up = true;
+
+		private FakeAddress(String nativeName) {
+			this.nativeName = nativeName;
+		}
+
+		@Override
+		public boolean isUp() {
+			return up;
+		}
+
+		@Override
+		public boolean isDefaultGateway() {
+			return false;
+		}
+
+		@Override
+		public void setDefaultGateway(String address) {
+		}
+
+		@Override
+		public void delete() throws IOException {
+			up = false;
+		}
+
+		@Override
+		public void down() throws IOException {
+			up = false;
+		}
+
+		@Override
+		public String getMac() {
+			return null;
+		}
+
+		@Override
+		public boolean isLoopback() {
+			return false;
+		}
+
+		@Override
+		public int getMtu() {
+			return mtu;
+		}
+
+		@Override
+		public String name() {
+			return nativeName;
+		}
+
+		@Override
+		public String displayName() {
+			return nativeName;
+		}
+
+		@Override
+		public String nativeName() {
+			return nativeName;
+		}
+
+		@Override
+		public String peer() {
+			return null;
+		}
+
+		@Override
+		public String table() {
+			return "auto";
+		}
+
+		@Override
+		public void mtu(int mtu) {
+			this.mtu = mtu;
+		}
+
+		@Override
+		public void up() throws IOException {
+			up = true;
+		}
+	}
+
+	private record FakePeer(String publicKey, String presharedKey, List<String> allowedIps,
+			InetSocketAddress endpoint, Instant lastHandshake) {
+	}
+
+	private final static class FakeAdapter {
+		private final FakeAddress address;
+		private final String privateKey;
+		private final String publicKey;
+		private final Map<String, FakePeer> peers = Collections.synchronizedMap(new LinkedHashMap<>());
+
+		private FakeAdapter(FakeAddress address, String privateKey, String publicKey) {
+			this.address = address;
+			this.privateKey = privateKey;
+			this.publicKey = publicKey;
+		}
+	}
+
+	private final Map<String, FakeAdapter> adapters = new LinkedHashMap<>();
+	private final AtomicLong reads = new AtomicLong();
+	private final SystemConfiguration configuration = SystemConfiguration.defaultConfiguration();
+	private final Random random;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param adapters number of adapters
+	 * @param peers    number of peers on each adapter
+	 * @param seed     seed for generated content
+	 */
+	FakePlatformService(int adapters, int peers, long seed) {
+		random = new Random(seed);
+		for (int i = 0; i < adapters; i++) {
+			var name = "wg" + i;
+			var adapter = new FakeAdapter(new FakeAddress(name), key(), key());
+			for (int j = 0; j < peers; j++) {
+				var peer = peer(i, j);
+				adapter.peers.put(peer.publicKey(), peer);
+			}
+			this.adapters.put(name, adapter);
+		}
+	}
+
+	/**
+	 * Get the public key of a peer that exists.
+	 *
+	 * @param adapter index of adapter
+	 * @param peer    index of peer
+	 * @return public key
+	 */
+	String publicKey(int adapter, int peer) {
+		var peers = fake("wg" + adapter).peers;
+		synchronized (peers) {
+			return peers.values().stream().skip(peer).findFirst().orElseThrow().publicKey();
+		}
+	}
+
+	/* SystemContext */
+
+	@Override
+	public ScheduledExecutorService queue() {
+		/* No background work, so only the calls being measured run */
+		return null;
+	}
+
+	@Override
+	public SystemConfiguration configuration() {
+		return configuration;
+	}
+
+	@Override
+	public void addScriptEnvironmentVariables(VpnAdapter connection, Map<String, String> env) {
+	}
+
+	@Override
+	public SystemCommands commands() {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public NativeComponents nativeComponents() {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public void alert(String message, Object... args) {
+	}
+
+	/* PlatformService */
+
+	@Override
+	public SystemContext context() {
+		return this;
+	}
+
+	@Override
+	public List<FakeAddress> addresses() {
+		return adapters.values().stream().map(a -> a.address).toList();
+	}
+
+	@Override
+	public List<VpnAdapter> adapters() {
+		return adapters.values().stream().map(a -> new VpnAdapter(this, Optional.of(a.address))).toList();
+	}
+
+	@Override
+	public FakeAddress address(String name) {
+		return fake(name).address;
+	}
+
+	@Override
+	public boolean addressExists(String nativeName) {
+		return adapters.containsKey(nativeName);
+	}
+
+	@Override
+	public VpnAdapter adapter(String nativeName) {
+		return new VpnAdapter(this, Optional.of(address(nativeName)));
+	}
+
+	@Override
+	public boolean adapterExists(String nativeName) {
+		return adapters.containsKey(nativeName);
+	}
+
+	@SuppressWarnings("serial")
+	@Override
+	public VpnInterfaceInformation information(VpnAdapter adapter) {
+		var fake = fake(adapter.address().nativeName());
+		var tick = reads.incrementAndGet();
+		List<VpnPeerInformation> peers;
+		synchronized (fake.peers) {
+			peers = new ArrayList<>(fake.peers.size());
+			for (var peer : fake.peers.values()) {
+				peers.add(new VpnPeerInformation() {
+					@Override
+					public List<String> allowedIps() {
+						return peer.allowedIps();
+					}
+
+					@Override
+					public Optional<InetSocketAddress> remoteAddress() {
+						return Optional.of(peer.endpoint());
+					}
+
+					@Override
+					public String publicKey() {
+						return peer.publicKey();
+					}
+
+					@Override
+					public Optional<String> presharedKey() {
+						return Optional.of(peer.presharedKey());
+					}
+
+					@Override
+					public long tx() {
+						return tick * 148;
+					}
+
+					@Override
+					public long rx() {
+						return tick * 1024;
+					}
+
+					@Override
+					public Instant lastHandshake() {
+						return peer.lastHandshake();
+					}
+
+					@Override
+					public Optional<String> error() {
+						return Optional.empty();
+					}
+				});
+			}
+		}
+		var total = tick * peers.size();
+		var lastHandshake = peers.stream().map(VpnPeerInformation::lastHandshake).max(Instant::compareTo)
+				.orElse(Instant.ofEpochSecond(0));
+		return new VpnInterfaceInformation() {
+			@Override
+			public String interfaceName() {
+				return fake.address.nativeName();
+			}
+
+			@Override
+			public long tx() {
+				return total * 148;
+			}
+
+			@Override
+			public long rx() {
+				return total * 1024;
+			}
+
+			@Override
+			public List<VpnPeerInformation> peers() {
+				return peers;
+			}
+
+			@Override
+			public Instant lastHandshake() {
+				return lastHandshake;
+			}
+
+			@Override
+			public String publicKey() {
+				return fake.publicKey;
+			}
+
+			@Override
+			public String privateKey() {
+				return fake.privateKey;
+			}
+
+			@Override
+			public Optional<Integer> listenPort() {
+				return Optional.of(51820);
+			}
+
+			@Override
+			public Optional<Integer> fwmark() {
+				return Optional.empty();
+			}
+
+			@Override
+			public Optional<String> error() {
+				return Optional.empty();
+			}
+		};
+	}
+
+	@Override
+	public VpnAdapterConfiguration configuration(VpnAdapter adapter) {
+		var fake = fake(adapter.address().nativeName());
+		var peers = new ArrayList<VpnPeer>();
+		synchronized (fake.peers) {
+			for (var peer : fake.peers.values()) {
+				peers.add(new VpnPeer.Builder().withPublicKey(peer.publicKey()).withPresharedKey(peer.presharedKey())
+						.withAllowedIps(peer.allowedIps()).withEndpoint(peer.endpoint()).build());
+			}
+		}
+		return new VpnAdapterConfiguration.Builder().withPrivateKey(fake.privateKey).withPublicKey(fake.publicKey)
+				.withListenPort(51820).withPeers(peers).build();
+	}
+
+	@Override
+	public void append(VpnAdapter vpnAdapter, VpnAdapterConfiguration cfg) throws IOException {
+		var fake = fake(vpnAdapter.address().nativeName());
+		for (var peer : cfg.peers()) {
+			fake.peers.put(peer.publicKey(), toFake(peer));
+		}
+	}
+
+	@Override
+	public void reconfigure(VpnAdapter vpnAdapter, VpnAdapterConfiguration cfg) throws IOException {
+		var fake = fake(vpnAdapter.address().nativeName());
+		synchronized (fake.peers) {
+			fake.peers.clear();
+			append(vpnAdapter, cfg);
+		}
+	}
+
+	@Override
+	public void sync(VpnAdapter vpnAdapter, VpnAdapterConfiguration cfg) throws IOException {
+		reconfigure(vpnAdapter, cfg);
+	}
+
+	@Override
+	public void remove(VpnAdapter vpnAdapter, String publicKey) throws IOException {
+		fake(vpnAdapter.address().nativeName()).peers.remove(publicKey);
+	}
+
+	@Override
+	public VpnAdapter start(StartRequest startRequest) throws IOException {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public void stop(VpnConfiguration configuration, VpnAdapter session) throws IOException {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public void openToEveryone(Path path) throws IOException {
+	}
+
+	@Override
+	public void restrictToUser(Path path) throws IOException {
+	}
+
+	@Override
+	public void runHook(VpnConfiguration configuration, VpnAdapter session, String... hookScript)
+			throws IOException {
+	}
+
+	@Override
+	public Optional<VpnPeer> defaultGatewayPeer() {
+		return Optional.empty();
+	}
+
+	@Override
+	public void defaultGatewayPeer(VpnPeer peer) throws IOException {
+	}
+
+	@Override
+	public void resetDefaultGatewayPeer() throws IOException {
+	}
+
+	@Override
+	public void addPeerListener(PeerListener listener) {
+	}
+
+	@Override
+	public void addPeerListener(String interfaceName, PeerListener listener) {
+	}
+
+	@Override
+	public void removePeerListener(PeerListener listener) {
+	}
+
+	@Override
+	public void removePeerListener(String interfaceName, PeerListener listener) {
+	}
+
+	@Override
+	public Optional<DNSProvider> dns() {
+		return Optional.empty();
+	}
+
+	@Override
+	public Optional<String> interfaceNameToNativeName(String name) {
+		return adapters.containsKey(name) ? Optional.of(name) : Optional.empty();
+	}
+
+	@Override
+	public Optional<String> nativeNameToInterfaceName(String name) {
+		return interfaceNameToNativeName(name);
+	}
+
+	@Override
+	public boolean isValidNativeInterfaceName(String name) {
+		return name.startsWith("wg");
+	}
+
+	@Override
+	public boolean isIpForwardingEnabledOnSystem() {
+		return true;
+	}
+
+	@Override
+	public void setIpForwardingEnabledOnSystem(boolean ipForwarding) {
+	}
+
+	@Override
+	public void setNat(String iface, Optional<NATMode> nat) throws IOException {
+	}
+
+	@Override
+	public Optional<NATMode> getNat(String iface) throws IOException {
+		return Optional.empty();
+	}
+
+	@Override
+	public Optional<Gateway> defaultGateway() {
+		return Optional.empty();
+	}
+
+	@Override
+	public void defaultGateway(Optional<Gateway> iface) {
+	}
+
+	private FakeAdapter fake(String nativeName) {
+		var adapter = adapters.get(nativeName);
+		if (adapter == null)
+			throw new IllegalArgumentException(String.format("No adapter %s", nativeName));
+		return adapter;
+	}
+
+	private FakePeer peer(int adapter, int peer) {
+		try {
+			var endpoint = new InetSocketAddress(InetAddress.getByAddress(new byte[] { (byte) 192, (byte) 0, (byte) 2,
+					(byte) (1 + random.nextInt(254)) }), 1024 + random.nextInt(60000));
+			var allowedIp = String.format("10.%d.%d.%d/32", adapter & 0xff, (peer >> 8) & 0xff, peer & 0xff);
+			return new FakePeer(key(), key(), List.of(allowedIp), endpoint,
+					Instant.ofEpochMilli(1_700_000_000_000L + random.nextInt(1_000_000)));
+		} catch (UnknownHostException uhe) {
+			throw new IllegalStateException(uhe);
+		}
+	}
+
+	private static FakePeer toFake(VpnPeer peer) {
+		var endpoint = peer.endpointAddress()
+				.map(a -> InetSocketAddress.createUnresolved(a, peer.endpointPort().orElse(51820)))
+				.orElseGet(() -> InetSocketAddress.createUnresolved("0.0.0.0", 0));
+		return new FakePeer(peer.publicKey(), peer.presharedKey().orElse(""), List.copyOf(peer.allowedIps()),
+				endpoint, Instant.ofEpochSecond(0));
+	}
+
+	private String key() {
+		var key = new byte[32];
+		random.nextBytes(key);
+		return Base64.getEncoder().encodeToString(key);
+	}
+}
@@ -0,0 +1,142 @@
+/**
+ * Copyright © 2023 LogonBox Limited (support@logonbox.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the “Software”), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies
+ * or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.logonbox.vpn.drivers.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.github.jgonian.ipmath.Ipv4;
+import com.github.jgonian.ipmath.Ipv4Range;
+import com.github.jgonian.ipmath.Ipv6;
+import com.github.jgonian.ipmath.Ipv6Range;
+import com.logonbox.vpn.drivers.lib.util.IpCodec;
+
+/**
+ * Compares the exception driven commons-ip-math parsing previously used by
+ * {@link com.logonbox.vpn.drivers.lib.util.IpUtil} with {@link IpCodec}, over a
+ * mix of IPv4, IPv6, CIDR and DNS name input such as is found in DNS and
+ * allowed IP configuration.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class IpCodecBenchmark {
+
+	private String[] addresses = { "10.0.0.1", "192.168.91.254", "fd00::1", "2001:db8:0:0:1:0:0:1",
+			"vpn.example.com", "1.1.1.1", "::ffff:10.0.0.1", "corp.local" };
+
+	private String[] ranges = { "10.0.0.0/8", "172.16.0.0/12", "192.168.1.0/24", "0.0.0.0/0", "fd00::/8",
+			"2001:db8::/32", "::/0", "10.1.2.3" };
+
+	private final IpCodec.Cidr cidr = new IpCodec.Cidr();
+
+	@Benchmark
+	public void classifyWithExceptions(Blackhole bh) {
+		for (var a : addresses) {
+			try {
+				bh.consume(Ipv4.of(a));
+			} catch (IllegalArgumentException iae) {
+				try {
+					bh.consume(Ipv6.of(a));
+				} catch (IllegalArgumentException iae2) {
+					bh.consume(a);
+				}
+			}
+		}
+	}
+
+	@Benchmark
+	public void classifyWithCodec(Blackhole bh) {
+		for (var a : addresses) {
+			bh.consume(IpCodec.family(a));
+		}
+	}
+
+	@Benchmark
+	public void rangeWithExceptions(Blackhole bh) {
+		for (var r : ranges) {
+			try {
+				try {
+					bh.consume(Ipv4Range.parseCidr(r));
+				} catch (IllegalArgumentException iae) {
+					bh.consume(Ipv4.of(r));
+				}
+			} catch (IllegalArgumentException iae) {
+				try {
+					bh.consume(Ipv6Range.parseCidr(r));
+				} catch (IllegalArgumentException iae2) {
+					bh.consume(Ipv6.of(r));
+				}
+			}
+		}
+	}
+
+	@Benchmark
+	public void rangeWithCodec(Blackhole bh) {
+		for (var r : ranges) {
+			if (IpCodec.parseCidr(r, cidr)) {
+				bh.consume(cidr.firstLo());
+				bh.consume(cidr.lastLo());
+			}
+		}
+	}
+
+	@Benchmark
+	public void normalizeWithIpMath(Blackhole bh) {
+		for (var a : addresses) {
+			try {
+				var ip = Ipv4.of(a);
+				bh.consume(ip.toString() + "/" + ip.bitSize());
+			} catch (IllegalArgumentException iae) {
+				try {
+					var ip = Ipv6.of(a);
+					bh.consume(ip.toString() + "/" + ip.bitSize());
+				} catch (IllegalArgumentException iae2) {
+				}
+			}
+		}
+	}
+
+	@Benchmark
+	public void normalizeWithCodec(Blackhole bh) {
+		var buf = new StringBuilder(43);
+		for (var a : addresses) {
+			if (IpCodec.parseAddress(a, cidr)) {
+				buf.setLength(0);
+				cidr.appendAddressTo(buf).append('/').append(cidr.prefix());
+				bh.consume(buf);
+			}
+		}
+	}
+}
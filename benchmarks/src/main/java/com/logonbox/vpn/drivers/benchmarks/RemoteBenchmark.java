@@ -0,0 +1,197 @@
+/**
+ * Copyright © 2023 LogonBox Limited (support@logonbox.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the “Software”), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies
+ * or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.logonbox.vpn.drivers.benchmarks;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import org.freedesktop.dbus.exceptions.DBusException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.logonbox.vpn.drivers.lib.TopTalkers;
+import com.logonbox.vpn.drivers.lib.VpnAdapter;
+import com.logonbox.vpn.drivers.lib.VpnAdapterConfiguration;
+import com.logonbox.vpn.drivers.lib.VpnAddress;
+import com.logonbox.vpn.drivers.lib.VpnInterfaceInformation;
+import com.logonbox.vpn.drivers.remote.controller.BusRemotePlatformService;
+
+/**
+ * Round trip cost of the calls of
+ * {@link com.logonbox.vpn.drivers.remote.lib.RemotePlatformService}, made from
+ * a {@link BusRemotePlatformService} through a D-Bus daemon embedded in this
+ * process to a node backed by a {@link FakePlatformService}, or straight to the
+ * node when the transport is <code>direct</code>. See {@link EmbeddedBus}.
+ * <p>
+ * Most benchmarks sample the latency of single calls from one thread. Those
+ * named <code>concurrent*</code> measure throughput with several callers
+ * sharing the one controller connection, as a controller serving many requests
+ * would. Those named <code>cached*</code> go through a controller with a read
+ * cache, so mostly show the cost of a cache hit. For the size of each reply on
+ * the wire, run {@link RemoteMessageSizes}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RemoteBenchmark {
+
+	@Param({ "1", "10" })
+	private int adapters;
+
+	@Param({ "10", "100", "1000" })
+	private int peers;
+
+	@Param({ "bus", "direct" })
+	private String transport;
+
+	private EmbeddedBus bus;
+	private EmbeddedBus cachedBus;
+	private BusRemotePlatformService service;
+	private BusRemotePlatformService cachedService;
+	private VpnAdapter adapter;
+	private VpnAddress address;
+	private String publicKey;
+	private String adapterPublicKey;
+
+	@Setup(Level.Trial)
+	public void setup() throws DBusException, IOException {
+		var direct = transport.equals("direct");
+		bus = direct ? EmbeddedBus.startDirect(adapters, peers, Optional.empty())
+				: EmbeddedBus.start(adapters, peers, Optional.empty());
+		cachedBus = direct ? EmbeddedBus.startDirect(adapters, peers, Optional.of(Duration.ofMinutes(1)))
+				: EmbeddedBus.start(adapters, peers, Optional.of(Duration.ofMinutes(1)));
+		service = bus.service();
+		cachedService = cachedBus.service();
+		adapter = service.adapter("wg0");
+		address = adapter.address();
+		publicKey = bus.platform().publicKey(0, peers / 2);
+		adapterPublicKey = bus.platform().information(adapter).publicKey();
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws IOException {
+		try {
+			if (bus != null)
+				bus.close();
+		} finally {
+			if (cachedBus != null)
+				cachedBus.close();
+		}
+	}
+
+	@Benchmark
+	public List<VpnAdapter> adapters() {
+		return service.adapters();
+	}
+
+	@Benchmark
+	public boolean adapterExists() {
+		return service.adapterExists("wg0");
+	}
+
+	@Benchmark
+	public VpnInterfaceInformation information() {
+		return service.information(adapter);
+	}
+
+	@Benchmark
+	public List<VpnInterfaceInformation> informationAll() {
+		return service.information(false, false);
+	}
+
+	@Benchmark
+	public List<VpnInterfaceInformation> informationAllWithKeysAndAllowedIps() {
+		return service.information(true, true);
+	}
+
+	@Benchmark
+	public VpnAdapterConfiguration configuration() {
+		return service.configuration(adapter);
+	}
+
+	@Benchmark
+	public Instant latestHandshake() throws IOException {
+		return service.getLatestHandshake(address, publicKey);
+	}
+
+	@Benchmark
+	public Optional<VpnAdapter> getByPublicKey() throws IOException {
+		return service.getByPublicKey(adapterPublicKey);
+	}
+
+	@Benchmark
+	public List<TopTalkers.Talker> topTalkers() {
+		return service.topTalkers(10, TopTalkers.Direction.BOTH);
+	}
+
+	@Benchmark
+	public boolean addressIsUp() {
+		return address.isUp();
+	}
+
+	@Benchmark
+	public List<VpnAdapter> cachedAdapters() {
+		return cachedService.adapters();
+	}
+
+	@Benchmark
+	@BenchmarkMode(Mode.Throughput)
+	@OutputTimeUnit(TimeUnit.SECONDS)
+	@Threads(8)
+	public VpnInterfaceInformation concurrentInformation() {
+		return service.information(adapter);
+	}
+
+	@Benchmark
+	@BenchmarkMode(Mode.Throughput)
+	@OutputTimeUnit(TimeUnit.SECONDS)
+	@Threads(8)
+	public Instant concurrentLatestHandshake() throws IOException {
+		return service.getLatestHandshake(address, publicKey);
+	}
+
+	@Benchmark
+	@BenchmarkMode(Mode.Throughput)
+	@OutputTimeUnit(TimeUnit.SECONDS)
+	@Threads(8)
+	public List<VpnInterfaceInformation> concurrentInformationAll() {
+		return service.information(false, false);
+	}
+}
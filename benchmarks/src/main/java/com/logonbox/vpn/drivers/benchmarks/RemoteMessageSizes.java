@@ -0,0 +1,125 @@
+/**
+ * Copyright © 2023 LogonBox Limited (support@logonbox.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the “Software”), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies
+ * or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.logonbox.vpn.drivers.benchmarks;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Type;
+import java.util.Optional;
+
+import org.freedesktop.dbus.Marshalling;
+import org.freedesktop.dbus.connections.impl.DBusConnection;
+import org.freedesktop.dbus.exceptions.DBusException;
+import org.freedesktop.dbus.messages.Message;
+
+import com.logonbox.vpn.drivers.remote.lib.RemotePlatformService;
+
+/**
+ * Prints the size on the wire of the request and reply of the calls of
+ * {@link RemotePlatformService}, for a node with a given number of adapters and
+ * peers. Each reply is produced by the node as it would be for a real call,
+ * then marshalled exactly as the node's connection would before sending it.
+ * <p>
+ * Run with
+ * <code>java -cp benchmarks/target/benchmarks.jar com.logonbox.vpn.drivers.benchmarks.RemoteMessageSizes [adapters] [peers]</code>.
+ */
+public final class RemoteMessageSizes {
+
+	private final DBusConnection connection;
+	private final RemotePlatformService node;
+
+	private RemoteMessageSizes(EmbeddedBus bus) {
+		this.connection = bus.nodeConnection();
+		this.node = bus.node();
+	}
+
+	public static void main(String[] args) throws Exception {
+		var adapters = args.length > 0 ? Integer.parseInt(args[0]) : 10;
+		var peers = args.length > 1 ? Integer.parseInt(args[1]) : 100;
+
+		try (var bus = EmbeddedBus.start(adapters, peers, Optional.empty())) {
+			var sizes = new RemoteMessageSizes(bus);
+			var publicKey = bus.platform().publicKey(0, peers / 2);
+			var adapterPublicKey = bus.platform().information(bus.platform().adapter("wg0")).publicKey();
+
+			System.out.format("%d adapters, %d peers each%n%n", adapters, peers);
+			System.out.format("%-40s %12s %12s%n", "Call", "Request", "Reply");
+			sizes.print("adapters()", "adapters");
+			sizes.print("adapterExists(wg0)", "adapterExists", "wg0");
+			sizes.print("information(wg0)", "information", "wg0");
+			sizes.print("informationAll(0)", "informationAll", 0);
+			sizes.print("informationAll(INFORMATION_ALL)", "informationAll", RemotePlatformService.INFORMATION_ALL);
+			sizes.print("configuration(wg0)", "configuration", "wg0");
+			sizes.print("getLatestHandshake(wg0, key)", "getLatestHandshake", "wg0", publicKey);
+			sizes.print("getByPublicKey(key)", "getByPublicKey", adapterPublicKey);
+			sizes.print("topTalkers(10, TOTAL, BOTH)", "topTalkers", 10, "TOTAL", "BOTH");
+			sizes.print("address(wg0)", "address", "wg0");
+			sizes.print("addresses()", "addresses");
+		}
+	}
+
+	private void print(String label, String name, Object... args) throws DBusException {
+		var method = method(name, args);
+		Object reply;
+		try {
+			reply = method.invoke(node, args);
+		} catch (InvocationTargetException ite) {
+			System.out.format("%-40s %s%n", label, ite.getCause());
+			return;
+		} catch (IllegalAccessException iae) {
+			throw new IllegalStateException(iae);
+		}
+
+		var factory = connection.getMessageFactory();
+		var params = method.getGenericParameterTypes();
+		var call = factory.createMethodCall(RemotePlatformService.BUS_NAME, RemotePlatformService.OBJECT_PATH,
+				RemotePlatformService.DBUS_INTERFACE_NAME, name, (byte) 0, signature(params),
+				Marshalling.convertParameters(args, params, connection));
+
+		var returns = new Type[] { method.getGenericReturnType() };
+		var replyMessage = method.getReturnType() == void.class ? factory.createMethodReturn(call, null)
+				: factory.createMethodReturn(call, signature(returns),
+						Marshalling.convertParameters(new Object[] { reply }, returns, connection));
+
+		System.out.format("%-40s %12d %12d%n", label, size(call), size(replyMessage));
+	}
+
+	private static String signature(Type[] types) throws DBusException {
+		return types.length == 0 ? null : Marshalling.getDBusType(types);
+	}
+
+	private static long size(Message message) {
+		var size = 0l;
+		for (var part : message.getWireData()) {
+			if (part != null)
+				size += part.length;
+		}
+		return size;
+	}
+
+	private static Method method(String name, Object... args) {
+		for (var method : RemotePlatformService.class.getMethods()) {
+			if (method.getName().equals(name) && method.getParameterCount() == args.length)
+				return method;
+		}
+		throw new IllegalArgumentException(String.format("No method %s with %d arguments.", name, args.length));
+	}
+}
@@ -21,10 +21,10 @@
 package com.logonbox.vpn.drivers.lib;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
 import java.net.InetAddress;
 import java.net.NetworkInterface;
-import java.net.SocketException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.attribute.PosixFilePermission;
@@ -33,38 +33,40 @@ import java.time.Duration;
 import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Enumeration;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.ServiceLoader;
-import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.github.jgonian.ipmath.AbstractIp;
-import com.github.jgonian.ipmath.Ipv4;
-import com.github.jgonian.ipmath.Ipv4Range;
-import com.github.jgonian.ipmath.Ipv6;
-import com.github.jgonian.ipmath.Ipv6Range;
 import com.logonbox.vpn.drivers.lib.DNSProvider.DNSEntry;
 import com.logonbox.vpn.drivers.lib.NativeComponents.Tool;
 import com.logonbox.vpn.drivers.lib.Prefs.PrefType;
-import com.logonbox.vpn.drivers.lib.util.IpUtil;
+import com.logonbox.vpn.drivers.lib.util.IpCodec;
 import com.logonbox.vpn.drivers.lib.util.Util;
 
 public abstract class AbstractDesktopPlatformService<I extends VpnAddress> extends AbstractPlatformService<I> {
 
 	private final static Logger LOG = LoggerFactory.getLogger(AbstractDesktopPlatformService.class);
 	
+	private final static Duration INITIAL_HANDSHAKE_POLL = Duration.ofMillis(20);
+	private final static Duration MAX_HANDSHAKE_POLL = Duration.ofSeconds(1);
+	private final static Duration REVERSE_LOOKUP_TIMEOUT = Duration.ofMillis(Integer.parseInt(System.getProperty("logonbox.vpn.reverseLookupTimeout", "500")));
+	
 	protected Path tempCommandDir;
 
     private Optional<DNSProvider> dnsProvider;
+    
+    private final ThreadLocal<StartReport.Recorder> startReport = new ThreadLocal<>();
 	
 	protected AbstractDesktopPlatformService(String interfacePrefix, SystemContext context) {
 		super(interfacePrefix, context);
@@ -72,11 +74,17 @@ public abstract class AbstractDesktopPlatformService<I extends VpnAddress> exten
 	
 	protected final I findAddress(StartRequest startRequest)
 			throws IOException {
+		return timed(startRequest.interfaceName().orElse(null), VpnEvents.Phase.FIND_ADDRESS, startRequest.configuration().peers().size(), () -> resolveAddress(startRequest));
+	}
+
+	private I resolveAddress(StartRequest startRequest)
+			throws IOException {
 
 		var addresses = addresses();
 		var configuration = startRequest.configuration();
 		var resolver = new InterfaceNameResolver(this);
-		var result = resolver.resolve(configuration, startRequest.interfaceName(), startRequest.nativeInterfaceName());
+		var result = timed(startRequest.interfaceName().orElse(null), VpnEvents.Phase.RESOLVE_NAME, configuration.peers().size(), 
+				() -> resolver.resolve(configuration, startRequest.interfaceName(), startRequest.nativeInterfaceName()));
 		var resolvedInterfaceName = result.resolvedName();
 		var interfaceName = result.interfaceName();
 
@@ -93,7 +101,7 @@ public abstract class AbstractDesktopPlatformService<I extends VpnAddress> exten
 			if (addr.isEmpty()) {
 				LOG.info("No existing unused interfaces, creating new one {} for public key {}.", nativeName,
 						configuration.publicKey());
-				ip = map(interfaceName.orElse(nativeName), nativeName, "wireguard");
+				ip = createInterface(interfaceName.orElse(nativeName), nativeName, configuration);
 				if (ip == null)
 					throw new IOException("Failed to create virtual IP address.");
 				LOG.info("Created {}", ip.shortName());
@@ -153,7 +161,7 @@ public abstract class AbstractDesktopPlatformService<I extends VpnAddress> exten
 				var nativeName = getInterfacePrefix() + maxIface;
 				LOG.info("No existing unused interfaces, creating new one {} for public key .", nativeName,
 						configuration.publicKey());
-				ip = map(interfaceName.orElse(nativeName), nativeName, "wireguard");
+				ip = createInterface(interfaceName.orElse(nativeName), nativeName, configuration);
 				if (ip == null)
 					throw new IOException("Failed to create virtual IP address.");
 				LOG.info("Created {}", ip.shortName());
@@ -163,46 +171,101 @@ public abstract class AbstractDesktopPlatformService<I extends VpnAddress> exten
 		return ip;
 	}
 
+	private I createInterface(String name, String nativeName, VpnConfiguration configuration) throws IOException {
+		return timed(name, VpnEvents.Phase.CREATE_INTERFACE, configuration.peers().size(), () -> map(name, nativeName, "wireguard"));
+	}
+
     @Override 
     public void remove(VpnAdapter adapter, String publicKey) throws IOException {
-    	context.commands().privileged().run(context.nativeComponents().tool(Tool.WG), "set", adapter.address().name(), "peer", publicKey, "remove");
+    	remove(adapter, List.of(publicKey));
+    }
+
+    @Override 
+    public void remove(VpnAdapter adapter, Collection<String> publicKeys) throws IOException {
+    	if(publicKeys.isEmpty())
+    		return;
+    	var args = new ArrayList<String>(3 + publicKeys.size() * 3);
+    	args.add(context.nativeComponents().tool(Tool.WG));
+    	args.add("set");
+    	args.add(adapter.address().name());
+    	for(var publicKey : publicKeys) {
+    		args.add("peer");
+    		args.add(publicKey);
+    		args.add("remove");
+    	}
+    	new VpnEvents.Configure(adapter.address().name(), VpnEvents.Configure.REMOVE, publicKeys.size())
+    			.run(() -> context.commands().privileged().run(args.toArray(new String[0])));
+    }
+
+    @Override 
+    public void update(VpnAdapter adapter, Collection<VpnPeer> peers) throws IOException {
+    	if(peers.isEmpty())
+    		return;
+    	new VpnEvents.Configure(adapter.address().name(), VpnEvents.Configure.UPDATE, peers.size()).run(() -> {
+    		/* Preshared keys can only be given to `wg set` as files */
+	    	var keyFiles = new ArrayList<Path>();
+	    	try {
+		    	var args = new ArrayList<String>(3 + peers.size() * 8);
+		    	args.add(context.nativeComponents().tool(Tool.WG));
+		    	args.add("set");
+		    	args.add(adapter.address().name());
+		    	for(var peer : peers) {
+		    		args.add("peer");
+		    		args.add(peer.publicKey());
+		    		if(peer.presharedKey().isPresent()) {
+		    			var keyFile = Files.createTempFile("wg", ".psk");
+		    			keyFiles.add(keyFile);
+		    			Files.writeString(keyFile, peer.presharedKey().get());
+		    			args.add("preshared-key");
+		    			args.add(keyFile.toString());
+		    		}
+		    		peer.endpointAddress().ifPresent(a -> {
+		    			args.add("endpoint");
+		    			args.add(String.format("%s:%d", a, peer.endpointPort().orElse(Vpn.DEFAULT_PORT)));
+		    		});
+		    		peer.persistentKeepalive().ifPresent(p -> {
+		    			args.add("persistent-keepalive");
+		    			args.add(String.valueOf(p));
+		    		});
+		    		/* Replaces the peer's allowed IPs, an empty list clears them */
+		    		args.add("allowed-ips");
+		    		args.add(String.join(",", peer.allowedIps()));
+		    	}
+		    	context.commands().privileged().run(args.toArray(new String[0]));
+	    	}
+	    	finally {
+	    		for(var keyFile : keyFiles)
+	    			Files.delete(keyFile);
+	    	}
+    	});
     }
 
     @Override
 	public void reconfigure(VpnAdapter adapter, VpnAdapterConfiguration configuration) throws IOException {
-    	var path = Files.createTempFile("wg", ".cfg");
-    	try {
-    		configuration.write(path);
-        	context.commands().privileged().run(context.nativeComponents().tool(Tool.WG), "setconf", adapter.address().name(), path.toString());
-    	}
-    	finally {
-    		Files.delete(path);
-    	}
+		configure(adapter, configuration, VpnEvents.Configure.RECONFIGURE, "setconf");
 	}
 
 	@Override
 	public void sync(VpnAdapter adapter, VpnAdapterConfiguration configuration) throws IOException {
-		var path = Files.createTempFile("wg", ".cfg");
-    	try {
-    		configuration.write(path);
-        	context.commands().privileged().run(context.nativeComponents().tool(Tool.WG), "syncconf", adapter.address().name(), path.toString());
-    	}
-    	finally {
-    		Files.delete(path);
-    	}
-		
+		configure(adapter, configuration, VpnEvents.Configure.SYNC, "syncconf");
 	}
 
 	@Override
 	public void append(VpnAdapter adapter, VpnAdapterConfiguration configuration) throws IOException {
-		var path = Files.createTempFile("wg", ".cfg");
-    	try {
-    		configuration.write(path);
-        	context.commands().privileged().run(context.nativeComponents().tool(Tool.WG), "addconf", adapter.address().name(), path.toString());
-    	}
-    	finally {
-    		Files.delete(path);
-    	}
+		configure(adapter, configuration, VpnEvents.Configure.APPEND, "addconf");
+	}
+
+	private void configure(VpnAdapter adapter, VpnAdapterConfiguration configuration, String operation, String subcommand) throws IOException {
+		new VpnEvents.Configure(adapter.address().name(), operation, configuration.peers().size()).run(() -> {
+			var path = Files.createTempFile("wg", ".cfg");
+	    	try {
+	    		configuration.write(path);
+	        	context.commands().privileged().run(context.nativeComponents().tool(Tool.WG), subcommand, adapter.address().name(), path.toString());
+	    	}
+	    	finally {
+	    		Files.delete(path);
+	    	}
+		});
 	}
 
     @Override
@@ -279,11 +342,43 @@ public abstract class AbstractDesktopPlatformService<I extends VpnAddress> exten
 	    
 	    var session = new VpnAdapter(this);
         var config = startRequest.configuration();
+        var recorder = new StartReport.Recorder(context.commandStatistics());
         
+        startReport.set(recorder);
+        var event = new VpnEvents.Start(startRequest.interfaceName().orElse(null), config.peers().size());
+        try {
+        	event.run(() -> {
+        		try {
+        			doStart(startRequest, session, config);
+        		}
+        		finally {
+        			session.optionalAddress().ifPresent(addr -> event.interfaceName(addr.name()));
+        		}
+        	});
+        }
+        finally {
+        	startReport.remove();
+        }
+        
+        var report = recorder.build();
+        session.startReport(report);
+        if(LOG.isDebugEnabled())
+        	LOG.debug("Started {} in {}{}{}", session.address().shortName(), report.total(), System.lineSeparator(), report);
+		
+		return session;
+	}
+
+	private void doStart(StartRequest startRequest, VpnAdapter session, VpnConfiguration config) throws IOException {
+		var name = startRequest.interfaceName().orElse(null);
+		var peers = config.peers().size();
+		
 		if(config.preUp().length > 0)  {
             var p = config.preUp();
             LOG.info("Running pre-up commands. {}", String.join("; ", p).trim());
-            runHook(config, session, p);
+            timed(name, VpnEvents.Phase.PRE_UP, peers, () -> {
+            	runHook(config, session, p);
+            	return null;
+            });
         };
 	    
         try {
@@ -295,28 +390,34 @@ public abstract class AbstractDesktopPlatformService<I extends VpnAddress> exten
 		} catch (Exception e) {
 			throw new IOException("Failed to start.", e);
 		}
+        
+        name = session.address().name();
     
         var gw = defaultGatewayPeer();
         if(gw.isPresent() && config.peers().contains(gw.get())) {
-			try {
-				var addr = gw.get().endpointAddress().orElseThrow(() -> new IllegalStateException("No endpoint for peer."));
-				var iface = defaultGateway().
-						map(Gateway::nativeIface).
-						orElseThrow(() -> new IllegalStateException("No current default gateway."));
-				onSetDefaultGateway(new Gateway(iface, addr));
-			}
-			catch(Exception e) { 
-				LOG.error("Failed to setup routing.", e);
-			}
+        	timed(name, VpnEvents.Phase.DEFAULT_GATEWAY, peers, () -> {
+				try {
+					var addr = gw.get().endpointAddress().orElseThrow(() -> new IllegalStateException("No endpoint for peer."));
+					var iface = defaultGateway().
+							map(Gateway::nativeIface).
+							orElseThrow(() -> new IllegalStateException("No current default gateway."));
+					onSetDefaultGateway(new Gateway(iface, addr));
+				}
+				catch(Exception e) { 
+					LOG.error("Failed to setup routing.", e);
+				}
+				return null;
+        	});
 		}
 
         if(config.postUp().length > 0)  {
 		    var p = config.postUp();
             LOG.info("Running post-up commands. {}", String.join("; ", p).trim());
-            runHook(config, session, p);
+            timed(name, VpnEvents.Phase.POST_UP, peers, () -> {
+            	runHook(config, session, p);
+            	return null;
+            });
 		};
-		
-		return session;
 	}
 
 	@Override
@@ -400,10 +501,14 @@ public abstract class AbstractDesktopPlatformService<I extends VpnAddress> exten
 		else {
 			LOG.info("Configuring DNS servers for {} as {}", ip.shortName(), configuration.dns());
 		}
-		var dnsOr = dns();
-		if(dnsOr.isPresent())
-		    dnsOr.get().set(new DNSEntry.Builder().fromConfiguration(configuration).withInterface(ip.nativeName()).build());
-		
+		phase(ip, VpnEvents.Phase.DNS, configuration.peers().size(), () -> {
+			var dnsOr = dns();
+			if(dnsOr.isPresent()) {
+				var dns = dnsOr.get();
+				new VpnEvents.DNS(ip.name(), VpnEvents.DNS.SET, dns.getClass(), configuration.dns().size())
+						.run(() -> dns.set(new DNSEntry.Builder().fromConfiguration(configuration).withInterface(ip.nativeName()).build()));
+			}
+		});
 	}
 
 	protected boolean isMatchesPrefix(NetworkInterface nif) {
@@ -415,9 +520,71 @@ public abstract class AbstractDesktopPlatformService<I extends VpnAddress> exten
 	}
 
 	protected abstract void onStart(StartRequest startRequest, VpnAdapter session) throws Exception;
+
+	/**
+	 * A single step of {@link #onStart(StartRequest, VpnAdapter)}.
+	 */
+	@FunctionalInterface
+	protected interface PhaseTask {
+		void run() throws IOException;
+	}
+
+	@FunctionalInterface
+	private interface PhaseCall<R> {
+		R call() throws IOException;
+	}
+
+	/**
+	 * Run a single phase of {@link #onStart(StartRequest, VpnAdapter)}, timing it
+	 * with a {@link VpnEvents.Phase} flight recorder event, and in the
+	 * {@link StartReport} of the adapter being started.
+	 *
+	 * @param ip    address being started
+	 * @param phase phase name, e.g. {@link VpnEvents.Phase#SETCONF}
+	 * @param peers number of peers in the configuration
+	 * @param task  task to run
+	 * @throws IOException on error
+	 */
+	protected final void phase(VpnAddress ip, String phase, int peers, PhaseTask task) throws IOException {
+		timed(ip.name(), phase, peers, () -> {
+			task.run();
+			return null;
+		});
+	}
+
+	private <R> R timed(String interfaceName, String phase, int peers, PhaseCall<R> task) throws IOException {
+		/* Only set while start() is running on this thread, phases may also happen on reconfiguration */
+		var recorder = startReport.get();
+		var entry = recorder == null ? null : recorder.begin(phase);
+		var failed = true;
+		try(var event = new VpnEvents.Phase(interfaceName, phase, peers)) {
+			try {
+				var result = task.call();
+				/* Finding or creating an address only knows the interface name once done */
+				if(result instanceof VpnAddress addr)
+					event.interfaceName(addr.name());
+				failed = false;
+				return result;
+			}
+			finally {
+				if(failed)
+					event.failed();
+			}
+		}
+		finally {
+			if(entry != null)
+				entry.end(failed);
+		}
+	}
 	
 	protected void waitForFirstHandshake(VpnConfiguration configuration, VpnAdapter session, Instant connectionStarted, Optional<VpnPeer> peerOr, Duration timeout)
 			throws IOException {
+		phase(session.address(), VpnEvents.Phase.HANDSHAKE, configuration.peers().size(), 
+				() -> awaitFirstHandshake(configuration, session, connectionStarted, peerOr, timeout));
+	}
+
+	private void awaitFirstHandshake(VpnConfiguration configuration, VpnAdapter session, Instant connectionStarted, Optional<VpnPeer> peerOr, Duration timeout)
+			throws IOException {
 	    if(configuration.peers().size() != 1) {
 	        LOG.info("Not waiting for handshake, there are either no or multiple peers.");
 	        return;
@@ -438,12 +605,10 @@ public abstract class AbstractDesktopPlatformService<I extends VpnAddress> exten
         
         LOG.info("Waiting for handshake for {} seconds. Hand shake should be after {}", timeout.toSeconds(), connectionStarted.toEpochMilli());
         
-		for(int i = 0 ; i < timeout.toSeconds() ; i++) {
-			try {
-				Thread.sleep(1000);
-			} catch (InterruptedException e) {
-				throw new IOException(String.format("Interrupted connecting to %s", ip.shortName()));
-			}
+        /* Poll quickly at first, as the handshake usually arrives within a few round trips, then back off */
+        var deadline = System.nanoTime() + timeout.toNanos();
+        var delay = INITIAL_HANDSHAKE_POLL;
+		while(true) {
 			try {
 				var lastHandshake = getLatestHandshake(ip, peer.publicKey());
 				if(lastHandshake.equals(connectionStarted) || lastHandshake.isAfter(connectionStarted)) {
@@ -464,6 +629,29 @@ public abstract class AbstractDesktopPlatformService<I extends VpnAddress> exten
 				}
 				throw iae;
 			}
+			
+			var remaining = deadline - System.nanoTime();
+			if(remaining <= 0)
+				break;
+			
+			try {
+				TimeUnit.NANOSECONDS.sleep(Math.min(remaining, delay.toNanos()));
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				try {
+					ip.down();
+				}
+				catch(Exception e2) {
+					LOG.error("Failed to stop after interrupt.", e2);
+				} finally {
+				    ip.delete();
+				}
+				throw new InterruptedIOException(String.format("Interrupted connecting to %s", ip.shortName()));
+			}
+			
+			delay = delay.multipliedBy(2);
+			if(delay.compareTo(MAX_HANDSHAKE_POLL) > 0)
+				delay = MAX_HANDSHAKE_POLL;
 		}
 
 		/* Failed to connect in the given time. Clean up and report an exception */
@@ -477,15 +665,50 @@ public abstract class AbstractDesktopPlatformService<I extends VpnAddress> exten
 		}
 		
 		var endpointAddress = peer.endpointAddress().orElseThrow(() -> new IllegalStateException("No endpoint address."));
-		var endpointName = peer.endpointAddress().map(a -> {
-		    try {
-	            return InetAddress.getByName(a).getHostName();
-	        }
-	        catch(Exception e) {
-	            return endpointAddress;
-	        }   
-		}).orElse(endpointAddress);
-		throw new NoHandshakeException(String.format("No handshake received from %s (%s) for %s within %d seconds.", endpointAddress, endpointName, ip.shortName(), timeout.toSeconds()));
+		throw new NoHandshakeException(String.format("No handshake received from %s (%s) for %s within %d seconds.", endpointAddress, endpointName(endpointAddress), ip.shortName(), timeout.toSeconds()));
+	}
+	
+	/**
+	 * Get the instant a connection is starting, against which the handshake times
+	 * reported by <code>wg</code> (which have a resolution of one second) can be
+	 * compared. Any handshake in the same second or later is considered to be for
+	 * this connection.
+	 * 
+	 * @return connection start
+	 */
+	protected static Instant connectionStarted() {
+		return Instant.ofEpochSecond(System.currentTimeMillis() / 1000l);
+	}
+	
+	/**
+	 * Get a name for an endpoint to use in error messages. If the endpoint is an
+	 * address, a reverse lookup is attempted, but this will not wait more than
+	 * {@link #REVERSE_LOOKUP_TIMEOUT} for it.
+	 */
+	private static String endpointName(String endpointAddress) {
+		if(REVERSE_LOOKUP_TIMEOUT.isZero() || !IpCodec.isAddress(endpointAddress))
+			return endpointAddress;
+		var lookup = new CompletableFuture<String>();
+		var thread = new Thread(() -> {
+			try {
+				lookup.complete(InetAddress.getByName(endpointAddress).getHostName());
+			}
+			catch(Exception e) {
+				lookup.complete(endpointAddress);
+			}
+		}, "ReverseLookup-" + endpointAddress);
+		thread.setDaemon(true);
+		thread.start();
+		try {
+			return lookup.get(REVERSE_LOOKUP_TIMEOUT.toMillis(), TimeUnit.MILLISECONDS);
+		}
+		catch(InterruptedException ie) {
+			Thread.currentThread().interrupt();
+			return endpointAddress;
+		}
+		catch(Exception e) {
+			return endpointAddress;
+		}
 	}
 	
 	protected final VpnConfiguration transform(VpnConfiguration configuration) {
@@ -495,6 +718,7 @@ public abstract class AbstractDesktopPlatformService<I extends VpnAddress> exten
         transformBldr.fromConfiguration(configuration);
         transformBldr.withPeers();
 		transformInterface(configuration, transformBldr);
+		var localAddresses = context.configuration().ignoreLocalRoutes() ? LocalAddressFilter.snapshot() : null;
 		for(var peer : configuration.peers()) {
             
 			var transformPeerBldr = new VpnPeer.Builder();
@@ -504,79 +728,17 @@ public abstract class AbstractDesktopPlatformService<I extends VpnAddress> exten
     			transformPeerBldr.withAllowedIps("0.0.0.0/0");
     		}	
     		else {
-    			if(context.configuration().ignoreLocalRoutes()) {
+    			if(localAddresses != null) {
     				/* Filter out any routes that would cover the addresses of any interfaces
     				 * we already have
     				 */
-    				Set<AbstractIp<?, ?>> localAddresses = new HashSet<>();
-    				try {
-    					for(Enumeration<NetworkInterface> en = NetworkInterface.getNetworkInterfaces(); en.hasMoreElements(); ) {
-    						NetworkInterface ni = en.nextElement();
-    						if(!ni.isLoopback() && ni.isUp()) { 
-    							for(Enumeration<InetAddress> addrEn = ni.getInetAddresses(); addrEn.hasMoreElements(); ) {
-    								InetAddress addr = addrEn.nextElement();
-    								try {
-    									localAddresses.add(IpUtil.parse(addr.getHostAddress()));
-    								}
-    								catch(IllegalArgumentException iae) {
-    									// Ignore
-    								}
-    							}
-    						}
-    					}
-    				}
-    				catch(SocketException se) {
-    					//
-    				}
-    
-    				for(String route : new ArrayList<>(allowedIps)) {
-    					try {
-    						try {
-    							Ipv4Range range = Ipv4Range.parseCidr(route);
-    							for(AbstractIp<?, ?> laddr : localAddresses) {
-    								if(laddr instanceof Ipv4 && range.contains((Ipv4)laddr)) {
-    									// Covered by route. 
-    									LOG.info("Filtering out route {} as it covers an existing local interface address.", route);
-    									allowedIps.remove(route);
-    									break;
-    								}
-    							}
-    						}
-    						catch(IllegalArgumentException iae) {
-    							/* Single ipv4 address? */
-    							Ipv4 routeIpv4 = Ipv4.of(route);
-    							if(localAddresses.contains(routeIpv4)) {
-    								// Covered by route. 
-    								LOG.info("Filtering out route {} as it covers an existing local interface address.", route);
-    								allowedIps.remove(route);
-    								break;
-    							}
-    						}
-    					}
-    					catch(IllegalArgumentException iae) {
-    						try {
-    							Ipv6Range range = Ipv6Range.parseCidr(route);
-    							for(AbstractIp<?, ?> laddr : localAddresses) {
-    								if(laddr instanceof Ipv6 && range.contains((Ipv6)laddr)) {
-    									// Covered by route. 
-    									LOG.info("Filtering out route {} as it covers an existing local interface address.", route);
-    									allowedIps.remove(route);
-    									break;
-    								}
-    							}
-    						}
-    						catch(IllegalArgumentException iae2) {
-    							/* Single ipv6 address? */
-    							Ipv6 routeIpv6 = Ipv6.of(route);
-    							if(localAddresses.contains(routeIpv6)) {
-    								// Covered by route. 
-    								LOG.info("Filtering out route {} as it covers an existing local interface address.", route);
-    								allowedIps.remove(route);
-    								break;
-    							}
-    						}
+    				allowedIps.removeIf(route -> {
+    					if(localAddresses.covers(route)) {
+    						LOG.info("Filtering out route {} as it covers an existing local interface address.", route);
+    						return true;
     					}
-    				}
+    					return false;
+    				});
     			}
     			
     			String ignoreAddresses = System.getProperty("logonbox.vpn.ignoreAddresses", "");
@@ -589,7 +751,7 @@ public abstract class AbstractDesktopPlatformService<I extends VpnAddress> exten
     		}
     		transformPeer(configuration, peer, transformPeerBldr);
 
-    		transformBldr.addPeers(peer);
+    		transformBldr.addPeers(transformPeerBldr.build());
 		}
         
 		return transformBldr.build();
@@ -3,13 +3,16 @@ package com.logonbox.vpn.drivers.lib;
 import com.sshtools.liftlib.commands.ElevatableSystemCommands;
 import com.sshtools.liftlib.commands.SystemCommands;
 
+import java.util.Optional;
+
 public abstract class AbstractSystemContext implements SystemContext {
 
+    private final CommandStatistics commandStatistics = new CommandStatistics();
     private SystemCommands commands;
     private NativeComponents nativeComponents;
     
     protected AbstractSystemContext() {
-        commands = new ElevatableSystemCommands();
+        commands = commandStatistics.counting(new ElevatableSystemCommands());
         nativeComponents = new NativeComponents();
     }
 
@@ -23,4 +26,9 @@ public abstract class AbstractSystemContext implements SystemContext {
         return nativeComponents;
     }
 
+    @Override
+    public final Optional<CommandStatistics> commandStatistics() {
+        return Optional.of(commandStatistics);
+    }
+
 }
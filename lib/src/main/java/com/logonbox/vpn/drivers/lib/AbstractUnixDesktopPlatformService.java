@@ -1,26 +1,20 @@
 package com.logonbox.vpn.drivers.lib;
 
 import com.logonbox.vpn.drivers.lib.NativeComponents.Tool;
-import com.logonbox.vpn.drivers.lib.util.OsUtil;
-import com.logonbox.vpn.drivers.lib.util.Util;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.io.UncheckedIOException;
-import java.net.InetSocketAddress;
 import java.text.ParseException;
 import java.time.Instant;
-import java.util.ArrayList;
-import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Optional;
 import java.util.StringTokenizer;
-import java.util.concurrent.atomic.AtomicInteger;
-import java.util.concurrent.atomic.AtomicLong;
 
 public abstract class AbstractUnixDesktopPlatformService<I extends VpnAddress>
 		extends AbstractDesktopPlatformService<I> {
@@ -76,6 +70,12 @@ public abstract class AbstractUnixDesktopPlatformService<I extends VpnAddress>
 		addRoutes(adapter);
 	}
 
+	@Override
+	public void update(VpnAdapter adapter, Collection<VpnPeer> peers) throws IOException {
+		super.update(adapter, peers);
+		addRoutes(adapter);
+	}
+
 	@Override
 	protected void onSetDefaultGateway(Gateway gateway) {
 		LOG.info("Routing traffic all through {} on {}", gateway.address(), gateway.nativeIface());
@@ -145,140 +145,8 @@ public abstract class AbstractUnixDesktopPlatformService<I extends VpnAddress>
 	public VpnInterfaceInformation information(VpnAdapter adapter) {
 		try {
 			var iface = adapter.address();
-			var peers = new ArrayList<VpnPeerInformation>();
-			var lastHandshake = new AtomicLong(0l);
-			var rx = new AtomicLong(0l);
-			var tx = new AtomicLong(0l);
-			var port = new AtomicInteger();
-			var fwmark = new AtomicInteger();
-			var publicKey = new StringBuffer();
-			var privateKey = new StringBuffer();
-
-			for (var line : context.commands().privileged().output(context.nativeComponents().tool(Tool.WG), "show",
-					iface.nativeName(), "dump")) {
-				var st = new StringTokenizer(line);
-				if (st.countTokens() == 4) {
-					privateKey.append(st.nextToken());
-					publicKey.append(st.nextToken());
-					port.set(Integer.parseInt(st.nextToken()));
-					fwmark.set(Util.parseFwMark(st.nextToken()));
-				} else {
-					var peerPublicKey = st.nextToken();
-					var presharedKeyVal = st.nextToken();
-					Optional<String> presharedKey;
-					if (presharedKeyVal.equals("(none)")) {
-						presharedKey = Optional.empty();
-					} else {
-						presharedKey = Optional.of(presharedKeyVal);
-					}
-					var remoteAddress = Optional.of(OsUtil.parseInetSocketAddress(st.nextToken()));
-					var allowedIps = Arrays.asList(st.nextToken().split(","));
-					var thisLastHandshake = Instant.ofEpochSecond(Long.parseLong(st.nextToken()));
-					var thisRx = Long.parseLong(st.nextToken());
-					var thisTx = Long.parseLong(st.nextToken());
-
-					lastHandshake.set(Math.max(lastHandshake.get(), thisLastHandshake.toEpochMilli()));
-					rx.addAndGet(thisRx);
-					tx.addAndGet(thisTx);
-
-					peers.add(new VpnPeerInformation() {
-
-						@Override
-						public long tx() {
-							return thisTx;
-						}
-
-						@Override
-						public long rx() {
-							return thisRx;
-						}
-
-						@Override
-						public Instant lastHandshake() {
-							return thisLastHandshake;
-						}
-
-						@Override
-						public Optional<String> error() {
-							return Optional.empty();
-						}
-
-						@Override
-						public Optional<InetSocketAddress> remoteAddress() {
-							return remoteAddress;
-						}
-
-						@Override
-						public List<String> allowedIps() {
-							return allowedIps;
-						}
-
-						@Override
-						public String publicKey() {
-							return peerPublicKey;
-						}
-
-						@Override
-						public Optional<String> presharedKey() {
-							return presharedKey;
-						}
-
-					});
-				}
-			}
-			return new VpnInterfaceInformation() {
-
-				@Override
-				public String interfaceName() {
-					return iface.name();
-				}
-
-				@Override
-				public long tx() {
-					return tx.get();
-				}
-
-				@Override
-				public long rx() {
-					return rx.get();
-				}
-
-				@Override
-				public List<VpnPeerInformation> peers() {
-					return peers;
-				}
-
-				@Override
-				public Instant lastHandshake() {
-					return Instant.ofEpochMilli(lastHandshake.get());
-				}
-
-				@Override
-				public Optional<String> error() {
-					return Optional.empty();
-				}
-
-				@Override
-				public Optional<Integer> listenPort() {
-					return port.get() == 0 ? Optional.empty() : Optional.of(port.get());
-				}
-
-				@Override
-				public Optional<Integer> fwmark() {
-					return fwmark.get() == 0 ? Optional.empty() : Optional.of(fwmark.get());
-				}
-
-				@Override
-				public String publicKey() {
-					return publicKey.toString();
-				}
-
-				@Override
-				public String privateKey() {
-					return privateKey.toString();
-				}
-
-			};
+			return ColumnarInterfaceInformation.parse(iface.name(), context.commands().privileged()
+					.output(context.nativeComponents().tool(Tool.WG), "show", iface.nativeName(), "dump"));
 		} catch (IOException ioe) {
 			throw new UncheckedIOException(ioe);
 		}
@@ -301,6 +169,10 @@ public abstract class AbstractUnixDesktopPlatformService<I extends VpnAddress>
 	}
 
 	protected final void addRoutes(VpnAdapter session) throws IOException {
+		phase(session.address(), VpnEvents.Phase.ROUTES, 0, () -> updateRoutes(session));
+	}
+
+	private void updateRoutes(VpnAdapter session) throws IOException {
 
 		/* Set routes from the known allowed-ips supplies by Wireguard. */
 		session.allows().clear();
@@ -12,9 +12,16 @@ import java.util.Optional;
 public abstract class BasePlatformService<I extends VpnAddress> implements PlatformService<I> {
 
     final static Logger LOG = LoggerFactory.getLogger(BasePlatformService.class);
+
+    private final PeerEventPoller peerEvents = new PeerEventPoller(this);
     
     @Override
     public final void stop(VpnConfiguration configuration, VpnAdapter session) throws IOException {
+        new VpnEvents.Stop(session.address().name(), configuration.peers().size())
+                .run(() -> doStop(configuration, session));
+    }
+
+    private void doStop(VpnConfiguration configuration, VpnAdapter session) throws IOException {
         try {
 
             LOG.info("Stopping VPN for {}", session.address().shortName());
@@ -23,7 +30,9 @@ public abstract class BasePlatformService<I extends VpnAddress> implements Platf
                 if(!configuration.addresses().isEmpty()) {
                     var dnsOr = dns();
                     if(dnsOr.isPresent()) {
-                        dnsOr.get().unset(new DNSEntry.Builder().fromConfiguration(configuration).withInterface(session.address().nativeName()).build());
+                        var dns = dnsOr.get();
+                        new VpnEvents.DNS(session.address().name(), VpnEvents.DNS.UNSET, dns.getClass(), configuration.dns().size())
+                                .run(() -> dns.unset(new DNSEntry.Builder().fromConfiguration(configuration).withInterface(session.address().nativeName()).build()));
                     }
                 }
             }
@@ -54,6 +63,26 @@ public abstract class BasePlatformService<I extends VpnAddress> implements Platf
         
     }
 
+    @Override
+    public final void addPeerListener(PeerListener listener) {
+        peerEvents.add(listener, Optional.empty());
+    }
+
+    @Override
+    public final void addPeerListener(String interfaceName, PeerListener listener) {
+        peerEvents.add(listener, Optional.of(interfaceName));
+    }
+
+    @Override
+    public final void removePeerListener(PeerListener listener) {
+        peerEvents.removeAll(listener);
+    }
+
+    @Override
+    public final void removePeerListener(String interfaceName, PeerListener listener) {
+        peerEvents.remove(listener, Optional.of(interfaceName));
+    }
+
     @Override
     public final VpnAdapter adapter(String nativeName) {
         return findAdapter(nativeName, adapters()).orElseThrow(() -> new IllegalArgumentException(String.format("No adapter %s", nativeName)));
@@ -0,0 +1,564 @@
+/**
+ * Copyright © 2023 LogonBox Limited (support@logonbox.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the “Software”), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies
+ * or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.logonbox.vpn.drivers.lib;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.UnknownHostException;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.RandomAccess;
+
+import com.logonbox.vpn.drivers.lib.util.IpCodec;
+import com.logonbox.vpn.drivers.lib.util.Util;
+
+/**
+ * A {@link VpnInterfaceInformation} parsed from the output of
+ * <code>wg show &lt;iface&gt; dump</code>, held column by column rather than as
+ * an object per peer.
+ * <p>
+ * Transfer counts, handshake times and keep-alive intervals are held in
+ * primitive arrays, and public keys in a single byte slab. Endpoints, allowed
+ * IPs and preshared keys are held as ASCII in a second slab, and only decoded
+ * into strings when asked for. The dump output itself is not kept. The
+ * {@link VpnPeerInformation} instances returned by
+ * {@link #peers()} are lightweight views created on demand. The columns may
+ * also be read directly by index, which allows an interface with many
+ * thousands of peers to be polled without creating objects for every peer.
+ * <p>
+ * Instances are immutable once parsed and safe to share between threads.
+ */
+public final class ColumnarInterfaceInformation implements VpnInterfaceInformation {
+
+	private static final long serialVersionUID = 1L;
+
+	/** Length of a base64 encoded key */
+	public final static int KEY_LENGTH = 44;
+
+	private final static String NONE = "(none)";
+
+	/* Offsets of the start and end in the text slab of each text field of a peer */
+	private final static int PSK = 0;
+	private final static int ENDPOINT = 2;
+	private final static int ALLOWED_IPS = 4;
+	private final static int STRIDE = 6;
+
+	private final String interfaceName;
+	private String privateKey = "";
+	private String publicKey = "";
+	private int listenPort;
+	private int fwmark;
+
+	private int count;
+	private long rxTotal;
+	private long txTotal;
+	private long lastHandshakeSecs;
+
+	private long[] rx;
+	private long[] tx;
+	private long[] handshake;
+	private int[] keepalive;
+	private byte[] keys;
+	/* Preshared keys, endpoints and allowed IPs, empty when (none) */
+	private byte[] text;
+	private int textLength;
+	private int[] offsets;
+
+	private transient volatile int[] index;
+
+	private ColumnarInterfaceInformation(String interfaceName, int capacity) {
+		this.interfaceName = interfaceName;
+		rx = new long[capacity];
+		tx = new long[capacity];
+		handshake = new long[capacity];
+		keepalive = new int[capacity];
+		keys = new byte[capacity * KEY_LENGTH];
+		text = new byte[capacity * 64];
+		offsets = new int[capacity * STRIDE];
+	}
+
+	/**
+	 * Parse the lines output by <code>wg show &lt;iface&gt; dump</code>. The first
+	 * line with 4 fields describes the interface, every other line with at least
+	 * 7 fields describes a peer. Fields are separated by tabs (or spaces).
+	 *
+	 * @param interfaceName interface name
+	 * @param dump          lines of dump output
+	 * @return information
+	 * @throws IllegalArgumentException if output cannot be parsed
+	 */
+	public static ColumnarInterfaceInformation parse(String interfaceName, Iterable<String> dump) {
+		var info = new ColumnarInterfaceInformation(interfaceName, 16);
+		var fields = new int[16];
+		for (var line : dump) {
+			var n = fields(line, fields);
+			if (n == 4) {
+				info.privateKey = line.substring(fields[0], fields[1]);
+				info.publicKey = line.substring(fields[2], fields[3]);
+				info.listenPort = parseInt(line, fields[4], fields[5]);
+				info.fwmark = Util.parseFwMark(line.substring(fields[6], fields[7]));
+			} else if (n >= 7) {
+				info.add(line, fields, n);
+			} else if (n > 0)
+				throw new IllegalArgumentException(String.format("Unexpected dump line '%s'", line));
+		}
+		return info;
+	}
+
+	/**
+	 * Get the number of peers.
+	 *
+	 * @return peer count
+	 */
+	public int size() {
+		return count;
+	}
+
+	/**
+	 * Get the index of the peer with a public key.
+	 *
+	 * @param publicKey public key
+	 * @return index or -1 if there is no such peer
+	 */
+	public int indexOf(CharSequence publicKey) {
+		if (publicKey.length() != KEY_LENGTH)
+			return -1;
+		var idx = index;
+		if (idx == null) {
+			idx = buildIndex();
+			index = idx;
+		}
+		var mask = idx.length - 1;
+		for (int slot = hash(publicKey) & mask;; slot = (slot + 1) & mask) {
+			var peer = idx[slot] - 1;
+			if (peer == -1)
+				return -1;
+			if (keyEquals(peer, publicKey))
+				return peer;
+		}
+	}
+
+	/**
+	 * Get the public key of a peer.
+	 *
+	 * @param peer index of peer
+	 * @return public key
+	 */
+	public String publicKey(int peer) {
+		checkIndex(peer);
+		return new String(keys, peer * KEY_LENGTH, KEY_LENGTH, StandardCharsets.US_ASCII);
+	}
+
+	/**
+	 * Get if the public key of a peer is equal to the given key, without creating
+	 * a string.
+	 *
+	 * @param peer index of peer
+	 * @param key  key to compare
+	 * @return equal
+	 */
+	public boolean publicKeyEquals(int peer, CharSequence key) {
+		checkIndex(peer);
+		return key.length() == KEY_LENGTH && keyEquals(peer, key);
+	}
+
+	/**
+	 * Get the bytes received from a peer.
+	 *
+	 * @param peer index of peer
+	 * @return bytes received
+	 */
+	public long rx(int peer) {
+		checkIndex(peer);
+		return rx[peer];
+	}
+
+	/**
+	 * Get the bytes sent to a peer.
+	 *
+	 * @param peer index of peer
+	 * @return bytes sent
+	 */
+	public long tx(int peer) {
+		checkIndex(peer);
+		return tx[peer];
+	}
+
+	/**
+	 * Get the time of the last handshake with a peer in seconds since the epoch,
+	 * or zero if there has never been one.
+	 *
+	 * @param peer index of peer
+	 * @return last handshake
+	 */
+	public long lastHandshakeEpochSecond(int peer) {
+		checkIndex(peer);
+		return handshake[peer];
+	}
+
+	/**
+	 * Get the persistent keep-alive interval of a peer in seconds, or zero if it
+	 * is off.
+	 *
+	 * @param peer index of peer
+	 * @return persistent keep-alive
+	 */
+	public int persistentKeepalive(int peer) {
+		checkIndex(peer);
+		return keepalive[peer];
+	}
+
+	/**
+	 * Get a view of a single peer.
+	 *
+	 * @param peer index of peer
+	 * @return peer
+	 */
+	public VpnPeerInformation peer(int peer) {
+		checkIndex(peer);
+		return new PeerView(this, peer);
+	}
+
+	@Override
+	public Optional<VpnPeerInformation> peer(String publicKey) {
+		var idx = indexOf(publicKey);
+		return idx == -1 ? Optional.empty() : Optional.of(new PeerView(this, idx));
+	}
+
+	@Override
+	public String interfaceName() {
+		return interfaceName;
+	}
+
+	@Override
+	public long tx() {
+		return txTotal;
+	}
+
+	@Override
+	public long rx() {
+		return rxTotal;
+	}
+
+	@Override
+	public List<VpnPeerInformation> peers() {
+		return new Peers(this);
+	}
+
+	@Override
+	public Instant lastHandshake() {
+		return Instant.ofEpochSecond(lastHandshakeSecs);
+	}
+
+	@Override
+	public String publicKey() {
+		return publicKey;
+	}
+
+	@Override
+	public String privateKey() {
+		return privateKey;
+	}
+
+	@Override
+	public Optional<Integer> listenPort() {
+		return listenPort == 0 ? Optional.empty() : Optional.of(listenPort);
+	}
+
+	@Override
+	public Optional<Integer> fwmark() {
+		return fwmark == 0 ? Optional.empty() : Optional.of(fwmark);
+	}
+
+	@Override
+	public Optional<String> error() {
+		return Optional.empty();
+	}
+
+	private void add(String line, int[] fields, int n) {
+		if (count == rx.length) {
+			var cap = count * 2;
+			rx = Arrays.copyOf(rx, cap);
+			tx = Arrays.copyOf(tx, cap);
+			handshake = Arrays.copyOf(handshake, cap);
+			keepalive = Arrays.copyOf(keepalive, cap);
+			keys = Arrays.copyOf(keys, cap * KEY_LENGTH);
+			offsets = Arrays.copyOf(offsets, cap * STRIDE);
+		}
+
+		if (fields[1] - fields[0] != KEY_LENGTH)
+			throw new IllegalArgumentException(String.format("Invalid public key in dump line '%s'", line));
+		var keyOff = count * KEY_LENGTH;
+		for (int i = 0; i < KEY_LENGTH; i++)
+			keys[keyOff + i] = (byte) line.charAt(fields[0] + i);
+
+		var off = count * STRIDE;
+		for (int i = 0; i < STRIDE; i += 2)
+			addText(line, fields[2 + i], fields[3 + i], off + i);
+
+		var hs = parseLong(line, fields[8], fields[9]);
+		var thisRx = parseLong(line, fields[10], fields[11]);
+		var thisTx = parseLong(line, fields[12], fields[13]);
+		handshake[count] = hs;
+		rx[count] = thisRx;
+		tx[count] = thisTx;
+		keepalive[count] = n > 7 && !line.startsWith("off", fields[14]) ? parseInt(line, fields[14], fields[15]) : 0;
+
+		rxTotal += thisRx;
+		txTotal += thisTx;
+		lastHandshakeSecs = Math.max(lastHandshakeSecs, hs);
+		count++;
+	}
+
+	private void addText(String line, int start, int end, int off) {
+		if (end - start == NONE.length() && line.startsWith(NONE, start))
+			end = start;
+		var len = end - start;
+		if (textLength + len > text.length)
+			text = Arrays.copyOf(text, Math.max(text.length * 2, textLength + len));
+		for (int i = 0; i < len; i++) {
+			var ch = line.charAt(start + i);
+			if (ch > 127)
+				throw new IllegalArgumentException(String.format("Unexpected character in dump line '%s'", line));
+			text[textLength + i] = (byte) ch;
+		}
+		offsets[off] = textLength;
+		textLength += len;
+		offsets[off + 1] = textLength;
+	}
+
+	private int[] buildIndex() {
+		var size = Integer.highestOneBit(Math.max(2, count * 2 - 1)) << 1;
+		var idx = new int[size];
+		var mask = size - 1;
+		for (int peer = 0; peer < count; peer++) {
+			var slot = hash(keys, peer * KEY_LENGTH) & mask;
+			while (idx[slot] != 0)
+				slot = (slot + 1) & mask;
+			idx[slot] = peer + 1;
+		}
+		return idx;
+	}
+
+	private boolean keyEquals(int peer, CharSequence key) {
+		var off = peer * KEY_LENGTH;
+		for (int i = 0; i < KEY_LENGTH; i++) {
+			if (keys[off + i] != key.charAt(i))
+				return false;
+		}
+		return true;
+	}
+
+	private String field(int peer, int field) {
+		var off = peer * STRIDE + field;
+		var len = offsets[off + 1] - offsets[off];
+		return len == 0 ? NONE : new String(text, offsets[off], len, StandardCharsets.US_ASCII);
+	}
+
+	/* Raw endpoint field of a peer, as output by wg */
+	String endpoint(int peer) {
+		checkIndex(peer);
+		return field(peer, ENDPOINT);
+	}
+
+	boolean endpointEquals(int peer, String endpoint) {
+		checkIndex(peer);
+		var off = peer * STRIDE + ENDPOINT;
+		var start = offsets[off];
+		var len = offsets[off + 1] - start;
+		if (len == 0)
+			return endpoint.equals(NONE);
+		if (endpoint.length() != len)
+			return false;
+		for (int i = 0; i < len; i++) {
+			if (text[start + i] != endpoint.charAt(i))
+				return false;
+		}
+		return true;
+	}
+
+	private void checkIndex(int peer) {
+		if (peer < 0 || peer >= count)
+			throw new IndexOutOfBoundsException(peer);
+	}
+
+	/* Keys are random, so the leading characters are as good a hash as any */
+	private static int hash(CharSequence key) {
+		var h = 0;
+		for (int i = 0; i < 8; i++)
+			h = h * 31 + key.charAt(i);
+		return h ^ (h >>> 16);
+	}
+
+	private static int hash(byte[] slab, int off) {
+		var h = 0;
+		for (int i = 0; i < 8; i++)
+			h = h * 31 + slab[off + i];
+		return h ^ (h >>> 16);
+	}
+
+	/* Fills in start and end offsets of each field, returns the number of fields */
+	private static int fields(String line, int[] fields) {
+		var n = 0;
+		var len = line.length();
+		var i = 0;
+		while (i < len && n < fields.length / 2) {
+			while (i < len && isSeparator(line.charAt(i)))
+				i++;
+			if (i == len)
+				break;
+			var start = i;
+			while (i < len && !isSeparator(line.charAt(i)))
+				i++;
+			fields[n * 2] = start;
+			fields[n * 2 + 1] = i;
+			n++;
+		}
+		return n;
+	}
+
+	private static boolean isSeparator(char ch) {
+		return ch == '\t' || ch == ' ';
+	}
+
+	private static long parseLong(String line, int start, int end) {
+		try {
+			return Long.parseLong(line, start, end, 10);
+		} catch (NumberFormatException nfe) {
+			throw new IllegalArgumentException(String.format("Invalid number in dump line '%s'", line), nfe);
+		}
+	}
+
+	private static int parseInt(String line, int start, int end) {
+		try {
+			return Integer.parseInt(line, start, end, 10);
+		} catch (NumberFormatException nfe) {
+			throw new IllegalArgumentException(String.format("Invalid number in dump line '%s'", line), nfe);
+		}
+	}
+
+	/* Endpoints are always numeric in dump output, so this never resolves names */
+	static Optional<InetSocketAddress> parseEndpoint(String endpoint) {
+		if (endpoint.equals(NONE))
+			return Optional.empty();
+		var idx = endpoint.lastIndexOf(':');
+		if (idx == -1)
+			return Optional.empty();
+		var host = endpoint.substring(0, idx);
+		if (host.startsWith("[") && host.endsWith("]"))
+			host = host.substring(1, host.length() - 1);
+		int port;
+		try {
+			port = Integer.parseInt(endpoint, idx + 1, endpoint.length(), 10);
+		} catch (NumberFormatException nfe) {
+			return Optional.empty();
+		}
+		if (IpCodec.isAddress(host)) {
+			try {
+				return Optional.of(new InetSocketAddress(InetAddress.getByName(host), port));
+			} catch (UnknownHostException uhe) {
+				/* Not reached for literal addresses */
+			}
+		}
+		return Optional.of(InetSocketAddress.createUnresolved(host, port));
+	}
+
+	private final static class Peers extends AbstractList<VpnPeerInformation> implements RandomAccess {
+		private final ColumnarInterfaceInformation info;
+
+		private Peers(ColumnarInterfaceInformation info) {
+			this.info = info;
+		}
+
+		@Override
+		public VpnPeerInformation get(int index) {
+			return info.peer(index);
+		}
+
+		@Override
+		public int size() {
+			return info.count;
+		}
+	}
+
+	private final static class PeerView implements VpnPeerInformation {
+
+		private static final long serialVersionUID = 1L;
+
+		private final ColumnarInterfaceInformation info;
+		private final int peer;
+
+		private PeerView(ColumnarInterfaceInformation info, int peer) {
+			this.info = info;
+			this.peer = peer;
+		}
+
+		@Override
+		public long tx() {
+			return info.tx[peer];
+		}
+
+		@Override
+		public long rx() {
+			return info.rx[peer];
+		}
+
+		@Override
+		public Instant lastHandshake() {
+			return Instant.ofEpochSecond(info.handshake[peer]);
+		}
+
+		@Override
+		public Optional<String> error() {
+			return Optional.empty();
+		}
+
+		@Override
+		public Optional<InetSocketAddress> remoteAddress() {
+			return parseEndpoint(info.field(peer, ENDPOINT));
+		}
+
+		@Override
+		public List<String> allowedIps() {
+			var allowedIps = info.field(peer, ALLOWED_IPS);
+			if (allowedIps.equals(NONE))
+				return Collections.emptyList();
+			return new ArrayList<>(Arrays.asList(allowedIps.split(",")));
+		}
+
+		@Override
+		public String publicKey() {
+			return info.publicKey(peer);
+		}
+
+		@Override
+		public Optional<String> presharedKey() {
+			var psk = info.field(peer, PSK);
+			return psk.equals(NONE) ? Optional.empty() : Optional.of(psk);
+		}
+	}
+}
@@ -0,0 +1,146 @@
+/**
+ * Copyright © 2023 LogonBox Limited (support@logonbox.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the “Software”), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies
+ * or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.logonbox.vpn.drivers.lib;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.time.Duration;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.sshtools.liftlib.ElevatedClosure;
+import com.sshtools.liftlib.commands.SystemCommands;
+
+/**
+ * Counts the native commands run (and elevated tasks executed) through a
+ * {@link SystemCommands}, along with how many failed and the total time spent
+ * in them. Use {@link #counting(SystemCommands)} to wrap the commands
+ * instance of a {@link SystemContext}, and expose this through
+ * {@link SystemContext#commandStatistics()}. Each is also recorded as a
+ * {@link VpnEvents.Command} flight recorder event.
+ * <p>
+ * Instances are thread safe.
+ */
+public final class CommandStatistics {
+
+	/**
+	 * Point in time copy of the statistics.
+	 *
+	 * @param commands number of commands and tasks run
+	 * @param failures number that failed
+	 * @param time     total time spent in them
+	 */
+	public record Counts(long commands, long failures, Duration time) {
+
+		public final static Counts ZERO = new Counts(0, 0, Duration.ZERO);
+
+		/**
+		 * Get the difference between these counts and some earlier counts.
+		 *
+		 * @param earlier earlier counts
+		 * @return difference
+		 */
+		public Counts since(Counts earlier) {
+			return new Counts(commands - earlier.commands, failures - earlier.failures, time.minus(earlier.time));
+		}
+	}
+
+	private final LongAdder commands = new LongAdder();
+	private final LongAdder failures = new LongAdder();
+	private final LongAdder nanos = new LongAdder();
+
+	/**
+	 * Get the statistics so far.
+	 *
+	 * @return counts
+	 */
+	public Counts counts() {
+		return new Counts(commands.sum(), failures.sum(), Duration.ofNanos(nanos.sum()));
+	}
+
+	/**
+	 * Wrap a {@link SystemCommands} so that everything run through it, or through
+	 * any {@link SystemCommands} derived from it (e.g.
+	 * {@link SystemCommands#privileged()}), is counted.
+	 *
+	 * @param delegate commands to wrap
+	 * @return counting commands
+	 */
+	public SystemCommands counting(SystemCommands delegate) {
+		return counting(delegate, false);
+	}
+
+	private SystemCommands counting(SystemCommands delegate, boolean privileged) {
+		return (SystemCommands) Proxy.newProxyInstance(SystemCommands.class.getClassLoader(),
+				new Class<?>[] { SystemCommands.class }, (proxy, method, args) -> {
+					if (method.getDeclaringClass() == Object.class) {
+						if (method.getName().equals("equals"))
+							return proxy == args[0];
+						return method.invoke(delegate, args);
+					}
+					var command = isCommand(method);
+					var event = command ? new VpnEvents.Command(privileged) : null;
+					var started = command ? System.nanoTime() : 0;
+					try {
+						var result = method.invoke(delegate, args);
+						if (result instanceof SystemCommands derived && method.getReturnType() == SystemCommands.class)
+							return counting(derived, privileged || method.getName().equals("privileged"));
+						return result;
+					} catch (InvocationTargetException ite) {
+						if (command) {
+							failures.increment();
+							event.failed();
+						}
+						throw ite.getCause();
+					} finally {
+						if (command) {
+							commands.increment();
+							nanos.add(System.nanoTime() - started);
+							event.end();
+							if (event.shouldCommit())
+								event.command(describe(args));
+							event.close();
+						}
+					}
+				});
+	}
+
+	private static String describe(Object[] args) {
+		for (var arg : args) {
+			if (arg instanceof String[] cmd)
+				return String.join(" ", cmd);
+			else if (arg instanceof ElevatedClosure<?, ?> closure)
+				return closure.getClass().getName();
+		}
+		return "";
+	}
+
+	/* Anything given a command line or a task to run, rather than configuring the next one */
+	private static boolean isCommand(Method method) {
+		if (SystemCommands.class.isAssignableFrom(method.getReturnType()))
+			return false;
+		for (var type : method.getParameterTypes()) {
+			if (type == String[].class || ElevatedClosure.class.isAssignableFrom(type))
+				return true;
+		}
+		return false;
+	}
+}
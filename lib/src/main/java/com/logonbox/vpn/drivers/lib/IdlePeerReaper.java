@@ -0,0 +1,419 @@
+/**
+ * Copyright © 2023 LogonBox Limited (support@logonbox.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the “Software”), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies
+ * or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.logonbox.vpn.drivers.lib;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.logonbox.vpn.drivers.lib.util.TimingWheel;
+
+/**
+ * Removes peers from an adapter that have not completed a handshake for a
+ * configurable amount of time.
+ * <p>
+ * Each sweep reads the adapter information once, and files the deadline for
+ * each peer (its last handshake plus the idle timeout, or the time it was first
+ * seen plus the idle timeout if it has never completed a handshake) in a
+ * {@link TimingWheel}. Only peers whose deadline is reached are then
+ * considered, and they are removed in batches, each batch being a single
+ * native operation (i.e. one <code>wg set</code>).
+ * <p>
+ * Before a peer is removed, the {@link ReinstatePolicy} is consulted, allowing
+ * the application to keep it for another idle period. Peers that are removed
+ * are remembered, so they may later be put back using
+ * {@link #reinstate(String)}.
+ * <p>
+ * Sweeps run on {@link SystemContext#queue()} unless another executor is
+ * supplied.
+ */
+public final class IdlePeerReaper implements Closeable {
+
+	private final static Logger LOG = LoggerFactory.getLogger(IdlePeerReaper.class);
+
+	public final static Duration DEFAULT_IDLE_TIMEOUT = Duration.ofMinutes(5);
+	public final static Duration DEFAULT_SWEEP_INTERVAL = Duration.ofSeconds(15);
+	public final static int DEFAULT_BATCH_SIZE = 64;
+	public final static int DEFAULT_MAX_REMEMBERED = 1024;
+
+	/**
+	 * Decides whether a peer that has reached its idle deadline should be kept.
+	 */
+	@FunctionalInterface
+	public interface ReinstatePolicy {
+		/**
+		 * Called for each peer that has reached its idle deadline, before it is
+		 * removed.
+		 *
+		 * @param peer          peer configuration
+		 * @param lastHandshake last handshake, or the epoch if there has never been
+		 *                      one
+		 * @return <code>true</code> to keep the peer for another idle period,
+		 *         <code>false</code> to remove it
+		 */
+		boolean reinstate(VpnPeer peer, Instant lastHandshake);
+	}
+
+	public final static class Builder {
+		private Optional<VpnAdapter> adapter = Optional.empty();
+		private Optional<ScheduledExecutorService> queue = Optional.empty();
+		private Duration idleTimeout = DEFAULT_IDLE_TIMEOUT;
+		private Duration sweepInterval = DEFAULT_SWEEP_INTERVAL;
+		private int batchSize = DEFAULT_BATCH_SIZE;
+		private int maxRemembered = DEFAULT_MAX_REMEMBERED;
+		private ReinstatePolicy reinstatePolicy = (peer, lastHandshake) -> false;
+		private Optional<Consumer<List<VpnPeer>>> onReaped = Optional.empty();
+
+		public Builder withAdapter(VpnAdapter adapter) {
+			this.adapter = Optional.of(adapter);
+			return this;
+		}
+
+		/**
+		 * Executor to run sweeps on, defaults to {@link SystemContext#queue()}.
+		 *
+		 * @param queue queue
+		 * @return this for chaining
+		 */
+		public Builder withQueue(ScheduledExecutorService queue) {
+			this.queue = Optional.of(queue);
+			return this;
+		}
+
+		/**
+		 * How long a peer may go without a handshake before it is removed, defaults
+		 * to 5 minutes.
+		 *
+		 * @param idleTimeout idle timeout
+		 * @return this for chaining
+		 */
+		public Builder withIdleTimeout(Duration idleTimeout) {
+			if (idleTimeout.isNegative() || idleTimeout.isZero())
+				throw new IllegalArgumentException("Idle timeout must be positive.");
+			this.idleTimeout = idleTimeout;
+			return this;
+		}
+
+		/**
+		 * How often to read the adapter information, defaults to 15 seconds.
+		 *
+		 * @param sweepInterval sweep interval
+		 * @return this for chaining
+		 */
+		public Builder withSweepInterval(Duration sweepInterval) {
+			if (sweepInterval.toMillis() < 1)
+				throw new IllegalArgumentException("Sweep interval must be at least one millisecond.");
+			this.sweepInterval = sweepInterval;
+			return this;
+		}
+
+		/**
+		 * Maximum number of peers removed in a single native operation, defaults to
+		 * 64. This keeps command lines within platform limits.
+		 *
+		 * @param batchSize batch size
+		 * @return this for chaining
+		 */
+		public Builder withBatchSize(int batchSize) {
+			if (batchSize < 1)
+				throw new IllegalArgumentException("Batch size must be at least one.");
+			this.batchSize = batchSize;
+			return this;
+		}
+
+		/**
+		 * Maximum number of removed peers remembered for {@link IdlePeerReaper#reinstate(String)},
+		 * defaults to 1024. The oldest are forgotten first.
+		 *
+		 * @param maxRemembered maximum remembered peers
+		 * @return this for chaining
+		 */
+		public Builder withMaxRemembered(int maxRemembered) {
+			this.maxRemembered = maxRemembered;
+			return this;
+		}
+
+		public Builder withReinstatePolicy(ReinstatePolicy reinstatePolicy) {
+			this.reinstatePolicy = reinstatePolicy;
+			return this;
+		}
+
+		/**
+		 * Called after each sweep that removed any peers, with the configuration of
+		 * the peers removed.
+		 *
+		 * @param onReaped callback
+		 * @return this for chaining
+		 */
+		public Builder onReaped(Consumer<List<VpnPeer>> onReaped) {
+			this.onReaped = Optional.of(onReaped);
+			return this;
+		}
+
+		public IdlePeerReaper build() {
+			return new IdlePeerReaper(this);
+		}
+	}
+
+	private final VpnAdapter adapter;
+	private final ScheduledExecutorService queue;
+	private final long idleMillis;
+	private final long sweepMillis;
+	private final int batchSize;
+	private final ReinstatePolicy reinstatePolicy;
+	private final Optional<Consumer<List<VpnPeer>>> onReaped;
+	private final Map<String, VpnPeer> reaped;
+	private final TimingWheel<String> wheel;
+	private final Object lock = new Object();
+
+	private ScheduledFuture<?> task;
+	private boolean closed;
+
+	private IdlePeerReaper(Builder builder) {
+		adapter = builder.adapter.orElseThrow(() -> new IllegalStateException("Adapter must be supplied."));
+		queue = builder.queue.orElseGet(() -> adapter.service().context().queue());
+		if (queue == null)
+			throw new IllegalStateException("No queue available to run sweeps on.");
+		idleMillis = builder.idleTimeout.toMillis();
+		sweepMillis = builder.sweepInterval.toMillis();
+		batchSize = builder.batchSize;
+		reinstatePolicy = builder.reinstatePolicy;
+		onReaped = builder.onReaped;
+
+		var maxRemembered = builder.maxRemembered;
+		reaped = new LinkedHashMap<>() {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, VpnPeer> eldest) {
+				return size() > maxRemembered;
+			}
+		};
+
+		/* 1 second resolution, 4 levels of 64 slots covers ~194 days */
+		wheel = new TimingWheel<>(Math.min(1000, sweepMillis), 64, 4, System.currentTimeMillis());
+	}
+
+	/**
+	 * Start sweeping.
+	 *
+	 * @return this for chaining
+	 */
+	public IdlePeerReaper start() {
+		synchronized (lock) {
+			if (closed)
+				throw new IllegalStateException("Closed.");
+			if (task != null)
+				throw new IllegalStateException("Already started.");
+			task = queue.scheduleWithFixedDelay(this::scheduledSweep, sweepMillis, sweepMillis, TimeUnit.MILLISECONDS);
+		}
+		return this;
+	}
+
+	/**
+	 * Get the number of peers that currently have an idle deadline.
+	 *
+	 * @return tracked peers
+	 */
+	public int tracked() {
+		synchronized (lock) {
+			return wheel.size();
+		}
+	}
+
+	/**
+	 * Get the peers that have been removed and are still remembered.
+	 *
+	 * @return removed peers
+	 */
+	public List<VpnPeer> reaped() {
+		synchronized (lock) {
+			return Collections.unmodifiableList(new ArrayList<>(reaped.values()));
+		}
+	}
+
+	/**
+	 * Put back a peer that was previously removed. The peer gets a full idle
+	 * period before it may be removed again.
+	 *
+	 * @param publicKey public key of peer
+	 * @return whether the peer was known and has been put back
+	 * @throws IOException on error
+	 */
+	public boolean reinstate(String publicKey) throws IOException {
+		synchronized (lock) {
+			var peer = reaped.remove(publicKey);
+			if (peer == null)
+				return false;
+			LOG.info("Reinstating peer {} on {}", publicKey, adapter.address().shortName());
+			adapter.append(new VpnAdapterConfiguration.Builder().fromConfiguration(adapter.configuration())
+					.withPeers(peer).build());
+			wheel.schedule(publicKey, System.currentTimeMillis() + idleMillis);
+			return true;
+		}
+	}
+
+	/**
+	 * Forget a previously removed peer, so it may no longer be reinstated.
+	 *
+	 * @param publicKey public key of peer
+	 * @return whether the peer was known
+	 */
+	public boolean forget(String publicKey) {
+		synchronized (lock) {
+			return reaped.remove(publicKey) != null;
+		}
+	}
+
+	/**
+	 * Run a sweep now. This is normally called on the queue, but may be called
+	 * directly.
+	 *
+	 * @throws IOException on error
+	 */
+	public void sweep() throws IOException {
+		synchronized (lock) {
+			if (closed)
+				return;
+
+			var information = adapter.information();
+			var now = System.currentTimeMillis();
+			var peers = information.peers();
+
+			for (var peer : peers) {
+				var handshake = peer.lastHandshake().toEpochMilli();
+				if (handshake == 0) {
+					if (!wheel.contains(peer.publicKey()))
+						wheel.schedule(peer.publicKey(), now + idleMillis);
+				} else {
+					/* Deadlines only ever move forward, a reinstated peer keeps its extension */
+					var deadline = handshake + idleMillis;
+					var current = wheel.deadline(peer.publicKey());
+					if (current.isEmpty() || deadline > current.getAsLong())
+						wheel.schedule(peer.publicKey(), deadline);
+				}
+			}
+
+			/* Every current peer is now in the wheel, so anything extra has gone away */
+			if (wheel.size() > peers.size()) {
+				var keys = new HashSet<String>(peers.size() * 2);
+				for (var peer : peers)
+					keys.add(peer.publicKey());
+				wheel.removeIf(k -> !keys.contains(k));
+			}
+
+			var expired = new ArrayList<String>();
+			wheel.advance(now, expired::add);
+			if (!expired.isEmpty())
+				reap(expired, peers, now);
+		}
+	}
+
+	@Override
+	public void close() {
+		synchronized (lock) {
+			if (!closed) {
+				closed = true;
+				if (task != null)
+					task.cancel(false);
+				wheel.clear();
+			}
+		}
+	}
+
+	private void reap(List<String> expired, List<VpnPeerInformation> peers, long now) throws IOException {
+		var handshakes = new HashMap<String, Instant>(expired.size() * 2);
+		for (var key : expired)
+			handshakes.put(key, Instant.EPOCH);
+		for (var peer : peers) {
+			if (handshakes.containsKey(peer.publicKey()))
+				handshakes.put(peer.publicKey(), peer.lastHandshake());
+		}
+
+		var configured = new HashMap<String, VpnPeer>();
+		for (var peer : adapter.configuration().peers()) {
+			if (handshakes.containsKey(peer.publicKey()))
+				configured.put(peer.publicKey(), peer);
+		}
+
+		var remove = new ArrayList<VpnPeer>();
+		for (var key : expired) {
+			var peer = configured.get(key);
+			if (peer == null)
+				continue;
+			if (reinstatePolicy.reinstate(peer, handshakes.get(key))) {
+				LOG.debug("Keeping idle peer {} on {}", key, adapter.address().shortName());
+				wheel.schedule(key, now + idleMillis);
+			} else
+				remove.add(peer);
+		}
+
+		if (remove.isEmpty())
+			return;
+
+		LOG.info("Removing {} idle peers from {}", remove.size(), adapter.address().shortName());
+		var removed = new ArrayList<VpnPeer>(remove.size());
+		try {
+			for (int i = 0; i < remove.size(); i += batchSize) {
+				var batch = remove.subList(i, Math.min(remove.size(), i + batchSize));
+				adapter.remove(keys(batch));
+				for (var peer : batch)
+					reaped.put(peer.publicKey(), peer);
+				removed.addAll(batch);
+			}
+		} finally {
+			if (!removed.isEmpty())
+				onReaped.ifPresent(c -> c.accept(Collections.unmodifiableList(removed)));
+		}
+	}
+
+	private void scheduledSweep() {
+		try {
+			sweep();
+		} catch (Exception e) {
+			LOG.error("Failed to sweep idle peers.", e);
+		}
+	}
+
+	private static Collection<String> keys(List<VpnPeer> peers) {
+		var keys = new ArrayList<String>(peers.size());
+		for (var peer : peers)
+			keys.add(peer.publicKey());
+		return keys;
+	}
+}
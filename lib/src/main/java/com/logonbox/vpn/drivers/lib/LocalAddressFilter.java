@@ -0,0 +1,177 @@
+/**
+ * Copyright © 2023 LogonBox Limited (support@logonbox.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the “Software”), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies
+ * or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.logonbox.vpn.drivers.lib;
+
+import java.net.InetAddress;
+import java.net.NetworkInterface;
+import java.net.SocketException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.logonbox.vpn.drivers.lib.util.IpCodec;
+
+/**
+ * A point in time snapshot of the addresses of all local interfaces that are up
+ * (excluding loopback), used to decide if a route would cover any of them.
+ * <p>
+ * Addresses are held in sorted primitive arrays, so each route is parsed once
+ * using {@link IpCodec} and tested with a binary search, rather than against
+ * every local address.
+ * Instances are not thread safe.
+ */
+final class LocalAddressFilter {
+
+	private final static Logger LOG = LoggerFactory.getLogger(LocalAddressFilter.class);
+
+	/* IPv4 addresses as unsigned 32 bit values */
+	private final long[] ipv4;
+
+	/* IPv6 addresses as high and low 64 bit halves */
+	private final long[] ipv6Hi;
+	private final long[] ipv6Lo;
+
+	private final IpCodec.Cidr scratch = new IpCodec.Cidr();
+
+	private LocalAddressFilter(long[] ipv4, long[] ipv6Hi, long[] ipv6Lo) {
+		this.ipv4 = ipv4;
+		this.ipv6Hi = ipv6Hi;
+		this.ipv6Lo = ipv6Lo;
+	}
+
+	/**
+	 * Enumerate the local interfaces and take a snapshot of their addresses.
+	 *
+	 * @return filter
+	 */
+	static LocalAddressFilter snapshot() {
+		var addresses = new ArrayList<InetAddress>();
+		try {
+			var en = NetworkInterface.getNetworkInterfaces();
+			while (en != null && en.hasMoreElements()) {
+				var ni = en.nextElement();
+				if (!ni.isLoopback() && ni.isUp()) {
+					for (var addrEn = ni.getInetAddresses(); addrEn.hasMoreElements();) {
+						addresses.add(addrEn.nextElement());
+					}
+				}
+			}
+		} catch (SocketException se) {
+			LOG.debug("Failed to enumerate local addresses.", se);
+		}
+		return of(addresses);
+	}
+
+	/**
+	 * Create a filter for a given set of local addresses.
+	 *
+	 * @param addresses addresses
+	 * @return filter
+	 */
+	static LocalAddressFilter of(Collection<InetAddress> addresses) {
+		var ipv4 = new long[addresses.size()];
+		var ipv4Count = 0;
+		var ipv6Hi = new long[addresses.size()];
+		var ipv6Lo = new long[addresses.size()];
+		var ipv6Count = 0;
+
+		for (var addr : addresses) {
+			var bytes = addr.getAddress();
+			if (bytes.length == 4) {
+				ipv4[ipv4Count++] = toLong(bytes, 0, 4);
+			} else if (bytes.length == 16) {
+				ipv6Hi[ipv6Count] = toLong(bytes, 0, 8);
+				ipv6Lo[ipv6Count++] = toLong(bytes, 8, 8);
+			}
+		}
+
+		ipv4 = Arrays.copyOf(ipv4, ipv4Count);
+		Arrays.sort(ipv4);
+
+		ipv6Hi = Arrays.copyOf(ipv6Hi, ipv6Count);
+		ipv6Lo = Arrays.copyOf(ipv6Lo, ipv6Count);
+		/* Only ever a handful of addresses, insertion sort is fine */
+		for (int i = 1; i < ipv6Count; i++) {
+			var hi = ipv6Hi[i];
+			var lo = ipv6Lo[i];
+			var j = i - 1;
+			while (j >= 0 && IpCodec.compareUnsigned(ipv6Hi[j], ipv6Lo[j], hi, lo) > 0) {
+				ipv6Hi[j + 1] = ipv6Hi[j];
+				ipv6Lo[j + 1] = ipv6Lo[j];
+				j--;
+			}
+			ipv6Hi[j + 1] = hi;
+			ipv6Lo[j + 1] = lo;
+		}
+
+		return new LocalAddressFilter(ipv4, ipv6Hi, ipv6Lo);
+	}
+
+	/**
+	 * Get if a route, either a single address or a CIDR range in IPv4 or IPv6
+	 * format, covers any of the local addresses. Routes that cannot be parsed
+	 * never cover anything.
+	 *
+	 * @param route route
+	 * @return covers local address
+	 */
+	boolean covers(CharSequence route) {
+		if (!IpCodec.parseCidr(route, scratch))
+			return false;
+
+		if (scratch.ipv4()) {
+			if (ipv4.length == 0)
+				return false;
+			var idx = Arrays.binarySearch(ipv4, scratch.firstLo());
+			if (idx < 0)
+				idx = -idx - 1;
+			return idx < ipv4.length && ipv4[idx] <= scratch.lastLo();
+		} else {
+			if (ipv6Hi.length == 0)
+				return false;
+			var firstHi = scratch.firstHi();
+			var firstLo = scratch.firstLo();
+
+			/* Lower bound of first address in range */
+			var lowIdx = 0;
+			var highIdx = ipv6Hi.length;
+			while (lowIdx < highIdx) {
+				var mid = (lowIdx + highIdx) >>> 1;
+				if (IpCodec.compareUnsigned(ipv6Hi[mid], ipv6Lo[mid], firstHi, firstLo) < 0)
+					lowIdx = mid + 1;
+				else
+					highIdx = mid;
+			}
+			return lowIdx < ipv6Hi.length && IpCodec.compareUnsigned(ipv6Hi[lowIdx], ipv6Lo[lowIdx],
+					scratch.lastHi(), scratch.lastLo()) <= 0;
+		}
+	}
+
+	private static long toLong(byte[] bytes, int off, int len) {
+		long val = 0;
+		for (int i = off; i < off + len; i++)
+			val = (val << 8) | (bytes[i] & 0xff);
+		return val;
+	}
+}
@@ -0,0 +1,63 @@
+/**
+ * Copyright © 2023 LogonBox Limited (support@logonbox.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the “Software”), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies
+ * or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.logonbox.vpn.drivers.lib;
+
+import java.net.InetSocketAddress;
+import java.time.Instant;
+import java.util.Optional;
+
+/**
+ * A change in the state of a peer, as seen between two consecutive reads of an
+ * adapter.
+ *
+ * @param type          type of event
+ * @param interfaceName name of interface the peer is on
+ * @param publicKey     public key of peer
+ * @param lastHandshake last handshake, or the epoch if there has never been one
+ * @param endpoint      current (or for {@link Type#REMOVED}, last known) endpoint
+ */
+public record PeerEvent(Type type, String interfaceName, String publicKey, Instant lastHandshake,
+		Optional<InetSocketAddress> endpoint) {
+
+	public enum Type {
+		/**
+		 * Peer has been added to the interface.
+		 */
+		ADDED,
+		/**
+		 * Peer has been removed from the interface, or the interface has gone.
+		 */
+		REMOVED,
+		/**
+		 * Peer has completed a new handshake.
+		 */
+		HANDSHAKE,
+		/**
+		 * Peer has not completed a handshake for longer than
+		 * {@link SystemConfiguration#handshakeTimeout()}.
+		 */
+		STALE,
+		/**
+		 * The endpoint of the peer has changed.
+		 */
+		ENDPOINT_CHANGED
+	}
+}
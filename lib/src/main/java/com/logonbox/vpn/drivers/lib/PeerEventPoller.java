@@ -0,0 +1,341 @@
+/**
+ * Copyright © 2023 LogonBox Limited (support@logonbox.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the “Software”), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies
+ * or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.logonbox.vpn.drivers.lib;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.logonbox.vpn.drivers.lib.PeerEvent.Type;
+
+/**
+ * Produces {@link PeerEvent}s, along with adapter and transfer changes, for all
+ * of the {@link PeerListener}s of a {@link PlatformService} by reading each
+ * adapter of interest once per interval, and comparing it with the previous
+ * read. Polling only happens while there are listeners.
+ */
+final class PeerEventPoller {
+
+	private final static Logger LOG = LoggerFactory.getLogger(PeerEventPoller.class);
+
+	private record Registration(PeerListener listener, Optional<String> interfaceName) {
+		boolean accepts(String name) {
+			return interfaceName.isEmpty() || interfaceName.get().equals(name);
+		}
+	}
+
+	/* Something to tell the listeners of an interface */
+	private record Delivery(String interfaceName, Consumer<PeerListener> action) {
+	}
+
+	private final static class Peer {
+		private final String publicKey;
+		private long handshake;
+		/* Endpoint in the form wg outputs it, "(none)" if there is none */
+		private String endpoint;
+		private boolean stale;
+		private long generation;
+		private long rx;
+		private long tx;
+
+		private Peer(String publicKey) {
+			this.publicKey = publicKey;
+		}
+	}
+
+	private final static class Interface {
+		private final String name;
+		private final Map<String, Peer> peers = new HashMap<>();
+		/* Peers in the order of the last read, to avoid key lookups */
+		private Peer[] order = new Peer[0];
+		private long generation;
+
+		private Interface(String name) {
+			this.name = name;
+		}
+	}
+
+	private final PlatformService<?> service;
+	private final List<Registration> registrations = new CopyOnWriteArrayList<>();
+	private final Map<String, Interface> interfaces = new HashMap<>();
+	private final Object lock = new Object();
+
+	private ScheduledFuture<?> task;
+	private long generation;
+	/* Interfaces looked for in the previous read, null before the first, empty for all */
+	private Optional<Set<String>> previouslyWanted;
+
+	PeerEventPoller(PlatformService<?> service) {
+		this.service = service;
+	}
+
+	void add(PeerListener listener, Optional<String> interfaceName) {
+		synchronized (lock) {
+			registrations.add(new Registration(listener, interfaceName));
+			if (task == null) {
+				var ctx = service.context();
+				var queue = ctx.queue();
+				if (queue == null)
+					throw new IllegalStateException("No queue available to poll for peer events on.");
+				var interval = ctx.configuration().peerEventInterval().toMillis();
+				task = queue.scheduleWithFixedDelay(this::scheduledPoll, 0, interval, TimeUnit.MILLISECONDS);
+			}
+		}
+	}
+
+	void remove(PeerListener listener, Optional<String> interfaceName) {
+		remove(r -> r.listener() == listener && r.interfaceName().equals(interfaceName));
+	}
+
+	void removeAll(PeerListener listener) {
+		remove(r -> r.listener() == listener);
+	}
+
+	private void remove(Predicate<Registration> filter) {
+		synchronized (lock) {
+			registrations.removeIf(filter);
+			if (registrations.isEmpty() && task != null) {
+				task.cancel(false);
+				task = null;
+				interfaces.clear();
+				previouslyWanted = null;
+			}
+		}
+	}
+
+	void poll() {
+		var wanted = wanted();
+		if (wanted.isPresent() && wanted.get().isEmpty())
+			return;
+
+		var infos = new ArrayList<VpnInterfaceInformation>();
+		var failed = new HashSet<String>();
+		for (var adapter : service.adapters()) {
+			var name = adapter.address().name();
+			if (wanted.isEmpty() || wanted.get().contains(name)) {
+				try {
+					infos.add(adapter.information());
+				} catch (RuntimeException re) {
+					LOG.debug("Failed to read {} for peer events.", name, re);
+					failed.add(name);
+				}
+			}
+		}
+
+		var events = new ArrayList<Delivery>();
+		synchronized (lock) {
+			if (task == null)
+				return;
+			var gen = ++generation;
+			var before = previouslyWanted;
+			previouslyWanted = wanted;
+			var now = System.currentTimeMillis();
+			var staleSecs = service.context().configuration().handshakeTimeout().toSeconds();
+			for (var info : infos) {
+				var iface = interfaces.get(info.interfaceName());
+				var first = iface == null;
+				if (first) {
+					iface = new Interface(info.interfaceName());
+					interfaces.put(iface.name, iface);
+					if (before != null && (before.isEmpty() || before.get().contains(iface.name))) {
+						var name = iface.name;
+						events.add(new Delivery(name, l -> l.adapterUp(name)));
+					}
+				}
+				iface.generation = gen;
+				if (info instanceof ColumnarInterfaceInformation columnar)
+					diff(iface, columnar, first, now / 1000 - staleSecs, events);
+				else
+					diff(iface, info, first, now / 1000 - staleSecs, events);
+				if (iface.peers.size() > info.peers().size())
+					removed(iface, gen, events);
+			}
+
+			/* Interfaces that have gone, but only those that were looked for and could be read */
+			for (var it = interfaces.values().iterator(); it.hasNext();) {
+				var iface = it.next();
+				if (iface.generation != gen && !failed.contains(iface.name)
+						&& (wanted.isEmpty() || wanted.get().contains(iface.name))) {
+					removed(iface, gen, events);
+					it.remove();
+					var name = iface.name;
+					events.add(new Delivery(name, l -> l.adapterDown(name)));
+				}
+			}
+		}
+
+		for (var event : events) {
+			for (var reg : registrations) {
+				if (reg.accepts(event.interfaceName())) {
+					try {
+						event.action().accept(reg.listener());
+					} catch (RuntimeException re) {
+						LOG.error("Peer listener failed.", re);
+					}
+				}
+			}
+		}
+	}
+
+	private void diff(Interface iface, ColumnarInterfaceInformation info, boolean first, long staleBefore,
+			List<Delivery> events) {
+		var size = info.size();
+		var order = iface.order;
+		var newOrder = order.length == size ? order : new Peer[size];
+		for (int i = 0; i < size; i++) {
+			var peer = i < order.length ? order[i] : null;
+			if (peer == null || !info.publicKeyEquals(i, peer.publicKey)) {
+				var key = info.publicKey(i);
+				peer = iface.peers.get(key);
+				if (peer == null) {
+					peer = new Peer(key);
+					iface.peers.put(key, peer);
+					peer.handshake = info.lastHandshakeEpochSecond(i);
+					peer.endpoint = info.endpoint(i);
+					peer.stale = peer.handshake > 0 && peer.handshake < staleBefore;
+					if (first) {
+						peer.rx = info.rx(i);
+						peer.tx = info.tx(i);
+					} else
+						events.add(event(Type.ADDED, iface, peer));
+				}
+			}
+			peer.generation = iface.generation;
+			newOrder[i] = peer;
+			transfer(iface, peer, info.rx(i), info.tx(i), events);
+
+			if (!info.endpointEquals(i, peer.endpoint)) {
+				peer.endpoint = info.endpoint(i);
+				events.add(event(Type.ENDPOINT_CHANGED, iface, peer));
+			}
+			var handshake = info.lastHandshakeEpochSecond(i);
+			if (handshake > peer.handshake) {
+				peer.handshake = handshake;
+				peer.stale = false;
+				events.add(event(Type.HANDSHAKE, iface, peer));
+			}
+			stale(iface, peer, staleBefore, events);
+		}
+		iface.order = newOrder;
+	}
+
+	private void diff(Interface iface, VpnInterfaceInformation info, boolean first, long staleBefore,
+			List<Delivery> events) {
+		for (var peerInfo : info.peers()) {
+			var endpoint = peerInfo.remoteAddress().map(a -> a.getHostString() + ":" + a.getPort()).orElse("(none)");
+			var handshake = peerInfo.lastHandshake().getEpochSecond();
+			var peer = iface.peers.get(peerInfo.publicKey());
+			if (peer == null) {
+				peer = new Peer(peerInfo.publicKey());
+				iface.peers.put(peer.publicKey, peer);
+				peer.handshake = handshake;
+				peer.endpoint = endpoint;
+				peer.stale = peer.handshake > 0 && peer.handshake < staleBefore;
+				if (first) {
+					peer.rx = peerInfo.rx();
+					peer.tx = peerInfo.tx();
+				} else
+					events.add(event(Type.ADDED, iface, peer));
+			}
+			peer.generation = iface.generation;
+			transfer(iface, peer, peerInfo.rx(), peerInfo.tx(), events);
+
+			if (!Objects.equals(endpoint, peer.endpoint)) {
+				peer.endpoint = endpoint;
+				events.add(event(Type.ENDPOINT_CHANGED, iface, peer));
+			}
+			if (handshake > peer.handshake) {
+				peer.handshake = handshake;
+				peer.stale = false;
+				events.add(event(Type.HANDSHAKE, iface, peer));
+			}
+			stale(iface, peer, staleBefore, events);
+		}
+	}
+
+	private void transfer(Interface iface, Peer peer, long rx, long tx, List<Delivery> events) {
+		var drx = rx >= peer.rx ? rx - peer.rx : rx;
+		var dtx = tx >= peer.tx ? tx - peer.tx : tx;
+		peer.rx = rx;
+		peer.tx = tx;
+		if (drx != 0 || dtx != 0) {
+			var name = iface.name;
+			var key = peer.publicKey;
+			events.add(new Delivery(name, l -> l.transfer(name, key, drx, dtx)));
+		}
+	}
+
+	private void stale(Interface iface, Peer peer, long staleBefore, List<Delivery> events) {
+		if (!peer.stale && peer.handshake > 0 && peer.handshake < staleBefore) {
+			peer.stale = true;
+			events.add(event(Type.STALE, iface, peer));
+		}
+	}
+
+	private void removed(Interface iface, long gen, List<Delivery> events) {
+		for (var it = iface.peers.values().iterator(); it.hasNext();) {
+			var peer = it.next();
+			if (peer.generation != gen) {
+				events.add(event(Type.REMOVED, iface, peer));
+				it.remove();
+			}
+		}
+	}
+
+	/* Empty means all interfaces */
+	private Optional<Set<String>> wanted() {
+		var names = new HashSet<String>();
+		for (var reg : registrations) {
+			if (reg.interfaceName().isEmpty())
+				return Optional.empty();
+			names.add(reg.interfaceName().get());
+		}
+		return Optional.of(names);
+	}
+
+	private static Delivery event(Type type, Interface iface, Peer peer) {
+		var event = new PeerEvent(type, iface.name, peer.publicKey, Instant.ofEpochSecond(peer.handshake),
+				ColumnarInterfaceInformation.parseEndpoint(peer.endpoint));
+		return new Delivery(iface.name, l -> l.peerEvent(event));
+	}
+
+	private void scheduledPoll() {
+		try {
+			poll();
+		} catch (Exception e) {
+			LOG.error("Failed to poll for peer events.", e);
+		}
+	}
+}
@@ -0,0 +1,71 @@
+/**
+ * Copyright © 2023 LogonBox Limited (support@logonbox.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the “Software”), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies
+ * or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.logonbox.vpn.drivers.lib;
+
+/**
+ * Receives {@link PeerEvent}s. See {@link PlatformService#addPeerListener(PeerListener)}.
+ */
+@FunctionalInterface
+public interface PeerListener {
+
+	/**
+	 * Called when the state of a peer changes. This is called on
+	 * {@link SystemContext#queue()}, so should not block.
+	 *
+	 * @param event event
+	 */
+	void peerEvent(PeerEvent event);
+
+	/**
+	 * Called when an interface is first seen, other than when the listener was
+	 * added. This is called on {@link SystemContext#queue()}, so should not
+	 * block.
+	 *
+	 * @param interfaceName interface name
+	 */
+	default void adapterUp(String interfaceName) {
+	}
+
+	/**
+	 * Called when an interface has gone, after the {@link PeerEvent.Type#REMOVED}
+	 * events for its peers. This is called on {@link SystemContext#queue()}, so
+	 * should not block.
+	 *
+	 * @param interfaceName interface name
+	 */
+	default void adapterDown(String interfaceName) {
+	}
+
+	/**
+	 * Called for each peer that has sent or received anything since the
+	 * previous read, including all it has done so far when a peer is first
+	 * added. A counter that went backwards is assumed to have restarted from
+	 * zero. This is called on {@link SystemContext#queue()}, so should not
+	 * block.
+	 *
+	 * @param interfaceName interface name
+	 * @param publicKey     public key of peer
+	 * @param rx            bytes received since the previous read
+	 * @param tx            bytes sent since the previous read
+	 */
+	default void transfer(String interfaceName, String publicKey, long rx, long tx) {
+	}
+}
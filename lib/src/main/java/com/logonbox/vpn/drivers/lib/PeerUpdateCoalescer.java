@@ -0,0 +1,303 @@
+/**
+ * Copyright © 2023 LogonBox Limited (support@logonbox.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the “Software”), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies
+ * or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.logonbox.vpn.drivers.lib;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Collects peer additions and removals made against a {@link VpnAdapter} from
+ * any number of threads, and applies everything that arrives within a short
+ * window (or until a maximum number of operations is reached) as a single
+ * change.
+ * <p>
+ * For each peer only the last operation in a window is kept, so the outcome is
+ * the same as if the operations had been applied one at a time in the order
+ * they were made. A window is applied with at most one removal
+ * ({@link VpnAdapter#remove(Collection)}) and one
+ * {@link VpnAdapter#update(Collection)}, i.e. two native commands rather than
+ * one per operation. A peer that is removed and then added again in the same
+ * window is part of both. Each caller gets its own future, completed
+ * with the outcome of the whole change for its window. Cancelling or
+ * completing that future only affects that caller, and does not stop the
+ * change being applied.
+ * <p>
+ * Windows are timed on {@link SystemContext#queue()} unless another executor
+ * is supplied.
+ */
+public final class PeerUpdateCoalescer implements Closeable {
+
+	private final static Logger LOG = LoggerFactory.getLogger(PeerUpdateCoalescer.class);
+
+	public final static Duration DEFAULT_WINDOW = Duration.ofMillis(5);
+	public final static int DEFAULT_MAX_OPERATIONS = 256;
+
+	public final static class Builder {
+		private Optional<VpnAdapter> adapter = Optional.empty();
+		private Optional<ScheduledExecutorService> queue = Optional.empty();
+		private Duration window = DEFAULT_WINDOW;
+		private int maxOperations = DEFAULT_MAX_OPERATIONS;
+
+		public Builder withAdapter(VpnAdapter adapter) {
+			this.adapter = Optional.of(adapter);
+			return this;
+		}
+
+		/**
+		 * Executor to apply changes on, defaults to {@link SystemContext#queue()}.
+		 *
+		 * @param queue queue
+		 * @return this for chaining
+		 */
+		public Builder withQueue(ScheduledExecutorService queue) {
+			this.queue = Optional.of(queue);
+			return this;
+		}
+
+		/**
+		 * How long to wait after the first operation of a window before applying
+		 * it, defaults to 5 milliseconds.
+		 *
+		 * @param window window
+		 * @return this for chaining
+		 */
+		public Builder withWindow(Duration window) {
+			if (window.isNegative())
+				throw new IllegalArgumentException("Window may not be negative.");
+			this.window = window;
+			return this;
+		}
+
+		/**
+		 * Number of distinct peers in a window that cause it to be applied
+		 * immediately, defaults to 256.
+		 *
+		 * @param maxOperations maximum operations
+		 * @return this for chaining
+		 */
+		public Builder withMaxOperations(int maxOperations) {
+			if (maxOperations < 1)
+				throw new IllegalArgumentException("Maximum operations must be at least one.");
+			this.maxOperations = maxOperations;
+			return this;
+		}
+
+		public PeerUpdateCoalescer build() {
+			return new PeerUpdateCoalescer(this);
+		}
+	}
+
+	private final static class Operation {
+		/* Peer to add, or null to remove */
+		private VpnPeer peer;
+		/* An earlier removal in the same window must still happen before the add */
+		private boolean removeFirst;
+	}
+
+	private final static class Batch {
+		private final Map<String, Operation> operations = new LinkedHashMap<>();
+		private final CompletableFuture<Void> future = new CompletableFuture<>();
+		private ScheduledFuture<?> timer;
+	}
+
+	private final VpnAdapter adapter;
+	private final ScheduledExecutorService queue;
+	private final long windowNanos;
+	private final int maxOperations;
+	private final Object lock = new Object();
+	private final Object applyLock = new Object();
+
+	private Batch batch;
+	private boolean closed;
+
+	private PeerUpdateCoalescer(Builder builder) {
+		adapter = builder.adapter.orElseThrow(() -> new IllegalStateException("Adapter must be supplied."));
+		queue = builder.queue.orElseGet(() -> adapter.service().context().queue());
+		if (queue == null)
+			throw new IllegalStateException("No queue available to apply changes on.");
+		windowNanos = builder.window.toNanos();
+		maxOperations = builder.maxOperations;
+	}
+
+	/**
+	 * Add (or replace) all of the peers in a configuration, as
+	 * {@link #append(VpnPeer...)}. The interface part of the configuration is
+	 * ignored.
+	 *
+	 * @param configuration configuration
+	 * @return future completed when the window containing this change is applied
+	 */
+	public CompletableFuture<Void> append(VpnAdapterConfiguration configuration) {
+		return submit(configuration.peers(), null);
+	}
+
+	/**
+	 * Add (or replace) peers. As with {@link VpnAdapter#update(Collection)}, a
+	 * peer that already exists has all of its settings, including its allowed
+	 * IPs, replaced.
+	 *
+	 * @param peers peers
+	 * @return future completed when the window containing this change is applied
+	 */
+	public CompletableFuture<Void> append(VpnPeer... peers) {
+		return submit(Arrays.asList(peers), null);
+	}
+
+	/**
+	 * Remove peers.
+	 *
+	 * @param publicKeys public keys of peers
+	 * @return future completed when the window containing this change is applied
+	 */
+	public CompletableFuture<Void> remove(String... publicKeys) {
+		return remove(Arrays.asList(publicKeys));
+	}
+
+	/**
+	 * Remove peers.
+	 *
+	 * @param publicKeys public keys of peers
+	 * @return future completed when the window containing this change is applied
+	 */
+	public CompletableFuture<Void> remove(Collection<String> publicKeys) {
+		return submit(null, publicKeys);
+	}
+
+	/**
+	 * Apply any pending operations now, on the calling thread.
+	 *
+	 * @throws IOException on error
+	 */
+	public void flush() throws IOException {
+		apply();
+	}
+
+	/**
+	 * Apply any pending operations and stop accepting new ones.
+	 */
+	@Override
+	public void close() throws IOException {
+		synchronized (lock) {
+			if (closed)
+				return;
+			closed = true;
+		}
+		flush();
+	}
+
+	private CompletableFuture<Void> submit(Collection<VpnPeer> peers, Collection<String> removals) {
+		synchronized (lock) {
+			if (closed)
+				throw new IllegalStateException("Closed.");
+			if (batch == null) {
+				batch = new Batch();
+				batch.timer = queue.schedule(this::applyQuietly, windowNanos, TimeUnit.NANOSECONDS);
+			}
+			var current = batch;
+			if (removals != null) {
+				for (var key : removals) {
+					var op = current.operations.computeIfAbsent(key, k -> new Operation());
+					op.peer = null;
+					op.removeFirst = false;
+				}
+			}
+			if (peers != null) {
+				for (var peer : peers) {
+					var op = current.operations.get(peer.publicKey());
+					if (op == null) {
+						op = new Operation();
+						current.operations.put(peer.publicKey(), op);
+					} else if (op.peer == null)
+						op.removeFirst = true;
+					op.peer = peer;
+				}
+			}
+			if (current.operations.size() >= maxOperations) {
+				current.timer.cancel(false);
+				queue.execute(this::applyQuietly);
+			}
+			/* A dependent per caller, so no caller can change the outcome for the others */
+			return current.future.copy();
+		}
+	}
+
+	private void applyQuietly() {
+		try {
+			apply();
+		} catch (Exception e) {
+			LOG.debug("Failed to apply peer changes.", e);
+		}
+	}
+
+	private void apply() throws IOException {
+		/* Take and apply under one lock so windows are applied in the order they were made */
+		synchronized (applyLock) {
+			Batch current;
+			synchronized (lock) {
+				current = batch;
+				batch = null;
+			}
+			if (current == null)
+				return;
+			current.timer.cancel(false);
+
+			try {
+				var removals = new ArrayList<String>();
+				var additions = new ArrayList<VpnPeer>();
+				for (var en : current.operations.entrySet()) {
+					var op = en.getValue();
+					if (op.peer == null || op.removeFirst)
+						removals.add(en.getKey());
+					if (op.peer != null)
+						additions.add(op.peer);
+				}
+
+				if (LOG.isDebugEnabled())
+					LOG.debug("Applying {} operations to {}, {} removals and {} additions",
+							current.operations.size(), adapter.address().shortName(), removals.size(),
+							additions.size());
+
+				if (!removals.isEmpty())
+					adapter.remove(removals);
+				if (!additions.isEmpty())
+					adapter.update(additions);
+				current.future.complete(null);
+			} catch (IOException | RuntimeException e) {
+				current.future.completeExceptionally(e);
+				throw e;
+			}
+		}
+	}
+}
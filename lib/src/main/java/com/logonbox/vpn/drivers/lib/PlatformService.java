@@ -24,6 +24,7 @@ import java.io.IOException;
 import java.io.UncheckedIOException;
 import java.nio.file.Path;
 import java.time.Instant;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -258,6 +259,53 @@ public interface PlatformService<ADDR extends VpnAddress> {
 	 */
 	VpnInterfaceInformation information(VpnAdapter adapter);
 
+	/**
+	 * Retrieve details about all wireguard adapters. Implementations where each
+	 * call is expensive, such as remote ones, should do this in as few operations
+	 * as possible, the default implementation just gets the information for each
+	 * of {@link #adapters()} in turn.
+	 * 
+	 * @return information
+	 * @throws UncheckedIOException on error
+	 */
+	default List<VpnInterfaceInformation> information() {
+		return adapters().stream().map(VpnAdapter::information).toList();
+	}
+
+	/**
+	 * Add a listener to be notified of changes in the state of peers on all
+	 * adapters. However many listeners there are, each adapter is read once every
+	 * {@link SystemConfiguration#peerEventInterval()}, and only while there are
+	 * listeners. Only changes after the first read are reported.
+	 * 
+	 * @param listener listener
+	 */
+	void addPeerListener(PeerListener listener);
+
+	/**
+	 * Add a listener to be notified of changes in the state of peers on a single
+	 * interface. See {@link #addPeerListener(PeerListener)}.
+	 * 
+	 * @param interfaceName interface name
+	 * @param listener listener
+	 */
+	void addPeerListener(String interfaceName, PeerListener listener);
+
+	/**
+	 * Remove a listener from all adapters and interfaces it was added to.
+	 * 
+	 * @param listener listener
+	 */
+	void removePeerListener(PeerListener listener);
+
+	/**
+	 * Remove a listener that was added for a single interface.
+	 * 
+	 * @param interfaceName interface name
+	 * @param listener listener
+	 */
+	void removePeerListener(String interfaceName, PeerListener listener);
+
 	/**
 	 * Retrieve configuration of the wireguard adapter.
 	 * 
@@ -307,6 +355,25 @@ public interface PlatformService<ADDR extends VpnAddress> {
 	 */
 	void append(VpnAdapter vpnAdapter, VpnAdapterConfiguration cfg) throws IOException;
 
+	/**
+	 * Add or update a number of peers on an active adapter, leaving the interface
+	 * part of its configuration alone. Peers that already exist keep their
+	 * sessions, and have their allowed IPs replaced rather than added to.
+	 * Implementations should do this without reading back the current
+	 * configuration, the default implementation appends the peers to the interface
+	 * part of the current configuration.
+	 *
+	 * @param vpnAdapter adapter
+	 * @param peers peers to add or update
+	 * @throws IOException if peers cannot be set
+	 */
+	default void update(VpnAdapter vpnAdapter, Collection<VpnPeer> peers) throws IOException {
+		if(peers.isEmpty())
+			return;
+		append(vpnAdapter, new VpnAdapterConfiguration.Builder().fromConfiguration(configuration(vpnAdapter))
+				.withPeers(peers).build());
+	}
+
 	/**
 	 * Remove an active peer from an active adapter. 
 	 *  
@@ -315,6 +382,33 @@ public interface PlatformService<ADDR extends VpnAddress> {
 	 * @throws IOException if peer cannot be removed
 	 */
 	void remove(VpnAdapter vpnAdapter, String publicKey) throws IOException;
+
+	/**
+	 * Remove a number of active peers from an active adapter. Implementations
+	 * should do this in as few operations as possible, the default implementation
+	 * removes them one at a time.
+	 *  
+	 * @param vpnAdapter adapter
+	 * @param publicKeys public keys of peers
+	 * @throws IOException if peers cannot be removed
+	 */
+	default void remove(VpnAdapter vpnAdapter, Collection<String> publicKeys) throws IOException {
+		for(var publicKey : publicKeys)
+			remove(vpnAdapter, publicKey);
+	}
+
+	/**
+	 * Get the peers with the highest total transfer across all adapters. See
+	 * {@link TopTalkers}. For transfer or rates over a recent window, use a
+	 * {@link TrafficSampler}.
+	 * 
+	 * @param limit maximum number of peers to return
+	 * @param direction direction to rank by
+	 * @return peers, highest first
+	 */
+	default List<TopTalkers.Talker> topTalkers(int limit, TopTalkers.Direction direction) {
+		return TopTalkers.top(information(), limit, direction);
+	}
 	
 	/**
 	 * Get the last native name of an interface given its wireguard interface
@@ -0,0 +1,619 @@
+/**
+ * Copyright © 2023 LogonBox Limited (support@logonbox.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the “Software”), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies
+ * or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.logonbox.vpn.drivers.lib;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.TreeMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Spreads the peers of a single logical {@link VpnConfiguration} across a
+ * number of WireGuard interfaces, named <code>[prefix][N]</code> to
+ * <code>[prefix][M]</code>, to keep the peer count of any one interface down.
+ * <p>
+ * Peers are assigned to a shard using consistent hashing of their public key,
+ * so when shards are added using {@link #addShards(int)}, only those peers that
+ * now belong to a new shard are moved.
+ * <p>
+ * All shards share the same private key. If the configuration has a listen
+ * port, shard <code>n</code> listens on that port plus <code>n</code>. Only the
+ * first shard is given the interface addresses, DNS and hook scripts of the
+ * configuration; routes for the allowed IPs of peers are added to whichever
+ * interface the peer is on.
+ */
+public final class ShardedVpnAdapter implements Closeable {
+
+    final static Logger LOG = LoggerFactory.getLogger(ShardedVpnAdapter.class);
+
+    public final static int DEFAULT_VIRTUAL_NODES = 128;
+
+    public final static class Builder {
+        private Optional<PlatformService<?>> platformService = Optional.empty();
+        private Optional<VpnConfiguration> configuration = Optional.empty();
+        private String interfacePrefix = "wg";
+        private int firstShard = 0;
+        private int shards = 2;
+        private int virtualNodes = DEFAULT_VIRTUAL_NODES;
+
+        public Builder withPlatformService(PlatformService<?> platformService) {
+            this.platformService = Optional.of(platformService);
+            return this;
+        }
+
+        public Builder withConfiguration(VpnConfiguration configuration) {
+            this.configuration = Optional.of(configuration);
+            return this;
+        }
+
+        /**
+         * Prefix of interface names, defaults to <code>wg</code>.
+         *
+         * @param interfacePrefix interface prefix
+         * @return this for chaining
+         */
+        public Builder withInterfacePrefix(String interfacePrefix) {
+            this.interfacePrefix = interfacePrefix;
+            return this;
+        }
+
+        /**
+         * Number appended to the interface prefix for the first shard, defaults to
+         * zero.
+         *
+         * @param firstShard first shard number
+         * @return this for chaining
+         */
+        public Builder withFirstShard(int firstShard) {
+            this.firstShard = firstShard;
+            return this;
+        }
+
+        /**
+         * Initial number of shards, defaults to two.
+         *
+         * @param shards shards
+         * @return this for chaining
+         */
+        public Builder withShards(int shards) {
+            if (shards < 1)
+                throw new IllegalArgumentException("Must be at least one shard.");
+            this.shards = shards;
+            return this;
+        }
+
+        /**
+         * Number of points each shard occupies on the hash ring. More points give
+         * a more even spread of peers at the cost of a slightly slower lookup.
+         *
+         * @param virtualNodes virtual nodes
+         * @return this for chaining
+         */
+        public Builder withVirtualNodes(int virtualNodes) {
+            if (virtualNodes < 1)
+                throw new IllegalArgumentException("Must be at least one virtual node.");
+            this.virtualNodes = virtualNodes;
+            return this;
+        }
+
+        public ShardedVpnAdapter build() {
+            return new ShardedVpnAdapter(this);
+        }
+    }
+
+    private record State(List<VpnAdapter> adapters, Ring ring) {
+    }
+
+    private final PlatformService<?> service;
+    private final VpnConfiguration configuration;
+    private final String interfacePrefix;
+    private final int firstShard;
+    private final int initialShards;
+    private final int virtualNodes;
+    private final Object lock = new Object();
+
+    private volatile Optional<State> shardState = Optional.empty();
+
+    private ShardedVpnAdapter(Builder builder) {
+        service = builder.platformService.orElseThrow(() -> new IllegalStateException("No platform service."));
+        configuration = builder.configuration.orElseThrow(() -> new IllegalStateException("No configuration."));
+        interfacePrefix = builder.interfacePrefix;
+        firstShard = builder.firstShard;
+        initialShards = builder.shards;
+        virtualNodes = builder.virtualNodes;
+    }
+
+    /**
+     * Start (or attach to if they already exist) all of the shard interfaces,
+     * distributing the peers of the configuration amongst them.
+     *
+     * @throws IOException on error
+     */
+    public void open() throws IOException {
+        synchronized (lock) {
+            if (shardState.isPresent())
+                throw new IllegalStateException("Already open.");
+
+            var ring = new Ring(initialShards);
+            var peers = split(configuration.peers(), ring);
+            var started = new ArrayList<VpnAdapter>();
+            try {
+                for (int i = 0; i < initialShards; i++) {
+                    started.add(startShard(i, peers.get(i)));
+                }
+            } catch (IOException | RuntimeException e) {
+                for (int i = started.size() - 1; i >= 0; i--) {
+                    try {
+                        service.stop(shardConfiguration(i, Collections.emptyList()), started.get(i));
+                    } catch (Exception e2) {
+                        LOG.warn("Failed to stop shard {} after error.", interfaceName(i), e2);
+                    }
+                }
+                throw e;
+            }
+            shardState = Optional.of(new State(Collections.unmodifiableList(started), ring));
+        }
+    }
+
+    /**
+     * Get the adapters for each shard, in shard order.
+     *
+     * @return shards
+     */
+    public List<VpnAdapter> shards() {
+        return state().adapters();
+    }
+
+    /**
+     * Get the index of the shard a peer with the given public key belongs to.
+     *
+     * @param publicKey public key
+     * @return shard index
+     */
+    public int shardIndex(String publicKey) {
+        return state().ring().shard(publicKey);
+    }
+
+    /**
+     * Get the adapter of the shard a peer with the given public key belongs to.
+     *
+     * @param publicKey public key
+     * @return shard adapter
+     */
+    public VpnAdapter shard(String publicKey) {
+        var current = state();
+        return current.adapters().get(current.ring().shard(publicKey));
+    }
+
+    /**
+     * Get the combined information of all shards. Traffic totals are summed, and
+     * the latest handshake is the latest of any shard. Interface details are
+     * those of the first shard.
+     *
+     * @return information
+     */
+    public VpnInterfaceInformation information() {
+        var adapters = state().adapters();
+        var infos = new ArrayList<VpnInterfaceInformation>(adapters.size());
+        for (var adapter : adapters) {
+            infos.add(adapter.information());
+        }
+        return new ShardedInterfaceInformation(interfaceName(0), infos);
+    }
+
+    /**
+     * Get the detailed status of a peer. Only the shard the peer belongs to is
+     * queried.
+     *
+     * @param publicKey public key of peer
+     * @return detailed status
+     * @throws IOException              on error
+     * @throws IllegalArgumentException if no such public key
+     */
+    public VpnPeerInformation information(String publicKey) throws IOException {
+        return shard(publicKey).information(publicKey);
+    }
+
+    public Instant latestHandshake(String publicKey) throws IOException {
+        return information(publicKey).lastHandshake();
+    }
+
+    /**
+     * Add the peers in the configuration, each to the shard it belongs to. The
+     * interface section of the configuration is ignored.
+     *
+     * @param cfg configuration
+     * @throws IOException on error
+     */
+    public void append(VpnAdapterConfiguration cfg) throws IOException {
+        synchronized (lock) {
+            var current = state();
+            var peers = split(cfg.peers(), current.ring());
+            for (int i = 0; i < peers.size(); i++) {
+                if (!peers.get(i).isEmpty()) {
+                    current.adapters().get(i).append(peersConfiguration(i, peers.get(i)));
+                }
+            }
+        }
+    }
+
+    /**
+     * Synchronise all shards with the configuration, so that each shard has
+     * exactly the peers of the configuration that belong to it. The interface
+     * section of the configuration is ignored.
+     *
+     * @param cfg configuration
+     * @throws IOException on error
+     */
+    public void sync(VpnAdapterConfiguration cfg) throws IOException {
+        synchronized (lock) {
+            var current = state();
+            var peers = split(cfg.peers(), current.ring());
+            for (int i = 0; i < peers.size(); i++) {
+                current.adapters().get(i).sync(peersConfiguration(i, peers.get(i)));
+            }
+        }
+    }
+
+    /**
+     * Remove a peer from the shard it belongs to.
+     *
+     * @param publicKey public key
+     * @throws IOException on error
+     */
+    public void remove(String publicKey) throws IOException {
+        synchronized (lock) {
+            shard(publicKey).remove(publicKey);
+        }
+    }
+
+    /**
+     * Start additional shards and move to them only those peers that now
+     * belong to them. Peers are added to the new shard before they are removed
+     * from the old one, and each existing shard is read and updated just once.
+     * <p>
+     * If this fails part way, any peers already removed from existing shards
+     * are restored, the new shards are stopped, and the shards are left as
+     * they were.
+     *
+     * @param count number of shards to add
+     * @throws IOException on error
+     */
+    public void addShards(int count) throws IOException {
+        if (count < 1)
+            throw new IllegalArgumentException("Must add at least one shard.");
+
+        synchronized (lock) {
+            var current = state();
+            var oldCount = current.adapters().size();
+            var newCount = oldCount + count;
+            var ring = new Ring(newCount);
+
+            var adapters = new ArrayList<>(current.adapters());
+            var synced = new ArrayList<Integer>(oldCount);
+            var configurations = new ArrayList<VpnAdapterConfiguration>(oldCount);
+            var outgoing = new ArrayList<List<String>>(oldCount);
+            try {
+                for (int i = oldCount; i < newCount; i++) {
+                    adapters.add(startShard(i, Collections.emptyList()));
+                }
+
+                /*
+                 * Find the peers that have moved. Existing points on the ring are
+                 * unchanged, so peers only ever move to one of the new shards.
+                 */
+                var incoming = new ArrayList<List<VpnPeer>>(newCount);
+                for (int i = 0; i < newCount; i++) {
+                    incoming.add(new ArrayList<>());
+                }
+                for (int i = 0; i < oldCount; i++) {
+                    var cfg = adapters.get(i).configuration();
+                    var moved = new ArrayList<String>();
+                    for (var peer : cfg.peers()) {
+                        var owner = ring.shard(peer.publicKey());
+                        if (owner != i) {
+                            incoming.get(owner).add(peer);
+                            moved.add(peer.publicKey());
+                        }
+                    }
+                    configurations.add(cfg);
+                    outgoing.add(moved);
+                }
+
+                for (int i = oldCount; i < newCount; i++) {
+                    var peers = incoming.get(i);
+                    if (!peers.isEmpty()) {
+                        LOG.info("Moving {} peers to new shard {}", peers.size(), interfaceName(i));
+                        adapters.get(i).append(peersConfiguration(i, peers));
+                    }
+                }
+
+                for (int i = 0; i < oldCount; i++) {
+                    var moved = outgoing.get(i);
+                    if (!moved.isEmpty()) {
+                        synced.add(i);
+                        adapters.get(i).sync(new VpnAdapterConfiguration.Builder()
+                                .fromConfiguration(configurations.get(i)).removePeers(new HashSet<>(moved)).build());
+                    }
+                }
+            } catch (IOException | RuntimeException e) {
+                rollbackShards(adapters, oldCount, synced, configurations, outgoing, e);
+                throw e;
+            }
+
+            shardState = Optional.of(new State(Collections.unmodifiableList(adapters), ring));
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (lock) {
+            var current = state();
+            shardState = Optional.empty();
+            IOException err = null;
+            for (int i = current.adapters().size() - 1; i >= 0; i--) {
+                try {
+                    service.stop(shardConfiguration(i, Collections.emptyList()), current.adapters().get(i));
+                } catch (IOException ioe) {
+                    if (err == null)
+                        err = ioe;
+                    else
+                        err.addSuppressed(ioe);
+                }
+            }
+            if (err != null)
+                throw err;
+        }
+    }
+
+    /*
+     * Undo a failed addShards(). Peers already removed from existing shards
+     * are put back, then every new shard that was started is stopped. The
+     * ring is only replaced on success, so is still the old one.
+     */
+    private void rollbackShards(List<VpnAdapter> adapters, int oldCount, List<Integer> synced,
+            List<VpnAdapterConfiguration> configurations, List<List<String>> outgoing, Exception cause) {
+        for (var i : synced) {
+            var moved = new HashSet<>(outgoing.get(i));
+            var peers = configurations.get(i).peers().stream().filter(p -> moved.contains(p.publicKey())).toList();
+            try {
+                adapters.get(i).append(peersConfiguration(i, peers));
+            } catch (IOException | RuntimeException e) {
+                LOG.error("Failed to restore {} peers to shard {}.", peers.size(), interfaceName(i), e);
+                cause.addSuppressed(e);
+            }
+        }
+        for (int i = adapters.size() - 1; i >= oldCount; i--) {
+            try {
+                service.stop(shardConfiguration(i, Collections.emptyList()), adapters.get(i));
+            } catch (IOException | RuntimeException e) {
+                LOG.error("Failed to stop new shard {}.", interfaceName(i), e);
+                cause.addSuppressed(e);
+            }
+        }
+    }
+
+    private State state() {
+        return shardState.orElseThrow(() -> new IllegalStateException("Not open."));
+    }
+
+    private String interfaceName(int shard) {
+        return interfacePrefix + (firstShard + shard);
+    }
+
+    private Optional<Integer> listenPort(int shard) {
+        return configuration.listenPort().map(p -> p + shard);
+    }
+
+    private VpnAdapter startShard(int shard, List<VpnPeer> peers) throws IOException {
+        var name = interfaceName(shard);
+        var cfg = shardConfiguration(shard, peers);
+        var nativeName = service.interfaceNameToNativeName(name).orElse(name);
+        if (service.adapterExists(nativeName)) {
+            LOG.info("Attaching to existing shard {} with {} peers", name, peers.size());
+            var adapter = service.adapter(nativeName);
+            adapter.sync(cfg);
+            return adapter;
+        } else {
+            LOG.info("Starting shard {} with {} peers", name, peers.size());
+            return service.start(new StartRequest.Builder(cfg).withInterfaceName(name).build());
+        }
+    }
+
+    private VpnConfiguration shardConfiguration(int shard, List<VpnPeer> peers) {
+        var bldr = new VpnConfiguration.Builder().fromConfiguration(configuration).withPeers(peers)
+                .withListenPort(listenPort(shard));
+        if (shard > 0) {
+            bldr.withAddresses();
+            bldr.withDns();
+            bldr.withPreUp();
+            bldr.withPostUp();
+            bldr.withPreDown();
+            bldr.withPostDown();
+        }
+        return bldr.build();
+    }
+
+    private VpnAdapterConfiguration peersConfiguration(int shard, List<VpnPeer> peers) {
+        return new VpnAdapterConfiguration.Builder().fromConfiguration(configuration).withPeers(peers)
+                .withListenPort(listenPort(shard)).build();
+    }
+
+    private static List<List<VpnPeer>> split(List<VpnPeer> peers, Ring ring) {
+        var split = new ArrayList<List<VpnPeer>>(ring.shards);
+        for (int i = 0; i < ring.shards; i++) {
+            split.add(new ArrayList<>());
+        }
+        for (var peer : peers) {
+            split.get(ring.shard(peer.publicKey())).add(peer);
+        }
+        return split;
+    }
+
+    /**
+     * 64 bit FNV-1a, followed by the MurmurHash3 finaliser to spread the bits.
+     */
+    static long hash(CharSequence str) {
+        var h = 0xcbf29ce484222325L;
+        for (int i = 0; i < str.length(); i++) {
+            h ^= str.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    /**
+     * Consistent hash ring. The points for a shard depend only on its interface
+     * name, so adding shards never moves existing points.
+     */
+    private final class Ring {
+        private final int shards;
+        private final long[] points;
+        private final int[] owners;
+
+        Ring(int shards) {
+            this.shards = shards;
+
+            var map = new TreeMap<Long, Integer>();
+            for (int i = 0; i < shards; i++) {
+                var name = interfaceName(i);
+                for (int j = 0; j < virtualNodes; j++) {
+                    map.putIfAbsent(hash(name + "#" + j), i);
+                }
+            }
+
+            points = new long[map.size()];
+            owners = new int[map.size()];
+            var idx = 0;
+            for (var en : map.entrySet()) {
+                points[idx] = en.getKey();
+                owners[idx++] = en.getValue();
+            }
+        }
+
+        int shard(String publicKey) {
+            var idx = Arrays.binarySearch(points, hash(publicKey));
+            if (idx < 0)
+                idx = -idx - 1;
+            return owners[idx == points.length ? 0 : idx];
+        }
+    }
+
+    @SuppressWarnings("serial")
+    private final static class ShardedInterfaceInformation implements VpnInterfaceInformation {
+
+        private final String interfaceName;
+        private final long tx;
+        private final long rx;
+        private final List<VpnPeerInformation> peers;
+        private final Instant lastHandshake;
+        private final VpnInterfaceInformation first;
+        private final Optional<String> error;
+
+        ShardedInterfaceInformation(String interfaceName, List<VpnInterfaceInformation> infos) {
+            this.interfaceName = interfaceName;
+            this.first = infos.get(0);
+
+            long tx = 0;
+            long rx = 0;
+            var peers = new ArrayList<VpnPeerInformation>();
+            var lastHandshake = Instant.ofEpochSecond(0);
+            var errors = new ArrayList<String>();
+            for (var info : infos) {
+                tx += info.tx();
+                rx += info.rx();
+                peers.addAll(info.peers());
+                if (info.lastHandshake().isAfter(lastHandshake))
+                    lastHandshake = info.lastHandshake();
+                info.error().ifPresent(e -> errors.add(info.interfaceName() + ": " + e));
+            }
+            this.tx = tx;
+            this.rx = rx;
+            this.peers = Collections.unmodifiableList(peers);
+            this.lastHandshake = lastHandshake;
+            this.error = errors.isEmpty() ? Optional.empty() : Optional.of(String.join(", ", errors));
+        }
+
+        @Override
+        public String interfaceName() {
+            return interfaceName;
+        }
+
+        @Override
+        public long tx() {
+            return tx;
+        }
+
+        @Override
+        public long rx() {
+            return rx;
+        }
+
+        @Override
+        public List<VpnPeerInformation> peers() {
+            return peers;
+        }
+
+        @Override
+        public Instant lastHandshake() {
+            return lastHandshake;
+        }
+
+        @Override
+        public String publicKey() {
+            return first.publicKey();
+        }
+
+        @Override
+        public String privateKey() {
+            return first.privateKey();
+        }
+
+        @Override
+        public Optional<Integer> listenPort() {
+            return first.listenPort();
+        }
+
+        @Override
+        public Optional<Integer> fwmark() {
+            return first.fwmark();
+        }
+
+        @Override
+        public Optional<String> error() {
+            return error;
+        }
+    }
+}
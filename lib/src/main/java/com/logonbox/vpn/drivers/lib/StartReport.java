@@ -0,0 +1,183 @@
+/**
+ * Copyright © 2023 LogonBox Limited (support@logonbox.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the “Software”), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies
+ * or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.logonbox.vpn.drivers.lib;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+
+import com.logonbox.vpn.drivers.lib.CommandStatistics.Counts;
+
+/**
+ * Breakdown of where the time went during a single
+ * {@link PlatformService#start(StartRequest)}, available from
+ * {@link VpnAdapter#startReport()} once started.
+ * <p>
+ * Each {@link Phase} has an offset from the start and an elapsed time, both
+ * taken from the monotonic clock, along with the number of commands run in it
+ * (if the {@link SystemContext} provides {@link CommandStatistics}). Phases are
+ * listed in the order they began, and some enclose others, e.g.
+ * {@link VpnEvents.Phase#FIND_ADDRESS} encloses
+ * {@link VpnEvents.Phase#RESOLVE_NAME} and
+ * {@link VpnEvents.Phase#CREATE_INTERFACE}. Phases that were not needed for a
+ * particular start are simply absent.
+ */
+public final class StartReport {
+
+	/**
+	 * A single timed phase.
+	 *
+	 * @param name     name, one of the {@link VpnEvents.Phase} constants
+	 * @param offset   time from the start until this phase began
+	 * @param elapsed  time spent in this phase
+	 * @param commands commands run in this phase, if known
+	 * @param failed   whether this phase failed
+	 */
+	public record Phase(String name, Duration offset, Duration elapsed, Optional<Counts> commands, boolean failed) {
+	}
+
+	/**
+	 * Records phases as they happen. Not thread safe, a start happens on a single
+	 * thread.
+	 */
+	final static class Recorder {
+
+		private final long started = System.nanoTime();
+		private final Optional<CommandStatistics> statistics;
+		private final Optional<Counts> initial;
+		private final List<Phase> phases = new ArrayList<>();
+
+		Recorder(Optional<CommandStatistics> statistics) {
+			this.statistics = statistics;
+			this.initial = statistics.map(CommandStatistics::counts);
+		}
+
+		/**
+		 * Begin a phase. It must be ended with {@link Entry#end(boolean)}.
+		 *
+		 * @param name name
+		 * @return entry
+		 */
+		Entry begin(String name) {
+			var entry = new Entry(name, phases.size());
+			/* Reserve the slot so phases stay in the order they began */
+			phases.add(null);
+			return entry;
+		}
+
+		StartReport build() {
+			return new StartReport(
+					Duration.ofNanos(System.nanoTime() - started),
+					statistics.map(s -> s.counts().since(initial.get())),
+					phases.stream().filter(p -> p != null).toList());
+		}
+
+		final class Entry {
+			private final String name;
+			private final int index;
+			private final long began = System.nanoTime();
+			private final Optional<Counts> counts = statistics.map(CommandStatistics::counts);
+
+			private Entry(String name, int index) {
+				this.name = name;
+				this.index = index;
+			}
+
+			void end(boolean failed) {
+				var now = System.nanoTime();
+				phases.set(index, new Phase(name,
+						Duration.ofNanos(began - started),
+						Duration.ofNanos(now - began),
+						statistics.map(s -> s.counts().since(counts.get())),
+						failed));
+			}
+		}
+	}
+
+	private final Duration total;
+	private final Optional<Counts> commands;
+	private final List<Phase> phases;
+
+	private StartReport(Duration total, Optional<Counts> commands, List<Phase> phases) {
+		this.total = total;
+		this.commands = commands;
+		this.phases = Collections.unmodifiableList(phases);
+	}
+
+	/**
+	 * Get the total time taken to start.
+	 *
+	 * @return total time
+	 */
+	public Duration total() {
+		return total;
+	}
+
+	/**
+	 * Get the total commands run during the start, if known.
+	 *
+	 * @return commands
+	 */
+	public Optional<Counts> commands() {
+		return commands;
+	}
+
+	/**
+	 * Get all the phases, in the order they began.
+	 *
+	 * @return phases
+	 */
+	public List<Phase> phases() {
+		return phases;
+	}
+
+	/**
+	 * Get the first phase with the given name.
+	 *
+	 * @param name name
+	 * @return phase
+	 */
+	public Optional<Phase> phase(String name) {
+		return phases.stream().filter(p -> p.name().equals(name)).findFirst();
+	}
+
+	@Override
+	public String toString() {
+		var buf = new StringBuilder();
+		for (var phase : phases) {
+			buf.append(String.format("%-18s %+10.3fms %10.3fms", phase.name(), millis(phase.offset()),
+					millis(phase.elapsed())));
+			phase.commands().ifPresent(c -> buf.append(String.format(" %4d command(s)", c.commands())));
+			if (phase.failed())
+				buf.append(" FAILED");
+			buf.append(System.lineSeparator());
+		}
+		buf.append(String.format("%-18s %12s %10.3fms", "total", "", millis(total)));
+		commands.ifPresent(c -> buf.append(String.format(" %4d command(s)", c.commands())));
+		return buf.toString();
+	}
+
+	private static double millis(Duration duration) {
+		return duration.toNanos() / 1_000_000d;
+	}
+}
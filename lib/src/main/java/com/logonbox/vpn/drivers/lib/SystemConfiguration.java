@@ -61,6 +61,8 @@ public interface SystemConfiguration {
 	Duration HANDSHAKE_TIMEOUT = Duration.ofSeconds(Integer.parseInt(System.getProperty("logonbox.vpn.handshakeTimeout", "180")));
     Duration SERVICE_WAIT_TIMEOUT = Duration.ofSeconds(Integer.parseInt(System.getProperty("logonbox.vpn.serviceWaitTimeout", "2")));
     Duration CONNECT_TIMEOUT = Duration.ofSeconds(Integer.parseInt(System.getProperty("logonbox.vpn.connectTimeout", "12")));
+    Duration PEER_EVENT_INTERVAL = Duration.ofSeconds(Integer.parseInt(System.getProperty("logonbox.vpn.peerEventInterval", "5")));
+    Duration STATS_INTERVAL = Duration.ofSeconds(Integer.parseInt(System.getProperty("logonbox.vpn.statsInterval", "15")));
     SystemConfiguration DEFAULT = new DefaultSystemConfiguration();
     
     public static SystemConfiguration defaultConfiguration() {
@@ -78,4 +80,25 @@ public interface SystemConfiguration {
     Duration handshakeTimeout();
 
     Optional<String> dnsIntegrationMethod();
+
+    /**
+     * How often adapters are read to produce {@link PeerEvent}s while there are
+     * any {@link PeerListener}s.
+     * 
+     * @return peer event interval
+     */
+    default Duration peerEventInterval() {
+        return PEER_EVENT_INTERVAL;
+    }
+
+    /**
+     * The shortest time between batches of traffic deltas for services that push
+     * them rather than being polled, such as a remote node. Deltas that occur in
+     * between are added together and sent in the next batch.
+     * 
+     * @return stats interval
+     */
+    default Duration statsInterval() {
+        return STATS_INTERVAL;
+    }
 }
@@ -27,6 +27,7 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 import java.util.concurrent.ScheduledExecutorService;
 
 public interface SystemContext {
@@ -54,6 +55,16 @@ public interface SystemContext {
     NativeComponents nativeComponents();
     
     void alert(String message, Object... args);
+
+    /**
+     * Get statistics about the commands run through {@link #commands()}, if they
+     * are being collected.
+     * 
+     * @return command statistics
+     */
+    default Optional<CommandStatistics> commandStatistics() {
+        return Optional.empty();
+    }
     
 	default NetworkInterface getBestLocalNic() {
 		var nics = getBestLocalNics();
@@ -0,0 +1,214 @@
+/**
+ * Copyright © 2023 LogonBox Limited (support@logonbox.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the “Software”), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies
+ * or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.logonbox.vpn.drivers.lib;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Finds the peers transferring the most, the "top talkers", across one or more
+ * interfaces.
+ * <p>
+ * Candidates are offered to a bounded min-heap of the requested size, so
+ * finding the top <code>n</code> of <code>m</code> peers takes
+ * <code>O(m log n)</code> time and <code>O(n)</code> space, and peers that do
+ * not make the cut are rejected with a single comparison and no allocation.
+ * <p>
+ * Lifetime totals are available from interface information directly using
+ * {@link #top(Iterable, int, Direction)}. Rates and transfer over a recent
+ * window require a {@link TrafficSampler}, see
+ * {@link TrafficSampler#top(int, Measure, Direction)}.
+ */
+public final class TopTalkers {
+
+	/**
+	 * What to rank peers by.
+	 */
+	public enum Measure {
+		/**
+		 * Total bytes since the peer was added to the interface.
+		 */
+		TOTAL,
+		/**
+		 * Bytes transferred over the window of samples held.
+		 */
+		TRANSFER,
+		/**
+		 * Average bytes per second over the window of samples held.
+		 */
+		RATE
+	}
+
+	/**
+	 * Which direction(s) of transfer to rank peers by.
+	 */
+	public enum Direction {
+		RX, TX, BOTH;
+
+		/**
+		 * Get the value to rank by.
+		 *
+		 * @param rx received
+		 * @param tx sent
+		 * @return value
+		 */
+		public double value(double rx, double tx) {
+			switch (this) {
+			case RX:
+				return rx;
+			case TX:
+				return tx;
+			default:
+				return rx + tx;
+			}
+		}
+	}
+
+	/**
+	 * A single peer in the result.
+	 *
+	 * @param interfaceName interface name
+	 * @param publicKey     public key of peer
+	 * @param rx            received, in the units of the {@link Measure} used
+	 * @param tx            sent, in the units of the {@link Measure} used
+	 */
+	public record Talker(String interfaceName, String publicKey, double rx, double tx) {
+	}
+
+	/**
+	 * Bounded min-heap of the best values offered so far. Not thread safe.
+	 */
+	final static class Heap {
+		private final double[] values;
+		private final Talker[] talkers;
+		private final Direction direction;
+		private int size;
+
+		Heap(int limit, Direction direction) {
+			if (limit < 1)
+				throw new IllegalArgumentException("Limit must be at least one.");
+			this.direction = direction;
+			values = new double[limit];
+			talkers = new Talker[limit];
+		}
+
+		/**
+		 * Get if a value would currently be accepted. Use this to avoid creating a
+		 * {@link Talker} that would be rejected.
+		 *
+		 * @param rx received
+		 * @param tx sent
+		 * @return accepted
+		 */
+		boolean accepts(double rx, double tx) {
+			return size < values.length || direction.value(rx, tx) > values[0];
+		}
+
+		void offer(String interfaceName, String publicKey, double rx, double tx) {
+			if (!accepts(rx, tx))
+				return;
+			var value = direction.value(rx, tx);
+			var talker = new Talker(interfaceName, publicKey, rx, tx);
+			if (size < values.length) {
+				/* Sift up */
+				var i = size++;
+				while (i > 0) {
+					var parent = (i - 1) >>> 1;
+					if (values[parent] <= value)
+						break;
+					values[i] = values[parent];
+					talkers[i] = talkers[parent];
+					i = parent;
+				}
+				values[i] = value;
+				talkers[i] = talker;
+			} else {
+				/* Replace the root and sift down */
+				var i = 0;
+				while (true) {
+					var child = 2 * i + 1;
+					if (child >= size)
+						break;
+					if (child + 1 < size && values[child + 1] < values[child])
+						child++;
+					if (values[child] >= value)
+						break;
+					values[i] = values[child];
+					talkers[i] = talkers[child];
+					i = child;
+				}
+				values[i] = value;
+				talkers[i] = talker;
+			}
+		}
+
+		/**
+		 * Get the talkers held, highest first.
+		 *
+		 * @return talkers
+		 */
+		List<Talker> result() {
+			var sorted = Arrays.copyOf(talkers, size);
+			var keys = Arrays.copyOf(values, size);
+			/* Only ever the requested limit, so a simple sort of indices is fine */
+			var idx = new Integer[size];
+			for (int i = 0; i < size; i++)
+				idx[i] = i;
+			Arrays.sort(idx, (a, b) -> Double.compare(keys[b], keys[a]));
+			var result = new ArrayList<Talker>(size);
+			for (var i : idx)
+				result.add(sorted[i]);
+			return result;
+		}
+	}
+
+	private TopTalkers() {
+	}
+
+	/**
+	 * Get the peers with the highest total transfer, across all the given
+	 * interfaces.
+	 *
+	 * @param interfaces interface information
+	 * @param limit      maximum number of peers to return
+	 * @param direction  direction to rank by
+	 * @return peers, highest first
+	 */
+	public static List<Talker> top(Iterable<? extends VpnInterfaceInformation> interfaces, int limit,
+			Direction direction) {
+		var heap = new Heap(limit, direction);
+		for (var info : interfaces) {
+			if (info instanceof ColumnarInterfaceInformation columnar) {
+				for (int i = 0; i < columnar.size(); i++) {
+					var rx = columnar.rx(i);
+					var tx = columnar.tx(i);
+					if (heap.accepts(rx, tx))
+						heap.offer(info.interfaceName(), columnar.publicKey(i), rx, tx);
+				}
+			} else {
+				for (var peer : info.peers())
+					heap.offer(info.interfaceName(), peer.publicKey(), peer.rx(), peer.tx());
+			}
+		}
+		return heap.result();
+	}
+}
@@ -0,0 +1,722 @@
+/**
+ * Copyright © 2023 LogonBox Limited (support@logonbox.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the “Software”), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies
+ * or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.logonbox.vpn.drivers.lib;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Compact on-disk store of periodic per-peer transfer counter samples, kept for
+ * long periods (weeks by default) for purposes such as billing and capacity
+ * planning.
+ * <p>
+ * Each interface has a single memory-mapped file in the configured directory,
+ * so history survives restarts and reading it back never copies more than the
+ * values asked for. The file holds an open-addressing table of public keys,
+ * followed by a fixed size block for each peer. Each block holds a ring of
+ * fixed size records for each {@link Tier}. A record is the time of a sample
+ * and the received and sent byte counters at that time. The file starts with
+ * just the table, and grows a segment of blocks at a time as peers are added,
+ * so its size follows the number of peers seen rather than the maximum.
+ * <p>
+ * Once there are as many peers as the file has room for, the block of the peer
+ * seen longest ago is reused for a new peer, but only if it has not been seen
+ * for longer than the whole of the {@link Tier#HOUR} tier, i.e. when nothing
+ * of its history remains that a new sample could not also have replaced.
+ * <p>
+ * The {@link Tier#RAW} tier keeps every sample. The {@link Tier#MINUTE} and
+ * {@link Tier#HOUR} tiers keep only the last sample in each minute or hour, so
+ * the transfer in any period is the difference between two records, at
+ * whatever resolution is available for that far back.
+ * <p>
+ * Counters stored are monotonic. If a counter goes backwards (the interface was
+ * restarted, or the peer removed and added again), the counter is assumed to
+ * have restarted from zero, and continues on from the previous value.
+ * <p>
+ * Samples may be recorded directly, or a {@link TrafficSampler} may be
+ * configured to record every sample it takes using
+ * {@link TrafficSampler.Builder#withHistory(TrafficHistory)}.
+ * <p>
+ * Instances are thread safe.
+ */
+public final class TrafficHistory implements Closeable {
+
+	private final static Logger LOG = LoggerFactory.getLogger(TrafficHistory.class);
+
+	public final static String SUFFIX = ".history";
+	public final static int DEFAULT_MAX_PEERS = 32768;
+
+	/**
+	 * The resolutions at which samples are kept.
+	 */
+	public enum Tier {
+		/**
+		 * Every sample, by default 720 of them (an hour at the default
+		 * {@link TrafficSampler} interval).
+		 */
+		RAW(1, 720),
+		/**
+		 * The last sample in each minute, by default for 7 days.
+		 */
+		MINUTE(60, 7 * 24 * 60),
+		/**
+		 * The last sample in each hour, by default for 8 weeks.
+		 */
+		HOUR(3600, 8 * 7 * 24);
+
+		private final int resolution;
+		private final int defaultCapacity;
+
+		Tier(int resolution, int defaultCapacity) {
+			this.resolution = resolution;
+			this.defaultCapacity = defaultCapacity;
+		}
+
+		/**
+		 * Get the resolution of this tier in seconds.
+		 *
+		 * @return resolution
+		 */
+		public int resolution() {
+			return resolution;
+		}
+	}
+
+	/**
+	 * Receives samples read from the history.
+	 */
+	@FunctionalInterface
+	public interface SampleConsumer {
+		/**
+		 * A single sample.
+		 *
+		 * @param epochSecond time of sample
+		 * @param rx          total bytes received by then
+		 * @param tx          total bytes sent by then
+		 */
+		void sample(long epochSecond, long rx, long tx);
+	}
+
+	public final static class Builder {
+		private Optional<Path> directory = Optional.empty();
+		private int maxPeers = DEFAULT_MAX_PEERS;
+		private final Map<Tier, Integer> capacities = new EnumMap<>(Tier.class);
+
+		/**
+		 * Directory the history files are kept in. Required.
+		 *
+		 * @param directory directory
+		 * @return this for chaining
+		 */
+		public Builder withDirectory(Path directory) {
+			this.directory = Optional.of(directory);
+			return this;
+		}
+
+		/**
+		 * Maximum number of peers whose history is kept for each interface,
+		 * defaults to 32768. Samples for further peers are dropped, unless a
+		 * block can be reused from a peer that has long gone.
+		 *
+		 * @param maxPeers maximum peers
+		 * @return this for chaining
+		 */
+		public Builder withMaxPeers(int maxPeers) {
+			if (maxPeers < 1)
+				throw new IllegalArgumentException("Must allow at least one peer.");
+			if (maxPeers > 1 << 22)
+				throw new IllegalArgumentException("Too many peers.");
+			this.maxPeers = maxPeers;
+			return this;
+		}
+
+		/**
+		 * Number of records kept in a tier for each peer. See {@link Tier} for the
+		 * defaults.
+		 *
+		 * @param tier     tier
+		 * @param capacity capacity
+		 * @return this for chaining
+		 */
+		public Builder withCapacity(Tier tier, int capacity) {
+			if (capacity < 1)
+				throw new IllegalArgumentException("Must keep at least one record.");
+			capacities.put(tier, capacity);
+			return this;
+		}
+
+		public TrafficHistory build() throws IOException {
+			return new TrafficHistory(this);
+		}
+	}
+
+	/* Header */
+	private final static int MAGIC = 0x4c425648; /* LBVH */
+	private final static int VERSION = 2;
+	private final static int HEADER_SIZE = 64;
+	private final static int H_MAGIC = 0;
+	private final static int H_VERSION = 4;
+	private final static int H_MAX_PEERS = 8;
+	private final static int H_SLOTS = 12;
+	/* Number of peer blocks ever allocated, blocks are reused once all are */
+	private final static int H_PEERS = 16;
+	private final static int H_TIERS = 20;
+	private final static int H_CAPACITIES = 24;
+
+	/* Key table */
+	private final static int KEY_LENGTH = 44;
+	private final static int SLOT_SIZE = KEY_LENGTH + 4;
+
+	/* Peer block, the last raw and base counters, time of last sample, then the count written to each tier */
+	private final static int P_LAST_RX = 0;
+	private final static int P_LAST_TX = 8;
+	private final static int P_BASE_RX = 16;
+	private final static int P_BASE_TX = 24;
+	private final static int P_LAST_TIME = 32;
+	private final static int P_COUNTS = 40;
+
+	/* Record */
+	private final static int RECORD_SIZE = 24;
+
+	/* Peer blocks are mapped, and the file grown, in segments of about this size */
+	private final static int SEGMENT_SIZE = 1 << 24;
+
+	/* A single mapping is limited to 2GiB */
+	private final static int MAX_PEER_SIZE = 1 << 30;
+
+	private final static Tier[] TIERS = Tier.values();
+
+	/* A single memory mapped file */
+	private final class Store {
+		private final Path path;
+		private final FileChannel channel;
+		/* Header and key table */
+		private final MappedByteBuffer buf;
+		/* Peer blocks, mapped (extending the file) when first used */
+		private final MappedByteBuffer[] segments;
+		private final int blocksPerSegment;
+		private final int[] tierOffsets = new int[TIERS.length];
+		private final int slots;
+		private final int tableOffset = HEADER_SIZE;
+		private final long peersOffset;
+		private final int peerSize;
+		/* No peer can be evicted before this time */
+		private long noVictimUntil = Long.MIN_VALUE;
+		private boolean warnedFull;
+
+		private Store(Path path) throws IOException {
+			this.path = path;
+			slots = Integer.highestOneBit(maxPeers * 2 - 1) << 1;
+			peersOffset = align(HEADER_SIZE + slots * SLOT_SIZE);
+			var off = P_COUNTS + TIERS.length * 8;
+			for (var tier : TIERS) {
+				tierOffsets[tier.ordinal()] = off;
+				off += capacities[tier.ordinal()] * RECORD_SIZE;
+			}
+			peerSize = align(off);
+			if (peerSize > MAX_PEER_SIZE)
+				throw new IllegalArgumentException("History of a single peer would be too large, reduce the capacities.");
+			blocksPerSegment = Math.max(1, SEGMENT_SIZE / peerSize);
+			segments = new MappedByteBuffer[(maxPeers + blocksPerSegment - 1) / blocksPerSegment];
+
+			var exists = Files.exists(path);
+			channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+					StandardOpenOption.WRITE);
+			try {
+				if (exists && channel.size() > 0) {
+					if (channel.size() < peersOffset)
+						throw new IOException(String.format("History file %s is %d bytes, expected at least %d for this configuration.",
+								path, channel.size(), peersOffset));
+					buf = channel.map(MapMode.READ_WRITE, 0, peersOffset);
+					verify();
+				} else {
+					/* Mapping extends the file to hold the header and table */
+					buf = channel.map(MapMode.READ_WRITE, 0, peersOffset);
+					buf.putInt(H_MAGIC, MAGIC);
+					buf.putInt(H_VERSION, VERSION);
+					buf.putInt(H_MAX_PEERS, maxPeers);
+					buf.putInt(H_SLOTS, slots);
+					buf.putInt(H_PEERS, 0);
+					buf.putInt(H_TIERS, TIERS.length);
+					for (var tier : TIERS)
+						buf.putInt(H_CAPACITIES + tier.ordinal() * 4, capacities[tier.ordinal()]);
+				}
+			} catch (IOException | RuntimeException e) {
+				channel.close();
+				throw e;
+			}
+		}
+
+		private void verify() throws IOException {
+			var ok = buf.getInt(H_MAGIC) == MAGIC && buf.getInt(H_VERSION) == VERSION
+					&& buf.getInt(H_MAX_PEERS) == maxPeers && buf.getInt(H_SLOTS) == slots
+					&& buf.getInt(H_TIERS) == TIERS.length;
+			for (var tier : TIERS)
+				ok &= buf.getInt(H_CAPACITIES + tier.ordinal() * 4) == capacities[tier.ordinal()];
+			if (!ok)
+				throw new IOException(String.format("History file %s is not compatible with this configuration.", path));
+		}
+
+		private MappedByteBuffer segment(int block) {
+			var idx = block / blocksPerSegment;
+			var segment = segments[idx];
+			if (segment == null) {
+				var first = idx * blocksPerSegment;
+				var blocks = Math.min(blocksPerSegment, maxPeers - first);
+				try {
+					segment = channel.map(MapMode.READ_WRITE, peersOffset + (long) first * peerSize,
+							(long) blocks * peerSize);
+				} catch (IOException ioe) {
+					throw new UncheckedIOException(ioe);
+				}
+				segments[idx] = segment;
+			}
+			return segment;
+		}
+
+		private int offset(int block) {
+			return (block % blocksPerSegment) * peerSize;
+		}
+
+		/* Returns the peer block, or -1 if not present and not created */
+		private int peer(CharSequence publicKey, boolean create, long epochSecond) {
+			if (publicKey.length() != KEY_LENGTH)
+				throw new IllegalArgumentException(String.format("Not a public key, %s", publicKey));
+			var mask = slots - 1;
+			var slot = hash(publicKey) & mask;
+			while (true) {
+				var pos = tableOffset + slot * SLOT_SIZE;
+				var idx = buf.getInt(pos + KEY_LENGTH);
+				if (idx == 0)
+					return create ? add(publicKey, epochSecond) : -1;
+				if (keyEquals(pos, publicKey))
+					return idx - 1;
+				slot = (slot + 1) & mask;
+			}
+		}
+
+		private int add(CharSequence publicKey, long epochSecond) {
+			int block;
+			var peers = buf.getInt(H_PEERS);
+			if (peers < maxPeers) {
+				block = peers;
+				buf.putInt(H_PEERS, peers + 1);
+			} else {
+				block = evict(epochSecond);
+				if (block == -1) {
+					if (!warnedFull) {
+						warnedFull = true;
+						LOG.warn("History in {} is full at {} peers, new peers are not recorded until others have been gone for longer than the {} tier.",
+								path, maxPeers, Tier.HOUR);
+					}
+					return -1;
+				}
+				warnedFull = false;
+			}
+
+			/* Eviction may have moved keys, so probe again for the free slot */
+			var mask = slots - 1;
+			var slot = hash(publicKey) & mask;
+			while (buf.getInt(tableOffset + slot * SLOT_SIZE + KEY_LENGTH) != 0)
+				slot = (slot + 1) & mask;
+			var pos = tableOffset + slot * SLOT_SIZE;
+			for (int i = 0; i < KEY_LENGTH; i++)
+				buf.put(pos + i, (byte) publicKey.charAt(i));
+			/* Publish the index last, so a torn write leaves an empty slot */
+			buf.putInt(pos + KEY_LENGTH, block + 1);
+			return block;
+		}
+
+		/*
+		 * Free the block of the peer sampled longest ago, if that was long enough
+		 * ago for all of its history to have aged out of every tier.
+		 */
+		private int evict(long epochSecond) {
+			if (epochSecond < noVictimUntil)
+				return -1;
+			var span = (long) capacities[Tier.HOUR.ordinal()] * Tier.HOUR.resolution;
+			var oldest = Long.MAX_VALUE;
+			var oldestSlot = -1;
+			for (int slot = 0; slot < slots; slot++) {
+				var idx = buf.getInt(tableOffset + slot * SLOT_SIZE + KEY_LENGTH);
+				if (idx != 0) {
+					var last = segment(idx - 1).getLong(offset(idx - 1) + P_LAST_TIME);
+					if (last < oldest) {
+						oldest = last;
+						oldestSlot = slot;
+					}
+				}
+			}
+			if (oldestSlot == -1)
+				return -1;
+			if (oldest + span >= epochSecond) {
+				noVictimUntil = oldest + span + 1;
+				return -1;
+			}
+
+			var pos = tableOffset + oldestSlot * SLOT_SIZE;
+			var block = buf.getInt(pos + KEY_LENGTH) - 1;
+			if (LOG.isDebugEnabled())
+				LOG.debug("Evicting {} from history in {}, last seen {}.",
+						new String(keyAt(pos), StandardCharsets.US_ASCII), path, oldest);
+			removeSlot(oldestSlot);
+
+			var segment = segment(block);
+			var peer = offset(block);
+			for (int i = 0; i < P_COUNTS + TIERS.length * 8; i += 8)
+				segment.putLong(peer + i, 0);
+			return block;
+		}
+
+		/* Linear probing removal, shifting back any later keys that would no longer be found */
+		private void removeSlot(int slot) {
+			var mask = slots - 1;
+			var hole = slot;
+			buf.putInt(tableOffset + hole * SLOT_SIZE + KEY_LENGTH, 0);
+			var next = hole;
+			while (true) {
+				next = (next + 1) & mask;
+				var pos = tableOffset + next * SLOT_SIZE;
+				var idx = buf.getInt(pos + KEY_LENGTH);
+				if (idx == 0)
+					return;
+				var home = hash(keyAt(pos)) & mask;
+				var reachable = hole <= next ? home > hole && home <= next : home > hole || home <= next;
+				if (!reachable) {
+					var holePos = tableOffset + hole * SLOT_SIZE;
+					buf.put(holePos, keyAt(pos));
+					buf.putInt(holePos + KEY_LENGTH, idx);
+					buf.putInt(pos + KEY_LENGTH, 0);
+					hole = next;
+				}
+			}
+		}
+
+		private byte[] keyAt(int pos) {
+			var key = new byte[KEY_LENGTH];
+			buf.get(pos, key);
+			return key;
+		}
+
+		private boolean keyEquals(int pos, CharSequence publicKey) {
+			for (int i = 0; i < KEY_LENGTH; i++) {
+				if (buf.get(pos + i) != publicKey.charAt(i))
+					return false;
+			}
+			return true;
+		}
+
+		private List<String> keys() {
+			var keys = new ArrayList<String>(buf.getInt(H_PEERS));
+			for (int slot = 0; slot < slots; slot++) {
+				var pos = tableOffset + slot * SLOT_SIZE;
+				if (buf.getInt(pos + KEY_LENGTH) != 0)
+					keys.add(new String(keyAt(pos), StandardCharsets.US_ASCII));
+			}
+			return keys;
+		}
+
+		private void record(CharSequence publicKey, long epochSecond, long rx, long tx) {
+			var block = peer(publicKey, true, epochSecond);
+			if (block == -1)
+				return;
+			var segment = segment(block);
+			var peer = offset(block);
+
+			/* Make the counters monotonic */
+			var baseRx = segment.getLong(peer + P_BASE_RX);
+			var baseTx = segment.getLong(peer + P_BASE_TX);
+			var lastRx = segment.getLong(peer + P_LAST_RX);
+			var lastTx = segment.getLong(peer + P_LAST_TX);
+			if (rx < lastRx) {
+				baseRx += lastRx;
+				segment.putLong(peer + P_BASE_RX, baseRx);
+			}
+			if (tx < lastTx) {
+				baseTx += lastTx;
+				segment.putLong(peer + P_BASE_TX, baseTx);
+			}
+			segment.putLong(peer + P_LAST_RX, rx);
+			segment.putLong(peer + P_LAST_TX, tx);
+			segment.putLong(peer + P_LAST_TIME, Math.max(epochSecond, segment.getLong(peer + P_LAST_TIME)));
+
+			for (var tier : TIERS)
+				append(segment, peer, tier, epochSecond, baseRx + rx, baseTx + tx);
+		}
+
+		private void append(MappedByteBuffer buf, int peer, Tier tier, long epochSecond, long rx, long tx) {
+			var t = tier.ordinal();
+			var capacity = capacities[t];
+			var countPos = peer + P_COUNTS + t * 8;
+			var count = buf.getLong(countPos);
+			var ring = peer + tierOffsets[t];
+			var bucket = epochSecond / tier.resolution;
+			if (count > 0) {
+				var last = ring + (int) ((count - 1) % capacity) * RECORD_SIZE;
+				var lastBucket = buf.getLong(last) / tier.resolution;
+				if (bucket < lastBucket) {
+					/* Clock went backwards, keep what is there */
+					return;
+				} else if (bucket == lastBucket) {
+					/* Replace the last sample in the bucket */
+					buf.putLong(last, epochSecond);
+					buf.putLong(last + 8, rx);
+					buf.putLong(last + 16, tx);
+					return;
+				}
+			}
+			var pos = ring + (int) (count % capacity) * RECORD_SIZE;
+			buf.putLong(pos, epochSecond);
+			buf.putLong(pos + 8, rx);
+			buf.putLong(pos + 16, tx);
+			/* Count last, so a torn write is not seen */
+			buf.putLong(countPos, count + 1);
+		}
+
+		private int read(CharSequence publicKey, Tier tier, long fromEpochSecond, SampleConsumer consumer) {
+			var block = peer(publicKey, false, 0);
+			if (block == -1)
+				return 0;
+			var segment = segment(block);
+			var peer = offset(block);
+			var t = tier.ordinal();
+			var capacity = capacities[t];
+			var count = segment.getLong(peer + P_COUNTS + t * 8);
+			var ring = peer + tierOffsets[t];
+			var size = (int) Math.min(count, capacity);
+			var first = count - size;
+
+			/* Binary search for the first record wanted, records are in time order */
+			int lo = 0, hi = size;
+			while (lo < hi) {
+				var mid = (lo + hi) >>> 1;
+				if (segment.getLong(ring + (int) ((first + mid) % capacity) * RECORD_SIZE) < fromEpochSecond)
+					lo = mid + 1;
+				else
+					hi = mid;
+			}
+
+			for (int i = lo; i < size; i++) {
+				var pos = ring + (int) ((first + i) % capacity) * RECORD_SIZE;
+				consumer.sample(segment.getLong(pos), segment.getLong(pos + 8), segment.getLong(pos + 16));
+			}
+			return size - lo;
+		}
+
+		private void force() {
+			buf.force();
+			for (var segment : segments) {
+				if (segment != null)
+					segment.force();
+			}
+		}
+
+		private void close() throws IOException {
+			try {
+				force();
+			} finally {
+				channel.close();
+			}
+		}
+	}
+
+	private final Path directory;
+	private final int maxPeers;
+	private final int[] capacities = new int[TIERS.length];
+	private final Map<String, Store> stores = new HashMap<>();
+	private boolean closed;
+
+	private TrafficHistory(Builder builder) throws IOException {
+		directory = builder.directory.orElseThrow(() -> new IllegalStateException("No directory."));
+		maxPeers = builder.maxPeers;
+		for (var tier : TIERS)
+			capacities[tier.ordinal()] = builder.capacities.getOrDefault(tier, tier.defaultCapacity);
+		Files.createDirectories(directory);
+	}
+
+	/**
+	 * Record a sample of all peers of an interface.
+	 *
+	 * @param information interface information
+	 * @param epochSecond time of sample
+	 */
+	public void record(VpnInterfaceInformation information, long epochSecond) {
+		synchronized (stores) {
+			var store = store(information.interfaceName(), true).get();
+			if (information instanceof ColumnarInterfaceInformation columnar) {
+				for (int i = 0; i < columnar.size(); i++)
+					store.record(columnar.publicKey(i), epochSecond, columnar.rx(i), columnar.tx(i));
+			} else {
+				for (var peer : information.peers())
+					store.record(peer.publicKey(), epochSecond, peer.rx(), peer.tx());
+			}
+		}
+	}
+
+	/**
+	 * Record a sample of a single peer.
+	 *
+	 * @param interfaceName interface name
+	 * @param publicKey     public key of peer
+	 * @param epochSecond   time of sample
+	 * @param rx            bytes received counter
+	 * @param tx            bytes sent counter
+	 */
+	public void record(String interfaceName, String publicKey, long epochSecond, long rx, long tx) {
+		synchronized (stores) {
+			store(interfaceName, true).get().record(publicKey, epochSecond, rx, tx);
+		}
+	}
+
+	/**
+	 * Read the samples of a peer in a tier, oldest first, starting from a given
+	 * time.
+	 *
+	 * @param interfaceName   interface name
+	 * @param publicKey       public key of peer
+	 * @param tier            tier
+	 * @param fromEpochSecond earliest sample wanted
+	 * @param consumer        receives each sample
+	 * @return number of samples read
+	 */
+	public int read(String interfaceName, String publicKey, Tier tier, long fromEpochSecond,
+			SampleConsumer consumer) {
+		synchronized (stores) {
+			return store(interfaceName, false).map(s -> s.read(publicKey, tier, fromEpochSecond, consumer)).orElse(0);
+		}
+	}
+
+	/**
+	 * Get the public keys of all peers with history for an interface.
+	 *
+	 * @param interfaceName interface name
+	 * @return public keys
+	 */
+	public List<String> peers(String interfaceName) {
+		synchronized (stores) {
+			return store(interfaceName, false).map(Store::keys).orElse(Collections.emptyList());
+		}
+	}
+
+	/**
+	 * Get the names of all interfaces with history.
+	 *
+	 * @return interface names
+	 */
+	public List<String> interfaces() {
+		try (var stream = Files.list(directory)) {
+			return stream.map(p -> p.getFileName().toString()).filter(n -> n.endsWith(SUFFIX))
+					.map(n -> n.substring(0, n.length() - SUFFIX.length())).sorted().toList();
+		} catch (IOException ioe) {
+			throw new UncheckedIOException(ioe);
+		}
+	}
+
+	/**
+	 * Write all changes to disk now. This also happens on {@link #close()}, and
+	 * otherwise whenever the operating system chooses.
+	 */
+	public void flush() {
+		synchronized (stores) {
+			for (var store : stores.values())
+				store.force();
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		synchronized (stores) {
+			if (closed)
+				return;
+			closed = true;
+			IOException ex = null;
+			for (var store : stores.values()) {
+				try {
+					store.close();
+				} catch (IOException ioe) {
+					ex = ioe;
+				}
+			}
+			stores.clear();
+			if (ex != null)
+				throw ex;
+		}
+	}
+
+	private Optional<Store> store(String interfaceName, boolean create) {
+		if (closed)
+			throw new IllegalStateException("Closed.");
+		var store = stores.get(interfaceName);
+		if (store == null) {
+			var path = directory.resolve(interfaceName + SUFFIX);
+			if (!create && !Files.exists(path))
+				return Optional.empty();
+			try {
+				store = new Store(path);
+			} catch (IOException ioe) {
+				throw new UncheckedIOException(ioe);
+			}
+			stores.put(interfaceName, store);
+		}
+		return Optional.of(store);
+	}
+
+	private static int hash(CharSequence key) {
+		var h = 0x811c9dc5;
+		for (int i = 0; i < key.length(); i++) {
+			h ^= key.charAt(i);
+			h *= 0x01000193;
+		}
+		return h ^ (h >>> 16);
+	}
+
+	/* Same as hash(CharSequence) for the ASCII key as stored */
+	private static int hash(byte[] key) {
+		var h = 0x811c9dc5;
+		for (int i = 0; i < key.length; i++) {
+			h ^= key[i] & 0xff;
+			h *= 0x01000193;
+		}
+		return h ^ (h >>> 16);
+	}
+
+	private static int align(int offset) {
+		return (offset + 7) & ~7;
+	}
+}
@@ -0,0 +1,565 @@
+/**
+ * Copyright © 2023 LogonBox Limited (support@logonbox.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the “Software”), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies
+ * or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.logonbox.vpn.drivers.lib;
+
+import java.io.Closeable;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Periodically samples the transfer counters of adapters and their peers, and
+ * keeps a short history from which byte rates may be queried.
+ * <p>
+ * Each interface and each peer has a fixed size ring of samples held in
+ * primitive arrays, allocated when it is first seen, so taking a sample does
+ * not allocate. Rates are available as the most recent rate, the average over
+ * the samples held (weighted by time), and the peak of the samples held.
+ * <p>
+ * If a counter goes backwards between two samples, for example because an
+ * interface was restarted or a peer was removed and added again, the counter
+ * is assumed to have restarted from zero, so the whole of the new value is
+ * counted as the transfer for that sample.
+ * <p>
+ * Sampling runs on {@link SystemContext#queue()} unless another executor is
+ * supplied. Samples may also be kept long term in a {@link TrafficHistory}.
+ */
+public final class TrafficSampler implements Closeable {
+
+	private final static Logger LOG = LoggerFactory.getLogger(TrafficSampler.class);
+
+	public final static Duration DEFAULT_INTERVAL = Duration.ofSeconds(5);
+	public final static int DEFAULT_SAMPLES = 60;
+
+	/**
+	 * A rate of transfer in each direction.
+	 *
+	 * @param rx bytes received per second
+	 * @param tx bytes sent per second
+	 */
+	public record Rate(double rx, double tx) {
+		public final static Rate ZERO = new Rate(0, 0);
+	}
+
+	public final static class Builder {
+		private Optional<PlatformService<?>> platformService = Optional.empty();
+		private List<VpnAdapter> adapters = new ArrayList<>();
+		private Optional<ScheduledExecutorService> queue = Optional.empty();
+		private Duration interval = DEFAULT_INTERVAL;
+		private int samples = DEFAULT_SAMPLES;
+		private Optional<TrafficHistory> history = Optional.empty();
+
+		/**
+		 * Platform service whose adapters are sampled. All adapters are sampled
+		 * unless specific ones are added using {@link #withAdapters(VpnAdapter...)}.
+		 *
+		 * @param platformService platform service
+		 * @return this for chaining
+		 */
+		public Builder withPlatformService(PlatformService<?> platformService) {
+			this.platformService = Optional.of(platformService);
+			return this;
+		}
+
+		public Builder withAdapters(VpnAdapter... adapters) {
+			this.adapters.addAll(Arrays.asList(adapters));
+			return this;
+		}
+
+		/**
+		 * Executor to sample on, defaults to {@link SystemContext#queue()}.
+		 *
+		 * @param queue queue
+		 * @return this for chaining
+		 */
+		public Builder withQueue(ScheduledExecutorService queue) {
+			this.queue = Optional.of(queue);
+			return this;
+		}
+
+		/**
+		 * Time between samples, defaults to 5 seconds.
+		 *
+		 * @param interval interval
+		 * @return this for chaining
+		 */
+		public Builder withInterval(Duration interval) {
+			if (interval.toMillis() < 1)
+				throw new IllegalArgumentException("Interval must be at least one millisecond.");
+			this.interval = interval;
+			return this;
+		}
+
+		/**
+		 * Number of samples of history kept, defaults to 60.
+		 *
+		 * @param samples samples
+		 * @return this for chaining
+		 */
+		public Builder withSamples(int samples) {
+			if (samples < 1)
+				throw new IllegalArgumentException("Must keep at least one sample.");
+			this.samples = samples;
+			return this;
+		}
+
+		/**
+		 * Also record every sample taken in a {@link TrafficHistory}. The history
+		 * is not closed when the sampler is.
+		 *
+		 * @param history history
+		 * @return this for chaining
+		 */
+		public Builder withHistory(TrafficHistory history) {
+			this.history = Optional.of(history);
+			return this;
+		}
+
+		public TrafficSampler build() {
+			return new TrafficSampler(this);
+		}
+	}
+
+	/* Ring of the transfer between consecutive samples of a pair of counters */
+	private final static class History {
+		private final String key;
+		private final long[] nanos;
+		private final long[] rx;
+		private final long[] tx;
+		private int head;
+		private int size;
+		private boolean primed;
+		private long lastNanos;
+		private long lastRx;
+		private long lastTx;
+		private long generation;
+
+		private History(String key, int samples) {
+			this.key = key;
+			nanos = new long[samples];
+			rx = new long[samples];
+			tx = new long[samples];
+		}
+
+		/* Transfer recorded by the last add(), zero if it was the first */
+		private long deltaRx;
+		private long deltaTx;
+
+		private void add(long now, long rxTotal, long txTotal) {
+			deltaRx = deltaTx = 0;
+			if (primed) {
+				if (now - lastNanos <= 0)
+					return;
+				deltaRx = rxTotal >= lastRx ? rxTotal - lastRx : rxTotal;
+				deltaTx = txTotal >= lastTx ? txTotal - lastTx : txTotal;
+			}
+			addTransfer(now, deltaRx, deltaTx);
+			lastRx = rxTotal;
+			lastTx = txTotal;
+		}
+
+		private void addTransfer(long now, long rxBytes, long txBytes) {
+			if (primed) {
+				var elapsed = now - lastNanos;
+				if (elapsed <= 0)
+					return;
+				nanos[head] = elapsed;
+				rx[head] = rxBytes;
+				tx[head] = txBytes;
+				head = (head + 1) % nanos.length;
+				if (size < nanos.length)
+					size++;
+			} else
+				primed = true;
+			lastNanos = now;
+		}
+
+		private Optional<Rate> current() {
+			if (size == 0)
+				return Optional.empty();
+			var idx = (head + nanos.length - 1) % nanos.length;
+			return Optional.of(new Rate(perSecond(rx[idx], nanos[idx]), perSecond(tx[idx], nanos[idx])));
+		}
+
+		private Optional<Rate> average() {
+			if (size == 0)
+				return Optional.empty();
+			long totalNanos = 0, totalRx = 0, totalTx = 0;
+			for (int i = 0; i < size; i++) {
+				totalNanos += nanos[i];
+				totalRx += rx[i];
+				totalTx += tx[i];
+			}
+			return Optional.of(new Rate(perSecond(totalRx, totalNanos), perSecond(totalTx, totalNanos)));
+		}
+
+		private Optional<Rate> peak() {
+			if (size == 0)
+				return Optional.empty();
+			double peakRx = 0, peakTx = 0;
+			for (int i = 0; i < size; i++) {
+				peakRx = Math.max(peakRx, perSecond(rx[i], nanos[i]));
+				peakTx = Math.max(peakTx, perSecond(tx[i], nanos[i]));
+			}
+			return Optional.of(new Rate(peakRx, peakTx));
+		}
+
+		private static double perSecond(long bytes, long nanos) {
+			return nanos == 0 ? 0 : bytes * 1_000_000_000d / nanos;
+		}
+	}
+
+	private final static class Interface {
+		private final History total;
+		private final Map<String, History> peers = new HashMap<>();
+		/* Peer histories in the order of the last sample, to avoid key lookups */
+		private History[] order = new History[0];
+		private long generation;
+		/* Sum of the transfer of all peers in the last sample */
+		private long deltaRx;
+		private long deltaTx;
+
+		private Interface(String name, int samples) {
+			total = new History(name, samples);
+		}
+	}
+
+	private final Optional<PlatformService<?>> platformService;
+	private final List<VpnAdapter> adapters;
+	private final ScheduledExecutorService queue;
+	private final long intervalMillis;
+	private final int samples;
+	private final Optional<TrafficHistory> history;
+	private final Map<String, Interface> interfaces = new HashMap<>();
+	private final Object lock = new Object();
+
+	private ScheduledFuture<?> task;
+	private long generation;
+	private boolean closed;
+
+	private TrafficSampler(Builder builder) {
+		platformService = builder.platformService;
+		adapters = List.copyOf(builder.adapters);
+		if (platformService.isEmpty() && adapters.isEmpty())
+			throw new IllegalStateException("Either a platform service or adapters must be supplied.");
+		queue = builder.queue.orElseGet(() -> platformService.map(PlatformService::context)
+				.orElseGet(() -> adapters.get(0).service().context()).queue());
+		if (queue == null)
+			throw new IllegalStateException("No queue available to sample on.");
+		intervalMillis = builder.interval.toMillis();
+		samples = builder.samples;
+		history = builder.history;
+	}
+
+	/**
+	 * Start sampling.
+	 *
+	 * @return this for chaining
+	 */
+	public TrafficSampler start() {
+		synchronized (lock) {
+			if (closed)
+				throw new IllegalStateException("Closed.");
+			if (task != null)
+				throw new IllegalStateException("Already started.");
+			task = queue.scheduleAtFixedRate(this::scheduledSample, 0, intervalMillis, TimeUnit.MILLISECONDS);
+		}
+		return this;
+	}
+
+	/**
+	 * Take a sample of all adapters now. This is normally called on the queue,
+	 * but may be called directly.
+	 */
+	public void sample() {
+		var adapters = this.adapters.isEmpty() ? platformService.get().adapters() : this.adapters;
+
+		/* Read outside of the lock, so queries are not held up by the commands */
+		var infos = new VpnInterfaceInformation[adapters.size()];
+		var times = new long[adapters.size()];
+		for (int i = 0; i < infos.length; i++) {
+			var adapter = adapters.get(i);
+			try {
+				infos[i] = adapter.information();
+				times[i] = System.nanoTime();
+			} catch (RuntimeException re) {
+				LOG.debug("Failed to sample {}.", adapter.address().shortName(), re);
+			}
+		}
+
+		if (history.isPresent()) {
+			var epochSecond = System.currentTimeMillis() / 1000;
+			for (var info : infos) {
+				if (info != null) {
+					try {
+						history.get().record(info, epochSecond);
+					} catch (RuntimeException re) {
+						LOG.warn("Failed to record history of {}.", info.interfaceName(), re);
+					}
+				}
+			}
+		}
+
+		synchronized (lock) {
+			if (closed)
+				return;
+			var gen = ++generation;
+			for (int i = 0; i < infos.length; i++) {
+				var info = infos[i];
+				if (info == null)
+					continue;
+				var now = times[i];
+				var iface = interfaces.get(info.interfaceName());
+				if (iface == null) {
+					iface = new Interface(info.interfaceName(), samples);
+					interfaces.put(info.interfaceName(), iface);
+				}
+				iface.generation = gen;
+				if (info instanceof ColumnarInterfaceInformation columnar)
+					sample(iface, columnar, now, gen);
+				else
+					sample(iface, info, now, gen);
+				/*
+				 * The interface total is the sum of its peers, so drops whenever a peer
+				 * is removed. Rather than mistake that for a counter reset, the
+				 * transfer of the interface is the sum of the transfer of its peers.
+				 */
+				iface.total.addTransfer(now, iface.deltaRx, iface.deltaTx);
+				iface.total.lastRx = info.rx();
+				iface.total.lastTx = info.tx();
+			}
+			if (interfaces.size() > infos.length)
+				interfaces.values().removeIf(i -> i.generation != gen);
+		}
+	}
+
+	/**
+	 * Get the most recent rate of an interface.
+	 *
+	 * @param interfaceName interface name
+	 * @return rate, or empty if there are not yet enough samples
+	 */
+	public Optional<Rate> currentRate(String interfaceName) {
+		synchronized (lock) {
+			return total(interfaceName).flatMap(History::current);
+		}
+	}
+
+	/**
+	 * Get the average rate of an interface over the samples held.
+	 *
+	 * @param interfaceName interface name
+	 * @return rate, or empty if there are not yet enough samples
+	 */
+	public Optional<Rate> averageRate(String interfaceName) {
+		synchronized (lock) {
+			return total(interfaceName).flatMap(History::average);
+		}
+	}
+
+	/**
+	 * Get the peak rate of an interface over the samples held. Each direction is
+	 * the peak for that direction, so they may come from different samples.
+	 *
+	 * @param interfaceName interface name
+	 * @return rate, or empty if there are not yet enough samples
+	 */
+	public Optional<Rate> peakRate(String interfaceName) {
+		synchronized (lock) {
+			return total(interfaceName).flatMap(History::peak);
+		}
+	}
+
+	/**
+	 * Get the most recent rate of a peer.
+	 *
+	 * @param interfaceName interface name
+	 * @param publicKey     public key of peer
+	 * @return rate, or empty if there are not yet enough samples
+	 */
+	public Optional<Rate> currentRate(String interfaceName, String publicKey) {
+		synchronized (lock) {
+			return peer(interfaceName, publicKey).flatMap(History::current);
+		}
+	}
+
+	/**
+	 * Get the average rate of a peer over the samples held.
+	 *
+	 * @param interfaceName interface name
+	 * @param publicKey     public key of peer
+	 * @return rate, or empty if there are not yet enough samples
+	 */
+	public Optional<Rate> averageRate(String interfaceName, String publicKey) {
+		synchronized (lock) {
+			return peer(interfaceName, publicKey).flatMap(History::average);
+		}
+	}
+
+	/**
+	 * Get the peak rate of a peer over the samples held.
+	 *
+	 * @param interfaceName interface name
+	 * @param publicKey     public key of peer
+	 * @return rate, or empty if there are not yet enough samples
+	 */
+	public Optional<Rate> peakRate(String interfaceName, String publicKey) {
+		synchronized (lock) {
+			return peer(interfaceName, publicKey).flatMap(History::peak);
+		}
+	}
+
+	/**
+	 * Get the peers transferring the most over the window of samples held, across
+	 * all sampled interfaces. See {@link TopTalkers}.
+	 *
+	 * @param limit     maximum number of peers to return
+	 * @param measure   what to rank by
+	 * @param direction direction to rank by
+	 * @return peers, highest first
+	 */
+	public List<TopTalkers.Talker> top(int limit, TopTalkers.Measure measure, TopTalkers.Direction direction) {
+		var heap = new TopTalkers.Heap(limit, direction);
+		synchronized (lock) {
+			for (var iface : interfaces.entrySet()) {
+				for (var history : iface.getValue().peers.values()) {
+					double rx, tx;
+					switch (measure) {
+					case TOTAL:
+						if (!history.primed)
+							continue;
+						rx = history.lastRx;
+						tx = history.lastTx;
+						break;
+					default:
+						if (history.size == 0)
+							continue;
+						long totalNanos = 0, totalRx = 0, totalTx = 0;
+						for (int i = 0; i < history.size; i++) {
+							totalNanos += history.nanos[i];
+							totalRx += history.rx[i];
+							totalTx += history.tx[i];
+						}
+						if (measure == TopTalkers.Measure.RATE) {
+							rx = History.perSecond(totalRx, totalNanos);
+							tx = History.perSecond(totalTx, totalNanos);
+						} else {
+							rx = totalRx;
+							tx = totalTx;
+						}
+						break;
+					}
+					if (heap.accepts(rx, tx))
+						heap.offer(iface.getKey(), history.key, rx, tx);
+				}
+			}
+		}
+		return heap.result();
+	}
+
+	@Override
+	public void close() {
+		synchronized (lock) {
+			if (!closed) {
+				closed = true;
+				if (task != null)
+					task.cancel(false);
+				interfaces.clear();
+			}
+		}
+	}
+
+	private void sample(Interface iface, ColumnarInterfaceInformation info, long now, long gen) {
+		var size = info.size();
+		var order = iface.order;
+		var newOrder = order.length == size ? order : new History[size];
+		long rx = 0, tx = 0;
+		for (int i = 0; i < size; i++) {
+			var history = i < order.length ? order[i] : null;
+			if (history == null || !info.publicKeyEquals(i, history.key))
+				history = history(iface, info.publicKey(i));
+			history.generation = gen;
+			history.add(now, info.rx(i), info.tx(i));
+			rx += history.deltaRx;
+			tx += history.deltaTx;
+			newOrder[i] = history;
+		}
+		iface.order = newOrder;
+		iface.deltaRx = rx;
+		iface.deltaTx = tx;
+		expire(iface, size, gen);
+	}
+
+	private void sample(Interface iface, VpnInterfaceInformation info, long now, long gen) {
+		var peers = info.peers();
+		long rx = 0, tx = 0;
+		for (var peer : peers) {
+			var history = history(iface, peer.publicKey());
+			history.generation = gen;
+			history.add(now, peer.rx(), peer.tx());
+			rx += history.deltaRx;
+			tx += history.deltaTx;
+		}
+		iface.deltaRx = rx;
+		iface.deltaTx = tx;
+		expire(iface, peers.size(), gen);
+	}
+
+	private History history(Interface iface, String publicKey) {
+		var history = iface.peers.get(publicKey);
+		if (history == null) {
+			history = new History(publicKey, samples);
+			iface.peers.put(publicKey, history);
+		}
+		return history;
+	}
+
+	private void expire(Interface iface, int seen, long gen) {
+		if (iface.peers.size() > seen)
+			iface.peers.values().removeIf(h -> h.generation != gen);
+	}
+
+	private Optional<History> total(String interfaceName) {
+		return Optional.ofNullable(interfaces.get(interfaceName)).map(i -> i.total);
+	}
+
+	private Optional<History> peer(String interfaceName, String publicKey) {
+		return Optional.ofNullable(interfaces.get(interfaceName)).map(i -> i.peers.get(publicKey));
+	}
+
+	private void scheduledSample() {
+		try {
+			sample();
+		} catch (Exception e) {
+			LOG.error("Failed to sample traffic.", e);
+		}
+	}
+}
@@ -25,6 +25,7 @@ import java.io.IOException;
 import java.text.MessageFormat;
 import java.time.Instant;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -37,6 +38,7 @@ public final class VpnAdapter implements Closeable {
     private final List<String> allows = new ArrayList<>();
     private final PlatformService<?> service;
     private Optional<VpnAddress> ip;
+    private Optional<StartReport> startReport = Optional.empty();
 
     public VpnAdapter(PlatformService<?> service) {
         this(service, Optional.empty());
@@ -102,6 +104,10 @@ public final class VpnAdapter implements Closeable {
 	public void sync(VpnAdapterConfiguration cfg) throws IOException {
 		service.sync(this, cfg);
 	}
+
+	public void update(Collection<VpnPeer> peers) throws IOException {
+		service.update(this, peers);
+	}
 	
 	public Optional<NATMode> nat() throws IOException {
 		return service.getNat(this.address().nativeName());
@@ -119,6 +125,21 @@ public final class VpnAdapter implements Closeable {
         return ip.orElseThrow(() -> new IllegalStateException("No address."));
     }
 
+    /**
+     * Get the breakdown of where the time went when this adapter was started.
+     * Only available for adapters started by this runtime, not those found
+     * already running.
+     *
+     * @return start report
+     */
+    public Optional<StartReport> startReport() {
+        return startReport;
+    }
+
+    void startReport(StartReport startReport) {
+        this.startReport = Optional.of(startReport);
+    }
+
     public List<String> allows() {
         return allows;
     }
@@ -143,4 +164,31 @@ public final class VpnAdapter implements Closeable {
 	public void remove(String publicKey) throws IOException {
 		service.remove(this, publicKey);
 	}
+
+	public void remove(Collection<String> publicKeys) throws IOException {
+		service.remove(this, publicKeys);
+	}
+
+	/**
+	 * Add a listener to be notified of changes in the state of peers on this
+	 * adapter. See {@link PlatformService#addPeerListener(PeerListener)}.
+	 *
+	 * @param listener listener
+	 */
+	public void addPeerListener(PeerListener listener) {
+		service.addPeerListener(address().name(), listener);
+	}
+
+	public void removePeerListener(PeerListener listener) {
+		service.removePeerListener(address().name(), listener);
+	}
+
+	PlatformService<?> service() {
+		return service;
+	}
+
+	/* The address, if the adapter has been attached to an interface yet */
+	Optional<VpnAddress> optionalAddress() {
+		return ip;
+	}
 }
@@ -233,7 +233,7 @@ public interface VpnAdapterConfiguration extends Serializable {
 
         DefaultVpnAdapterConfiguration(AbstractBuilder<?> builder) {
             listenPort = builder.listenPort.orElse(0);
-            privateKey = builder.privateKey == null ? null : builder.privateKey.orElse(Keys.genkey().getBase64PrivateKey());
+            privateKey = builder.privateKey == null ? null : builder.privateKey.orElseGet(() -> Keys.genkey().getBase64PrivateKey());
             publicKey = builder.publicKey.orElseGet(() -> {
             	if(privateKey == null)
             		throw new IllegalStateException("No public key, and no private key, so public key cannot be derived.");
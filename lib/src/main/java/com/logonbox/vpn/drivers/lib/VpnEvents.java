@@ -0,0 +1,309 @@
+/**
+ * Copyright © 2023 LogonBox Limited (support@logonbox.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the “Software”), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies
+ * or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.logonbox.vpn.drivers.lib;
+
+import java.io.IOException;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * JDK Flight Recorder events for adapter lifecycle and privileged operations.
+ * Each event is begun when created, and committed when closed, so is intended
+ * to be used in a <code>try</code>-with-resources block around the operation
+ * it times.
+ * <p>
+ * When no recording is running (or these events are disabled in it), creating
+ * and committing an event costs close to nothing, so these may be left in
+ * place in production code.
+ */
+public final class VpnEvents {
+
+	private final static String PREFIX = "com.logonbox.vpn.";
+	private final static String CATEGORY = "LogonBox VPN";
+
+	private VpnEvents() {
+	}
+
+	/**
+	 * Work timed by an {@link Operation}, see {@link Operation#run(Task)}.
+	 */
+	@FunctionalInterface
+	public interface Task {
+		void run() throws IOException;
+	}
+
+	/**
+	 * Base of all timed operations.
+	 */
+	@StackTrace(false)
+	public static abstract class Operation extends Event implements AutoCloseable {
+
+		@Label("Interface")
+		@Description("The name of the interface operated on")
+		String interfaceName;
+
+		@Label("Failed")
+		@Description("Whether the operation failed")
+		boolean failed;
+
+		Operation(String interfaceName) {
+			this.interfaceName = interfaceName;
+			begin();
+		}
+
+		/**
+		 * Set the name of the interface, for when it is not known until part way
+		 * through the operation.
+		 *
+		 * @param interfaceName interface name
+		 */
+		public void interfaceName(String interfaceName) {
+			this.interfaceName = interfaceName;
+		}
+
+		/**
+		 * Mark the operation as failed.
+		 */
+		public void failed() {
+			this.failed = true;
+		}
+
+		/**
+		 * Run a task as this operation, marking the operation as failed if the
+		 * task throws, and committing it once done. The operation should not be
+		 * used after this.
+		 *
+		 * @param task task
+		 * @throws IOException on error
+		 */
+		public final void run(Task task) throws IOException {
+			try {
+				task.run();
+			} catch (IOException | RuntimeException e) {
+				failed();
+				throw e;
+			} finally {
+				close();
+			}
+		}
+
+		@Override
+		public void close() {
+			commit();
+		}
+	}
+
+	/**
+	 * Start of an adapter, including hooks and all of the platform specific
+	 * phases (see {@link Phase}).
+	 */
+	@Name(PREFIX + "Start")
+	@Label("Start")
+	@Category({ CATEGORY, "Lifecycle" })
+	@Description("Start of a VPN adapter")
+	public final static class Start extends Operation {
+
+		@Label("Peers")
+		int peers;
+
+		public Start(String interfaceName, int peers) {
+			super(interfaceName);
+			this.peers = peers;
+		}
+	}
+
+	/**
+	 * A single phase of starting an adapter, e.g. hooks, finding an address,
+	 * setting the WireGuard configuration, bringing the interface up, waiting for
+	 * the first handshake, DNS, routes or switching the default gateway. The same
+	 * phases are timed in a {@link StartReport}.
+	 */
+	@Name(PREFIX + "StartPhase")
+	@Label("Start Phase")
+	@Category({ CATEGORY, "Lifecycle" })
+	@Description("A single phase of starting a VPN adapter")
+	public final static class Phase extends Operation {
+
+		public final static String PRE_UP = "preUp";
+		public final static String FIND_ADDRESS = "findAddress";
+		public final static String RESOLVE_NAME = "resolveName";
+		public final static String CREATE_INTERFACE = "createInterface";
+		public final static String SETCONF = "setconf";
+		public final static String UP = "up";
+		public final static String HANDSHAKE = "handshake";
+		public final static String DNS = "dns";
+		public final static String ROUTES = "routes";
+		public final static String DEFAULT_GATEWAY = "defaultGateway";
+		public final static String POST_UP = "postUp";
+
+		@Label("Phase")
+		String phase;
+
+		@Label("Peers")
+		@Description("The number of peers in the configuration, or zero if not known in this phase")
+		int peers;
+
+		public Phase(String interfaceName, String phase, int peers) {
+			super(interfaceName);
+			this.phase = phase;
+			this.peers = peers;
+		}
+	}
+
+	/**
+	 * Stop of an adapter, including DNS, hooks and tearing down the interface.
+	 */
+	@Name(PREFIX + "Stop")
+	@Label("Stop")
+	@Category({ CATEGORY, "Lifecycle" })
+	@Description("Stop of a VPN adapter")
+	public final static class Stop extends Operation {
+
+		@Label("Peers")
+		int peers;
+
+		public Stop(String interfaceName, int peers) {
+			super(interfaceName);
+			this.peers = peers;
+		}
+	}
+
+	/**
+	 * Change of the WireGuard configuration of a running adapter, i.e.
+	 * reconfigure, sync, append or removal of peers.
+	 */
+	@Name(PREFIX + "Configure")
+	@Label("Configure")
+	@Category({ CATEGORY, "Configuration" })
+	@Description("Change of the configuration of a running VPN adapter")
+	public final static class Configure extends Operation {
+
+		public final static String RECONFIGURE = "reconfigure";
+		public final static String SYNC = "sync";
+		public final static String APPEND = "append";
+		public final static String UPDATE = "update";
+		public final static String REMOVE = "remove";
+
+		@Label("Operation")
+		String operation;
+
+		@Label("Peers")
+		@Description("The number of peers in the configuration applied, or the number updated or removed")
+		int peers;
+
+		public Configure(String interfaceName, String operation, int peers) {
+			super(interfaceName);
+			this.operation = operation;
+			this.peers = peers;
+		}
+	}
+
+	/**
+	 * A call to a {@link DNSProvider}.
+	 */
+	@Name(PREFIX + "DNS")
+	@Label("DNS")
+	@Category({ CATEGORY, "Configuration" })
+	@Description("A call to the DNS provider")
+	public final static class DNS extends Operation {
+
+		public final static String SET = "set";
+		public final static String UNSET = "unset";
+
+		@Label("Operation")
+		String operation;
+
+		@Label("Provider")
+		Class<?> provider;
+
+		@Label("Servers")
+		int servers;
+
+		public DNS(String interfaceName, String operation, Class<?> provider, int servers) {
+			super(interfaceName);
+			this.operation = operation;
+			this.provider = provider;
+			this.servers = servers;
+		}
+	}
+
+	/**
+	 * Addition or removal of firewall rules for an interface.
+	 */
+	@Name(PREFIX + "Firewall")
+	@Label("Firewall")
+	@Category({ CATEGORY, "Configuration" })
+	@Description("Addition or removal of firewall rules")
+	public final static class Firewall extends Operation {
+
+		public final static String ADD = "add";
+		public final static String REMOVE = "remove";
+
+		@Label("Operation")
+		String operation;
+
+		@Label("Backend")
+		String backend;
+
+		public Firewall(String interfaceName, String operation, String backend) {
+			super(interfaceName);
+			this.operation = operation;
+			this.backend = backend;
+		}
+	}
+
+	/**
+	 * A native command or elevated task run through the {@link SystemContext}
+	 * commands (see {@link CommandStatistics}).
+	 */
+	@Name(PREFIX + "Command")
+	@Label("Command")
+	@Category({ CATEGORY, "Commands" })
+	@Description("A native command or elevated task")
+	public final static class Command extends Operation {
+
+		@Label("Command")
+		String command;
+
+		@Label("Privileged")
+		boolean privileged;
+
+		public Command(boolean privileged) {
+			super(null);
+			this.privileged = privileged;
+		}
+
+		/**
+		 * Set the command line or task description. Only call when
+		 * {@link #shouldCommit()} is true, to avoid building it when not recording.
+		 *
+		 * @param command command
+		 */
+		public void command(String command) {
+			this.command = command;
+		}
+	}
+}
@@ -0,0 +1,270 @@
+/**
+ * Copyright © 2023 LogonBox Limited (support@logonbox.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the “Software”), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies
+ * or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.logonbox.vpn.drivers.lib;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * The differences between two snapshots of the same interface, as returned by
+ * {@link VpnInterfaceInformation#diff(VpnInterfaceInformation)}.
+ * <p>
+ * Peers are matched by a merge of the two snapshots sorted by public key,
+ * rather than by looking up every peer of one snapshot in the other. A
+ * snapshot already in key order is not sorted again.
+ * <p>
+ * As elsewhere, if a peer's counter goes backwards it is assumed to have
+ * restarted from zero, so the delta is the whole of the new value. The
+ * transfer of the interface as a whole is the sum of the peer deltas, so
+ * removing a peer does not look like a restart.
+ */
+public final class VpnInterfaceDiff {
+
+	/**
+	 * A peer present in both snapshots that changed in some way.
+	 *
+	 * @param previous          peer in the previous snapshot
+	 * @param current           peer in the current snapshot
+	 * @param handshake         whether there has been a new handshake
+	 * @param endpointChanged   whether the remote address changed
+	 * @param allowedIpsChanged whether the allowed IPs changed
+	 * @param rx                bytes received since the previous snapshot
+	 * @param tx                bytes sent since the previous snapshot
+	 */
+	public record PeerDelta(VpnPeerInformation previous, VpnPeerInformation current, boolean handshake,
+			boolean endpointChanged, boolean allowedIpsChanged, long rx, long tx) {
+
+		public String publicKey() {
+			return current.publicKey();
+		}
+	}
+
+	private final static Comparator<Keyed> ORDER = Comparator.comparing(Keyed::key);
+
+	private record Keyed(String key, VpnPeerInformation peer) {
+	}
+
+	private final VpnInterfaceInformation previous;
+	private final VpnInterfaceInformation current;
+	private final List<VpnPeerInformation> added;
+	private final List<VpnPeerInformation> removed;
+	private final List<PeerDelta> updated;
+	private final long rx;
+	private final long tx;
+
+	private VpnInterfaceDiff(VpnInterfaceInformation previous, VpnInterfaceInformation current,
+			List<VpnPeerInformation> added, List<VpnPeerInformation> removed, List<PeerDelta> updated) {
+		this.previous = previous;
+		this.current = current;
+		this.added = Collections.unmodifiableList(added);
+		this.removed = Collections.unmodifiableList(removed);
+		this.updated = Collections.unmodifiableList(updated);
+
+		long rx = 0, tx = 0;
+		for (var delta : updated) {
+			rx += delta.rx();
+			tx += delta.tx();
+		}
+		for (var peer : added) {
+			rx += peer.rx();
+			tx += peer.tx();
+		}
+		this.rx = rx;
+		this.tx = tx;
+	}
+
+	/**
+	 * Get the differences between two snapshots of the same interface.
+	 *
+	 * @param previous previous snapshot
+	 * @param current  current snapshot
+	 * @return differences
+	 */
+	public static VpnInterfaceDiff between(VpnInterfaceInformation previous, VpnInterfaceInformation current) {
+		var prev = sorted(previous);
+		var curr = sorted(current);
+		var added = new ArrayList<VpnPeerInformation>();
+		var removed = new ArrayList<VpnPeerInformation>();
+		var updated = new ArrayList<PeerDelta>();
+
+		int i = 0, j = 0;
+		while (i < prev.length || j < curr.length) {
+			var cmp = i == prev.length ? 1 : j == curr.length ? -1 : prev[i].key.compareTo(curr[j].key);
+			if (cmp < 0) {
+				removed.add(prev[i++].peer);
+			} else if (cmp > 0) {
+				added.add(curr[j++].peer);
+			} else {
+				var delta = delta(prev[i++].peer, curr[j++].peer);
+				if (delta != null)
+					updated.add(delta);
+			}
+		}
+
+		return new VpnInterfaceDiff(previous, current, added, removed, updated);
+	}
+
+	/**
+	 * Get the previous snapshot.
+	 *
+	 * @return previous
+	 */
+	public VpnInterfaceInformation previous() {
+		return previous;
+	}
+
+	/**
+	 * Get the current snapshot.
+	 *
+	 * @return current
+	 */
+	public VpnInterfaceInformation current() {
+		return current;
+	}
+
+	/**
+	 * Get if nothing at all changed.
+	 *
+	 * @return empty
+	 */
+	public boolean isEmpty() {
+		return added.isEmpty() && removed.isEmpty() && updated.isEmpty();
+	}
+
+	/**
+	 * Get the peers only in the current snapshot, in key order.
+	 *
+	 * @return added peers
+	 */
+	public List<VpnPeerInformation> added() {
+		return added;
+	}
+
+	/**
+	 * Get the peers only in the previous snapshot, in key order.
+	 *
+	 * @return removed peers
+	 */
+	public List<VpnPeerInformation> removed() {
+		return removed;
+	}
+
+	/**
+	 * Get all peers in both snapshots that changed in any way, including just
+	 * their counters, in key order.
+	 *
+	 * @return updated peers
+	 */
+	public List<PeerDelta> updated() {
+		return updated;
+	}
+
+	/**
+	 * Get the peers in both snapshots that have had a new handshake.
+	 *
+	 * @return peers with a new handshake
+	 */
+	public List<PeerDelta> handshakes() {
+		return updated.stream().filter(PeerDelta::handshake).toList();
+	}
+
+	/**
+	 * Get the peers in both snapshots whose remote address changed.
+	 *
+	 * @return peers with a changed endpoint
+	 */
+	public List<PeerDelta> endpointChanges() {
+		return updated.stream().filter(PeerDelta::endpointChanged).toList();
+	}
+
+	/**
+	 * Get the peers in both snapshots whose allowed IPs changed.
+	 *
+	 * @return peers with changed allowed IPs
+	 */
+	public List<PeerDelta> allowedIpsChanges() {
+		return updated.stream().filter(PeerDelta::allowedIpsChanged).toList();
+	}
+
+	/**
+	 * Get the bytes received by the interface since the previous snapshot, i.e.
+	 * the received deltas of the updated peers plus everything received by the
+	 * added peers.
+	 *
+	 * @return bytes received
+	 */
+	public long rx() {
+		return rx;
+	}
+
+	/**
+	 * Get the bytes sent by the interface since the previous snapshot, i.e. the
+	 * sent deltas of the updated peers plus everything sent by the added peers.
+	 *
+	 * @return bytes sent
+	 */
+	public long tx() {
+		return tx;
+	}
+
+	private static PeerDelta delta(VpnPeerInformation previous, VpnPeerInformation current) {
+		var handshake = current.lastHandshake().isAfter(previous.lastHandshake());
+		var endpointChanged = !Objects.equals(previous.remoteAddress(), current.remoteAddress());
+		var allowedIpsChanged = !sameElements(previous.allowedIps(), current.allowedIps());
+		var rx = delta(previous.rx(), current.rx());
+		var tx = delta(previous.tx(), current.tx());
+		if (handshake || endpointChanged || allowedIpsChanged || rx != 0 || tx != 0)
+			return new PeerDelta(previous, current, handshake, endpointChanged, allowedIpsChanged, rx, tx);
+		return null;
+	}
+
+	private static long delta(long previous, long current) {
+		return current >= previous ? current - previous : current;
+	}
+
+	/* Allowed IPs are a handful at most, and usually in the same order */
+	private static boolean sameElements(List<String> a, List<String> b) {
+		if (a.size() != b.size())
+			return false;
+		if (a.equals(b))
+			return true;
+		return a.containsAll(b) && b.containsAll(a);
+	}
+
+	private static Keyed[] sorted(VpnInterfaceInformation info) {
+		var peers = info.peers();
+		var keyed = new Keyed[peers.size()];
+		var inOrder = true;
+		for (int i = 0; i < keyed.length; i++) {
+			var peer = peers.get(i);
+			keyed[i] = new Keyed(peer.publicKey(), peer);
+			if (inOrder && i > 0 && keyed[i - 1].key.compareTo(keyed[i].key) > 0)
+				inOrder = false;
+		}
+		if (!inOrder)
+			Arrays.sort(keyed, ORDER);
+		return keyed;
+	}
+}
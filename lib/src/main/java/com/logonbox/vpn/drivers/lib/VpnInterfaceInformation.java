@@ -98,4 +98,16 @@ public interface VpnInterfaceInformation extends Serializable {
         return Optional.empty();
     }
 
+    /**
+     * Get the differences between an earlier snapshot of this interface and
+     * this one, i.e. the peers added and removed, and those with a new
+     * handshake, changed endpoint, changed allowed IPs or transfer since.
+     * 
+     * @param previous earlier snapshot of the same interface
+     * @return differences
+     */
+    default VpnInterfaceDiff diff(VpnInterfaceInformation previous) {
+        return VpnInterfaceDiff.between(previous, this);
+    }
+
 }
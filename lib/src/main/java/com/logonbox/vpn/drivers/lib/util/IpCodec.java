@@ -0,0 +1,610 @@
+/**
+ * Copyright © 2023 LogonBox Limited (support@logonbox.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the “Software”), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies
+ * or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.logonbox.vpn.drivers.lib.util;
+
+import java.math.BigInteger;
+
+import com.github.jgonian.ipmath.AbstractIp;
+import com.github.jgonian.ipmath.AbstractIpRange;
+import com.github.jgonian.ipmath.Ipv4;
+import com.github.jgonian.ipmath.Ipv4Range;
+import com.github.jgonian.ipmath.Ipv6;
+import com.github.jgonian.ipmath.Ipv6Range;
+
+/**
+ * Parses and formats IPv4 and IPv6 addresses and CIDR ranges directly from a
+ * {@link CharSequence}, without throwing exceptions and without allocating.
+ * <p>
+ * An address is held as a pair of <code>long</code> values (the high and low 64
+ * bits, with IPv4 addresses occupying the lower 32 bits of the low value) and a
+ * prefix length. The commons-ip-math types are only created on request, see
+ * {@link Cidr#toIp()} and {@link Cidr#toRange()}.
+ * <p>
+ * Accepted syntax follows that of {@link Ipv4#of(String)} and
+ * {@link Ipv6#of(String)}, i.e. leading and trailing whitespace is ignored,
+ * IPv4 octets may not have leading zeros, and IPv6 addresses may be compressed
+ * and have a trailing dotted IPv4 address. Formatting produces the same
+ * canonical form as those classes.
+ */
+public final class IpCodec {
+
+	/**
+	 * Address family of an invalid address.
+	 */
+	public final static int INVALID = 0;
+
+	/**
+	 * Address family of an IPv4 address.
+	 */
+	public final static int IPV4 = 4;
+
+	/**
+	 * Address family of an IPv6 address.
+	 */
+	public final static int IPV6 = 6;
+
+	private final static char[] HEX = "0123456789abcdef".toCharArray();
+
+	/**
+	 * A mutable, re-usable holder for a parsed address and prefix.
+	 */
+	public final static class Cidr {
+		private int family;
+		private long hi;
+		private long lo;
+		private byte prefix;
+
+		/**
+		 * Get the address family, one of {@link IpCodec#IPV4}, {@link IpCodec#IPV6}
+		 * or {@link IpCodec#INVALID} if nothing has been successfully parsed into
+		 * this holder.
+		 *
+		 * @return family
+		 */
+		public int family() {
+			return family;
+		}
+
+		public boolean valid() {
+			return family != INVALID;
+		}
+
+		public boolean ipv4() {
+			return family == IPV4;
+		}
+
+		public boolean ipv6() {
+			return family == IPV6;
+		}
+
+		/**
+		 * High 64 bits of the address. Always zero for IPv4.
+		 *
+		 * @return high bits
+		 */
+		public long hi() {
+			return hi;
+		}
+
+		/**
+		 * Low 64 bits of the address.
+		 *
+		 * @return low bits
+		 */
+		public long lo() {
+			return lo;
+		}
+
+		/**
+		 * Prefix length. For a single address this is the same as
+		 * {@link #bitSize()}.
+		 *
+		 * @return prefix length
+		 */
+		public int prefix() {
+			return prefix & 0xff;
+		}
+
+		public int bitSize() {
+			return family == IPV4 ? 32 : 128;
+		}
+
+		/**
+		 * Get if this is a single address, i.e. the prefix covers all bits.
+		 *
+		 * @return single address
+		 */
+		public boolean single() {
+			return prefix() == bitSize();
+		}
+
+		/**
+		 * High 64 bits of the first address in the range.
+		 *
+		 * @return high bits of first address
+		 */
+		public long firstHi() {
+			return hi & hiMask();
+		}
+
+		/**
+		 * Low 64 bits of the first address in the range.
+		 *
+		 * @return low bits of first address
+		 */
+		public long firstLo() {
+			return lo & loMask();
+		}
+
+		/**
+		 * High 64 bits of the last address in the range.
+		 *
+		 * @return high bits of last address
+		 */
+		public long lastHi() {
+			return family == IPV4 ? 0 : hi | ~hiMask();
+		}
+
+		/**
+		 * Low 64 bits of the last address in the range.
+		 *
+		 * @return low bits of last address
+		 */
+		public long lastLo() {
+			return family == IPV4 ? lo | (~loMask() & 0xffffffffL) : lo | ~loMask();
+		}
+
+		/**
+		 * Get if the range contains an address of the same family.
+		 *
+		 * @param addrHi high bits of address
+		 * @param addrLo low bits of address
+		 * @return contains
+		 */
+		public boolean contains(long addrHi, long addrLo) {
+			return compareUnsigned(addrHi, addrLo, firstHi(), firstLo()) >= 0
+					&& compareUnsigned(addrHi, addrLo, lastHi(), lastLo()) <= 0;
+		}
+
+		/**
+		 * Create the commons-ip-math address for this holder.
+		 *
+		 * @return address
+		 * @throws IllegalStateException if not valid
+		 */
+		public AbstractIp<?, ?> toIp() {
+			checkValid();
+			if (family == IPV4)
+				return Ipv4.of(lo);
+			else
+				return Ipv6.of(toBigInteger(hi, lo));
+		}
+
+		/**
+		 * Create the commons-ip-math range for this holder, from the first to the
+		 * last address covered by the prefix.
+		 *
+		 * @return range
+		 * @throws IllegalStateException if not valid
+		 */
+		public AbstractIpRange<?, ?> toRange() {
+			checkValid();
+			if (family == IPV4)
+				return Ipv4Range.from(firstLo()).to(lastLo());
+			else
+				return Ipv6Range.from(toBigInteger(firstHi(), firstLo()))
+						.to(toBigInteger(lastHi(), lastLo()));
+		}
+
+		/**
+		 * Append the address and, if this is not a single address, the prefix.
+		 *
+		 * @param buf buffer
+		 * @return buffer
+		 */
+		public StringBuilder appendTo(StringBuilder buf) {
+			appendAddressTo(buf);
+			if (!single())
+				buf.append('/').append(prefix());
+			return buf;
+		}
+
+		/**
+		 * Append the address only.
+		 *
+		 * @param buf buffer
+		 * @return buffer
+		 */
+		public StringBuilder appendAddressTo(StringBuilder buf) {
+			checkValid();
+			if (family == IPV4)
+				return formatIpv4(lo, buf);
+			else
+				return formatIpv6(hi, lo, buf);
+		}
+
+		/**
+		 * Get the address followed by the prefix, even for a single address.
+		 *
+		 * @return masked address
+		 */
+		public String toMaskedString() {
+			return appendAddressTo(new StringBuilder(43)).append('/').append(prefix()).toString();
+		}
+
+		@Override
+		public String toString() {
+			return valid() ? appendTo(new StringBuilder(43)).toString() : "<invalid>";
+		}
+
+		private long hiMask() {
+			var prefix = prefix();
+			if (family == IPV4 || prefix >= 64)
+				return -1L;
+			return prefix == 0 ? 0 : -1L << (64 - prefix);
+		}
+
+		private long loMask() {
+			var prefix = prefix();
+			if (family == IPV4)
+				return prefix == 0 ? 0 : (0xffffffffL << (32 - prefix)) & 0xffffffffL;
+			if (prefix <= 64)
+				return 0;
+			return -1L << (128 - prefix);
+		}
+
+		private void checkValid() {
+			if (family == INVALID)
+				throw new IllegalStateException("Not a valid address.");
+		}
+
+		private boolean set(int family, long hi, long lo, int prefix) {
+			this.family = family;
+			this.hi = hi;
+			this.lo = lo;
+			this.prefix = (byte) prefix;
+			return true;
+		}
+
+		private boolean invalid() {
+			family = INVALID;
+			hi = lo = prefix = 0;
+			return false;
+		}
+	}
+
+	private IpCodec() {
+	}
+
+	/**
+	 * Get the address family of a single address (no prefix) without parsing it
+	 * into a holder.
+	 *
+	 * @param str string
+	 * @return family, one of {@link #IPV4}, {@link #IPV6} or {@link #INVALID}
+	 */
+	public static int family(CharSequence str) {
+		return parse(str, false, null);
+	}
+
+	public static boolean isIpv4(CharSequence str) {
+		return family(str) == IPV4;
+	}
+
+	public static boolean isIpv6(CharSequence str) {
+		return family(str) == IPV6;
+	}
+
+	public static boolean isAddress(CharSequence str) {
+		return family(str) != INVALID;
+	}
+
+	/**
+	 * Parse a single address (no prefix). The prefix of the holder will be set
+	 * to the bit size of the address.
+	 *
+	 * @param str  string
+	 * @param into holder
+	 * @return valid
+	 */
+	public static boolean parseAddress(CharSequence str, Cidr into) {
+		return parse(str, false, into) != INVALID;
+	}
+
+	/**
+	 * Parse an address with an optional <code>/prefix</code>. If there is no
+	 * prefix, it will be set to the bit size of the address.
+	 *
+	 * @param str  string
+	 * @param into holder
+	 * @return valid
+	 */
+	public static boolean parseCidr(CharSequence str, Cidr into) {
+		return parse(str, true, into) != INVALID;
+	}
+
+	/**
+	 * Parse an IPv4 address from part of a string.
+	 *
+	 * @param str   string
+	 * @param start start index
+	 * @param end   end index (exclusive)
+	 * @return unsigned address, or <code>-1</code> if invalid
+	 */
+	public static long parseIpv4(CharSequence str, int start, int end) {
+		long val = 0;
+		var octets = 0;
+		var octet = -1;
+		for (int i = start; i < end; i++) {
+			var ch = str.charAt(i);
+			if (ch >= '0' && ch <= '9') {
+				if (octet == 0)
+					return -1;
+				octet = octet == -1 ? ch - '0' : (octet * 10) + (ch - '0');
+				if (octet > 255)
+					return -1;
+			} else if (ch == '.' && octet != -1 && octets < 3) {
+				val = (val << 8) | octet;
+				octets++;
+				octet = -1;
+			} else
+				return -1;
+		}
+		if (octet == -1 || octets != 3)
+			return -1;
+		return (val << 8) | octet;
+	}
+
+	/**
+	 * Append an IPv4 address in dotted decimal format.
+	 *
+	 * @param addr unsigned address
+	 * @param buf  buffer
+	 * @return buffer
+	 */
+	public static StringBuilder formatIpv4(long addr, StringBuilder buf) {
+		return buf.append((addr >>> 24) & 0xff).append('.').append((addr >>> 16) & 0xff).append('.')
+				.append((addr >>> 8) & 0xff).append('.').append(addr & 0xff);
+	}
+
+	/**
+	 * Append an IPv6 address in the canonical format described by RFC 5952, i.e.
+	 * lower case, no leading zeros and the longest run of two or more zero groups
+	 * compressed.
+	 *
+	 * @param hi  high bits
+	 * @param lo  low bits
+	 * @param buf buffer
+	 * @return buffer
+	 */
+	public static StringBuilder formatIpv6(long hi, long lo, StringBuilder buf) {
+		var bestStart = -1;
+		var bestLen = 1;
+		var runStart = -1;
+		for (int i = 0; i < 8; i++) {
+			if (group(hi, lo, i) == 0) {
+				if (runStart == -1)
+					runStart = i;
+				if (i - runStart + 1 > bestLen) {
+					bestStart = runStart;
+					bestLen = i - runStart + 1;
+				}
+			} else
+				runStart = -1;
+		}
+
+		for (int i = 0; i < 8; i++) {
+			if (i == bestStart) {
+				buf.append("::");
+				i += bestLen - 1;
+				continue;
+			}
+			if (i > 0 && i != bestStart + bestLen)
+				buf.append(':');
+			var group = group(hi, lo, i);
+			var started = false;
+			for (int shift = 12; shift >= 0; shift -= 4) {
+				var nibble = (group >>> shift) & 0xf;
+				if (started || nibble != 0 || shift == 0) {
+					buf.append(HEX[nibble]);
+					started = true;
+				}
+			}
+		}
+		return buf;
+	}
+
+	/**
+	 * Compare two 128 bit values as unsigned numbers.
+	 *
+	 * @param hi1 high bits of first value
+	 * @param lo1 low bits of first value
+	 * @param hi2 high bits of second value
+	 * @param lo2 low bits of second value
+	 * @return comparison
+	 */
+	public static int compareUnsigned(long hi1, long lo1, long hi2, long lo2) {
+		var c = Long.compareUnsigned(hi1, hi2);
+		return c == 0 ? Long.compareUnsigned(lo1, lo2) : c;
+	}
+
+	static BigInteger toBigInteger(long hi, long lo) {
+		var bytes = new byte[17];
+		for (int i = 0; i < 8; i++) {
+			bytes[1 + i] = (byte) (hi >>> (56 - (8 * i)));
+			bytes[9 + i] = (byte) (lo >>> (56 - (8 * i)));
+		}
+		return new BigInteger(bytes);
+	}
+
+	private static int group(long hi, long lo, int idx) {
+		return (int) ((idx < 4 ? hi >>> (48 - (16 * idx)) : lo >>> (48 - (16 * (idx - 4)))) & 0xffff);
+	}
+
+	private static int parse(CharSequence str, boolean allowPrefix, Cidr into) {
+		var start = 0;
+		var end = str.length();
+		while (start < end && Character.isWhitespace(str.charAt(start)))
+			start++;
+		while (end > start && Character.isWhitespace(str.charAt(end - 1)))
+			end--;
+
+		var slash = -1;
+		var colon = false;
+		for (int i = start; i < end; i++) {
+			var ch = str.charAt(i);
+			if (ch == '/') {
+				slash = i;
+				break;
+			} else if (ch == ':')
+				colon = true;
+		}
+		if (slash != -1 && !allowPrefix)
+			return into == null ? INVALID : fail(into);
+		var addrEnd = slash == -1 ? end : slash;
+
+		if (colon) {
+			var prefix = slash == -1 ? 128 : parsePrefix(str, slash + 1, end, 128);
+			if (prefix == -1 || !parseIpv6(str, start, addrEnd, into, prefix))
+				return into == null ? INVALID : fail(into);
+			return IPV6;
+		} else {
+			var addr = parseIpv4(str, start, addrEnd);
+			var prefix = slash == -1 ? 32 : parsePrefix(str, slash + 1, end, 32);
+			if (addr == -1 || prefix == -1)
+				return into == null ? INVALID : fail(into);
+			if (into != null)
+				into.set(IPV4, 0, addr, prefix);
+			return IPV4;
+		}
+	}
+
+	private static int fail(Cidr into) {
+		into.invalid();
+		return INVALID;
+	}
+
+	private static int parsePrefix(CharSequence str, int start, int end, int max) {
+		if (start == end || end - start > 3)
+			return -1;
+		var prefix = 0;
+		for (int i = start; i < end; i++) {
+			var ch = str.charAt(i);
+			if (ch < '0' || ch > '9')
+				return -1;
+			prefix = (prefix * 10) + (ch - '0');
+		}
+		return prefix > max ? -1 : prefix;
+	}
+
+	private static boolean parseIpv6(CharSequence str, int start, int end, Cidr into, int prefix) {
+		long headHi = 0, headLo = 0, tailHi = 0, tailLo = 0;
+		var headGroups = 0;
+		var tailGroups = 0;
+		var compressed = false;
+		var i = start;
+
+		if (end - start >= 2 && str.charAt(i) == ':' && str.charAt(i + 1) == ':') {
+			compressed = true;
+			i += 2;
+		}
+
+		while (i < end) {
+			var groupStart = i;
+			var digits = 0;
+			long val = 0;
+			var bits = 16;
+			while (i < end) {
+				var d = hex(str.charAt(i));
+				if (d == -1)
+					break;
+				if (++digits > 4)
+					return false;
+				val = (val << 4) | d;
+				i++;
+			}
+
+			if (i < end && str.charAt(i) == '.') {
+				/* Trailing embedded IPv4 address, which occupies two groups */
+				val = parseIpv4(str, groupStart, end);
+				if (val == -1)
+					return false;
+				bits = 32;
+				i = end;
+			} else if (digits == 0)
+				return false;
+
+			if (compressed) {
+				tailHi = (tailHi << bits) | (tailLo >>> (64 - bits));
+				tailLo = (tailLo << bits) | val;
+				tailGroups += bits / 16;
+			} else {
+				headHi = (headHi << bits) | (headLo >>> (64 - bits));
+				headLo = (headLo << bits) | val;
+				headGroups += bits / 16;
+			}
+			if (headGroups + tailGroups > 8)
+				return false;
+
+			if (i == end)
+				break;
+			if (str.charAt(i++) != ':' || i == end)
+				return false;
+			if (str.charAt(i) == ':') {
+				if (compressed)
+					return false;
+				compressed = true;
+				i++;
+			}
+		}
+
+		if (compressed) {
+			if (headGroups + tailGroups > 7)
+				return false;
+			var shift = 16 * (8 - headGroups);
+			if (shift >= 64) {
+				headHi = shift == 128 ? 0 : headLo << (shift - 64);
+				headLo = 0;
+			} else {
+				headHi = (headHi << shift) | (headLo >>> (64 - shift));
+				headLo = headLo << shift;
+			}
+			headHi |= tailHi;
+			headLo |= tailLo;
+		} else if (headGroups != 8)
+			return false;
+
+		if (into != null)
+			into.set(IPV6, headHi, headLo, prefix);
+		return true;
+	}
+
+	private static int hex(char ch) {
+		if (ch >= '0' && ch <= '9')
+			return ch - '0';
+		else if (ch >= 'a' && ch <= 'f')
+			return ch - 'a' + 10;
+		else if (ch >= 'A' && ch <= 'F')
+			return ch - 'A' + 10;
+		else
+			return -1;
+	}
+}
@@ -25,28 +25,26 @@ import java.util.List;
 
 import com.github.jgonian.ipmath.AbstractIp;
 import com.github.jgonian.ipmath.AbstractIpRange;
-import com.github.jgonian.ipmath.Ipv4;
 import com.github.jgonian.ipmath.Ipv4Range;
-import com.github.jgonian.ipmath.Ipv6;
 import com.github.jgonian.ipmath.Ipv6Range;
 
 public class IpUtil {
 	
 	public static AbstractIp<?, ?> parse(String ip) {
-		try {
-			return Ipv4.of(ip);
-		}
-		catch(IllegalArgumentException iae) {
-			return Ipv6.of(ip);
-		}
+		var cidr = new IpCodec.Cidr();
+		if(IpCodec.parseAddress(ip, cidr))
+			return cidr.toIp();
+		throw new IllegalArgumentException(String.format("Invalid IP address: '%s'", ip));
 	}
 
 	public static AbstractIpRange<?,?> rangeFrom(String range) {
-		try {
+		var cidr = new IpCodec.Cidr();
+		if(IpCodec.parseCidr(range, cidr))
+			return cidr.toRange();
+		else if(range.indexOf(':') == -1)
 			return Ipv4Range.parse(range);
-		} catch(IllegalArgumentException e) {
+		else
 			return Ipv6Range.parse(range);
-		}
 	}
 
 	public static String toIEEE802(byte[] mac) {
@@ -55,80 +53,40 @@ public class IpUtil {
 	}
 	
 	public static String[] filterIpV4Addresses(String[] address) {
-		List<String> l = new ArrayList<>();
-		if (address != null) {
-			for (String a : address) {
-				try {
-					Ipv4.of(a);
-					l.add(a);
-				} catch (IllegalArgumentException iae) {
-				}
-			}
-		}
-		return l.toArray(new String[0]);
+		return filter(address, IpCodec.IPV4, true);
 	}
 	
 	public static String[] filterIpV6Addresses(String[] address) {
-		List<String> l = new ArrayList<>();
-		if (address != null) {
-			for (String a : address) {
-				try {
-					Ipv6.of(a);
-					l.add(a);
-				} catch (IllegalArgumentException iae) {
-				}
-			}
-		}
-		return l.toArray(new String[0]);
+		return filter(address, IpCodec.IPV6, true);
 	}
 
 	public static String[] filterAddresses(String[] address) {
-		List<String> l = new ArrayList<>();
-		if (address != null) {
-			for (String a : address) {
-				try {
-					Ipv4.of(a);
-					l.add(a);
-				} catch (IllegalArgumentException iae) {
-					try {
-						Ipv6.of(a);
-						l.add(a);
-					} catch (IllegalArgumentException iae2) {
-
-					}
-				}
-			}
-		}
-		return l.toArray(new String[0]);
+		return filter(address, IpCodec.INVALID, false);
 	}
 
 	public static String[] filterNames(String[] address) {
-		List<String> l = new ArrayList<>();
-		if (address != null) {
-			for (String a : address) {
-				try {
-					Ipv4.of(a);
-					continue;
-				} catch (IllegalArgumentException iae) {
-					try {
-						Ipv6.of(a);
-						continue;
-					} catch (IllegalArgumentException iae2) {
-
-					}
-				}
-				l.add(a);
-			}
-		}
-		return l.toArray(new String[0]);
+		return filter(address, IpCodec.INVALID, true);
 	}
 
 	public static String normalizeMasked(String address) {
 		if(address.contains("/"))
 			return address;
 		else {
-			var a  = IpUtil.parse(address);
-			return a.toString() + "/" + a.bitSize();
+			var cidr = new IpCodec.Cidr();
+			if(IpCodec.parseAddress(address, cidr))
+				return cidr.toMaskedString();
+			throw new IllegalArgumentException(String.format("Invalid IP address: '%s'", address));
+		}
+	}
+
+	private static String[] filter(String[] address, int family, boolean match) {
+		List<String> l = new ArrayList<>();
+		if (address != null) {
+			for (String a : address) {
+				if((IpCodec.family(a) == family) == match)
+					l.add(a);
+			}
 		}
+		return l.toArray(new String[0]);
 	}
 }
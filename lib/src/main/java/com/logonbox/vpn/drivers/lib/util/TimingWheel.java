@@ -0,0 +1,287 @@
+/**
+ * Copyright © 2023 LogonBox Limited (support@logonbox.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the “Software”), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies
+ * or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.logonbox.vpn.drivers.lib.util;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.OptionalLong;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * A hierarchical timing wheel, holding a deadline for each of a set of keys.
+ * <p>
+ * Scheduling, rescheduling and cancelling a key are constant time, and
+ * {@link #advance(long, Consumer)} only visits the keys that expire (plus the
+ * occasional cascade of a higher level slot into the level below), so the cost
+ * of a tick does not grow with the number of keys held.
+ * <p>
+ * Each level has the same number of slots, each slot in a level covering all
+ * of the slots of the level below it. Deadlines too far in the future for the
+ * top level are held in its last slot and re-filed as the wheel turns.
+ * Instances are not thread safe.
+ *
+ * @param <K> type of key
+ */
+public final class TimingWheel<K> {
+
+	private final static class Node<K> {
+		private final K key;
+		private long deadline;
+		private long tick;
+		private int bucket = -1;
+		private Node<K> prev;
+		private Node<K> next;
+
+		private Node(K key) {
+			this.key = key;
+		}
+	}
+
+	private final long tickMillis;
+	private final int bits;
+	private final int mask;
+	private final int levels;
+	private final Node<K>[] buckets;
+	private final Map<K, Node<K>> nodes = new HashMap<>();
+
+	private long currentTick;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param tickMillis    resolution of the wheel in milliseconds
+	 * @param slotsPerLevel slots in each level, must be a power of two
+	 * @param levels        number of levels
+	 * @param nowMillis     current time in milliseconds
+	 */
+	public TimingWheel(long tickMillis, int slotsPerLevel, int levels, long nowMillis) {
+		if (tickMillis < 1)
+			throw new IllegalArgumentException("Tick must be at least one millisecond.");
+		if (slotsPerLevel < 2 || Integer.bitCount(slotsPerLevel) != 1)
+			throw new IllegalArgumentException("Slots per level must be a power of two.");
+		if (levels < 1 || levels * Integer.numberOfTrailingZeros(slotsPerLevel) > 62)
+			throw new IllegalArgumentException("Invalid number of levels.");
+		this.tickMillis = tickMillis;
+		this.bits = Integer.numberOfTrailingZeros(slotsPerLevel);
+		this.mask = slotsPerLevel - 1;
+		this.levels = levels;
+		this.buckets = newBuckets(slotsPerLevel * levels);
+		this.currentTick = nowMillis / tickMillis;
+	}
+
+	/**
+	 * Get the number of keys held.
+	 *
+	 * @return size
+	 */
+	public int size() {
+		return nodes.size();
+	}
+
+	/**
+	 * Get if the wheel holds a deadline for a key.
+	 *
+	 * @param key key
+	 * @return contains key
+	 */
+	public boolean contains(K key) {
+		return nodes.containsKey(key);
+	}
+
+	/**
+	 * Get the deadline held for a key, if any.
+	 *
+	 * @param key key
+	 * @return deadline in milliseconds
+	 */
+	public OptionalLong deadline(K key) {
+		var node = nodes.get(key);
+		return node == null ? OptionalLong.empty() : OptionalLong.of(node.deadline);
+	}
+
+	/**
+	 * Set the deadline for a key, replacing any existing deadline. Deadlines that
+	 * have already passed will expire on the next {@link #advance(long, Consumer)}.
+	 *
+	 * @param key            key
+	 * @param deadlineMillis deadline in milliseconds
+	 */
+	public void schedule(K key, long deadlineMillis) {
+		var node = nodes.get(key);
+		if (node == null) {
+			node = new Node<>(key);
+			nodes.put(key, node);
+		} else {
+			if (node.deadline == deadlineMillis)
+				return;
+			unlink(node);
+		}
+		node.deadline = deadlineMillis;
+		node.tick = Math.max(currentTick, ceilDiv(deadlineMillis, tickMillis));
+		file(node);
+	}
+
+	/**
+	 * Remove any deadline held for a key.
+	 *
+	 * @param key key
+	 * @return whether there was a deadline to remove
+	 */
+	public boolean cancel(K key) {
+		var node = nodes.remove(key);
+		if (node == null)
+			return false;
+		unlink(node);
+		return true;
+	}
+
+	/**
+	 * Remove the deadlines for all keys matching a filter.
+	 *
+	 * @param filter filter
+	 * @return whether any deadlines were removed
+	 */
+	public boolean removeIf(Predicate<K> filter) {
+		var removed = false;
+		for (var it = nodes.values().iterator(); it.hasNext();) {
+			var node = it.next();
+			if (filter.test(node.key)) {
+				it.remove();
+				unlink(node);
+				removed = true;
+			}
+		}
+		return removed;
+	}
+
+	/**
+	 * Remove all keys.
+	 */
+	public void clear() {
+		nodes.clear();
+		for (int i = 0; i < buckets.length; i++)
+			buckets[i] = null;
+	}
+
+	/**
+	 * Turn the wheel up to the given time, removing and passing on every key whose
+	 * deadline has been reached.
+	 *
+	 * @param nowMillis current time in milliseconds
+	 * @param expired   receives expired keys
+	 */
+	public void advance(long nowMillis, Consumer<K> expired) {
+		var targetTick = nowMillis / tickMillis;
+
+		/* Keys due on the current tick, including ones filed since it was last turned */
+		expire(currentTick & mask, expired);
+
+		while (currentTick < targetTick) {
+			if (nodes.isEmpty()) {
+				currentTick = targetTick;
+				break;
+			}
+			currentTick++;
+
+			/* Cascade from the highest level that has come round, so keys may fall more than one level */
+			for (int level = levels - 1; level > 0; level--) {
+				if ((currentTick & ((1L << (bits * level)) - 1)) == 0)
+					cascade(level);
+			}
+			expire(currentTick & mask, expired);
+		}
+	}
+
+	private void cascade(int level) {
+		var bucket = level * (mask + 1) + (int) ((currentTick >>> (bits * level)) & mask);
+		var node = buckets[bucket];
+		buckets[bucket] = null;
+		while (node != null) {
+			var next = node.next;
+			node.prev = node.next = null;
+			node.bucket = -1;
+			file(node);
+			node = next;
+		}
+	}
+
+	private void expire(long slot, Consumer<K> expired) {
+		var bucket = (int) slot;
+		var node = buckets[bucket];
+		buckets[bucket] = null;
+		while (node != null) {
+			var next = node.next;
+			node.prev = node.next = null;
+			node.bucket = -1;
+			if (node.tick <= currentTick) {
+				nodes.remove(node.key);
+				expired.accept(node.key);
+			} else
+				file(node);
+			node = next;
+		}
+	}
+
+	private void file(Node<K> node) {
+		var delta = node.tick - currentTick;
+		int bucket = -1;
+		for (int level = 0; level < levels; level++) {
+			if (delta < (1L << (bits * (level + 1)))) {
+				bucket = level * (mask + 1) + (int) ((node.tick >>> (bits * level)) & mask);
+				break;
+			}
+		}
+		if (bucket == -1) {
+			/* Beyond the top level, park in the slot before the current one comes round again */
+			var top = levels - 1;
+			bucket = top * (mask + 1) + (int) (((currentTick >>> (bits * top)) - 1) & mask);
+		}
+		node.bucket = bucket;
+		node.next = buckets[bucket];
+		if (node.next != null)
+			node.next.prev = node;
+		buckets[bucket] = node;
+	}
+
+	private void unlink(Node<K> node) {
+		if (node.bucket == -1)
+			return;
+		if (node.prev == null)
+			buckets[node.bucket] = node.next;
+		else
+			node.prev.next = node.next;
+		if (node.next != null)
+			node.next.prev = node.prev;
+		node.prev = node.next = null;
+		node.bucket = -1;
+	}
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private static <K> Node<K>[] newBuckets(int size) {
+		return new Node[size];
+	}
+
+	private static long ceilDiv(long x, long y) {
+		var q = x / y;
+		return (x % y) > 0 ? q + 1 : q;
+	}
+}
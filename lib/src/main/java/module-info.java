@@ -34,6 +34,7 @@ open module com.logonbox.vpn.drivers.lib {
     requires transitive com.sshtools.jini;
     requires static uk.co.bithatch.nativeimage.annotations;
 	requires transitive java.prefs;
+	requires transitive jdk.jfr;
 	requires curve25519.java; // boo
     
     uses PlatformServiceFactory;
@@ -0,0 +1,162 @@
+/**
+ * Copyright © 2023 LogonBox Limited (support@logonbox.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the “Software”), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies
+ * or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.logonbox.vpn.drivers.lib;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+
+import org.junit.jupiter.api.Test;
+
+public class ColumnarInterfaceInformationTest {
+
+	private final static String PRIVATE_KEY = key("private");
+	private final static String PUBLIC_KEY = key("public");
+	private final static String INTERFACE = PRIVATE_KEY + "\t" + PUBLIC_KEY + "\t51820\toff";
+
+	@Test
+	void testInterface() {
+		var info = parse(INTERFACE);
+		assertEquals("wg0", info.interfaceName());
+		assertEquals(PRIVATE_KEY, info.privateKey());
+		assertEquals(PUBLIC_KEY, info.publicKey());
+		assertEquals(Optional.of(51820), info.listenPort());
+		assertEquals(Optional.empty(), info.fwmark());
+	}
+
+	@Test
+	void testNoPeers() {
+		var info = parse(INTERFACE);
+		assertEquals(0, info.size());
+		assertTrue(info.peers().isEmpty());
+		assertEquals(0, info.rx());
+		assertEquals(0, info.tx());
+		assertEquals(Instant.EPOCH, info.lastHandshake());
+		assertEquals(-1, info.indexOf(key("a")));
+		assertEquals(Optional.empty(), info.peer(key("a")));
+		assertThrows(IndexOutOfBoundsException.class, () -> info.publicKey(0));
+	}
+
+	@Test
+	void testNoneFields() {
+		var info = parse(INTERFACE, key("a") + "\t(none)\t(none)\t(none)\t0\t0\t0\toff");
+		var peer = info.peers().get(0);
+		assertEquals(key("a"), peer.publicKey());
+		assertEquals(Optional.empty(), peer.presharedKey());
+		assertEquals(Optional.empty(), peer.remoteAddress());
+		assertEquals(List.of(), peer.allowedIps());
+		assertEquals(Instant.EPOCH, peer.lastHandshake());
+		assertEquals(0, info.persistentKeepalive(0));
+		assertEquals("(none)", info.endpoint(0));
+		assertTrue(info.endpointEquals(0, "(none)"));
+		assertFalse(info.endpointEquals(0, ""));
+	}
+
+	@Test
+	void testPeers() throws Exception {
+		var info = parse(INTERFACE,
+				key("a") + "\t" + key("psk") + "\t192.168.1.10:51820\t10.0.0.2/32,10.1.0.0/16\t1700000000\t100\t200\t25",
+				key("b") + "\t(none)\t[fd00::1]:51821\tfd00::2/128\t1700000100\t300\t400\toff");
+		assertEquals(2, info.size());
+		assertEquals(400, info.rx());
+		assertEquals(600, info.tx());
+		assertEquals(Instant.ofEpochSecond(1700000100), info.lastHandshake());
+
+		var a = info.peer(key("a")).orElseThrow();
+		assertEquals(Optional.of(key("psk")), a.presharedKey());
+		assertEquals(Optional.of(new InetSocketAddress(InetAddress.getByName("192.168.1.10"), 51820)),
+				a.remoteAddress());
+		assertEquals(List.of("10.0.0.2/32", "10.1.0.0/16"), a.allowedIps());
+		assertEquals(100, a.rx());
+		assertEquals(200, a.tx());
+		assertEquals(25, info.persistentKeepalive(info.indexOf(key("a"))));
+
+		var b = info.peers().get(info.indexOf(key("b")));
+		assertEquals(key("b"), b.publicKey());
+		assertEquals(Optional.of(new InetSocketAddress(InetAddress.getByName("fd00::1"), 51821)), b.remoteAddress());
+		assertEquals(List.of("fd00::2/128"), b.allowedIps());
+		assertEquals("[fd00::1]:51821", info.endpoint(1));
+		assertEquals(0, info.persistentKeepalive(1));
+	}
+
+	@Test
+	void testEquals() {
+		var info = parse(INTERFACE, key("a") + "\t(none)\t[fd00::1]:51821\t(none)\t0\t0\t0\toff",
+				key("b") + "\t(none)\t10.0.0.1:1\t(none)\t0\t0\t0\toff");
+		assertTrue(info.publicKeyEquals(0, key("a")));
+		assertFalse(info.publicKeyEquals(0, key("b")));
+		assertFalse(info.publicKeyEquals(0, "short"));
+		assertTrue(info.publicKeyEquals(1, new StringBuilder(key("b"))));
+
+		assertTrue(info.endpointEquals(0, "[fd00::1]:51821"));
+		assertFalse(info.endpointEquals(0, "[fd00::1]:51822"));
+		assertFalse(info.endpointEquals(0, "[fd00::1]:5182"));
+		assertFalse(info.endpointEquals(0, "(none)"));
+		assertTrue(info.endpointEquals(1, "10.0.0.1:1"));
+		assertThrows(IndexOutOfBoundsException.class, () -> info.endpointEquals(2, "10.0.0.1:1"));
+	}
+
+	@Test
+	void testManyPeers() {
+		var lines = new String[1001];
+		lines[0] = INTERFACE;
+		for (int i = 0; i < 1000; i++)
+			lines[i + 1] = key("p" + i) + "\t(none)\t10.0." + (i / 250) + "." + (i % 250) + ":51820\t10.1." + (i / 250)
+					+ "." + (i % 250) + "/32\t" + i + "\t" + i + "\t" + (i * 2) + "\toff";
+		var info = parse(lines);
+		assertEquals(1000, info.size());
+		for (int i = 0; i < 1000; i++) {
+			var idx = info.indexOf(key("p" + i));
+			assertEquals(i, idx);
+			assertEquals(i * 2, info.tx(idx));
+			assertTrue(info.endpointEquals(idx, "10.0." + (i / 250) + "." + (i % 250) + ":51820"));
+			assertEquals(List.of("10.1." + (i / 250) + "." + (i % 250) + "/32"), info.peer(idx).allowedIps());
+		}
+	}
+
+	@Test
+	void testBadLines() {
+		assertThrows(IllegalArgumentException.class, () -> parse(INTERFACE, "a\tb"));
+		assertThrows(IllegalArgumentException.class,
+				() -> parse(INTERFACE, "short\t(none)\t(none)\t(none)\t0\t0\t0\toff"));
+		assertThrows(IllegalArgumentException.class,
+				() -> parse(INTERFACE, key("a") + "\t(none)\t(none)\t(none)\tx\t0\t0\toff"));
+	}
+
+	private static ColumnarInterfaceInformation parse(String... lines) {
+		return ColumnarInterfaceInformation.parse("wg0", List.of(lines));
+	}
+
+	/* A string of the same length as a base64 key */
+	private static String key(String name) {
+		var b = new StringBuilder(name);
+		while (b.length() < ColumnarInterfaceInformation.KEY_LENGTH - 1)
+			b.append('A');
+		return b.append('=').toString();
+	}
+}
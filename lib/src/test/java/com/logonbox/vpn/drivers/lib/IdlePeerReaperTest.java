@@ -0,0 +1,166 @@
+/**
+ * Copyright © 2023 LogonBox Limited (support@logonbox.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the “Software”), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies
+ * or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.logonbox.vpn.drivers.lib;
+
+import static com.logonbox.vpn.drivers.lib.TestPlatform.peer;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class IdlePeerReaperTest {
+
+	private ScheduledExecutorService queue;
+	private TestPlatform platform;
+	private VpnAdapter adapter;
+
+	@BeforeEach
+	void setUp() {
+		queue = Executors.newSingleThreadScheduledExecutor();
+		platform = new TestPlatform();
+		adapter = platform.add("wg0", peer("a"), peer("b"), peer("c"), peer("d"));
+	}
+
+	@AfterEach
+	void tearDown() {
+		queue.shutdownNow();
+	}
+
+	@Test
+	void testExpiredPeersRemovedInOneBatch() throws IOException {
+		var longAgo = Instant.now().minus(Duration.ofHours(1));
+		platform.handshake("a", longAgo);
+		platform.handshake("b", longAgo);
+		platform.handshake("c", longAgo);
+		platform.handshake("d", Instant.now());
+
+		var seen = new ArrayList<List<String>>();
+		try (var reaper = reaper(Duration.ofMinutes(1)).onReaped(l -> seen.add(keys(l))).build()) {
+			reaper.sweep();
+			assertEquals(List.of("remove wg0 [a, b, c]"), platform.take());
+			assertEquals(List.of(List.of("a", "b", "c")), seen);
+			assertEquals(List.of("a", "b", "c"), keys(reaper.reaped()));
+			assertEquals(List.of("d"), List.copyOf(platform.peers("wg0").keySet()));
+			assertEquals(1, reaper.tracked());
+
+			reaper.sweep();
+			assertEquals(List.of(), platform.take());
+		}
+	}
+
+	@Test
+	void testBatchSize() throws IOException {
+		var longAgo = Instant.now().minus(Duration.ofHours(1));
+		for (var key : List.of("a", "b", "c", "d"))
+			platform.handshake(key, longAgo);
+
+		try (var reaper = reaper(Duration.ofMinutes(1)).withBatchSize(3).build()) {
+			reaper.sweep();
+			var calls = platform.take();
+			assertEquals(2, calls.size());
+			assertEquals(3, calls.get(0).split(",").length);
+			assertEquals(1, calls.get(1).split(",").length);
+			assertTrue(platform.peers("wg0").isEmpty());
+		}
+	}
+
+	@Test
+	void testNewHandshakeRefreshesDeadline() throws Exception {
+		var start = Instant.now();
+		for (var key : List.of("a", "b", "c", "d"))
+			platform.handshake(key, start);
+
+		try (var reaper = reaper(Duration.ofMillis(600)).build()) {
+			reaper.sweep();
+			Thread.sleep(400);
+			platform.handshake("a", Instant.now());
+			reaper.sweep();
+			assertEquals(List.of(), platform.take());
+
+			/* Past the original deadline, but not that of the new handshake */
+			Thread.sleep(400);
+			reaper.sweep();
+			assertEquals(List.of("remove wg0 [b, c, d]"), platform.take());
+
+			Thread.sleep(400);
+			reaper.sweep();
+			assertEquals(List.of("remove wg0 [a]"), platform.take());
+		}
+	}
+
+	@Test
+	void testNeverHandshakedPeersGetAnIdlePeriodFromFirstSeen() throws Exception {
+		var lastHandshakes = new ArrayList<Instant>();
+		try (var reaper = reaper(Duration.ofMillis(300)).withReinstatePolicy((p, h) -> {
+			lastHandshakes.add(h);
+			return false;
+		}).build()) {
+			reaper.sweep();
+			assertEquals(List.of(), platform.take());
+			assertEquals(4, reaper.tracked());
+
+			/* A later sweep does not move their deadline on */
+			Thread.sleep(200);
+			reaper.sweep();
+			assertEquals(List.of(), platform.take());
+
+			Thread.sleep(200);
+			reaper.sweep();
+			assertEquals(List.of("remove wg0 [a, b, c, d]"), platform.take());
+			assertEquals(List.of(Instant.EPOCH, Instant.EPOCH, Instant.EPOCH, Instant.EPOCH), lastHandshakes);
+		}
+	}
+
+	@Test
+	void testReinstatePolicyKeepsPeer() throws Exception {
+		var longAgo = Instant.now().minus(Duration.ofHours(1));
+		platform.handshake("a", longAgo);
+		platform.handshake("b", longAgo);
+		platform.handshake("c", Instant.now());
+		platform.handshake("d", Instant.now());
+
+		try (var reaper = reaper(Duration.ofMinutes(1)).withReinstatePolicy((p, h) -> p.publicKey().equals("a"))
+				.build()) {
+			reaper.sweep();
+			assertEquals(List.of("remove wg0 [b]"), platform.take());
+			assertTrue(platform.peers("wg0").containsKey("a"));
+		}
+	}
+
+	private IdlePeerReaper.Builder reaper(Duration idleTimeout) {
+		return new IdlePeerReaper.Builder().withAdapter(adapter).withQueue(queue).withIdleTimeout(idleTimeout)
+				.withSweepInterval(Duration.ofMillis(50));
+	}
+
+	private static List<String> keys(List<VpnPeer> peers) {
+		return peers.stream().map(VpnPeer::publicKey).sorted().toList();
+	}
+}
@@ -0,0 +1,84 @@
+/**
+ * Copyright © 2023 LogonBox Limited (support@logonbox.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the “Software”), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies
+ * or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.logonbox.vpn.drivers.lib;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+public class LocalAddressFilterTest {
+
+	@Test
+	void testIpv4() throws Exception {
+		var filter = filter("192.168.1.10", "10.0.0.1");
+		assertTrue(filter.covers("192.168.1.0/24"));
+		assertTrue(filter.covers("10.0.0.1"));
+		assertTrue(filter.covers("10.0.0.1/32"));
+		assertTrue(filter.covers("0.0.0.0/0"));
+		assertFalse(filter.covers("192.168.2.0/24"));
+		assertFalse(filter.covers("192.168.1.11/32"));
+		assertFalse(filter.covers("10.0.0.2"));
+	}
+
+	@Test
+	void testIpv6() throws Exception {
+		var filter = filter("fd00::1", "2001:db8::10");
+		assertTrue(filter.covers("fd00::/64"));
+		assertTrue(filter.covers("2001:db8::10/128"));
+		assertTrue(filter.covers("::/0"));
+		assertFalse(filter.covers("fd01::/64"));
+		assertFalse(filter.covers("2001:db8::11"));
+	}
+
+	@Test
+	void testFamiliesDoNotMix() throws Exception {
+		assertFalse(filter("192.168.1.10").covers("::/0"));
+		assertFalse(filter("fd00::1").covers("0.0.0.0/0"));
+	}
+
+	@Test
+	void testNoAddresses() throws Exception {
+		var filter = filter();
+		assertFalse(filter.covers("0.0.0.0/0"));
+		assertFalse(filter.covers("::/0"));
+	}
+
+	@Test
+	void testUnparseableRoutesCoverNothing() throws Exception {
+		var filter = filter("192.168.1.10");
+		assertFalse(filter.covers("192.168.1.0/33"));
+		assertFalse(filter.covers("not-a-route"));
+		assertFalse(filter.covers(""));
+	}
+
+	private static LocalAddressFilter filter(String... addresses) throws UnknownHostException {
+		var l = new ArrayList<InetAddress>();
+		for (var a : addresses)
+			l.add(InetAddress.getByName(a));
+		return LocalAddressFilter.of(List.copyOf(l));
+	}
+}
@@ -0,0 +1,168 @@
+/**
+ * Copyright © 2023 LogonBox Limited (support@logonbox.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the “Software”), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies
+ * or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.logonbox.vpn.drivers.lib;
+
+import static com.logonbox.vpn.drivers.lib.TestInformation.iface;
+import static com.logonbox.vpn.drivers.lib.TestInformation.peer;
+import static com.logonbox.vpn.drivers.lib.TestInformation.service;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class PeerEventPollerTest {
+
+	private final static class Recorder implements PeerListener {
+		private final List<String> seen = new ArrayList<>();
+
+		@Override
+		public void peerEvent(PeerEvent event) {
+			seen.add(event.type() + " " + event.interfaceName() + " " + event.publicKey());
+		}
+
+		@Override
+		public void adapterUp(String interfaceName) {
+			seen.add("UP " + interfaceName);
+		}
+
+		@Override
+		public void adapterDown(String interfaceName) {
+			seen.add("DOWN " + interfaceName);
+		}
+
+		@Override
+		public void transfer(String interfaceName, String publicKey, long rx, long tx) {
+			seen.add("TRANSFER " + interfaceName + " " + publicKey + " " + rx + " " + tx);
+		}
+
+		private List<String> take() {
+			var l = List.copyOf(seen);
+			seen.clear();
+			return l;
+		}
+	}
+
+	private ScheduledThreadPoolExecutor queue;
+	private List<VpnInterfaceInformation> current;
+	private PeerEventPoller poller;
+
+	@BeforeEach
+	void setUp() {
+		queue = new ScheduledThreadPoolExecutor(1) {
+			@Override
+			public ScheduledFuture<?> scheduleWithFixedDelay(Runnable command, long initialDelay, long delay,
+					TimeUnit unit) {
+				/* Polls are made by the test */
+				return schedule(() -> {
+				}, 1, TimeUnit.DAYS);
+			}
+		};
+		current = List.of();
+		poller = new PeerEventPoller(service(() -> current, queue));
+	}
+
+	@AfterEach
+	void tearDown() {
+		queue.shutdownNow();
+	}
+
+	@Test
+	void testFirstReadOnlyEstablishesState() {
+		var rec = new Recorder();
+		current = List.of(iface("wg0", peer("a", 10, 20)));
+		poller.add(rec, Optional.empty());
+		poller.poll();
+		assertEquals(List.of(), rec.take());
+	}
+
+	@Test
+	void testPeerChanges() {
+		var rec = new Recorder();
+		current = List.of(iface("wg0", peer("a", 10, 20)));
+		poller.add(rec, Optional.empty());
+		poller.poll();
+
+		current = List.of(iface("wg0", peer("a", 10, 20, Instant.now()), peer("b", 5, 6)));
+		poller.poll();
+		assertEquals(List.of("HANDSHAKE wg0 a", "ADDED wg0 b", "TRANSFER wg0 b 5 6"), rec.take());
+
+		current = List.of(iface("wg0", peer("b", 5, 6)));
+		poller.poll();
+		assertEquals(List.of("REMOVED wg0 a"), rec.take());
+	}
+
+	@Test
+	void testTransferDeltas() {
+		var rec = new Recorder();
+		current = List.of(iface("wg0", peer("a", 100, 200), peer("b", 1, 1)));
+		poller.add(rec, Optional.empty());
+		poller.poll();
+
+		current = List.of(iface("wg0", peer("a", 150, 200), peer("b", 1, 1)));
+		poller.poll();
+		assertEquals(List.of("TRANSFER wg0 a 50 0"), rec.take());
+
+		/* Counters restarted */
+		current = List.of(iface("wg0", peer("a", 30, 40), peer("b", 1, 1)));
+		poller.poll();
+		assertEquals(List.of("TRANSFER wg0 a 30 40"), rec.take());
+	}
+
+	@Test
+	void testAdapterUpAndDown() {
+		var rec = new Recorder();
+		current = List.of(iface("wg0"));
+		poller.add(rec, Optional.empty());
+		poller.poll();
+
+		current = List.of(iface("wg0"), iface("wg1", peer("a", 0, 0)));
+		poller.poll();
+		assertEquals(List.of("UP wg1"), rec.take());
+
+		current = List.of(iface("wg0"));
+		poller.poll();
+		assertEquals(List.of("REMOVED wg1 a", "DOWN wg1"), rec.take());
+	}
+
+	@Test
+	void testInterfaceListenerOnlySeesItsInterface() {
+		var all = new Recorder();
+		var wg1 = new Recorder();
+		current = List.of(iface("wg0", peer("a", 0, 0)), iface("wg1", peer("b", 0, 0)));
+		poller.add(all, Optional.empty());
+		poller.add(wg1, Optional.of("wg1"));
+		poller.poll();
+
+		current = List.of(iface("wg0", peer("a", 1, 0)), iface("wg1", peer("b", 2, 0)));
+		poller.poll();
+		assertEquals(List.of("TRANSFER wg0 a 1 0", "TRANSFER wg1 b 2 0"), all.take());
+		assertEquals(List.of("TRANSFER wg1 b 2 0"), wg1.take());
+	}
+}
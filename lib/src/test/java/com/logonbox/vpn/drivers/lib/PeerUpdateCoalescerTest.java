@@ -0,0 +1,177 @@
+/**
+ * Copyright © 2023 LogonBox Limited (support@logonbox.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the “Software”), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies
+ * or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.logonbox.vpn.drivers.lib;
+
+import static com.logonbox.vpn.drivers.lib.TestPlatform.peer;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class PeerUpdateCoalescerTest {
+
+	private ScheduledExecutorService queue;
+	private TestPlatform platform;
+	private VpnAdapter adapter;
+
+	@BeforeEach
+	void setUp() {
+		queue = Executors.newSingleThreadScheduledExecutor();
+		platform = new TestPlatform();
+		adapter = platform.add("wg0", peer("a", "10.0.0.1/32"));
+	}
+
+	@AfterEach
+	void tearDown() {
+		queue.shutdownNow();
+	}
+
+	@Test
+	void testLastOperationWins() throws IOException {
+		try (var coalescer = coalescer(Duration.ofDays(1), 100)) {
+			coalescer.append(peer("b", "10.0.0.2/32"));
+			coalescer.remove("b");
+			coalescer.append(peer("c", "10.0.0.3/32"));
+			coalescer.append(peer("c", "10.0.0.4/32"));
+			coalescer.remove("a");
+			coalescer.flush();
+
+			assertEquals(List.of("remove wg0 [a, b]", "update wg0 [c]"), platform.take());
+			assertEquals(List.of("c"), List.copyOf(platform.peers("wg0").keySet()));
+			assertEquals(List.of("10.0.0.4/32"), platform.peers("wg0").get("c").allowedIps());
+		}
+	}
+
+	@Test
+	void testRemoveThenAdd() throws IOException {
+		try (var coalescer = coalescer(Duration.ofDays(1), 100)) {
+			coalescer.remove("a");
+			coalescer.append(peer("a", "10.0.0.9/32"));
+			coalescer.flush();
+
+			assertEquals(List.of("remove wg0 [a]", "update wg0 [a]"), platform.take());
+			assertEquals(List.of("10.0.0.9/32"), platform.peers("wg0").get("a").allowedIps());
+		}
+	}
+
+	@Test
+	void testAppendReplacesAllowedIps() throws IOException {
+		try (var coalescer = coalescer(Duration.ofDays(1), 100)) {
+			coalescer.append(peer("a", "10.0.0.2/32"));
+			coalescer.flush();
+			assertEquals(List.of("10.0.0.2/32"), platform.peers("wg0").get("a").allowedIps());
+
+			/* The same when given a whole configuration */
+			coalescer.append(new VpnAdapterConfiguration.Builder().withPrivateKey("private")
+					.withPublicKey("public").withListenPort(51821).withPeers(peer("a", "10.0.0.3/32")).build());
+			coalescer.flush();
+			assertEquals(List.of("10.0.0.3/32"), platform.peers("wg0").get("a").allowedIps());
+
+			assertEquals(List.of("update wg0 [a]", "update wg0 [a]"), platform.take());
+		}
+	}
+
+	@Test
+	void testWindow() throws Exception {
+		try (var coalescer = coalescer(Duration.ofMillis(20), 100)) {
+			var f1 = coalescer.append(peer("b"));
+			var f2 = coalescer.append(peer("c"));
+			f1.get(5, TimeUnit.SECONDS);
+			f2.get(5, TimeUnit.SECONDS);
+			assertEquals(List.of("update wg0 [b, c]"), platform.take());
+		}
+	}
+
+	@Test
+	void testMaxOperationsAppliesImmediately() throws Exception {
+		try (var coalescer = coalescer(Duration.ofDays(1), 3)) {
+			var f1 = coalescer.append(peer("b"));
+			/* The same peer again does not count as another operation */
+			coalescer.append(peer("b"));
+			var f2 = coalescer.append(peer("c"));
+			assertFalse(f1.isDone());
+			var f3 = coalescer.remove("a");
+			f3.get(5, TimeUnit.SECONDS);
+			assertTrue(f1.isDone());
+			assertTrue(f2.isDone());
+			assertEquals(List.of("remove wg0 [a]", "update wg0 [b, c]"), platform.take());
+		}
+	}
+
+	@Test
+	void testCancellingOnlyAffectsCaller() throws Exception {
+		try (var coalescer = coalescer(Duration.ofDays(1), 100)) {
+			var f1 = coalescer.append(peer("b"));
+			var f2 = coalescer.append(peer("c"));
+			f1.cancel(false);
+			coalescer.flush();
+
+			assertThrows(CancellationException.class, () -> f1.get());
+			f2.get(5, TimeUnit.SECONDS);
+			assertEquals(List.of("update wg0 [b, c]"), platform.take());
+		}
+	}
+
+	@Test
+	void testFailureCompletesAllFutures() throws Exception {
+		try (var coalescer = coalescer(Duration.ofDays(1), 100)) {
+			platform.failWhen(c -> c.startsWith("update "));
+			var f1 = coalescer.append(peer("b"));
+			var f2 = coalescer.remove("a");
+			assertThrows(IOException.class, () -> coalescer.flush());
+			assertTrue(assertThrows(ExecutionException.class, () -> f1.get()).getCause() instanceof IOException);
+			assertTrue(assertThrows(ExecutionException.class, () -> f2.get()).getCause() instanceof IOException);
+			platform.failWhen(c -> false);
+		}
+	}
+
+	@Test
+	void testCloseAppliesPending() throws Exception {
+		var coalescer = coalescer(Duration.ofDays(1), 100);
+		var f = coalescer.append(peer("b"));
+		coalescer.close();
+		assertTrue(f.isDone());
+		assertEquals(List.of("update wg0 [b]"), platform.take());
+		assertThrows(IllegalStateException.class, () -> coalescer.append(peer("c")));
+
+		/* Closing again does nothing */
+		coalescer.close();
+		assertEquals(List.of(), platform.take());
+	}
+
+	private PeerUpdateCoalescer coalescer(Duration window, int maxOperations) {
+		return new PeerUpdateCoalescer.Builder().withAdapter(adapter).withQueue(queue).withWindow(window)
+				.withMaxOperations(maxOperations).build();
+	}
+}
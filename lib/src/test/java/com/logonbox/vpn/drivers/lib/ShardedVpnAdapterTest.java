@@ -0,0 +1,176 @@
+/**
+ * Copyright © 2023 LogonBox Limited (support@logonbox.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the “Software”), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies
+ * or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.logonbox.vpn.drivers.lib;
+
+import static com.logonbox.vpn.drivers.lib.TestPlatform.peer;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+
+public class ShardedVpnAdapterTest {
+
+	@Test
+	void testPeersStayWhenShardAdded() throws IOException {
+		var platform = new TestPlatform();
+		try (var sharded = sharded(platform, 1000, 2)) {
+			var before = placement(sharded, 1000);
+			assertPlaced(platform, sharded, 1000);
+
+			sharded.addShards(1);
+			assertEquals(List.of("wg0", "wg1", "wg2"), platform.names());
+			assertPlaced(platform, sharded, 1000);
+
+			var moved = 0;
+			for (var en : placement(sharded, 1000).entrySet()) {
+				var was = before.get(en.getKey());
+				if (en.getValue() != was) {
+					assertEquals(2, en.getValue(), "Peers may only move to the new shard");
+					moved++;
+				}
+			}
+			/* Roughly a third should move */
+			assertTrue(moved > 200 && moved < 450, "Moved " + moved);
+		}
+	}
+
+	@Test
+	void testAddShardsOnlyTouchesMovedPeers() throws IOException {
+		var platform = new TestPlatform();
+		try (var sharded = sharded(platform, 100, 2)) {
+			platform.take();
+			sharded.addShards(1);
+			var calls = platform.take();
+			assertEquals("start wg2 []", calls.get(0));
+			assertTrue(calls.get(1).startsWith("append wg2 "));
+			assertTrue(calls.get(2).startsWith("sync wg0 "));
+			assertTrue(calls.get(3).startsWith("sync wg1 "));
+			assertEquals(4, calls.size());
+		}
+	}
+
+	@Test
+	void testDistribution() throws IOException {
+		var platform = new TestPlatform();
+		try (var sharded = sharded(platform, 10000, 4)) {
+			for (var name : platform.names()) {
+				var count = platform.peers(name).size();
+				assertTrue(count > 2000 && count < 3000, name + " has " + count);
+			}
+		}
+	}
+
+	@Test
+	void testRollbackWhenSyncFails() throws IOException {
+		var platform = new TestPlatform();
+		try (var sharded = sharded(platform, 1000, 2)) {
+			var before = placement(sharded, 1000);
+			var wg0 = Set.copyOf(platform.peers("wg0").keySet());
+			var wg1 = Set.copyOf(platform.peers("wg1").keySet());
+			platform.take();
+
+			/* Fails once peers have already been removed from wg0 */
+			platform.failWhen(c -> c.startsWith("sync wg1 "));
+			assertThrows(IOException.class, () -> sharded.addShards(2));
+			platform.failWhen(c -> false);
+
+			/* Moved peers are put back, including to the shard that failed */
+			assertEquals(List.of("start wg2", "start wg3", "append wg2", "append wg3", "sync wg0", "append wg0",
+					"append wg1", "stop wg3", "stop wg2"), operations(platform.take()));
+
+			assertEquals(List.of("wg0", "wg1"), platform.names());
+			assertEquals(wg0, platform.peers("wg0").keySet());
+			assertEquals(wg1, platform.peers("wg1").keySet());
+			assertEquals(2, sharded.shards().size());
+			assertEquals(before, placement(sharded, 1000));
+
+			/* And can still grow afterwards */
+			sharded.addShards(2);
+			assertPlaced(platform, sharded, 1000);
+		}
+	}
+
+	@Test
+	void testRollbackWhenStartFails() throws IOException {
+		var platform = new TestPlatform();
+		try (var sharded = sharded(platform, 100, 2)) {
+			platform.take();
+			platform.failWhen(c -> c.startsWith("start wg3 "));
+			assertThrows(IOException.class, () -> sharded.addShards(2));
+			platform.failWhen(c -> false);
+
+			assertEquals(List.of("start wg2 []", "stop wg2 []"), platform.take());
+			assertEquals(List.of("wg0", "wg1"), platform.names());
+			assertPlaced(platform, sharded, 100);
+		}
+	}
+
+	private static ShardedVpnAdapter sharded(TestPlatform platform, int peers, int shards) throws IOException {
+		var cfg = new VpnConfiguration.Builder().withPrivateKey("private").withPublicKey("public")
+				.withListenPort(51820).withAddresses("10.0.0.1/16");
+		for (int i = 0; i < peers; i++)
+			cfg.addPeers(peer(key(i), "10.0." + (i / 250) + "." + (i % 250) + "/32"));
+		var sharded = new ShardedVpnAdapter.Builder().withPlatformService(platform.service())
+				.withConfiguration(cfg.build()).withShards(shards).build();
+		sharded.open();
+		return sharded;
+	}
+
+	private static String key(int i) {
+		return String.format("peer%05d", i);
+	}
+
+	private static List<String> operations(List<String> calls) {
+		return calls.stream().map(c -> c.substring(0, c.indexOf(' ', c.indexOf(' ') + 1))).toList();
+	}
+
+	private static Map<String, Integer> placement(ShardedVpnAdapter sharded, int peers) {
+		var map = new HashMap<String, Integer>();
+		for (int i = 0; i < peers; i++)
+			map.put(key(i), sharded.shardIndex(key(i)));
+		return map;
+	}
+
+	/* Each peer is on exactly the shard it is said to belong to */
+	private static void assertPlaced(TestPlatform platform, ShardedVpnAdapter sharded, int peers) {
+		var total = 0;
+		var names = platform.names();
+		for (int s = 0; s < names.size(); s++) {
+			for (var key : platform.peers(names.get(s)).keySet()) {
+				assertEquals(s, sharded.shardIndex(key), key);
+				total++;
+			}
+		}
+		assertEquals(peers, total);
+		var keys = new ArrayList<String>();
+		for (var name : names)
+			keys.addAll(platform.peers(name).keySet());
+		assertEquals(peers, Set.copyOf(keys).size());
+	}
+}
@@ -0,0 +1,228 @@
+/**
+ * Copyright © 2023 LogonBox Limited (support@logonbox.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the “Software”), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies
+ * or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.logonbox.vpn.drivers.lib;
+
+import java.lang.reflect.Proxy;
+import java.net.InetSocketAddress;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Simple in-memory information and adapters for tests.
+ */
+final class TestInformation {
+
+	private TestInformation() {
+	}
+
+	@SuppressWarnings("serial")
+	static VpnPeerInformation peer(String publicKey, long rx, long tx, Instant lastHandshake, String... allowedIps) {
+		return new VpnPeerInformation() {
+			@Override
+			public long rx() {
+				return rx;
+			}
+
+			@Override
+			public long tx() {
+				return tx;
+			}
+
+			@Override
+			public Instant lastHandshake() {
+				return lastHandshake;
+			}
+
+			@Override
+			public Optional<String> error() {
+				return Optional.empty();
+			}
+
+			@Override
+			public String publicKey() {
+				return publicKey;
+			}
+
+			@Override
+			public Optional<InetSocketAddress> remoteAddress() {
+				return Optional.empty();
+			}
+
+			@Override
+			public Optional<String> presharedKey() {
+				return Optional.empty();
+			}
+
+			@Override
+			public List<String> allowedIps() {
+				return Arrays.asList(allowedIps);
+			}
+		};
+	}
+
+	static VpnPeerInformation peer(String publicKey, long rx, long tx) {
+		return peer(publicKey, rx, tx, Instant.ofEpochSecond(0));
+	}
+
+	@SuppressWarnings("serial")
+	static VpnInterfaceInformation iface(String interfaceName, VpnPeerInformation... peers) {
+		var peerList = List.of(peers);
+		return new VpnInterfaceInformation() {
+			@Override
+			public long rx() {
+				return peerList.stream().mapToLong(VpnPeerInformation::rx).sum();
+			}
+
+			@Override
+			public long tx() {
+				return peerList.stream().mapToLong(VpnPeerInformation::tx).sum();
+			}
+
+			@Override
+			public String interfaceName() {
+				return interfaceName;
+			}
+
+			@Override
+			public List<VpnPeerInformation> peers() {
+				return peerList;
+			}
+
+			@Override
+			public Instant lastHandshake() {
+				return peerList.stream().map(VpnPeerInformation::lastHandshake).max(Instant::compareTo)
+						.orElse(Instant.ofEpochSecond(0));
+			}
+
+			@Override
+			public Optional<String> error() {
+				return Optional.empty();
+			}
+
+			@Override
+			public Optional<Integer> listenPort() {
+				return Optional.empty();
+			}
+
+			@Override
+			public Optional<Integer> fwmark() {
+				return Optional.empty();
+			}
+
+			@Override
+			public String publicKey() {
+				return "";
+			}
+
+			@Override
+			public String privateKey() {
+				return "";
+			}
+		};
+	}
+
+	/**
+	 * Create an adapter whose {@link VpnAdapter#information()} is supplied by a
+	 * function. Any other call to the platform service fails.
+	 *
+	 * @param information information of adapter
+	 * @return adapter
+	 */
+	static VpnAdapter adapter(Function<VpnAdapter, VpnInterfaceInformation> information) {
+		var service = (PlatformService<?>) Proxy.newProxyInstance(TestInformation.class.getClassLoader(),
+				new Class<?>[] { PlatformService.class }, (proxy, method, args) -> {
+					if (method.getName().equals("information") && args != null && args.length == 1
+							&& args[0] instanceof VpnAdapter adapter)
+						return information.apply(adapter);
+					throw new UnsupportedOperationException(method.getName());
+				});
+		return new VpnAdapter(service);
+	}
+
+	/**
+	 * Create a platform service whose adapters, and the information of each,
+	 * are supplied by a function. Only {@link PlatformService#adapters()},
+	 * {@link PlatformService#information(VpnAdapter)} and
+	 * {@link PlatformService#context()} are supported, the context providing
+	 * just the queue and the default configuration.
+	 *
+	 * @param information information of all adapters
+	 * @param queue       queue
+	 * @return service
+	 */
+	static PlatformService<?> service(Supplier<List<VpnInterfaceInformation>> information,
+			ScheduledExecutorService queue) {
+		var context = (SystemContext) Proxy.newProxyInstance(TestInformation.class.getClassLoader(),
+				new Class<?>[] { SystemContext.class }, (proxy, method, args) -> {
+					switch (method.getName()) {
+					case "queue":
+						return queue;
+					case "configuration":
+						return SystemConfiguration.defaultConfiguration();
+					default:
+						throw new UnsupportedOperationException(method.getName());
+					}
+				});
+		var infos = new HashMap<String, VpnInterfaceInformation>();
+		var service = new PlatformService<?>[1];
+		service[0] = (PlatformService<?>) Proxy.newProxyInstance(TestInformation.class.getClassLoader(),
+				new Class<?>[] { PlatformService.class }, (proxy, method, args) -> {
+					switch (method.getName()) {
+					case "context":
+						return context;
+					case "adapters":
+						infos.clear();
+						var adapters = new ArrayList<VpnAdapter>();
+						for (var info : information.get()) {
+							infos.put(info.interfaceName(), info);
+							adapters.add(new VpnAdapter(service[0], Optional.of(address(info.interfaceName()))));
+						}
+						return adapters;
+					case "information":
+						return infos.get(((VpnAdapter) args[0]).address().name());
+					default:
+						throw new UnsupportedOperationException(method.getName());
+					}
+				});
+		return service[0];
+	}
+
+	private static VpnAddress address(String name) {
+		return (VpnAddress) Proxy.newProxyInstance(TestInformation.class.getClassLoader(),
+				new Class<?>[] { VpnAddress.class }, (proxy, method, args) -> {
+					switch (method.getName()) {
+					case "name":
+					case "nativeName":
+					case "shortName":
+						return name;
+					default:
+						throw new UnsupportedOperationException(method.getName());
+					}
+				});
+	}
+}
@@ -0,0 +1,237 @@
+/**
+ * Copyright © 2023 LogonBox Limited (support@logonbox.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the “Software”), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies
+ * or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.logonbox.vpn.drivers.lib;
+
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Predicate;
+
+/**
+ * An in-memory platform service for tests that records each change made to its
+ * adapters. Adapters are named the same as their interfaces. Each change is
+ * recorded as the method name, the interface name and the public keys of the
+ * peers, e.g. <code>append wg0 [a, b]</code>. The keys of removed peers are
+ * sorted, as their order does not matter.
+ * <p>
+ * As with <code>wg</code>, {@link PlatformService#append(VpnAdapter, VpnAdapterConfiguration)}
+ * merges the allowed IPs of existing peers, while
+ * {@link PlatformService#update(VpnAdapter, Collection)} and
+ * {@link PlatformService#sync(VpnAdapter, VpnAdapterConfiguration)} replace
+ * them.
+ */
+final class TestPlatform {
+
+	private final Map<String, Map<String, VpnPeer>> adapters = new LinkedHashMap<>();
+	private final Map<String, Instant> handshakes = new HashMap<>();
+	private final List<String> calls = new ArrayList<>();
+	private final PlatformService<?> service;
+	private Predicate<String> failWhen = c -> false;
+
+	TestPlatform() {
+		service = (PlatformService<?>) Proxy.newProxyInstance(TestPlatform.class.getClassLoader(),
+				new Class<?>[] { PlatformService.class }, (proxy, method, args) -> {
+					synchronized (this) {
+						switch (method.getName()) {
+						case "interfaceNameToNativeName":
+							return Optional.of(args[0]);
+						case "adapterExists":
+							return adapters.containsKey(args[0]);
+						case "adapter":
+							return adapter((String) args[0]);
+						case "start":
+							var req = (StartRequest) args[0];
+							var name = req.interfaceName().orElseThrow();
+							change("start", name, req.configuration().peers());
+							adapters.put(name, peers(req.configuration().peers()));
+							return adapter(name);
+						case "stop":
+							change("stop", name(args[1]), List.of());
+							adapters.remove(name(args[1]));
+							return null;
+						case "configuration":
+							return new VpnAdapterConfiguration.Builder().withPrivateKey("private").withPublicKey("public")
+									.withPeers(peers(name(args[0])).values()).build();
+						case "sync":
+							var syncPeers = ((VpnAdapterConfiguration) args[1]).peers();
+							change("sync", name(args[0]), syncPeers);
+							adapters.put(name(args[0]), peers(syncPeers));
+							return null;
+						case "append":
+							var appendPeers = ((VpnAdapterConfiguration) args[1]).peers();
+							change("append", name(args[0]), appendPeers);
+							var existing = peers(name(args[0]));
+							for (var peer : appendPeers) {
+								var was = existing.get(peer.publicKey());
+								if (was == null)
+									existing.put(peer.publicKey(), peer);
+								else
+									existing.put(peer.publicKey(), new VpnPeer.Builder().withPeer(peer)
+											.withAllowedIps(merge(was.allowedIps(), peer.allowedIps())).build());
+							}
+							return null;
+						case "update":
+							@SuppressWarnings("unchecked")
+							var updatePeers = List.copyOf((Collection<VpnPeer>) args[1]);
+							change("update", name(args[0]), updatePeers);
+							for (var peer : updatePeers)
+								peers(name(args[0])).put(peer.publicKey(), peer);
+							return null;
+						case "information":
+							var info = new ArrayList<VpnPeerInformation>();
+							for (var key : peers(name(args[0])).keySet())
+								info.add(TestInformation.peer(key, 0, 0, handshakes.getOrDefault(key, Instant.EPOCH)));
+							return TestInformation.iface(name(args[0]), info.toArray(new VpnPeerInformation[0]));
+						case "remove":
+							var keys = args[1] instanceof String key ? List.of(key)
+									: cast(args[1]).stream().sorted().toList();
+							check("remove " + name(args[0]) + " " + keys);
+							for (var key : keys)
+								peers(name(args[0])).remove(key);
+							return null;
+						default:
+							throw new UnsupportedOperationException(method.getName());
+						}
+					}
+				});
+	}
+
+	PlatformService<?> service() {
+		return service;
+	}
+
+	/**
+	 * Fail any later change whose record matches, with an {@link IOException},
+	 * leaving the adapter unchanged.
+	 *
+	 * @param failWhen failure condition
+	 */
+	synchronized void failWhen(Predicate<String> failWhen) {
+		this.failWhen = failWhen;
+	}
+
+	/**
+	 * Take the changes recorded so far.
+	 *
+	 * @return changes
+	 */
+	synchronized List<String> take() {
+		var l = List.copyOf(calls);
+		calls.clear();
+		return l;
+	}
+
+	/**
+	 * Set the last handshake of a peer, as reported by the information of its
+	 * adapter. Peers default to having never completed a handshake.
+	 *
+	 * @param publicKey public key
+	 * @param handshake last handshake
+	 */
+	synchronized void handshake(String publicKey, Instant handshake) {
+		handshakes.put(publicKey, handshake);
+	}
+
+	/**
+	 * Create an adapter with some peers, without recording it as a change.
+	 *
+	 * @param name  name
+	 * @param peers peers
+	 * @return adapter
+	 */
+	synchronized VpnAdapter add(String name, VpnPeer... peers) {
+		adapters.put(name, peers(List.of(peers)));
+		return adapter(name);
+	}
+
+	synchronized VpnAdapter adapter(String name) {
+		return new VpnAdapter(service, Optional.of(address(name)));
+	}
+
+	synchronized List<String> names() {
+		return List.copyOf(adapters.keySet());
+	}
+
+	synchronized Map<String, VpnPeer> peers(String name) {
+		var peers = adapters.get(name);
+		if (peers == null)
+			throw new IllegalArgumentException("No adapter " + name);
+		return peers;
+	}
+
+	static VpnPeer peer(String publicKey, String... allowedIps) {
+		return new VpnPeer.Builder().withPublicKey(publicKey).withAllowedIps(allowedIps).build();
+	}
+
+	private void change(String op, String name, List<VpnPeer> peers) throws IOException {
+		check(op + " " + name + " " + peers.stream().map(VpnPeer::publicKey).toList());
+	}
+
+	private void check(String call) throws IOException {
+		if (failWhen.test(call))
+			throw new IOException("Failed " + call);
+		calls.add(call);
+	}
+
+	@SuppressWarnings("unchecked")
+	private static Collection<String> cast(Object obj) {
+		return (Collection<String>) obj;
+	}
+
+	private static String name(Object adapter) {
+		return ((VpnAdapter) adapter).address().name();
+	}
+
+	private static Map<String, VpnPeer> peers(List<VpnPeer> peers) {
+		var map = new LinkedHashMap<String, VpnPeer>();
+		for (var peer : peers)
+			map.put(peer.publicKey(), peer);
+		return map;
+	}
+
+	private static List<String> merge(List<String> a, List<String> b) {
+		var s = new LinkedHashSet<>(a);
+		s.addAll(b);
+		return List.copyOf(s);
+	}
+
+	private static VpnAddress address(String name) {
+		return (VpnAddress) Proxy.newProxyInstance(TestPlatform.class.getClassLoader(),
+				new Class<?>[] { VpnAddress.class }, (proxy, method, args) -> {
+					switch (method.getName()) {
+					case "name":
+					case "nativeName":
+					case "shortName":
+						return name;
+					default:
+						throw new UnsupportedOperationException(method.getName());
+					}
+				});
+	}
+}
@@ -0,0 +1,196 @@
+/**
+ * Copyright © 2023 LogonBox Limited (support@logonbox.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the “Software”), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies
+ * or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.logonbox.vpn.drivers.lib;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.logonbox.vpn.drivers.lib.TrafficHistory.Tier;
+
+public class TrafficHistoryTest {
+
+	@TempDir
+	Path dir;
+
+	@Test
+	void testRawRingWraps() throws Exception {
+		try (var history = builder().withCapacity(Tier.RAW, 3).build()) {
+			for (int i = 0; i < 5; i++)
+				history.record("wg0", key(1), i, i * 10, i * 100);
+			assertEquals(List.of(sample(2, 20, 200), sample(3, 30, 300), sample(4, 40, 400)),
+					read(history, key(1), Tier.RAW, 0));
+			assertEquals(List.of(sample(3, 30, 300), sample(4, 40, 400)), read(history, key(1), Tier.RAW, 3));
+		}
+	}
+
+	@Test
+	void testTiersKeepLastSampleInEachBucket() throws Exception {
+		try (var history = builder().build()) {
+			history.record("wg0", key(1), 0, 1, 1);
+			history.record("wg0", key(1), 30, 2, 2);
+			history.record("wg0", key(1), 59, 3, 3);
+			history.record("wg0", key(1), 60, 4, 4);
+			history.record("wg0", key(1), 125, 5, 5);
+			assertEquals(5, read(history, key(1), Tier.RAW, 0).size());
+			assertEquals(List.of(sample(59, 3, 3), sample(60, 4, 4), sample(125, 5, 5)),
+					read(history, key(1), Tier.MINUTE, 0));
+			assertEquals(List.of(sample(125, 5, 5)), read(history, key(1), Tier.HOUR, 0));
+		}
+	}
+
+	@Test
+	void testClockGoingBackwardsKeepsTierOrder() throws Exception {
+		try (var history = builder().build()) {
+			history.record("wg0", key(1), 120, 1, 1);
+			history.record("wg0", key(1), 30, 2, 2);
+			assertEquals(List.of(sample(120, 1, 1)), read(history, key(1), Tier.MINUTE, 0));
+		}
+	}
+
+	@Test
+	void testCounterResetStaysMonotonic() throws Exception {
+		try (var history = builder().build()) {
+			history.record("wg0", key(1), 1, 100, 1000);
+			history.record("wg0", key(1), 2, 200, 2000);
+			history.record("wg0", key(1), 3, 50, 500);
+			history.record("wg0", key(1), 4, 70, 600);
+			assertEquals(List.of(sample(1, 100, 1000), sample(2, 200, 2000), sample(3, 250, 2500), sample(4, 270, 2600)),
+					read(history, key(1), Tier.RAW, 0));
+		}
+	}
+
+	@Test
+	void testReopenKeepsHistory() throws Exception {
+		try (var history = builder().build()) {
+			history.record("wg0", key(1), 1, 100, 1000);
+			history.record("wg1", key(2), 1, 5, 6);
+		}
+		try (var history = builder().build()) {
+			assertEquals(Set.of("wg0", "wg1"), new HashSet<>(history.interfaces()));
+			assertEquals(List.of(key(1)), history.peers("wg0"));
+			history.record("wg0", key(1), 2, 10, 10);
+			assertEquals(List.of(sample(1, 100, 1000), sample(2, 110, 1010)), read(history, key(1), Tier.RAW, 0));
+		}
+	}
+
+	@Test
+	void testReopenWithOtherConfigurationFails() throws Exception {
+		try (var history = builder().withMaxPeers(4).build()) {
+			history.record("wg0", key(1), 1, 1, 1);
+		}
+		try (var history = builder().withMaxPeers(8).build()) {
+			assertThrows(UncheckedIOException.class, () -> history.record("wg0", key(1), 2, 2, 2));
+		}
+	}
+
+	@Test
+	void testFullDropsNewPeersUntilOthersAreGone() throws Exception {
+		try (var history = builder().withMaxPeers(2).withCapacity(Tier.HOUR, 2).build()) {
+			history.record("wg0", key(1), 0, 1, 1);
+			history.record("wg0", key(2), 0, 2, 2);
+			history.record("wg0", key(3), 100, 3, 3);
+			assertEquals(Set.of(key(1), key(2)), new HashSet<>(history.peers("wg0")));
+			assertEquals(0, read(history, key(3), Tier.RAW, 0).size());
+
+			/* Peer 1 has been gone for longer than the hour tier, so is replaced */
+			history.record("wg0", key(2), 8000, 20, 20);
+			history.record("wg0", key(3), 8000, 3, 3);
+			assertEquals(Set.of(key(2), key(3)), new HashSet<>(history.peers("wg0")));
+			assertEquals(0, read(history, key(1), Tier.RAW, 0).size());
+			assertEquals(List.of(sample(8000, 3, 3)), read(history, key(3), Tier.RAW, 0));
+			assertEquals(List.of(sample(8000, 3, 3)), read(history, key(3), Tier.HOUR, 0));
+			assertEquals(List.of(sample(0, 2, 2), sample(8000, 20, 20)), read(history, key(2), Tier.RAW, 0));
+		}
+	}
+
+	@Test
+	void testReusedSlotsKeepAllKeysFindable() throws Exception {
+		var rnd = new Random(1);
+		var peers = 16;
+		try (var history = builder().withMaxPeers(peers).withCapacity(Tier.HOUR, 1).build()) {
+			for (int round = 0; round < 20; round++) {
+				var time = round * 4000L;
+				var keys = new ArrayList<String>();
+				for (int i = 0; i < peers; i++) {
+					var key = key(rnd.nextInt(1_000_000));
+					if (!keys.contains(key)) {
+						keys.add(key);
+						history.record("wg0", key, time, i, i);
+					}
+				}
+				assertEquals(new HashSet<>(keys), new HashSet<>(history.peers("wg0")));
+				for (int i = 0; i < keys.size(); i++)
+					assertEquals(List.of(sample(time, i, i)), read(history, keys.get(i), Tier.RAW, 0));
+			}
+		}
+	}
+
+	@Test
+	void testFileGrowsWithPeers() throws Exception {
+		var file = dir.resolve("wg0" + TrafficHistory.SUFFIX);
+		try (var history = builder().build()) {
+			history.record("wg0", key(1), 1, 1, 1);
+			var size = Files.size(file);
+			/* The key table and one segment of blocks, not blocks for every peer allowed */
+			assertTrue(size < 32 * 1024 * 1024, "File is " + size);
+
+			for (int i = 2; i <= 200; i++)
+				history.record("wg0", key(i), 1, i, i);
+			assertTrue(Files.size(file) > size);
+			assertEquals(List.of(sample(1, 200, 200)), read(history, key(200), Tier.RAW, 0));
+		}
+		try (var history = builder().build()) {
+			assertEquals(200, history.peers("wg0").size());
+			assertEquals(List.of(sample(1, 150, 150)), read(history, key(150), Tier.RAW, 0));
+		}
+	}
+
+	private TrafficHistory.Builder builder() {
+		return new TrafficHistory.Builder().withDirectory(dir);
+	}
+
+	private static List<List<Long>> read(TrafficHistory history, String key, Tier tier, long from) {
+		var samples = new ArrayList<List<Long>>();
+		history.read("wg0", key, tier, from, (t, rx, tx) -> samples.add(sample(t, rx, tx)));
+		return samples;
+	}
+
+	private static List<Long> sample(long epochSecond, long rx, long tx) {
+		return List.of(epochSecond, rx, tx);
+	}
+
+	private static String key(int i) {
+		return String.format("%043d=", i);
+	}
+}
@@ -0,0 +1,109 @@
+/**
+ * Copyright © 2023 LogonBox Limited (support@logonbox.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the “Software”), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies
+ * or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.logonbox.vpn.drivers.lib;
+
+import static com.logonbox.vpn.drivers.lib.TestInformation.adapter;
+import static com.logonbox.vpn.drivers.lib.TestInformation.iface;
+import static com.logonbox.vpn.drivers.lib.TestInformation.peer;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class TrafficSamplerTest {
+
+	private ScheduledExecutorService queue;
+
+	@BeforeEach
+	void setUp() {
+		queue = Executors.newSingleThreadScheduledExecutor();
+	}
+
+	@AfterEach
+	void tearDown() {
+		queue.shutdownNow();
+	}
+
+	@Test
+	void testRemovedPeerIsNotCountedAsTransfer() throws Exception {
+		var samples = new ArrayDeque<>(List.of(
+				iface("wg0", peer("a", 1000, 100), peer("b", 1_000_000_000, 100)),
+				iface("wg0", peer("a", 3000, 300))));
+		try (var sampler = sampler(samples)) {
+			sampler.sample();
+			Thread.sleep(5);
+			sampler.sample();
+
+			var ifaceRate = sampler.currentRate("wg0").orElseThrow();
+			var peerRate = sampler.currentRate("wg0", "a").orElseThrow();
+			assertEquals(peerRate.rx(), ifaceRate.rx(), 0.001);
+			assertEquals(peerRate.tx(), ifaceRate.tx(), 0.001);
+			assertTrue(sampler.currentRate("wg0", "b").isEmpty());
+		}
+	}
+
+	@Test
+	void testInterfaceIsSumOfPeers() throws Exception {
+		var samples = new ArrayDeque<>(List.of(
+				iface("wg0", peer("a", 1000, 0), peer("b", 5000, 0)),
+				iface("wg0", peer("a", 2000, 0), peer("b", 8000, 0), peer("c", 700, 0))));
+		try (var sampler = sampler(samples)) {
+			sampler.sample();
+			Thread.sleep(5);
+			sampler.sample();
+
+			var a = sampler.currentRate("wg0", "a").orElseThrow().rx();
+			var b = sampler.currentRate("wg0", "b").orElseThrow().rx();
+			var total = sampler.currentRate("wg0").orElseThrow().rx();
+			assertEquals(b, a * 3, 0.001);
+			/* A new peer has no earlier sample, so adds nothing until the next */
+			assertEquals(a + b, total, 0.001);
+		}
+	}
+
+	@Test
+	void testPeerCounterReset() throws Exception {
+		var samples = new ArrayDeque<>(List.of(
+				iface("wg0", peer("a", 10_000, 0)),
+				iface("wg0", peer("a", 400, 0))));
+		try (var sampler = sampler(samples)) {
+			sampler.sample();
+			Thread.sleep(5);
+			sampler.sample();
+
+			/* Peer was re-added, so everything it has now is new transfer */
+			var a = sampler.currentRate("wg0", "a").orElseThrow().rx();
+			assertEquals(a, sampler.currentRate("wg0").orElseThrow().rx(), 0.001);
+			assertTrue(a > 0);
+		}
+	}
+
+	private TrafficSampler sampler(ArrayDeque<VpnInterfaceInformation> samples) {
+		return new TrafficSampler.Builder().withAdapters(adapter(a -> samples.poll())).withQueue(queue).build();
+	}
+}
@@ -0,0 +1,136 @@
+/**
+ * Copyright © 2023 LogonBox Limited (support@logonbox.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the “Software”), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies
+ * or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.logonbox.vpn.drivers.lib;
+
+import static com.logonbox.vpn.drivers.lib.TestInformation.iface;
+import static com.logonbox.vpn.drivers.lib.TestInformation.peer;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Instant;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import com.logonbox.vpn.drivers.lib.VpnInterfaceDiff.PeerDelta;
+
+public class VpnInterfaceDiffTest {
+
+	@Test
+	void testNoChange() {
+		var previous = iface("wg0", peer("a", 10, 20), peer("b", 30, 40));
+		var current = iface("wg0", peer("a", 10, 20), peer("b", 30, 40));
+		var diff = current.diff(previous);
+		assertTrue(diff.isEmpty());
+		assertTrue(diff.added().isEmpty());
+		assertTrue(diff.removed().isEmpty());
+		assertTrue(diff.updated().isEmpty());
+	}
+
+	@Test
+	void testAddedAndRemoved() {
+		var previous = iface("wg0", peer("a", 10, 20), peer("b", 30, 40), peer("d", 1, 1));
+		var current = iface("wg0", peer("b", 30, 40), peer("c", 5, 6), peer("e", 1, 1));
+		var diff = current.diff(previous);
+		assertEquals(List.of("c", "e"), keys(diff.added()));
+		assertEquals(List.of("a", "d"), keys(diff.removed()));
+		assertTrue(diff.updated().isEmpty());
+	}
+
+	@Test
+	void testRemovedPeerIsNotACounterReset() {
+		var previous = iface("wg0", peer("a", 10, 20), peer("b", 1000, 2000));
+		var current = iface("wg0", peer("a", 10, 20));
+		var diff = current.diff(previous);
+		assertEquals(List.of("b"), keys(diff.removed()));
+		assertTrue(diff.updated().isEmpty());
+		assertEquals(0, diff.rx());
+		assertEquals(0, diff.tx());
+		assertFalse(diff.isEmpty());
+
+		current = iface("wg0", peer("a", 15, 27), peer("c", 3, 4));
+		diff = current.diff(previous);
+		assertEquals(5 + 3, diff.rx());
+		assertEquals(7 + 4, diff.tx());
+	}
+
+	@Test
+	void testTransferDeltas() {
+		var previous = iface("wg0", peer("a", 10, 20), peer("b", 30, 40));
+		var current = iface("wg0", peer("a", 15, 20), peer("b", 30, 48));
+		var diff = current.diff(previous);
+		assertEquals(List.of("a", "b"), deltaKeys(diff.updated()));
+		assertEquals(5, diff.updated().get(0).rx());
+		assertEquals(0, diff.updated().get(0).tx());
+		assertEquals(0, diff.updated().get(1).rx());
+		assertEquals(8, diff.updated().get(1).tx());
+		assertEquals(5, diff.rx());
+		assertEquals(8, diff.tx());
+	}
+
+	@Test
+	void testCounterResetCountsWholeNewValue() {
+		var previous = iface("wg0", peer("a", 1000, 2000));
+		var current = iface("wg0", peer("a", 100, 2500));
+		var diff = current.diff(previous);
+		var delta = diff.updated().get(0);
+		assertEquals(100, delta.rx());
+		assertEquals(500, delta.tx());
+		assertEquals(100, diff.rx());
+		assertEquals(500, diff.tx());
+	}
+
+	@Test
+	void testReorderedSnapshotsMatchByKey() {
+		var previous = iface("wg0", peer("c", 1, 1), peer("a", 1, 1), peer("b", 1, 1));
+		var current = iface("wg0", peer("b", 1, 1), peer("d", 1, 1), peer("a", 2, 1));
+		var diff = current.diff(previous);
+		assertEquals(List.of("d"), keys(diff.added()));
+		assertEquals(List.of("c"), keys(diff.removed()));
+		assertEquals(List.of("a"), deltaKeys(diff.updated()));
+		assertEquals(1, diff.updated().get(0).rx());
+	}
+
+	@Test
+	void testHandshakesAndAllowedIps() {
+		var previous = iface("wg0", peer("a", 1, 1, Instant.ofEpochSecond(10), "10.0.0.1/32", "10.0.0.2/32"),
+				peer("b", 1, 1, Instant.ofEpochSecond(10), "10.0.0.3/32"),
+				peer("c", 1, 1, Instant.ofEpochSecond(10), "10.0.0.4/32"));
+		var current = iface("wg0", peer("a", 1, 1, Instant.ofEpochSecond(20), "10.0.0.2/32", "10.0.0.1/32"),
+				peer("b", 1, 1, Instant.ofEpochSecond(10), "10.0.0.5/32"),
+				peer("c", 1, 1, Instant.ofEpochSecond(10), "10.0.0.4/32"));
+		var diff = current.diff(previous);
+		assertEquals(List.of("a"), deltaKeys(diff.handshakes()));
+		assertEquals(List.of("b"), deltaKeys(diff.allowedIpsChanges()));
+		assertTrue(diff.endpointChanges().isEmpty());
+		assertEquals(List.of("a", "b"), deltaKeys(diff.updated()));
+		assertFalse(diff.isEmpty());
+	}
+
+	private static List<String> keys(List<VpnPeerInformation> peers) {
+		return peers.stream().map(VpnPeerInformation::publicKey).toList();
+	}
+
+	private static List<String> deltaKeys(List<PeerDelta> deltas) {
+		return deltas.stream().map(PeerDelta::publicKey).toList();
+	}
+}
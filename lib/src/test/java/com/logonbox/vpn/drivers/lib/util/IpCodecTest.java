@@ -0,0 +1,196 @@
+/**
+ * Copyright © 2023 LogonBox Limited (support@logonbox.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the “Software”), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies
+ * or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.logonbox.vpn.drivers.lib.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+import com.github.jgonian.ipmath.Ipv4;
+import com.github.jgonian.ipmath.Ipv4Range;
+import com.github.jgonian.ipmath.Ipv6;
+import com.github.jgonian.ipmath.Ipv6Range;
+
+public class IpCodecTest {
+
+	@Test
+	void testIpv4RoundTrip() {
+		for (var addr : new String[] { "0.0.0.0", "1.2.3.4", "10.0.0.1", "192.168.100.254", "255.255.255.255" }) {
+			var cidr = address(addr);
+			assertTrue(cidr.ipv4());
+			assertTrue(cidr.single());
+			assertEquals(addr, cidr.toString());
+			assertEquals(Ipv4.of(addr).asBigInteger().longValue(), cidr.lo());
+		}
+	}
+
+	@Test
+	void testIpv6RoundTrip() {
+		for (var addr : new String[] { "::", "::1", "1::", "fe80::1", "2001:db8::ff00:42:8329", "2001:db8:0:1:1:1:1:1",
+				"2001:0:0:1::1", "1:2:3:4:5:6:7:8", "ffff:ffff:ffff:ffff:ffff:ffff:ffff:ffff" }) {
+			var cidr = address(addr);
+			assertTrue(cidr.ipv6());
+			assertTrue(cidr.single());
+			assertEquals(addr, cidr.toString());
+			assertEquals(Ipv6.of(addr), cidr.toIp());
+		}
+	}
+
+	@Test
+	void testIpv6Compression() {
+		/* Leading zeros dropped, lower case, longest run compressed */
+		assertEquals("2001:db8::1", address("2001:0DB8:0000:0000:0000:0000:0000:0001").toString());
+		/* A single zero group is not compressed */
+		assertEquals("2001:db8:0:1:1:1:1:1", address("2001:db8::1:1:1:1:1").toString());
+		/* The first of two runs of equal length is compressed */
+		assertEquals("2001:db8::1:0:0:1", address("2001:db8:0:0:1:0:0:1").toString());
+		/* The longer of two runs is compressed */
+		assertEquals("2001:0:0:1::1", address("2001:0:0:1:0:0:0:1").toString());
+		assertEquals("::", address("0:0:0:0:0:0:0:0").toString());
+		assertEquals(Ipv6.of("2001:db8:0:0:1:0:0:1").toString(), address("2001:db8:0:0:1:0:0:1").toString());
+	}
+
+	@Test
+	void testIpv4Mapped() {
+		var cidr = address("::ffff:192.168.1.1");
+		assertTrue(cidr.ipv6());
+		assertEquals(0, cidr.hi());
+		assertEquals(0xffffc0a80101L, cidr.lo());
+		assertEquals(Ipv6.of("::ffff:192.168.1.1"), cidr.toIp());
+		assertEquals(cidr.lo(), address("::ffff:c0a8:101").lo());
+		assertEquals(address("64:ff9b::10.0.0.1").lo(), address("64:ff9b::a00:1").lo());
+
+		assertFalse(IpCodec.isAddress("::ffff:192.168.1"));
+		assertFalse(IpCodec.isAddress("::ffff:192.168.1.1:1"));
+		assertFalse(IpCodec.isAddress("1:2:3:4:5:6:7:1.2.3.4"));
+	}
+
+	@Test
+	void testCidr() {
+		var cidr = cidr("192.168.1.77/24");
+		assertEquals(24, cidr.prefix());
+		assertEquals("192.168.1.77/24", cidr.toString());
+		assertEquals(Ipv4Range.parseCidr("192.168.1.0/24"), cidr.toRange());
+		assertTrue(cidr.contains(0, Ipv4.of("192.168.1.200").asBigInteger().longValue()));
+		assertFalse(cidr.contains(0, Ipv4.of("192.168.2.0").asBigInteger().longValue()));
+
+		assertEquals(Ipv4Range.parseCidr("0.0.0.0/0"), cidr("0.0.0.0/0").toRange());
+		assertEquals("10.0.0.1/32", cidr("10.0.0.1").toMaskedString());
+
+		var cidr6 = cidr("2001:db8::1/64");
+		assertEquals(64, cidr6.prefix());
+		assertEquals(Ipv6Range.parseCidr("2001:db8::/64"), cidr6.toRange());
+		assertEquals(Ipv6Range.parseCidr("2001:db8::/33"), cidr("2001:db8::/33").toRange());
+		assertEquals(Ipv6Range.parseCidr("2001:db8::1:0/112"), cidr("2001:db8::1:0/112").toRange());
+		assertEquals(Ipv6Range.parseCidr("::/0"), cidr("::/0").toRange());
+		assertTrue(cidr("::1/128").single());
+	}
+
+	@Test
+	void testWhitespaceIgnored() {
+		assertEquals("10.0.0.1/8", cidr(" 10.0.0.1/8\t").toString());
+		assertEquals("fe80::1", address(" fe80::1 ").toString());
+	}
+
+	@Test
+	void testBadPrefixes() {
+		for (var bad : new String[] { "10.0.0.0/33", "10.0.0.0/", "10.0.0.0/-1", "10.0.0.0/1a", "10.0.0.0/0008",
+				"::/129", "::/", "::/1000", "10.0.0.0/8/8" }) {
+			assertInvalidCidr(bad);
+		}
+		/* A prefix is not allowed when parsing an address */
+		assertFalse(IpCodec.parseAddress("10.0.0.1/32", new IpCodec.Cidr()));
+		assertFalse(IpCodec.isAddress("::1/128"));
+	}
+
+	@Test
+	void testLeadingZeros() {
+		assertInvalidCidr("10.0.0.01");
+		assertInvalidCidr("010.0.0.1");
+		assertInvalidCidr("10.00.0.1");
+		assertInvalidCidr("::ffff:10.0.0.01");
+		/* Leading zeros within an IPv6 group are fine */
+		assertEquals("::1", address("0000::0001").toString());
+		/* But not more than four digits */
+		assertInvalidCidr("00001::");
+	}
+
+	@Test
+	void testRejected() {
+		for (var bad : new String[] { "", " ", "1.2.3", "1.2.3.4.5", "1.2.3.256", "1..2.3", "1.2.3.4.", ".1.2.3.4",
+				"a.b.c.d", ":", ":::", "1:::2", "1::2::3", "1:2:3:4:5:6:7:8:9", "1:2:3:4:5:6:7", "1:2:3:4:5:6:7::8",
+				":1:2:3:4:5:6:7:8", "1:2:3:4:5:6:7:8:", "g::1", "1.2.3.4::" }) {
+			assertInvalidCidr(bad);
+		}
+	}
+
+	@Test
+	void testFailedParseResetsHolder() {
+		var cidr = cidr("10.0.0.1/8");
+		assertFalse(IpCodec.parseCidr("nonsense", cidr));
+		assertFalse(cidr.valid());
+		assertEquals(IpCodec.INVALID, cidr.family());
+		assertEquals("<invalid>", cidr.toString());
+		assertThrows(IllegalStateException.class, () -> cidr.toIp());
+	}
+
+	@Test
+	void testFamily() {
+		assertEquals(IpCodec.IPV4, IpCodec.family("1.2.3.4"));
+		assertEquals(IpCodec.IPV6, IpCodec.family("::1"));
+		assertEquals(IpCodec.INVALID, IpCodec.family("example.com"));
+		assertTrue(IpCodec.isIpv4("1.2.3.4"));
+		assertFalse(IpCodec.isIpv6("1.2.3.4"));
+		assertTrue(IpCodec.isIpv6("::ffff:1.2.3.4"));
+	}
+
+	@Test
+	void testParseIpv4Part() {
+		assertEquals(0x0a000001L, IpCodec.parseIpv4("x10.0.0.1:51820", 1, 9));
+		assertEquals(-1, IpCodec.parseIpv4("x10.0.0.1:51820", 1, 10));
+	}
+
+	@Test
+	void testCompareUnsigned() {
+		assertTrue(IpCodec.compareUnsigned(0, -1L, 1, 0) < 0);
+		assertTrue(IpCodec.compareUnsigned(-1L, 0, 1, 0) > 0);
+		assertEquals(0, IpCodec.compareUnsigned(5, 6, 5, 6));
+	}
+
+	private static void assertInvalidCidr(String str) {
+		assertFalse(IpCodec.parseCidr(str, new IpCodec.Cidr()), () -> "Expected '" + str + "' to be rejected");
+	}
+
+	private static IpCodec.Cidr address(String str) {
+		var cidr = new IpCodec.Cidr();
+		assertTrue(IpCodec.parseAddress(str, cidr), () -> "Expected '" + str + "' to parse");
+		return cidr;
+	}
+
+	private static IpCodec.Cidr cidr(String str) {
+		var cidr = new IpCodec.Cidr();
+		assertTrue(IpCodec.parseCidr(str, cidr), () -> "Expected '" + str + "' to parse");
+		return cidr;
+	}
+}
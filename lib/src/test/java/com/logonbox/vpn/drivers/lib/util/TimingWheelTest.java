@@ -0,0 +1,164 @@
+/**
+ * Copyright © 2023 LogonBox Limited (support@logonbox.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the “Software”), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies
+ * or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.logonbox.vpn.drivers.lib.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+public class TimingWheelTest {
+
+	@Test
+	void testExpiresOnDeadlineTick() {
+		var wheel = new TimingWheel<String>(10, 4, 3, 0);
+		wheel.schedule("a", 25);
+		var expired = new ArrayList<String>();
+
+		wheel.advance(20, expired::add);
+		assertTrue(expired.isEmpty());
+		wheel.advance(30, expired::add);
+		assertEquals(List.of("a"), expired);
+		assertFalse(wheel.contains("a"));
+		assertEquals(0, wheel.size());
+	}
+
+	@Test
+	void testPastDeadlineExpiresOnNextAdvance() {
+		var wheel = new TimingWheel<String>(10, 4, 2, 1000);
+		wheel.schedule("a", 500);
+		var expired = new ArrayList<String>();
+		wheel.advance(1000, expired::add);
+		assertEquals(List.of("a"), expired);
+	}
+
+	@Test
+	void testCascadesThroughLevels() {
+		/* 4 slots x 3 levels covers 64 ticks, so these are filed on level 1 and 2 */
+		var wheel = new TimingWheel<Integer>(1, 4, 3, 0);
+		wheel.schedule(5, 5);
+		wheel.schedule(17, 17);
+		wheel.schedule(63, 63);
+		var expired = new ArrayList<Integer>();
+
+		for (long now = 0; now <= 63; now++) {
+			var before = expired.size();
+			wheel.advance(now, expired::add);
+			if (now == 5 || now == 17 || now == 63)
+				assertEquals(before + 1, expired.size(), "At " + now);
+			else
+				assertEquals(before, expired.size(), "At " + now);
+		}
+		assertEquals(List.of(5, 17, 63), expired);
+	}
+
+	@Test
+	void testBeyondTopLevelIsRefiled() {
+		var wheel = new TimingWheel<String>(1, 4, 2, 0);
+		wheel.schedule("far", 100);
+		var expired = new ArrayList<String>();
+		wheel.advance(99, expired::add);
+		assertTrue(expired.isEmpty());
+		assertTrue(wheel.contains("far"));
+		wheel.advance(100, expired::add);
+		assertEquals(List.of("far"), expired);
+	}
+
+	@Test
+	void testRescheduleAndCancel() {
+		var wheel = new TimingWheel<String>(1, 8, 2, 0);
+		wheel.schedule("a", 10);
+		wheel.schedule("b", 10);
+		wheel.schedule("a", 40);
+		assertTrue(wheel.cancel("b"));
+		assertFalse(wheel.cancel("b"));
+		assertEquals(40, wheel.deadline("a").getAsLong());
+
+		var expired = new ArrayList<String>();
+		wheel.advance(39, expired::add);
+		assertTrue(expired.isEmpty());
+		wheel.advance(40, expired::add);
+		assertEquals(List.of("a"), expired);
+	}
+
+	@Test
+	void testRemoveIfAndClear() {
+		var wheel = new TimingWheel<Integer>(1, 8, 2, 0);
+		for (int i = 0; i < 10; i++)
+			wheel.schedule(i, 5 + i);
+		assertTrue(wheel.removeIf(i -> i % 2 == 0));
+		assertEquals(5, wheel.size());
+		var expired = new ArrayList<Integer>();
+		wheel.advance(100, expired::add);
+		assertEquals(List.of(1, 3, 5, 7, 9), expired.stream().sorted().toList());
+
+		wheel.schedule(1, 200);
+		wheel.clear();
+		wheel.advance(300, expired::add);
+		assertEquals(5, expired.size());
+	}
+
+	@Test
+	void testMatchesBruteForce() {
+		var rnd = new Random(1);
+		var wheel = new TimingWheel<Integer>(10, 8, 3, 0);
+		var deadlines = new HashMap<Integer, Long>();
+		var now = 0L;
+		for (int round = 0; round < 2000; round++) {
+			var key = rnd.nextInt(200);
+			if (rnd.nextInt(5) == 0) {
+				wheel.cancel(key);
+				deadlines.remove(key);
+			} else {
+				var deadline = now + rnd.nextInt(20000);
+				wheel.schedule(key, deadline);
+				deadlines.put(key, deadline);
+			}
+
+			now += rnd.nextInt(100);
+			var target = now / 10;
+			var expired = new ArrayList<Integer>();
+			wheel.advance(now, expired::add);
+			for (var k : expired) {
+				var deadline = deadlines.remove(k);
+				assertTrue((deadline + 9) / 10 <= target, "Key " + k + " expired early");
+			}
+			for (var en : deadlines.entrySet()) {
+				assertTrue((en.getValue() + 9) / 10 > target, "Key " + en.getKey() + " not expired");
+			}
+			assertEquals(deadlines.size(), wheel.size());
+		}
+	}
+
+	@Test
+	void testInvalidArguments() {
+		assertThrows(IllegalArgumentException.class, () -> new TimingWheel<String>(0, 4, 2, 0));
+		assertThrows(IllegalArgumentException.class, () -> new TimingWheel<String>(1, 3, 2, 0));
+		assertThrows(IllegalArgumentException.class, () -> new TimingWheel<String>(1, 4, 0, 0));
+	}
+}
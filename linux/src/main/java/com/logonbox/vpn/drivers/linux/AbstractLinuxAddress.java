@@ -38,6 +38,7 @@ import org.slf4j.LoggerFactory;
 
 import com.logonbox.vpn.drivers.lib.AbstractUnixAddress;
 import com.logonbox.vpn.drivers.lib.NativeComponents.Tool;
+import com.logonbox.vpn.drivers.lib.VpnEvents;
 import com.logonbox.vpn.drivers.lib.util.IpUtil;
 import com.logonbox.vpn.drivers.lib.util.OsUtil;
 import com.logonbox.vpn.drivers.lib.util.Util;
@@ -45,6 +46,7 @@ import com.logonbox.vpn.drivers.lib.util.Util;
 public abstract class AbstractLinuxAddress extends AbstractUnixAddress<AbstractLinuxPlatformService> {
 
     private static final String NFT_COMMAND = "nft";
+    private static final String IPTABLES_COMMAND = "iptables";
 
     private static final String TABLE_PREFIX = "logonbox-vpn-";
 
@@ -383,22 +385,27 @@ public abstract class AbstractLinuxAddress extends AbstractUnixAddress<AbstractL
             priv.logged().result("sysctl", "-q", "net.ipv4.conf.all.src_valid_mark=1");
         }
 
-        if (OsUtil.doesCommandExist(NFT_COMMAND)) {
-            LOG.info("Updating firewall (NFT): {}", nftcmd.toString());
-            var temp = Files.createTempFile("nftvpn", ".fwl");
-            try {
-                try(var out = Files.newBufferedWriter(temp)) {
-                    out.write(nftcmd.toString());
+        var nft = OsUtil.doesCommandExist(NFT_COMMAND);
+        var restoreInput = restore;
+        var restoreCommand = iptables + "-restore";
+        new VpnEvents.Firewall(name(), VpnEvents.Firewall.ADD, firewallBackend(nft)).run(() -> {
+            if (nft) {
+                LOG.info("Updating firewall (NFT): {}", nftcmd.toString());
+                var temp = Files.createTempFile("nftvpn", ".fwl");
+                try {
+                    try(var out = Files.newBufferedWriter(temp)) {
+                        out.write(nftcmd.toString());
+                    }
+                    priv.logged().pipeTo(nftcmd.toString(), "nft", "-f", temp.toAbsolutePath().toString());
                 }
-                priv.logged().pipeTo(nftcmd.toString(), "nft", "-f", temp.toAbsolutePath().toString());
-            }
-            finally {
-                Files.delete(temp);
+                finally {
+                    Files.delete(temp);
+                }
+            } else {
+                LOG.info("Updating firewall (IpTables): {}", restoreInput);
+                priv.logged().pipeTo(restoreInput, restoreCommand, "-n");
             }
-        } else {
-            LOG.info("Updating firewall (IpTables): {}", restore);
-            priv.logged().pipeTo(restore, iptables + "-restore", "-n");
-        }
+        });
     }
 
     private void addRoute(String route) throws IOException {
@@ -450,7 +457,18 @@ public abstract class AbstractLinuxAddress extends AbstractUnixAddress<AbstractL
     }
 
     private void removeFirewall() throws IOException {
-        if (OsUtil.doesCommandExist(NFT_COMMAND)) {
+        var nft = OsUtil.doesCommandExist(NFT_COMMAND);
+        new VpnEvents.Firewall(name(), VpnEvents.Firewall.REMOVE, firewallBackend(nft))
+                .run(() -> removeFirewall(nft));
+    }
+
+    /* Backend recorded in firewall events, the same for IPv4 and IPv6 */
+    private static String firewallBackend(boolean nft) {
+        return nft ? NFT_COMMAND : IPTABLES_COMMAND;
+    }
+
+    private void removeFirewall(boolean nft) throws IOException {
+        if (nft) {
             var nftcmd = new StringBuilder();
             for (var table : commands.privileged().output("nft", "list", "tables")) {
                 if (table.contains(TABLE_PREFIX)) {
@@ -30,7 +30,6 @@ import java.net.SocketException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.time.Instant;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Objects;
@@ -49,6 +48,7 @@ import com.logonbox.vpn.drivers.lib.StartRequest;
 import com.logonbox.vpn.drivers.lib.SystemContext;
 import com.logonbox.vpn.drivers.lib.VpnAdapter;
 import com.logonbox.vpn.drivers.lib.VpnConfiguration;
+import com.logonbox.vpn.drivers.lib.VpnEvents;
 import com.logonbox.vpn.drivers.lib.util.OsUtil;
 import com.sshtools.liftlib.ElevatedClosure;
 
@@ -405,38 +405,42 @@ public abstract class AbstractLinuxPlatformService extends AbstractUnixDesktopPl
         if (configuration.addresses().size() > 0)
             ip.setAddresses(configuration.addresses().get(0));
 
-        Path tempFile = Files.createTempFile("wg", ".cfg");
-        try {
-            try (Writer writer = Files.newBufferedWriter(tempFile)) {
-                transform(configuration).write(writer);
-            }
-            
-            // TEMP
-            try(BufferedReader reader =  Files.newBufferedReader(tempFile)) {
-            	String line;
-            	while( ( line = reader.readLine()) != null) {
-            		LOG.info("{}", line);
-            	}
+        phase(ip, VpnEvents.Phase.SETCONF, configuration.peers().size(), () -> {
+            Path tempFile = Files.createTempFile("wg", ".cfg");
+            try {
+                try (Writer writer = Files.newBufferedWriter(tempFile)) {
+                    transform(configuration).write(writer);
+                }
+                
+                // TEMP
+                try(BufferedReader reader =  Files.newBufferedReader(tempFile)) {
+                	String line;
+                	while( ( line = reader.readLine()) != null) {
+                		LOG.info("{}", line);
+                	}
+                }
+                
+                LOG.info("Activating Wireguard configuration for {} (in {})", ip.shortName(), tempFile);
+                context().commands().privileged().logged().result(context().nativeComponents().tool(Tool.WG), "setconf", ip.name(),
+                        tempFile.toString());
+                LOG.info("Activated Wireguard configuration for {}", ip.shortName());
+            } finally {
+                Files.delete(tempFile);
             }
-            
-            LOG.info("Activating Wireguard configuration for {} (in {})", ip.shortName(), tempFile);
-            context().commands().privileged().logged().result(context().nativeComponents().tool(Tool.WG), "setconf", ip.name(),
-                    tempFile.toString());
-            LOG.info("Activated Wireguard configuration for {}", ip.shortName());
-        } finally {
-            Files.delete(tempFile);
-        }
+        });
 
         /*
          * About to start connection. The "last handshake" should be this value or later
          * if we get a valid connection
          */
-        var connectionStarted = Instant.ofEpochMilli(((System.currentTimeMillis() / 1000l) - 1) * 1000l);
+        var connectionStarted = connectionStarted();
 
         /* Bring up the interface (will set the given MTU) */
-        ip.mtu(configuration.mtu().or(() -> context.configuration().defaultMTU()).orElse(0));
-        LOG.info("Bringing up {}", ip.shortName());
-        ip.up();
+        phase(ip, VpnEvents.Phase.UP, configuration.peers().size(), () -> {
+            ip.mtu(configuration.mtu().or(() -> context.configuration().defaultMTU()).orElse(0));
+            LOG.info("Bringing up {}", ip.shortName());
+            ip.up();
+        });
         session.attachToInterface(ip);
 
         /*
@@ -27,7 +27,6 @@ import java.net.NetworkInterface;
 import java.net.UnknownHostException;
 import java.nio.file.Files;
 import java.text.MessageFormat;
-import java.time.Instant;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
@@ -41,6 +40,7 @@ import com.logonbox.vpn.drivers.lib.StartRequest;
 import com.logonbox.vpn.drivers.lib.SystemContext;
 import com.logonbox.vpn.drivers.lib.VpnAdapter;
 import com.logonbox.vpn.drivers.lib.VpnConfiguration;
+import com.logonbox.vpn.drivers.lib.VpnEvents;
 import com.logonbox.vpn.drivers.lib.util.OsUtil;
 
 public class UserspaceMacOsPlatformService extends AbstractUnixDesktopPlatformService<UserspaceMacOsAddress> {
@@ -166,24 +166,26 @@ public class UserspaceMacOsPlatformService extends AbstractUnixDesktopPlatformSe
 		
 		var ip = findAddress(startRequest);
 
-		var tempFile = Files.createTempFile("wg", "cfg");
-		try {
-			try (var writer = Files.newBufferedWriter(tempFile)) {
-				transform(configuration).write(writer);
+		phase(ip, VpnEvents.Phase.SETCONF, configuration.peers().size(), () -> {
+			var tempFile = Files.createTempFile("wg", "cfg");
+			try {
+				try (var writer = Files.newBufferedWriter(tempFile)) {
+					transform(configuration).write(writer);
+				}
+				log.info("Activating Wireguard configuration for {} (in {})", ip.shortName(), tempFile);
+				context().commands().privileged().logged().result(context().nativeComponents().tool(Tool.WG), "setconf",
+						ip.nativeName(), tempFile.toString());
+				log.info("Activated Wireguard configuration for {}", ip.shortName());
+			} finally {
+				Files.delete(tempFile);
 			}
-			log.info("Activating Wireguard configuration for {} (in {})", ip.shortName(), tempFile);
-			context().commands().privileged().logged().result(context().nativeComponents().tool(Tool.WG), "setconf",
-					ip.nativeName(), tempFile.toString());
-			log.info("Activated Wireguard configuration for {}", ip.shortName());
-		} finally {
-			Files.delete(tempFile);
-		}
+		});
 
 		/*
 		 * About to start connection. The "last handshake" should be this value or later
 		 * if we get a valid connection
 		 */
-		var connectionStarted = Instant.ofEpochMilli(((System.currentTimeMillis() / 1000l) - 1) * 1000l);
+		var connectionStarted = connectionStarted();
 
 		/* Set the address reserved */
 		if (configuration.addresses().size() > 0) {
@@ -193,9 +195,11 @@ public class UserspaceMacOsPlatformService extends AbstractUnixDesktopPlatformSe
 		}
 
 		/* Bring up the interface (will set the given MTU) */
-		ip.mtu(configuration.mtu().or(() -> context.configuration().defaultMTU()).orElse(0));
-		log.info("Bringing up {}", ip.shortName());
-		ip.up();
+		phase(ip, VpnEvents.Phase.UP, configuration.peers().size(), () -> {
+			ip.mtu(configuration.mtu().or(() -> context.configuration().defaultMTU()).orElse(0));
+			log.info("Bringing up {}", ip.shortName());
+			ip.up();
+		});
 		session.attachToInterface(ip);
 
 		/*
@@ -0,0 +1,415 @@
+/**
+ * Copyright © 2023 LogonBox Limited (support@logonbox.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the “Software”), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies
+ * or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.logonbox.vpn.drivers.metrics;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.logonbox.vpn.drivers.lib.CommandStatistics;
+import com.logonbox.vpn.drivers.lib.PlatformService;
+import com.logonbox.vpn.drivers.lib.VpnInterfaceInformation;
+import com.logonbox.vpn.drivers.lib.VpnPeerInformation;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Serves interface and peer statistics of a {@link PlatformService} in the
+ * OpenMetrics text format, using the JDK HTTP server.
+ * <p>
+ * Adapters are read at most once per snapshot interval however often, and by
+ * however many clients, the endpoint is scraped. Every scrape in between is
+ * rendered from the same cached snapshot, and is streamed straight to the
+ * client rather than built up in memory first.
+ * <p>
+ * Requests are handled on virtual threads when the runtime supports them,
+ * otherwise on a small pool of daemon threads.
+ */
+public final class OpenMetricsExporter implements Closeable {
+
+	private final static Logger LOG = LoggerFactory.getLogger(OpenMetricsExporter.class);
+
+	public final static int DEFAULT_PORT = 9586;
+	public final static String DEFAULT_PATH = "/metrics";
+	public final static Duration DEFAULT_SNAPSHOT_INTERVAL = Duration.ofSeconds(15);
+
+	private final static String CONTENT_TYPE = "application/openmetrics-text; version=1.0.0; charset=utf-8";
+
+	public final static class Builder {
+		private Optional<PlatformService<?>> platformService = Optional.empty();
+		private Optional<InetSocketAddress> address = Optional.empty();
+		private String path = DEFAULT_PATH;
+		private Duration snapshotInterval = DEFAULT_SNAPSHOT_INTERVAL;
+		private Optional<Executor> executor = Optional.empty();
+
+		public Builder withPlatformService(PlatformService<?> platformService) {
+			this.platformService = Optional.of(platformService);
+			return this;
+		}
+
+		/**
+		 * Address to listen on, defaults to port {@link OpenMetricsExporter#DEFAULT_PORT}
+		 * on the loopback address.
+		 *
+		 * @param address address
+		 * @return this for chaining
+		 */
+		public Builder withAddress(InetSocketAddress address) {
+			this.address = Optional.of(address);
+			return this;
+		}
+
+		/**
+		 * Port to listen on, on the loopback address.
+		 *
+		 * @param port port
+		 * @return this for chaining
+		 */
+		public Builder withPort(int port) {
+			return withAddress(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+		}
+
+		public Builder withPath(String path) {
+			this.path = path;
+			return this;
+		}
+
+		/**
+		 * How long a snapshot of the adapters is used for before it is taken again,
+		 * defaults to 15 seconds.
+		 *
+		 * @param snapshotInterval snapshot interval
+		 * @return this for chaining
+		 */
+		public Builder withSnapshotInterval(Duration snapshotInterval) {
+			this.snapshotInterval = snapshotInterval;
+			return this;
+		}
+
+		/**
+		 * Executor to handle requests on, otherwise one is created.
+		 *
+		 * @param executor executor
+		 * @return this for chaining
+		 */
+		public Builder withExecutor(Executor executor) {
+			this.executor = Optional.of(executor);
+			return this;
+		}
+
+		public OpenMetricsExporter build() throws IOException {
+			return new OpenMetricsExporter(this);
+		}
+	}
+
+	private final static class Peer {
+		private String endpoint;
+		private long endpointChanges;
+		private long generation;
+	}
+
+	/* Endpoint changes are held for each interface in the same order as its peers */
+	private record Snapshot(long taken, List<VpnInterfaceInformation> interfaces, List<long[]> endpointChanges,
+			Optional<CommandStatistics.Counts> commands) {
+	}
+
+	private final PlatformService<?> platformService;
+	private final HttpServer server;
+	private final Optional<ExecutorService> ownExecutor;
+	private final long snapshotMillis;
+	private final Map<String, Map<String, Peer>> peers = new HashMap<>();
+	private final Object lock = new Object();
+
+	private Snapshot snapshot;
+	private long generation;
+
+	private OpenMetricsExporter(Builder builder) throws IOException {
+		platformService = builder.platformService
+				.orElseThrow(() -> new IllegalStateException("Platform service must be supplied."));
+		snapshotMillis = builder.snapshotInterval.toMillis();
+
+		Executor executor;
+		if (builder.executor.isPresent()) {
+			executor = builder.executor.get();
+			ownExecutor = Optional.empty();
+		} else {
+			var srv = createExecutor();
+			executor = srv;
+			ownExecutor = Optional.of(srv);
+		}
+
+		server = HttpServer.create(builder.address
+				.orElseGet(() -> new InetSocketAddress(InetAddress.getLoopbackAddress(), DEFAULT_PORT)), 0);
+		server.setExecutor(executor);
+		server.createContext(builder.path, this::handle);
+		server.start();
+		LOG.info("Serving metrics on {}{}", server.getAddress(), builder.path);
+	}
+
+	/**
+	 * Get the address actually being listened on.
+	 *
+	 * @return address
+	 */
+	public InetSocketAddress address() {
+		return server.getAddress();
+	}
+
+	@Override
+	public void close() {
+		server.stop(0);
+		ownExecutor.ifPresent(ExecutorService::shutdown);
+	}
+
+	/**
+	 * Write the metrics for the current snapshot, taking a new snapshot if the
+	 * current one has expired.
+	 *
+	 * @param writer writer
+	 * @throws IOException on error
+	 */
+	public void write(Writer writer) throws IOException {
+		write(snapshot(), writer);
+	}
+
+	private void handle(HttpExchange exchange) throws IOException {
+		try (exchange) {
+			var method = exchange.getRequestMethod();
+			if (!method.equals("GET") && !method.equals("HEAD")) {
+				exchange.getResponseHeaders().set("Allow", "GET, HEAD");
+				exchange.sendResponseHeaders(405, -1);
+				return;
+			}
+			var snap = snapshot();
+			exchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE);
+			if (method.equals("HEAD")) {
+				exchange.sendResponseHeaders(200, -1);
+				return;
+			}
+			/* Zero length means chunked, so nothing needs to be rendered up front */
+			exchange.sendResponseHeaders(200, 0);
+			try (var out = new BufferedWriter(
+					new OutputStreamWriter(exchange.getResponseBody(), StandardCharsets.UTF_8), 65536)) {
+				write(snap, out);
+			}
+		} catch (IOException | RuntimeException e) {
+			LOG.debug("Failed to serve metrics.", e);
+			throw e;
+		}
+	}
+
+	private Snapshot snapshot() {
+		synchronized (lock) {
+			var now = System.currentTimeMillis();
+			if (snapshot == null || now - snapshot.taken() >= snapshotMillis)
+				snapshot = take(now);
+			return snapshot;
+		}
+	}
+
+	private Snapshot take(long now) {
+		var gen = ++generation;
+		var interfaces = new ArrayList<VpnInterfaceInformation>();
+		for (var adapter : platformService.adapters()) {
+			try {
+				interfaces.add(adapter.information());
+			} catch (RuntimeException re) {
+				LOG.debug("Failed to read adapter for metrics.", re);
+			}
+		}
+
+		var endpointChanges = new ArrayList<long[]>(interfaces.size());
+		for (var info : interfaces) {
+			var ifacePeers = peers.computeIfAbsent(info.interfaceName(), k -> new HashMap<>());
+			var changes = new long[info.peers().size()];
+			var idx = 0;
+			for (var peerInfo : info.peers()) {
+				var endpoint = peerInfo.remoteAddress().map(Object::toString).orElse(null);
+				var peer = ifacePeers.get(peerInfo.publicKey());
+				if (peer == null) {
+					peer = new Peer();
+					peer.endpoint = endpoint;
+					ifacePeers.put(peerInfo.publicKey(), peer);
+				} else if (!Objects.equals(peer.endpoint, endpoint)) {
+					peer.endpoint = endpoint;
+					peer.endpointChanges++;
+				}
+				peer.generation = gen;
+				changes[idx++] = peer.endpointChanges;
+			}
+			endpointChanges.add(changes);
+			if (ifacePeers.size() > info.peers().size())
+				ifacePeers.values().removeIf(p -> p.generation != gen);
+		}
+		if (peers.size() > interfaces.size()) {
+			var names = new ArrayList<String>();
+			for (var info : interfaces)
+				names.add(info.interfaceName());
+			peers.keySet().retainAll(names);
+		}
+
+		return new Snapshot(now, interfaces, endpointChanges,
+				platformService.context().commandStatistics().map(CommandStatistics::counts));
+	}
+
+	private void write(Snapshot snap, Writer out) throws IOException {
+		family(out, "wireguard_peers", "gauge", null, "Number of peers on the interface.");
+		for (var info : snap.interfaces()) {
+			sample(out, "wireguard_peers", info, null);
+			out.append(Integer.toString(info.peers().size())).append('\n');
+		}
+
+		family(out, "wireguard_interface_received_bytes", "counter", "bytes", "Bytes received by the interface.");
+		for (var info : snap.interfaces()) {
+			sample(out, "wireguard_interface_received_bytes_total", info, null);
+			out.append(Long.toString(info.rx())).append('\n');
+		}
+
+		family(out, "wireguard_interface_sent_bytes", "counter", "bytes", "Bytes sent by the interface.");
+		for (var info : snap.interfaces()) {
+			sample(out, "wireguard_interface_sent_bytes_total", info, null);
+			out.append(Long.toString(info.tx())).append('\n');
+		}
+
+		family(out, "wireguard_peer_received_bytes", "counter", "bytes", "Bytes received from the peer.");
+		for (var info : snap.interfaces()) {
+			for (var peer : info.peers()) {
+				sample(out, "wireguard_peer_received_bytes_total", info, peer);
+				out.append(Long.toString(peer.rx())).append('\n');
+			}
+		}
+
+		family(out, "wireguard_peer_sent_bytes", "counter", "bytes", "Bytes sent to the peer.");
+		for (var info : snap.interfaces()) {
+			for (var peer : info.peers()) {
+				sample(out, "wireguard_peer_sent_bytes_total", info, peer);
+				out.append(Long.toString(peer.tx())).append('\n');
+			}
+		}
+
+		family(out, "wireguard_peer_handshake_age_seconds", "gauge", "seconds",
+				"Seconds since the last handshake with the peer, as of the snapshot. Absent if there has never been one.");
+		for (var info : snap.interfaces()) {
+			for (var peer : info.peers()) {
+				var handshake = peer.lastHandshake().toEpochMilli();
+				if (handshake > 0) {
+					sample(out, "wireguard_peer_handshake_age_seconds", info, peer);
+					out.append(Double.toString(Math.max(0, snap.taken() - handshake) / 1000d)).append('\n');
+				}
+			}
+		}
+
+		family(out, "wireguard_peer_endpoint_changes", "counter", null,
+				"Times the endpoint of the peer has been seen to change.");
+		for (int i = 0; i < snap.interfaces().size(); i++) {
+			var info = snap.interfaces().get(i);
+			var changes = snap.endpointChanges().get(i);
+			var idx = 0;
+			for (var peer : info.peers()) {
+				sample(out, "wireguard_peer_endpoint_changes_total", info, peer);
+				out.append(Long.toString(changes[idx++])).append('\n');
+			}
+		}
+
+		if (snap.commands().isPresent()) {
+			var counts = snap.commands().get();
+			family(out, "lbv_commands", "counter", null, "Native commands and elevated tasks run.");
+			out.append("lbv_commands_total ").append(Long.toString(counts.commands())).append('\n');
+			family(out, "lbv_command_failures", "counter", null, "Native commands and elevated tasks that failed.");
+			out.append("lbv_command_failures_total ").append(Long.toString(counts.failures())).append('\n');
+			family(out, "lbv_command_seconds", "counter", "seconds", "Time spent in native commands and elevated tasks.");
+			out.append("lbv_command_seconds_total ").append(Double.toString(counts.time().toNanos() / 1e9)).append('\n');
+		}
+
+		family(out, "wireguard_snapshot_timestamp_seconds", "gauge", "seconds", "When the statistics were read.");
+		out.append("wireguard_snapshot_timestamp_seconds ").append(Double.toString(snap.taken() / 1000d)).append('\n');
+
+		out.append("# EOF\n");
+	}
+
+	private static void family(Writer out, String name, String type, String unit, String help) throws IOException {
+		out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+		if (unit != null)
+			out.append("# UNIT ").append(name).append(' ').append(unit).append('\n');
+		out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+	}
+
+	private static void sample(Writer out, String name, VpnInterfaceInformation info, VpnPeerInformation peer)
+			throws IOException {
+		out.append(name).append("{interface=\"");
+		escape(out, info.interfaceName());
+		if (peer != null) {
+			out.append("\",public_key=\"");
+			escape(out, peer.publicKey());
+		}
+		out.append("\"} ");
+	}
+
+	private static void escape(Writer out, String value) throws IOException {
+		for (int i = 0; i < value.length(); i++) {
+			var ch = value.charAt(i);
+			switch (ch) {
+			case '\\':
+				out.append("\\\\");
+				break;
+			case '"':
+				out.append("\\\"");
+				break;
+			case '\n':
+				out.append("\\n");
+				break;
+			default:
+				out.append(ch);
+			}
+		}
+	}
+
+	private static ExecutorService createExecutor() {
+		try {
+			/* Java 21 and later */
+			return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+		} catch (ReflectiveOperationException roe) {
+			return Executors.newFixedThreadPool(2, r -> {
+				var t = new Thread(r, "OpenMetrics");
+				t.setDaemon(true);
+				return t;
+			});
+		}
+	}
+}
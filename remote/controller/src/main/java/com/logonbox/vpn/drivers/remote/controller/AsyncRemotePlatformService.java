@@ -0,0 +1,348 @@
+package com.logonbox.vpn.drivers.remote.controller;
+
+import com.logonbox.vpn.drivers.lib.PlatformService.Gateway;
+import com.logonbox.vpn.drivers.lib.StartRequest;
+import com.logonbox.vpn.drivers.lib.TopTalkers;
+import com.logonbox.vpn.drivers.lib.VpnAdapterConfiguration;
+import com.logonbox.vpn.drivers.lib.VpnInterfaceInformation;
+import com.logonbox.vpn.drivers.lib.VpnPeer;
+import com.logonbox.vpn.drivers.lib.VpnPeerInformation;
+import com.logonbox.vpn.drivers.remote.lib.RemotePeerPage;
+import com.logonbox.vpn.drivers.remote.lib.RemotePlatformService;
+import com.logonbox.vpn.drivers.remote.lib.RemoteStartRequest;
+import com.logonbox.vpn.drivers.remote.lib.RemoteTalker;
+import com.logonbox.vpn.drivers.remote.lib.RemoteVpnInterfaceInformation;
+import com.logonbox.vpn.drivers.remote.lib.RemoteVpnPeer;
+
+import org.freedesktop.dbus.RemoteInvocationHandler;
+import org.freedesktop.dbus.connections.AbstractConnection;
+import org.freedesktop.dbus.exceptions.DBusException;
+import org.freedesktop.dbus.exceptions.DBusExecutionException;
+import org.freedesktop.dbus.interfaces.CallbackHandler;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.text.ParseException;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Non-blocking versions of the operations of a {@link BusRemotePlatformService},
+ * obtained from {@link BusRemotePlatformService#async()}. Each operation sends
+ * its D-Bus call and returns straight away, without holding a thread while the
+ * node works, so a single controller may have any number of operations in
+ * flight across any number of nodes.
+ * <p>
+ * Futures are completed on the connection's reply handling threads, so
+ * dependent stages that block should use the <code>*Async</code> methods of
+ * {@link CompletableFuture} with their own executor. Failures on the node
+ * complete the future exceptionally, usually with a
+ * {@link DBusExecutionException}.
+ * <p>
+ * Cancelling a future, or timing it out with
+ * {@link CompletableFuture#orTimeout(long, java.util.concurrent.TimeUnit)},
+ * only stops waiting for the reply. The operation itself cannot be recalled,
+ * so may still complete on the node.
+ * <p>
+ * Adapters are referred to by their native name, as this needs no further
+ * calls to resolve.
+ */
+public final class AsyncRemotePlatformService {
+
+    private final static Method ADAPTERS = method("adapters");
+    private final static Method INFORMATION = method("information", String.class);
+    private final static Method INFORMATION_ALL = method("informationAll", int.class);
+    private final static Method PEERS_PAGE = method("peersPage", String.class, String.class, int.class, int.class);
+    private final static Method CONFIGURATION = method("configuration", String.class);
+    private final static Method START = method("start", RemoteStartRequest.class);
+    private final static Method APPEND = method("append", String.class, String.class);
+    private final static Method RECONFIGURE = method("reconfigure", String.class, String.class);
+    private final static Method SYNC = method("sync", String.class, String.class);
+    private final static Method ADD_PEERS = method("addPeers", String.class, RemoteVpnPeer[].class);
+    private final static Method UPDATE_PEERS = method("updatePeers", String.class, RemoteVpnPeer[].class);
+    private final static Method REMOVE_PEERS = method("removePeers", String.class, String[].class);
+    private final static Method TOP_TALKERS = method("topTalkers", int.class, String.class, String.class);
+    private final static Method LATEST_HANDSHAKE = method("getLatestHandshake", String.class, String.class);
+    private final static Method DEFAULT_GATEWAY = method("defaultGateway");
+
+    private final AbstractConnection connection;
+    private final RemotePlatformService remote;
+    private final Runnable onChange;
+
+    AsyncRemotePlatformService(AbstractConnection connection, RemotePlatformService remote, Runnable onChange) {
+        this.connection = connection;
+        this.remote = remote;
+        this.onChange = onChange;
+    }
+
+    /**
+     * Get the native names of all adapters. See
+     * {@link RemotePlatformService#adapters()}.
+     *
+     * @return future native names
+     */
+    public CompletableFuture<List<String>> adapters() {
+        return this.<String[], List<String>>call(ADAPTERS, Arrays::asList);
+    }
+
+    /**
+     * Get information about an adapter. See
+     * {@link RemotePlatformService#information(String)}.
+     *
+     * @param nativeName native name
+     * @return future information
+     */
+    public CompletableFuture<VpnInterfaceInformation> information(String nativeName) {
+        return this.<RemoteVpnInterfaceInformation, VpnInterfaceInformation>call(INFORMATION,
+                RemoteVpnInterfaceInformation::toNative, nativeName);
+    }
+
+    /**
+     * Get information about all adapters. See
+     * {@link BusRemotePlatformService#information(boolean, boolean)}.
+     *
+     * @param keys       include the private and preshared keys
+     * @param allowedIps include the allowed IPs of each peer
+     * @return future information
+     */
+    public CompletableFuture<List<VpnInterfaceInformation>> information(boolean keys, boolean allowedIps) {
+        var fields = (keys ? RemotePlatformService.INFORMATION_KEYS : 0)
+                | (allowedIps ? RemotePlatformService.INFORMATION_ALLOWED_IPS : 0);
+        return this.<RemoteVpnInterfaceInformation[], List<VpnInterfaceInformation>>call(INFORMATION_ALL,
+                r -> Arrays.asList(r).stream().map(RemoteVpnInterfaceInformation::toNative).toList(), fields);
+    }
+
+    /**
+     * Get the peers of an adapter a page at a time, passing each peer to the
+     * consumer as its page arrives. The next page is only asked for once the
+     * consumer has seen the whole of the previous one. See
+     * {@link BusRemotePlatformService#peers(com.logonbox.vpn.drivers.lib.VpnAdapter, int, boolean, boolean)}.
+     *
+     * @param nativeName native name
+     * @param pageSize   number of peers per page, at most
+     *                   {@link RemotePlatformService#MAX_PEERS_PAGE}
+     * @param keys       include the preshared keys
+     * @param allowedIps include the allowed IPs of each peer
+     * @param consumer   called with each peer, on the connection's reply
+     *                   handling threads
+     * @return future completed once all peers have been passed to the consumer
+     */
+    public CompletableFuture<Void> peers(String nativeName, int pageSize, boolean keys, boolean allowedIps,
+            Consumer<VpnPeerInformation> consumer) {
+        var fields = (keys ? RemotePlatformService.INFORMATION_KEYS : 0)
+                | (allowedIps ? RemotePlatformService.INFORMATION_ALLOWED_IPS : 0);
+        return peers(nativeName, "", pageSize, fields, consumer);
+    }
+
+    /**
+     * Get the configuration of an adapter. See
+     * {@link RemotePlatformService#configuration(String)}.
+     *
+     * @param nativeName native name
+     * @return future configuration
+     */
+    public CompletableFuture<VpnAdapterConfiguration> configuration(String nativeName) {
+        return this.<String, VpnAdapterConfiguration>call(CONFIGURATION, cfg -> {
+            try {
+                return new VpnAdapterConfiguration.Builder().fromFileContent(cfg).build();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            } catch (ParseException e) {
+                throw new IllegalStateException(e);
+            }
+        }, nativeName);
+    }
+
+    /**
+     * Start a new VPN configuration. See
+     * {@link RemotePlatformService#start(RemoteStartRequest)}.
+     *
+     * @param startRequest start request
+     * @return future native name of the started adapter
+     */
+    public CompletableFuture<String> start(StartRequest startRequest) {
+        return changing(START, new RemoteStartRequest(startRequest));
+    }
+
+    /**
+     * Append configuration to an adapter. See
+     * {@link RemotePlatformService#append(String, String)}.
+     *
+     * @param nativeName    native name
+     * @param configuration configuration
+     * @return future
+     */
+    public CompletableFuture<Void> append(String nativeName, VpnAdapterConfiguration configuration) {
+        return changing(APPEND, nativeName, configuration.write());
+    }
+
+    /**
+     * Replace the configuration of an adapter. See
+     * {@link RemotePlatformService#reconfigure(String, String)}.
+     *
+     * @param nativeName    native name
+     * @param configuration configuration
+     * @return future
+     */
+    public CompletableFuture<Void> reconfigure(String nativeName, VpnAdapterConfiguration configuration) {
+        return changing(RECONFIGURE, nativeName, configuration.write());
+    }
+
+    /**
+     * Synchronize the configuration of an adapter. See
+     * {@link RemotePlatformService#sync(String, String)}.
+     *
+     * @param nativeName    native name
+     * @param configuration configuration
+     * @return future
+     */
+    public CompletableFuture<Void> sync(String nativeName, VpnAdapterConfiguration configuration) {
+        return changing(SYNC, nativeName, configuration.write());
+    }
+
+    /**
+     * Add peers to an adapter. See
+     * {@link RemotePlatformService#addPeers(String, RemoteVpnPeer[])}.
+     *
+     * @param nativeName native name
+     * @param peers      peers
+     * @return future
+     */
+    public CompletableFuture<Void> addPeers(String nativeName, Collection<VpnPeer> peers) {
+        return changing(ADD_PEERS, nativeName, BusRemotePlatformService.toRemote(peers));
+    }
+
+    /**
+     * Replace the configuration of peers on an adapter. See
+     * {@link RemotePlatformService#updatePeers(String, RemoteVpnPeer[])}.
+     *
+     * @param nativeName native name
+     * @param peers      peers
+     * @return future
+     */
+    public CompletableFuture<Void> updatePeers(String nativeName, Collection<VpnPeer> peers) {
+        return changing(UPDATE_PEERS, nativeName, BusRemotePlatformService.toRemote(peers));
+    }
+
+    /**
+     * Remove peers from an adapter. See
+     * {@link RemotePlatformService#removePeers(String, String[])}.
+     *
+     * @param nativeName native name
+     * @param publicKeys public keys of peers
+     * @return future
+     */
+    public CompletableFuture<Void> removePeers(String nativeName, Collection<String> publicKeys) {
+        return changing(REMOVE_PEERS, nativeName, publicKeys.toArray(new String[0]));
+    }
+
+    /**
+     * Get the peers transferring the most across all adapters. See
+     * {@link BusRemotePlatformService#topTalkers(int, TopTalkers.Measure, TopTalkers.Direction)}.
+     *
+     * @param limit     maximum number of peers to return
+     * @param measure   what to rank by
+     * @param direction direction to rank by
+     * @return future peers, highest first
+     */
+    public CompletableFuture<List<TopTalkers.Talker>> topTalkers(int limit, TopTalkers.Measure measure,
+            TopTalkers.Direction direction) {
+        return this.<RemoteTalker[], List<TopTalkers.Talker>>call(TOP_TALKERS,
+                r -> Arrays.asList(r).stream().map(RemoteTalker::toNative).toList(), limit, measure.name(),
+                direction.name());
+    }
+
+    /**
+     * Get the time of the last handshake of a peer. See
+     * {@link RemotePlatformService#getLatestHandshake(String, String)}.
+     *
+     * @param nativeName native name
+     * @param publicKey  public key of peer
+     * @return future last handshake, or the epoch if there has never been one
+     */
+    public CompletableFuture<Instant> getLatestHandshake(String nativeName, String publicKey) {
+        return this.<Long, Instant>call(LATEST_HANDSHAKE, Instant::ofEpochMilli, nativeName, publicKey);
+    }
+
+    /**
+     * Get the default gateway of the node. See
+     * {@link RemotePlatformService#defaultGateway()}.
+     *
+     * @return future default gateway
+     */
+    public CompletableFuture<Optional<Gateway>> defaultGateway() {
+        return this.<String[], Optional<Gateway>>call(DEFAULT_GATEWAY,
+                gw -> gw.length == 0 ? Optional.empty() : Optional.of(new Gateway(gw[0], gw[1])));
+    }
+
+    private CompletableFuture<Void> peers(String nativeName, String cursor, int pageSize, int fields,
+            Consumer<VpnPeerInformation> consumer) {
+        return this.<RemotePeerPage, RemotePeerPage>call(PEERS_PAGE, Function.identity(), nativeName, cursor,
+                pageSize, fields).thenCompose(page -> {
+                    for (var peer : page.peers()) {
+                        consumer.accept(peer.toNative());
+                    }
+                    return page.cursor().equals("") ? CompletableFuture.completedFuture(null)
+                            : peers(nativeName, page.cursor(), pageSize, fields, consumer);
+                });
+    }
+
+    /* Calls that change the node clear any cache both before and once done */
+    private <R> CompletableFuture<R> changing(Method method, Object... args) {
+        onChange.run();
+        return this.<R, R>call(method, Function.identity(), args).whenComplete((r, e) -> onChange.run());
+    }
+
+    @SuppressWarnings("unchecked")
+    private <R, T> CompletableFuture<T> call(Method method, Function<R, T> mapper, Object... args) {
+        var future = new CompletableFuture<T>();
+        var handler = new CallbackHandler<R>() {
+            @Override
+            public void handle(R reply) {
+                try {
+                    future.complete(mapper.apply(reply));
+                } catch (RuntimeException re) {
+                    future.completeExceptionally(re);
+                }
+            }
+
+            @Override
+            public void handleError(DBusExecutionException e) {
+                future.completeExceptionally(e);
+            }
+        };
+
+        try {
+            if (Proxy.isProxyClass(remote.getClass())
+                    && Proxy.getInvocationHandler(remote) instanceof RemoteInvocationHandler rih) {
+                RemoteInvocationHandler.executeRemoteMethod(rih.getRemote(), method, connection,
+                        RemoteInvocationHandler.CALL_TYPE_CALLBACK, handler, args);
+            } else {
+                /* Not a bus proxy, e.g. the node's own object, so just call it */
+                handler.handle((R) method.invoke(remote, args));
+            }
+        } catch (InvocationTargetException ite) {
+            future.completeExceptionally(ite.getCause());
+        } catch (DBusException | IllegalAccessException | RuntimeException e) {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    private static Method method(String name, Class<?>... types) {
+        try {
+            return RemotePlatformService.class.getMethod(name, types);
+        } catch (NoSuchMethodException nsme) {
+            throw new IllegalStateException(nsme);
+        }
+    }
+}
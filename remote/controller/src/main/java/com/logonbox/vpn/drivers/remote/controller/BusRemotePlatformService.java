@@ -3,38 +3,73 @@ package com.logonbox.vpn.drivers.remote.controller;
 import com.logonbox.vpn.drivers.lib.BasePlatformService;
 import com.logonbox.vpn.drivers.lib.DNSProvider;
 import com.logonbox.vpn.drivers.lib.NATMode;
+import com.logonbox.vpn.drivers.lib.PeerEvent;
 import com.logonbox.vpn.drivers.lib.StartRequest;
 import com.logonbox.vpn.drivers.lib.SystemContext;
+import com.logonbox.vpn.drivers.lib.TopTalkers;
 import com.logonbox.vpn.drivers.lib.VpnAdapter;
 import com.logonbox.vpn.drivers.lib.VpnAdapterConfiguration;
 import com.logonbox.vpn.drivers.lib.VpnAddress;
 import com.logonbox.vpn.drivers.lib.VpnConfiguration;
 import com.logonbox.vpn.drivers.lib.VpnInterfaceInformation;
 import com.logonbox.vpn.drivers.lib.VpnPeer;
+import com.logonbox.vpn.drivers.lib.VpnPeerInformation;
 import com.logonbox.vpn.drivers.remote.lib.RemoteDNSProvider;
 import com.logonbox.vpn.drivers.remote.lib.RemoteNATMode;
 import com.logonbox.vpn.drivers.remote.lib.RemotePlatformService;
 import com.logonbox.vpn.drivers.remote.lib.RemoteStartRequest;
+import com.logonbox.vpn.drivers.remote.lib.RemoteTalker;
+import com.logonbox.vpn.drivers.remote.lib.RemoteVpnAddress;
+import com.logonbox.vpn.drivers.remote.lib.RemoteVpnInterfaceInformation;
 import com.logonbox.vpn.drivers.remote.lib.RemoteVpnPeer;
+import com.logonbox.vpn.drivers.remote.lib.RemoteVpnPeerInformation;
 
+import org.freedesktop.dbus.connections.AbstractConnection;
 import org.freedesktop.dbus.connections.impl.DBusConnection;
+import org.freedesktop.dbus.connections.impl.DirectConnection;
+import org.freedesktop.dbus.errors.UnknownMethod;
 import org.freedesktop.dbus.exceptions.DBusException;
 import org.freedesktop.dbus.exceptions.DBusExecutionException;
+import org.freedesktop.dbus.interfaces.DBusSigHandler;
+import org.freedesktop.dbus.messages.DBusSignal;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
 import java.nio.file.Path;
 import java.text.ParseException;
+import java.time.Duration;
 import java.time.Instant;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
 import java.util.Optional;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 public final class BusRemotePlatformService extends BasePlatformService<BusVpnAddress> {
 
+    private final static Logger LOG = LoggerFactory.getLogger(BusRemotePlatformService.class);
+
     private final RemotePlatformService remote;
     private final SystemContext context;
     private final Optional<DNSProvider> dnsProvider;
+    private final Optional<AbstractConnection> connection;
+    private final Optional<ReadCache> cache;
+    private final List<RemoteNodeListener> listeners = new CopyOnWriteArrayList<>();
+    private final List<AutoCloseable> handlers = new ArrayList<>();
+
+    private AsyncRemotePlatformService async;
 
     static Optional<RemoteDNSProvider> getDNSProvider(DBusConnection connection) throws DBusException {
         try {
@@ -45,26 +80,261 @@ public final class BusRemotePlatformService extends BasePlatformService<BusVpnAd
         }
     }
 
+    static Optional<RemoteDNSProvider> getDNSProvider(DirectConnection connection) throws DBusException {
+        try {
+            return Optional.of(connection.getRemoteObject(RemoteDNSProvider.OBJECT_PATH, RemoteDNSProvider.class));
+        } catch (DBusExecutionException dbee) {
+            return Optional.empty();
+        }
+    }
+
     public BusRemotePlatformService(String busName, SystemContext context, DBusConnection connection) throws DBusException {
+        this(busName, context, connection, Optional.empty());
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param busName    bus name of the remote node
+     * @param context    context
+     * @param connection connection
+     * @param cacheTtl   how long to cache results that rarely change for, if at all
+     * @throws DBusException on error
+     */
+    public BusRemotePlatformService(String busName, SystemContext context, DBusConnection connection,
+            Optional<Duration> cacheTtl) throws DBusException {
         this(context, connection.getRemoteObject(busName, RemotePlatformService.OBJECT_PATH,
-                RemotePlatformService.class), getDNSProvider(connection));
+                RemotePlatformService.class), getDNSProvider(connection), Optional.of(connection), cacheTtl);
+    }
+
+    /**
+     * Constructor for a node connected to directly, peer to peer, rather than
+     * through a bus daemon. See
+     * {@link org.freedesktop.dbus.connections.impl.DirectConnectionBuilder}, the
+     * node's address must be the same as it listens on, less the
+     * <code>listen=true</code>.
+     *
+     * @param context    context
+     * @param connection direct connection to the node
+     * @param cacheTtl   how long to cache results that rarely change for, if at all
+     * @throws DBusException on error
+     */
+    public BusRemotePlatformService(SystemContext context, DirectConnection connection, Optional<Duration> cacheTtl)
+            throws DBusException {
+        this(context, connection.getRemoteObject(RemotePlatformService.OBJECT_PATH, RemotePlatformService.class),
+                getDNSProvider(connection), Optional.of(connection), cacheTtl);
     }
 
     public BusRemotePlatformService(SystemContext context, RemotePlatformService remote,
             Optional<RemoteDNSProvider> dnsProvider) {
+        this(context, remote, dnsProvider, Optional.empty());
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param context     context
+     * @param remote      remote platform service
+     * @param dnsProvider remote DNS provider
+     * @param connection  connection the remote platform service is on, required
+     *                    to receive signals
+     */
+    public BusRemotePlatformService(SystemContext context, RemotePlatformService remote,
+            Optional<RemoteDNSProvider> dnsProvider, Optional<? extends AbstractConnection> connection) {
+        this(context, remote, dnsProvider, connection, Optional.empty());
+    }
+
+    /**
+     * Constructor.
+     * <p>
+     * When a cache time is provided, the results of calls that rarely change,
+     * such as the adapters and addresses, the default gateway and name
+     * validation and conversion, are kept for up to that time so that for
+     * example starting an adapter does not need a round trip for each. The cache
+     * is cleared by any change made through this service, and if there is a
+     * connection, when the node signals an adapter has come or gone.
+     *
+     * @param context     context
+     * @param remote      remote platform service
+     * @param dnsProvider remote DNS provider
+     * @param connection  connection the remote platform service is on, required
+     *                    to receive signals
+     * @param cacheTtl    how long to cache results that rarely change for, if at all
+     */
+    public BusRemotePlatformService(SystemContext context, RemotePlatformService remote,
+            Optional<RemoteDNSProvider> dnsProvider, Optional<? extends AbstractConnection> connection,
+            Optional<Duration> cacheTtl) {
         this.remote = remote;
         this.context = context;
         this.dnsProvider = dnsProvider.map(BusDNSProvider::new);
+        this.connection = connection.map(AbstractConnection.class::cast);
+        this.cache = cacheTtl.map(ReadCache::new);
+
+        if (cache.isPresent() && connection.isPresent()) {
+            try {
+                addRemoteNodeListener(new RemoteNodeListener() {
+                    @Override
+                    public void adapterUp(String nativeName) {
+                        changed();
+                    }
+
+                    @Override
+                    public void adapterDown(String nativeName) {
+                        changed();
+                    }
+                });
+            } catch (IllegalStateException ise) {
+                LOG.warn("Could not subscribe to signals, cached results will only expire over time.", ise);
+            }
+        }
+    }
+
+    /**
+     * Get non-blocking versions of the operations of this service. See
+     * {@link AsyncRemotePlatformService}.
+     *
+     * @return asynchronous service
+     * @throws IllegalStateException if there is no connection
+     */
+    public synchronized AsyncRemotePlatformService async() {
+        if (async == null) {
+            async = new AsyncRemotePlatformService(
+                    connection.orElseThrow(() -> new IllegalStateException("Asynchronous calls require a connection.")),
+                    remote, this::changed);
+        }
+        return async;
+    }
+
+    /**
+     * Add a listener to be notified of the signals sent by the remote node, so
+     * changes do not need to be polled for. The signals are only subscribed to
+     * while there are listeners, and the node only watches for changes while
+     * some client is subscribed. See {@link RemotePlatformService#subscribe()}.
+     *
+     * @param listener listener
+     * @throws IllegalStateException if there is no connection
+     */
+    public void addRemoteNodeListener(RemoteNodeListener listener) {
+        synchronized (handlers) {
+            if (handlers.isEmpty()) {
+                var conx = connection.orElseThrow(() -> new IllegalStateException("Signals require a connection."));
+                try {
+                    handle(conx, RemotePlatformService.AdapterUp.class, sig -> {
+                        listeners.forEach(l -> l.adapterUp(sig.getNativeName()));
+                    });
+                    handle(conx, RemotePlatformService.AdapterDown.class, sig -> {
+                        listeners.forEach(l -> l.adapterDown(sig.getNativeName()));
+                    });
+                    handle(conx, RemotePlatformService.PeerAdded.class, sig -> {
+                        fire(new PeerEvent(PeerEvent.Type.ADDED, sig.getNativeName(), sig.getPublicKey(),
+                                Instant.EPOCH, Optional.empty()));
+                    });
+                    handle(conx, RemotePlatformService.PeerRemoved.class, sig -> {
+                        fire(new PeerEvent(PeerEvent.Type.REMOVED, sig.getNativeName(), sig.getPublicKey(),
+                                Instant.EPOCH, Optional.empty()));
+                    });
+                    handle(conx, RemotePlatformService.PeerHandshake.class, sig -> {
+                        fire(new PeerEvent(PeerEvent.Type.HANDSHAKE, sig.getNativeName(), sig.getPublicKey(),
+                                Instant.ofEpochMilli(sig.getLastHandshake()), endpoint(sig.getEndpoint())));
+                    });
+                    handle(conx, RemotePlatformService.StatDeltas.class, sig -> {
+                        var names = sig.getNativeNames();
+                        var keys = sig.getPublicKeys();
+                        var rx = sig.getRx();
+                        var tx = sig.getTx();
+                        var deltas = new ArrayList<RemoteNodeListener.StatDelta>(names.size());
+                        for (int i = 0; i < names.size(); i++) {
+                            deltas.add(new RemoteNodeListener.StatDelta(names.get(i), keys.get(i), rx.get(i),
+                                    tx.get(i)));
+                        }
+                        var interval = Duration.ofMillis(sig.getInterval());
+                        var list = List.copyOf(deltas);
+                        listeners.forEach(l -> l.statDeltas(interval, list));
+                    });
+                    remote.subscribe();
+                } catch (DBusException | DBusExecutionException e) {
+                    closeHandlers();
+                    throw new IllegalStateException("Failed to subscribe to signals.", e);
+                }
+            }
+            listeners.add(listener);
+        }
+    }
+
+    /**
+     * Remove a listener added by {@link #addRemoteNodeListener(RemoteNodeListener)}.
+     *
+     * @param listener listener
+     */
+    public void removeRemoteNodeListener(RemoteNodeListener listener) {
+        synchronized (handlers) {
+            if (listeners.remove(listener) && listeners.isEmpty()) {
+                try {
+                    remote.unsubscribe();
+                } catch (DBusExecutionException dbee) {
+                    LOG.debug("Failed to unsubscribe from signals.", dbee);
+                }
+                closeHandlers();
+            }
+        }
+    }
+
+    private <T extends DBusSignal> void handle(AbstractConnection conx, Class<T> type, DBusSigHandler<T> handler)
+            throws DBusException {
+        handlers.add(conx.addSigHandler(type, remote, sig -> {
+            try {
+                handler.handle(sig);
+            } catch (RuntimeException re) {
+                LOG.error("Remote node listener failed.", re);
+            }
+        }));
+    }
+
+    private void closeHandlers() {
+        for (var handler : handlers) {
+            try {
+                handler.close();
+            } catch (Exception e) {
+                LOG.debug("Failed to remove signal handler.", e);
+            }
+        }
+        handlers.clear();
+    }
+
+    private <T> T cached(String key, Supplier<T> loader) {
+        return cache.isPresent() ? cache.get().get(key, loader) : loader.get();
+    }
+
+    private void changed() {
+        cache.ifPresent(ReadCache::invalidate);
+    }
+
+    private void fire(PeerEvent event) {
+        listeners.forEach(l -> l.peerEvent(event));
+    }
+
+    private static Optional<InetSocketAddress> endpoint(String endpoint) {
+        var idx = endpoint.lastIndexOf(':');
+        if (idx == -1)
+            return Optional.empty();
+        var host = endpoint.substring(0, idx);
+        if (host.startsWith("[") && host.endsWith("]"))
+            host = host.substring(1, host.length() - 1);
+        try {
+            return Optional.of(new InetSocketAddress(host, Integer.parseInt(endpoint.substring(idx + 1))));
+        } catch (IllegalArgumentException iae) {
+            return Optional.empty();
+        }
     }
 
     @Override
     public boolean adapterExists(String nativeName) {
-        return remote.adapterExists(nativeName);
+        return cached("adapterExists:" + nativeName, () -> remote.adapterExists(nativeName));
     }
 
     @Override
     public List<VpnAdapter> adapters() {
-        return Arrays.asList(remote.adapters()).stream().map(a -> new VpnAdapter(this, adapterAddress(a)))
+        return Arrays.asList(cached("adapters", remote::adapters)).stream().map(a -> new VpnAdapter(this, adapterAddress(a)))
                 .toList();
     }
 
@@ -79,21 +349,44 @@ public final class BusRemotePlatformService extends BasePlatformService<BusVpnAd
 
     @Override
     public BusVpnAddress address(String name) {
-        return new BusVpnAddress(remote.address(name));
+        return cached("address:" + name, () -> {
+            var addr = new BusVpnAddress(name, null, remote::address, this::changed);
+            /* Fail now if there is no such address */
+            addr.remote();
+            return addr;
+        });
     }
 
+    /**
+     * Get all addresses. Only their names are fetched, the object for each is
+     * not exported by the node until it is first used. A node without
+     * {@link RemotePlatformService#addressNames()} exports them all, as it
+     * always has.
+     */
     @Override
     public List<BusVpnAddress> addresses() {
-        return Arrays.asList(remote.addresses()).stream().map(BusVpnAddress::new).toList();
+        return cached("addresses", () -> Arrays.asList(addressNames()).stream()
+                .map(a -> new BusVpnAddress(a, a, remote::address, this::changed)).toList());
+    }
+
+    private String[] addressNames() {
+        try {
+            return remote.addressNames();
+        } catch (UnknownMethod um) {
+            LOG.debug("Node cannot list address names, getting all addresses.", um);
+            return Arrays.asList(remote.addresses()).stream().map(RemoteVpnAddress::nativeName)
+                    .toArray(String[]::new);
+        }
     }
 
     @Override
     public boolean addressExists(String nativeName) {
-        return remote.addressExists(nativeName);
+        return cached("addressExists:" + nativeName, () -> remote.addressExists(nativeName));
     }
 
     @Override
     public void append(VpnAdapter vpnAdapter, VpnAdapterConfiguration cfg) throws IOException {
+        changed();
         remote.append(vpnAdapter.address().nativeName(), cfg.write());
 
     }
@@ -117,7 +410,7 @@ public final class BusRemotePlatformService extends BasePlatformService<BusVpnAd
 
     @Override
     public Optional<Gateway> defaultGateway() {
-        var gw = remote.defaultGateway();
+        var gw = cached("defaultGateway", remote::defaultGateway);
         if (gw.length == 0)
             return Optional.empty();
         else
@@ -126,6 +419,7 @@ public final class BusRemotePlatformService extends BasePlatformService<BusVpnAd
 
     @Override
     public void defaultGateway(Optional<Gateway> iface) {
+        changed();
         iface.ifPresentOrElse(i -> {
             remote.defaultGateway(new String[] { i.nativeIface(), i.address() });
         }, () -> {
@@ -144,7 +438,8 @@ public final class BusRemotePlatformService extends BasePlatformService<BusVpnAd
 
     @Override
     public void defaultGatewayPeer(VpnPeer peer) throws IOException {
-        remote.defaultGatewayPeer(new RemoteVpnPeer(peer)); 
+        changed();
+        remote.defaultGatewayPeer(new RemoteVpnPeer(peer));
     }
 
     @Override
@@ -165,7 +460,7 @@ public final class BusRemotePlatformService extends BasePlatformService<BusVpnAd
 
     @Override
     public Optional<NATMode> getNat(String iface) throws IOException {
-        return remote.getNat(iface).toNative();
+        return cached("nat:" + iface, () -> remote.getNat(iface)).toNative();
     }
 
     @Override
@@ -173,25 +468,104 @@ public final class BusRemotePlatformService extends BasePlatformService<BusVpnAd
         return remote.information(adapter.address().nativeName()).toNative();
     }
 
+    @Override
+    public List<VpnInterfaceInformation> information() {
+        return information(false, true);
+    }
+
+    /**
+     * Get information about all adapters of the remote node in a single call.
+     * See {@link RemotePlatformService#informationAll(int)}. When not included,
+     * keys and allowed IPs will be empty.
+     *
+     * @param keys       include the private and preshared keys
+     * @param allowedIps include the allowed IPs of each peer
+     * @return information
+     */
+    public List<VpnInterfaceInformation> information(boolean keys, boolean allowedIps) {
+        var fields = (keys ? RemotePlatformService.INFORMATION_KEYS : 0)
+                | (allowedIps ? RemotePlatformService.INFORMATION_ALLOWED_IPS : 0);
+        return Arrays.asList(remote.informationAll(fields)).stream().map(RemoteVpnInterfaceInformation::toNative)
+                .toList();
+    }
+
+    /**
+     * Get information about all adapters of the remote node in a single call,
+     * without their peers, for when adapters may have too many peers to send
+     * at once. The peers of each may then be read with
+     * {@link #peers(VpnAdapter, int, boolean, boolean)}.
+     *
+     * @param keys include the private key
+     * @return information, with no peers
+     */
+    public List<VpnInterfaceInformation> informationWithoutPeers(boolean keys) {
+        var fields = (keys ? RemotePlatformService.INFORMATION_KEYS : 0) | RemotePlatformService.INFORMATION_NO_PEERS;
+        return Arrays.asList(remote.informationAll(fields)).stream().map(RemoteVpnInterfaceInformation::toNative)
+                .toList();
+    }
+
+    /**
+     * Get the peers of an adapter, fetched from the node a page at a time as
+     * the stream is consumed, so they may be processed as they arrive and only
+     * one page is held in memory at once. See
+     * {@link RemotePlatformService#peersPage(String, String, int, int)}. Peers
+     * are in order of public key.
+     *
+     * @param adapter    adapter
+     * @param pageSize   number of peers per page, at most
+     *                   {@link RemotePlatformService#MAX_PEERS_PAGE}
+     * @param keys       include the preshared keys
+     * @param allowedIps include the allowed IPs of each peer
+     * @return peers
+     */
+    public Stream<VpnPeerInformation> peers(VpnAdapter adapter, int pageSize, boolean keys, boolean allowedIps) {
+        var nativeName = adapter.address().nativeName();
+        var fields = (keys ? RemotePlatformService.INFORMATION_KEYS : 0)
+                | (allowedIps ? RemotePlatformService.INFORMATION_ALLOWED_IPS : 0);
+        var it = new Iterator<VpnPeerInformation>() {
+            private Optional<String> cursor = Optional.of("");
+            private Iterator<RemoteVpnPeerInformation> page = Collections.emptyIterator();
+
+            @Override
+            public boolean hasNext() {
+                while (!page.hasNext() && cursor.isPresent()) {
+                    var next = remote.peersPage(nativeName, cursor.get(), pageSize, fields);
+                    page = Arrays.asList(next.peers()).iterator();
+                    cursor = next.cursor().equals("") ? Optional.empty() : Optional.of(next.cursor());
+                }
+                return page.hasNext();
+            }
+
+            @Override
+            public VpnPeerInformation next() {
+                if (!hasNext())
+                    throw new NoSuchElementException();
+                return page.next().toNative();
+            }
+        };
+        return StreamSupport.stream(
+                Spliterators.spliteratorUnknownSize(it, Spliterator.ORDERED | Spliterator.NONNULL), false);
+    }
+
     @Override
     public Optional<String> interfaceNameToNativeName(String name) {
-        var nname = remote.interfaceNameToNativeName(name);
+        var nname = cached("nativeName:" + name, () -> remote.interfaceNameToNativeName(name));
         return nname.equals("") ? Optional.empty() : Optional.of(nname);
     }
 
     @Override
     public boolean isIpForwardingEnabledOnSystem() {
-        return remote.isIpForwardingEnabledOnSystem();
+        return cached("ipForwarding", remote::isIpForwardingEnabledOnSystem);
     }
 
     @Override
     public boolean isValidNativeInterfaceName(String name) {
-        return remote.isValidNativeInterfaceName(name);
+        return cached("validName:" + name, () -> remote.isValidNativeInterfaceName(name));
     }
 
     @Override
     public Optional<String> nativeNameToInterfaceName(String name) {
-        var iname = remote.nativeNameToInterfaceName(name);
+        var iname = cached("interfaceName:" + name, () -> remote.nativeNameToInterfaceName(name));
         return iname.equals("") ? Optional.empty() : Optional.of(iname);
     }
 
@@ -202,16 +576,86 @@ public final class BusRemotePlatformService extends BasePlatformService<BusVpnAd
 
     @Override
     public void reconfigure(VpnAdapter vpnAdapter, VpnAdapterConfiguration cfg) throws IOException {
+        changed();
         remote.reconfigure(vpnAdapter.address().nativeName(), cfg.write());
     }
 
     @Override
     public void remove(VpnAdapter vpnAdapter, String publicKey) throws IOException {
+        changed();
         remote.remove(vpnAdapter.address().nativeName(), publicKey);
     }
 
+    @Override
+    public void remove(VpnAdapter vpnAdapter, Collection<String> publicKeys) throws IOException {
+        if (publicKeys.isEmpty())
+            return;
+        changed();
+        remote.removePeers(vpnAdapter.address().nativeName(), publicKeys.toArray(new String[0]));
+    }
+
+    /**
+     * Add peers to an adapter. Only the peers are sent to the node, rather than
+     * a whole configuration as with
+     * {@link #append(VpnAdapter, VpnAdapterConfiguration)}. See
+     * {@link RemotePlatformService#addPeers(String, RemoteVpnPeer[])}.
+     *
+     * @param vpnAdapter adapter
+     * @param peers      peers to add
+     */
+    public void addPeers(VpnAdapter vpnAdapter, Collection<VpnPeer> peers) {
+        if (peers.isEmpty())
+            return;
+        changed();
+        remote.addPeers(vpnAdapter.address().nativeName(), toRemote(peers));
+    }
+
+    /**
+     * Replace the configuration of peers on an adapter, adding any that do not
+     * exist. See {@link RemotePlatformService#updatePeers(String, RemoteVpnPeer[])}.
+     *
+     * @param vpnAdapter adapter
+     * @param peers      peers to replace
+     */
+    @Override
+    public void update(VpnAdapter vpnAdapter, Collection<VpnPeer> peers) {
+        if (peers.isEmpty())
+            return;
+        changed();
+        remote.updatePeers(vpnAdapter.address().nativeName(), toRemote(peers));
+    }
+
+    static RemoteVpnPeer[] toRemote(Collection<VpnPeer> peers) {
+        var remotePeers = new RemoteVpnPeer[peers.size()];
+        var idx = 0;
+        for (var peer : peers) {
+            remotePeers[idx++] = new RemoteVpnPeer(peer);
+        }
+        return remotePeers;
+    }
+
+    @Override
+    public List<TopTalkers.Talker> topTalkers(int limit, TopTalkers.Direction direction) {
+        return topTalkers(limit, TopTalkers.Measure.TOTAL, direction);
+    }
+
+    /**
+     * Get the peers transferring the most across all adapters of the remote
+     * node. See {@link RemotePlatformService#topTalkers(int, String, String)}.
+     *
+     * @param limit     maximum number of peers to return
+     * @param measure   what to rank by
+     * @param direction direction to rank by
+     * @return peers, highest first
+     */
+    public List<TopTalkers.Talker> topTalkers(int limit, TopTalkers.Measure measure, TopTalkers.Direction direction) {
+        return Arrays.asList(remote.topTalkers(limit, measure.name(), direction.name())).stream()
+                .map(RemoteTalker::toNative).toList();
+    }
+
     @Override
     public void resetDefaultGatewayPeer() throws IOException {
+        changed();
         remote.resetDefaultGatewayPeer();
     }
 
@@ -222,26 +666,33 @@ public final class BusRemotePlatformService extends BasePlatformService<BusVpnAd
 
     @Override
     public void runHook(VpnConfiguration configuration, VpnAdapter session, String... hookScript) throws IOException {
+        changed();
         remote.runHook(configuration.write(), session.address().nativeName(), hookScript);
     }
 
     @Override
     public void setIpForwardingEnabledOnSystem(boolean ipForwarding) {
+        changed();
         remote.setIpForwardingEnabledOnSystem(ipForwarding);
     }
 
     @Override
     public void setNat(String iface, Optional<NATMode> nat) throws IOException {
+        changed();
         remote.setNat(iface, new RemoteNATMode(nat));
     }
 
     @Override
     public VpnAdapter start(StartRequest startRequest) throws IOException {
-       return adapter(remote.start(new RemoteStartRequest(startRequest)));
+        changed();
+        var nativeName = remote.start(new RemoteStartRequest(startRequest));
+        changed();
+        return adapter(nativeName);
     }
 
     @Override
     public void sync(VpnAdapter vpnAdapter, VpnAdapterConfiguration cfg) throws IOException {
+        changed();
         remote.sync(vpnAdapter.address().nativeName(), cfg.write());
 
     }
@@ -3,93 +3,140 @@ package com.logonbox.vpn.drivers.remote.controller;
 import com.logonbox.vpn.drivers.lib.VpnAddress;
 import com.logonbox.vpn.drivers.remote.lib.RemoteVpnAddress;
 
+import org.freedesktop.dbus.errors.UnknownObject;
+
 import java.io.IOException;
 import java.net.NetworkInterface;
 import java.util.Optional;
-
+import java.util.function.Function;
+
+/**
+ * An address on a remote node. The node only exports the object for an
+ * address when it is asked for, and may unexport it again once it has been
+ * idle for a while, so the object is looked up on first use, and again should
+ * it be found to have gone.
+ */
 public class BusVpnAddress implements VpnAddress {
 
-    private final RemoteVpnAddress remote;
+    @FunctionalInterface
+    private interface Action {
+        void run(RemoteVpnAddress remote) throws IOException;
+    }
+
+    /* The name the object is looked up by */
+    private final String name;
+    private final Function<String, RemoteVpnAddress> lookup;
+    private final Runnable onChange;
+
+    private volatile RemoteVpnAddress remote;
+    /* The native name identifies the remote object, so never changes */
+    private volatile String nativeName;
 
-    BusVpnAddress(RemoteVpnAddress remote) {
-        this.remote = remote;
+    /**
+     * Constructor. The object is not looked up until first used.
+     *
+     * @param name       name to look up the object by
+     * @param nativeName native name if known, otherwise {@code null} to ask the
+     *                   node for it when needed
+     * @param lookup     looks up the object given a name
+     * @param onChange   run before any change
+     */
+    BusVpnAddress(String name, String nativeName, Function<String, RemoteVpnAddress> lookup, Runnable onChange) {
+        this.name = name;
+        this.nativeName = nativeName;
+        this.lookup = lookup;
+        this.onChange = onChange;
     }
 
     @Override
     public boolean isUp() {
-        return remote.isUp();
+        return call(RemoteVpnAddress::isUp);
     }
 
     @Override
     public boolean isDefaultGateway() {
-        return remote.isDefaultGateway();
+        return call(RemoteVpnAddress::isDefaultGateway);
     }
 
     @Override
     public void setDefaultGateway(String address) {
-        remote.setDefaultGateway(address);
+        onChange.run();
+        call(r -> {
+            r.setDefaultGateway(address);
+            return null;
+        });
     }
 
     @Override
     public void delete() throws IOException {
-        remote.delete();
+        onChange.run();
+        run(RemoteVpnAddress::delete);
     }
 
     @Override
     public void down() throws IOException {
-        remote.down();
+        onChange.run();
+        run(RemoteVpnAddress::down);
     }
 
     @Override
     public String getMac() {
-        var mac = remote.getMac();
+        var mac = call(RemoteVpnAddress::getMac);
         return mac.equals("") ? null : mac;
     }
 
     @Override
     public int getMtu() {
-        return remote.getMtu();
+        return call(RemoteVpnAddress::getMtu);
     }
 
     @Override
     public String name() {
-        return remote.name();
+        return call(RemoteVpnAddress::name);
     }
 
     @Override
     public String displayName() {
-        return remote.displayName();
+        return call(RemoteVpnAddress::displayName);
     }
 
     @Override
     public String nativeName() {
-        return remote.nativeName();
+        var name = nativeName;
+        if (name == null)
+            nativeName = name = remote().nativeName();
+        return name;
     }
 
     @Override
     public String peer() {
-        var peer = remote.peer();
+        var peer = call(RemoteVpnAddress::peer);
         return peer.equals("") ? null : peer;
     }
 
     @Override
     public String table() {
-        return remote.table();
+        return call(RemoteVpnAddress::table);
     }
 
     @Override
     public void mtu(int mtu) {
-        remote.mtu(mtu);
+        onChange.run();
+        call(r -> {
+            r.mtu(mtu);
+            return null;
+        });
     }
 
     @Override
     public void up() throws IOException {
-        remote.up();
+        onChange.run();
+        run(RemoteVpnAddress::up);
     }
 
     @Override
     public boolean isLoopback() {
-        return remote.isLoopback();
+        return call(RemoteVpnAddress::isLoopback);
     }
 
     @Override
@@ -99,12 +146,41 @@ public class BusVpnAddress implements VpnAddress {
 
     @Override
     public String shortName() {
-        return remote.shortName();
+        return call(RemoteVpnAddress::shortName);
     }
 
     @Override
     public boolean hasVirtualName() {
-        return remote.hasVirtualName();
+        return call(RemoteVpnAddress::hasVirtualName);
+    }
+
+    /* Look up the object, exporting it on the node if it is not already */
+    RemoteVpnAddress remote() {
+        var r = remote;
+        if (r == null)
+            remote = r = lookup.apply(name);
+        return r;
+    }
+
+    private <T> T call(Function<RemoteVpnAddress, T> call) {
+        var r = remote();
+        try {
+            return call.apply(r);
+        } catch (UnknownObject uo) {
+            /* Unexported as idle since last used, so look it up again */
+            remote = null;
+            return call.apply(remote());
+        }
+    }
+
+    private void run(Action action) throws IOException {
+        var r = remote();
+        try {
+            action.run(r);
+        } catch (UnknownObject uo) {
+            remote = null;
+            action.run(remote());
+        }
     }
 
 }
@@ -0,0 +1,394 @@
+package com.logonbox.vpn.drivers.remote.controller;
+
+import com.logonbox.vpn.drivers.lib.VpnAdapter;
+import com.logonbox.vpn.drivers.lib.VpnInterfaceInformation;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs operations against many remote nodes, each a
+ * {@link BusRemotePlatformService}, in parallel rather than one after the
+ * other. At most {@link Builder#withMaxConcurrency(int)} nodes are worked on at
+ * once, and each node has {@link Builder#withTimeout(Duration)} from when its
+ * operation starts to complete it.
+ * <p>
+ * The outcome of each operation is a {@link Result}, holding the value from
+ * every node that succeeded and the failure of every node that did not, so one
+ * slow or broken node does not spoil the view of the others.
+ * <p>
+ * A node that times out is reported as failed straight away, and the thread
+ * running its operation is interrupted. Its place is given to the next node
+ * waiting, so a node hung in a call that ignores the interrupt only keeps its
+ * own thread, and never holds up the rest of the fleet. The fleet does not own
+ * the connections to the nodes, so closing it fails any operations still
+ * waiting, and stops its threads once those already started are done.
+ */
+public final class NodeFleet implements Closeable {
+
+    public final static int DEFAULT_MAX_CONCURRENCY = 16;
+    public final static Duration DEFAULT_TIMEOUT = Duration.ofSeconds(30);
+
+    /**
+     * An operation to run against a single node.
+     *
+     * @param <T> type of value
+     */
+    @FunctionalInterface
+    public interface NodeOperation<T> {
+        T apply(BusRemotePlatformService node) throws IOException;
+    }
+
+    /**
+     * The outcome of running an operation against all nodes. Both maps are in
+     * the order nodes were added to the fleet.
+     *
+     * @param <T>      type of value
+     * @param values   value of each node that succeeded
+     * @param failures failure of each node that did not, a
+     *                 {@link java.util.concurrent.TimeoutException} if it timed
+     *                 out
+     */
+    public record Result<T>(Map<String, T> values, Map<String, Throwable> failures) {
+
+        /**
+         * Get if every node succeeded.
+         *
+         * @return complete
+         */
+        public boolean complete() {
+            return failures.isEmpty();
+        }
+    }
+
+    public final static class Builder {
+        private final Map<String, BusRemotePlatformService> nodes = new LinkedHashMap<>();
+        private int maxConcurrency = DEFAULT_MAX_CONCURRENCY;
+        private Duration timeout = DEFAULT_TIMEOUT;
+
+        /**
+         * Add a node.
+         *
+         * @param id      unique identifier for the node, used to report results
+         * @param service service for the node
+         * @return this for chaining
+         */
+        public Builder withNode(String id, BusRemotePlatformService service) {
+            if (nodes.containsKey(id))
+                throw new IllegalArgumentException(String.format("Node %s already added.", id));
+            nodes.put(id, service);
+            return this;
+        }
+
+        /**
+         * Add nodes.
+         *
+         * @param nodes services for the nodes, keyed by unique identifier
+         * @return this for chaining
+         */
+        public Builder withNodes(Map<String, BusRemotePlatformService> nodes) {
+            nodes.forEach(this::withNode);
+            return this;
+        }
+
+        /**
+         * The most nodes to work on at once, defaults to
+         * {@link NodeFleet#DEFAULT_MAX_CONCURRENCY}.
+         *
+         * @param maxConcurrency maximum concurrency
+         * @return this for chaining
+         */
+        public Builder withMaxConcurrency(int maxConcurrency) {
+            if (maxConcurrency < 1)
+                throw new IllegalArgumentException("Concurrency must be at least 1.");
+            this.maxConcurrency = maxConcurrency;
+            return this;
+        }
+
+        /**
+         * How long each node has to complete an operation once started, defaults
+         * to {@link NodeFleet#DEFAULT_TIMEOUT}.
+         *
+         * @param timeout timeout
+         * @return this for chaining
+         */
+        public Builder withTimeout(Duration timeout) {
+            this.timeout = timeout;
+            return this;
+        }
+
+        public NodeFleet build() {
+            return new NodeFleet(this);
+        }
+    }
+
+    /* An operation against one node, holding a place until done or timed out */
+    private final class Job<T> implements Runnable {
+        private final BusRemotePlatformService node;
+        private final NodeOperation<T> operation;
+        private final CompletableFuture<T> future = new CompletableFuture<>();
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        private Thread worker;
+        private boolean done;
+
+        private Job(BusRemotePlatformService node, NodeOperation<T> operation) {
+            this.node = node;
+            this.operation = operation;
+        }
+
+        @Override
+        public void run() {
+            try {
+                if (future.isDone())
+                    return;
+                synchronized (this) {
+                    worker = Thread.currentThread();
+                }
+                /* Time from when the node is started, not when it was queued */
+                future.orTimeout(timeout, TimeUnit.MILLISECONDS).whenComplete((v, e) -> {
+                    if (e instanceof TimeoutException)
+                        abandon();
+                });
+                try {
+                    future.complete(operation.apply(node));
+                } catch (IOException ioe) {
+                    future.completeExceptionally(new UncheckedIOException(ioe));
+                } catch (Throwable e) {
+                    future.completeExceptionally(e);
+                }
+            } finally {
+                synchronized (this) {
+                    done = true;
+                }
+                /* Do not leave an interrupt from a late timeout for the next job */
+                Thread.interrupted();
+                release();
+            }
+        }
+
+        private void abandon() {
+            synchronized (this) {
+                if (!done)
+                    worker.interrupt();
+            }
+            release();
+        }
+
+        private void release() {
+            if (released.compareAndSet(false, true))
+                next();
+        }
+    }
+
+    private final static AtomicInteger FLEETS = new AtomicInteger();
+
+    private final Map<String, BusRemotePlatformService> nodes;
+    private final long timeout;
+    private final int maxConcurrency;
+    private final ExecutorService executor;
+    private final Queue<Job<?>> waiting = new ArrayDeque<>();
+
+    private int running;
+    private boolean closed;
+
+    private NodeFleet(Builder builder) {
+        nodes = Collections.unmodifiableMap(new LinkedHashMap<>(builder.nodes));
+        timeout = builder.timeout.toMillis();
+        maxConcurrency = builder.maxConcurrency;
+
+        var fleet = FLEETS.incrementAndGet();
+        var threads = new AtomicInteger();
+        /* Not fixed, as abandoned jobs may keep their threads for a while */
+        executor = Executors.newCachedThreadPool(r -> {
+            var t = new Thread(r, "NodeFleet-" + fleet + "-" + threads.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Get the identifiers of all nodes, in the order they were added.
+     *
+     * @return node identifiers
+     */
+    public Set<String> nodes() {
+        return nodes.keySet();
+    }
+
+    /**
+     * Get the service for a node.
+     *
+     * @param id node identifier
+     * @return service
+     */
+    public Optional<BusRemotePlatformService> node(String id) {
+        return Optional.ofNullable(nodes.get(id));
+    }
+
+    /**
+     * Run an operation against all nodes, waiting for them all to succeed, fail
+     * or time out.
+     *
+     * @param <T>       type of value
+     * @param operation operation
+     * @return result
+     */
+    public <T> Result<T> run(NodeOperation<T> operation) {
+        return submit(operation).join();
+    }
+
+    /**
+     * Run an operation against all nodes, without waiting.
+     *
+     * @param <T>       type of value
+     * @param operation operation
+     * @return future result, which always completes normally
+     */
+    public <T> CompletableFuture<Result<T>> submit(NodeOperation<T> operation) {
+        var futures = new LinkedHashMap<String, CompletableFuture<T>>();
+        for (var en : nodes.entrySet()) {
+            var job = new Job<>(en.getValue(), operation);
+            futures.put(en.getKey(), job.future);
+            start(job);
+        }
+
+        return CompletableFuture.allOf(futures.values().toArray(new CompletableFuture[0])).handle((v, e) -> {
+            var values = new LinkedHashMap<String, T>();
+            var failures = new LinkedHashMap<String, Throwable>();
+            for (var en : futures.entrySet()) {
+                try {
+                    values.put(en.getKey(), en.getValue().join());
+                } catch (CompletionException ce) {
+                    failures.put(en.getKey(), ce.getCause() == null ? ce : ce.getCause());
+                } catch (RuntimeException re) {
+                    failures.put(en.getKey(), re);
+                }
+            }
+            return new Result<>(Collections.unmodifiableMap(values), Collections.unmodifiableMap(failures));
+        });
+    }
+
+    /**
+     * Find the adapters a peer is on, across all nodes. Only nodes with the
+     * peer have a value.
+     *
+     * @param publicKey public key of peer
+     * @return adapter on each node with the peer
+     */
+    public Result<VpnAdapter> getByPublicKey(String publicKey) {
+        var result = run(node -> node.getByPublicKey(publicKey));
+        var found = new LinkedHashMap<String, VpnAdapter>();
+        result.values().forEach((id, adapter) -> adapter.ifPresent(a -> found.put(id, a)));
+        return new Result<>(Collections.unmodifiableMap(found), result.failures());
+    }
+
+    /**
+     * Get information about all adapters of all nodes, with each node making a
+     * single call. See {@link BusRemotePlatformService#information(boolean, boolean)}.
+     *
+     * @param keys       include the private and preshared keys
+     * @param allowedIps include the allowed IPs of each peer
+     * @return information for each node
+     */
+    public Result<List<VpnInterfaceInformation>> information(boolean keys, boolean allowedIps) {
+        return run(node -> node.information(keys, allowedIps));
+    }
+
+    /**
+     * Remove peers from whatever adapters they are on, on all nodes. Each node
+     * reads its adapters once, then makes one removal per adapter that has any
+     * of the peers.
+     *
+     * @param publicKeys public keys of peers
+     * @return number of peers removed on each node
+     */
+    public Result<Integer> removeEverywhere(Collection<String> publicKeys) {
+        var keys = new HashSet<>(publicKeys);
+        return run(node -> {
+            var removed = 0;
+            for (var info : node.information(false, false)) {
+                var found = new ArrayList<String>();
+                for (var peer : info.peers()) {
+                    if (keys.contains(peer.publicKey()))
+                        found.add(peer.publicKey());
+                }
+                if (!found.isEmpty()) {
+                    node.remove(node.adapter(info.interfaceName()), found);
+                    removed += found.size();
+                }
+            }
+            return removed;
+        });
+    }
+
+    @Override
+    public void close() {
+        List<Job<?>> failed;
+        synchronized (waiting) {
+            closed = true;
+            failed = new ArrayList<>(waiting);
+            waiting.clear();
+        }
+        failed.forEach(job -> job.future.completeExceptionally(new IllegalStateException("Closed.")));
+        executor.shutdown();
+    }
+
+    private void start(Job<?> job) {
+        synchronized (waiting) {
+            if (closed) {
+                job.future.completeExceptionally(new IllegalStateException("Closed."));
+                return;
+            }
+            if (running == maxConcurrency) {
+                waiting.add(job);
+                return;
+            }
+            running++;
+        }
+        execute(job);
+    }
+
+    /* A place is free, give it to the next job waiting if any */
+    private void next() {
+        Job<?> job;
+        synchronized (waiting) {
+            job = waiting.poll();
+            if (job == null) {
+                running--;
+                return;
+            }
+        }
+        execute(job);
+    }
+
+    private void execute(Job<?> job) {
+        try {
+            executor.execute(job);
+        } catch (RuntimeException re) {
+            job.future.completeExceptionally(re);
+            job.release();
+        }
+    }
+}
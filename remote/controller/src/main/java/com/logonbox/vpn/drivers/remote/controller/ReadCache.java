@@ -0,0 +1,56 @@
+package com.logonbox.vpn.drivers.remote.controller;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * A read-through cache of the results of remote calls that rarely change,
+ * each kept for at most a fixed time, or until {@link #invalidate()} is
+ * called. Failures are never cached.
+ * <p>
+ * A result that was being read while the cache was invalidated is returned,
+ * but not kept, as it may already be out of date.
+ */
+final class ReadCache {
+
+    private record Entry(Object value, long expires) {
+    }
+
+    private final long ttl;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final Object lock = new Object();
+
+    private long generation;
+
+    ReadCache(Duration ttl) {
+        this.ttl = ttl.toNanos();
+    }
+
+    @SuppressWarnings("unchecked")
+    <T> T get(String key, Supplier<T> loader) {
+        var now = System.nanoTime();
+        var entry = entries.get(key);
+        if (entry != null && now - entry.expires() < 0)
+            return (T) entry.value();
+
+        long gen;
+        synchronized (lock) {
+            gen = generation;
+        }
+        var value = loader.get();
+        synchronized (lock) {
+            if (gen == generation)
+                entries.put(key, new Entry(value, now + ttl));
+        }
+        return value;
+    }
+
+    void invalidate() {
+        synchronized (lock) {
+            generation++;
+            entries.clear();
+        }
+    }
+}
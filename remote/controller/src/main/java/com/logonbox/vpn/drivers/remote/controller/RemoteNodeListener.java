@@ -0,0 +1,63 @@
+package com.logonbox.vpn.drivers.remote.controller;
+
+import com.logonbox.vpn.drivers.lib.PeerEvent;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Receives the signals sent by a remote node. See
+ * {@link BusRemotePlatformService#addRemoteNodeListener(RemoteNodeListener)}.
+ * All methods are called on the D-Bus connection's signal handling threads, so
+ * should not block.
+ */
+public interface RemoteNodeListener {
+
+    /**
+     * The bytes transferred by a single peer during a batch.
+     *
+     * @param interfaceName native name of interface the peer is on
+     * @param publicKey     public key of peer
+     * @param rx            bytes received
+     * @param tx            bytes sent
+     */
+    public record StatDelta(String interfaceName, String publicKey, long rx, long tx) {
+    }
+
+    /**
+     * An adapter has appeared on the node.
+     *
+     * @param nativeName native interface name
+     */
+    default void adapterUp(String nativeName) {
+    }
+
+    /**
+     * An adapter has gone from the node.
+     *
+     * @param nativeName native interface name
+     */
+    default void adapterDown(String nativeName) {
+    }
+
+    /**
+     * A peer has been added, removed or has completed a new handshake. Only
+     * {@link PeerEvent.Type#ADDED}, {@link PeerEvent.Type#REMOVED} and
+     * {@link PeerEvent.Type#HANDSHAKE} are sent by remote nodes. The endpoint is
+     * only present for handshakes.
+     *
+     * @param event event
+     */
+    default void peerEvent(PeerEvent event) {
+    }
+
+    /**
+     * A batch of traffic deltas, for every peer that transferred anything
+     * during the interval.
+     *
+     * @param interval time the deltas were collected over
+     * @param deltas   deltas
+     */
+    default void statDeltas(Duration interval, List<StatDelta> deltas) {
+    }
+}
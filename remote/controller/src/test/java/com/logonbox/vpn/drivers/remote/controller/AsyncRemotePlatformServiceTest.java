@@ -0,0 +1,152 @@
+package com.logonbox.vpn.drivers.remote.controller;
+
+import static com.logonbox.vpn.drivers.remote.controller.TestPlatformService.iface;
+import static com.logonbox.vpn.drivers.remote.controller.TestPlatformService.peer;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import com.logonbox.vpn.drivers.lib.TopTalkers;
+import com.logonbox.vpn.drivers.lib.VpnPeerInformation;
+import com.logonbox.vpn.drivers.remote.lib.RemotePlatformService;
+import com.logonbox.vpn.drivers.remote.node.RemotePlatformServiceDelegate;
+
+import org.freedesktop.dbus.bin.EmbeddedDBusDaemon;
+import org.freedesktop.dbus.connections.BusAddress;
+import org.freedesktop.dbus.connections.impl.DBusConnection;
+import org.freedesktop.dbus.connections.impl.DBusConnectionBuilder;
+import org.freedesktop.dbus.connections.transports.TransportBuilder;
+import org.freedesktop.dbus.exceptions.DBusExecutionException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Non-blocking calls made by a controller to a node over an embedded bus
+ * daemon.
+ */
+public class AsyncRemotePlatformServiceTest {
+
+    private final static Duration INTERVAL = Duration.ofMillis(100);
+    private final static int PEERS = 250;
+
+    private ScheduledExecutorService queue;
+    private TestPlatformService platform;
+    private EmbeddedDBusDaemon daemon;
+    private DBusConnection nodeConnection;
+    private RemotePlatformServiceDelegate node;
+    private DBusConnection controllerConnection;
+    private RemotePlatformService remote;
+    private AtomicInteger changes;
+    private AsyncRemotePlatformService async;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        queue = Executors.newSingleThreadScheduledExecutor(r -> {
+            var t = new Thread(r, "test-node-queue");
+            t.setDaemon(true);
+            return t;
+        });
+        platform = new TestPlatformService(queue, INTERVAL, INTERVAL.multipliedBy(2));
+        var peers = new ArrayList<VpnPeerInformation>();
+        for (int i = PEERS - 1; i >= 0; i--)
+            peers.add(peer(String.format("%04d", i), i, 0, Instant.EPOCH));
+        platform.set(iface("wg0", peers.toArray(new VpnPeerInformation[0])), iface("wg1"));
+
+        var address = TransportBuilder.createDynamicSession("UNIX", false);
+        var busAddress = BusAddress.of(address);
+        daemon = new EmbeddedDBusDaemon(busAddress.isListeningSocket() ? busAddress : busAddress.getListenerAddress());
+        daemon.startInBackgroundAndWait(Duration.ofSeconds(10).toMillis());
+
+        nodeConnection = DBusConnectionBuilder.forAddress(address).withShared(false).build();
+        nodeConnection.requestBusName(RemotePlatformService.BUS_NAME);
+        node = new RemotePlatformServiceDelegate(platform, nodeConnection);
+
+        controllerConnection = DBusConnectionBuilder.forAddress(address).withShared(false).build();
+        remote = controllerConnection.getRemoteObject(RemotePlatformService.BUS_NAME,
+                RemotePlatformService.OBJECT_PATH, RemotePlatformService.class);
+        changes = new AtomicInteger();
+        async = new AsyncRemotePlatformService(controllerConnection, remote, changes::incrementAndGet);
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        var closeables = new ArrayList<AutoCloseable>();
+        closeables.add(controllerConnection);
+        closeables.add(node);
+        closeables.add(nodeConnection);
+        closeables.add(daemon);
+        for (var c : closeables) {
+            try {
+                if (c != null)
+                    c.close();
+            } catch (Exception e) {
+                // ignore
+            }
+        }
+        queue.shutdownNow();
+    }
+
+    @Test
+    void testManyCallsInFlight() throws Exception {
+        var futures = new ArrayList<CompletableFuture<List<String>>>();
+        for (int i = 0; i < 50; i++)
+            futures.add(async.adapters());
+        for (var future : futures)
+            assertEquals(List.of("wg0", "wg1"), future.get(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void testInformation() throws Exception {
+        var info = async.information("wg0").get(10, TimeUnit.SECONDS);
+        assertEquals("wg0", info.interfaceName());
+        assertEquals(PEERS, info.peers().size());
+
+        var all = async.information(false, false).get(10, TimeUnit.SECONDS);
+        assertEquals(List.of("wg0", "wg1"), all.stream().map(i -> i.interfaceName()).toList());
+    }
+
+    @Test
+    void testPeersPaged() throws Exception {
+        var keys = new ArrayList<String>();
+        async.peers("wg0", 100, false, false, p -> keys.add(p.publicKey())).get(10, TimeUnit.SECONDS);
+        assertEquals(PEERS, keys.size());
+        assertEquals(keys.stream().sorted().toList(), keys);
+    }
+
+    @Test
+    void testNodeFailureCompletesExceptionally() throws Exception {
+        var future = async.topTalkers(0, TopTalkers.Measure.TOTAL, TopTalkers.Direction.BOTH);
+        var ee = assertThrows(ExecutionException.class, () -> future.get(10, TimeUnit.SECONDS));
+        assertInstanceOf(DBusExecutionException.class, ee.getCause());
+    }
+
+    @Test
+    void testChangeNotifiedBeforeAndAfter() throws Exception {
+        /* The test platform cannot remove peers, but the cache must be cleared anyway */
+        var future = async.removePeers("wg0", List.of("0001"));
+        assertThrows(ExecutionException.class, () -> future.get(10, TimeUnit.SECONDS));
+        assertEquals(2, changes.get());
+
+        async.adapters().get(10, TimeUnit.SECONDS);
+        assertEquals(2, changes.get());
+    }
+
+    @Test
+    void testCallsObjectDirectlyWhenNotOnBus() throws Exception {
+        var direct = new AsyncRemotePlatformService(controllerConnection, node, () -> {
+        });
+        assertEquals(List.of("wg0", "wg1"), direct.adapters().get(10, TimeUnit.SECONDS));
+    }
+}
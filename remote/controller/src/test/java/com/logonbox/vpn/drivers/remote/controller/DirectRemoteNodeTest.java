@@ -0,0 +1,54 @@
+package com.logonbox.vpn.drivers.remote.controller;
+
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.logonbox.vpn.drivers.remote.node.DirectRemoteNode;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+/**
+ * Which addresses a direct node agrees to listen on. Nothing is started, so
+ * nothing is actually bound.
+ */
+public class DirectRemoteNodeTest {
+
+    private final TestPlatformService platform = new TestPlatformService(null, Duration.ofSeconds(1),
+            Duration.ofSeconds(1));
+
+    @Test
+    void testNonLoopbackTcpRefused() {
+        var e = assertThrows(IllegalArgumentException.class,
+                () -> new DirectRemoteNode.Builder(platform, "tcp:host=192.0.2.1,port=12345").build());
+        assertTrue(e.getMessage().contains("192.0.2.1"), e.getMessage());
+        assertThrows(IllegalArgumentException.class,
+                () -> new DirectRemoteNode.Builder(platform, "tcp:host=0.0.0.0,port=12345").build());
+    }
+
+    @Test
+    void testLoopbackHostBoundElsewhereRefused() {
+        assertThrows(IllegalArgumentException.class,
+                () -> new DirectRemoteNode.Builder(platform, "tcp:host=127.0.0.1,bind=0.0.0.0,port=12345")
+                        .build());
+    }
+
+    @Test
+    void testNonLoopbackTcpAllowedExplicitly() throws Exception {
+        try (var node = new DirectRemoteNode.Builder(platform, "tcp:host=192.0.2.1,port=12345").withRemoteTcp(true)
+                .build()) {
+            assertTrue(node.address().contains("host=192.0.2.1"), node.address());
+        }
+    }
+
+    @Test
+    void testLoopbackTcpAndUnixAllowed() throws Exception {
+        try (var node = new DirectRemoteNode.Builder(platform, "tcp:host=127.0.0.1,port=12345").build()) {
+            assertTrue(node.address().contains("host=127.0.0.1"), node.address());
+        }
+        try (var node = new DirectRemoteNode.Builder(platform, "unix:path=/tmp/lbv-node-test.socket").build()) {
+            assertTrue(node.address().startsWith("unix:"), node.address());
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package com.logonbox.vpn.drivers.remote.controller;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Scheduling of operations across a fleet. The operations here do not use the
+ * node services, so there are none.
+ */
+public class NodeFleetTest {
+
+    @Test
+    void testConcurrencyLimit() {
+        var active = new AtomicInteger();
+        var most = new AtomicInteger();
+        try (var fleet = fleet(10, 3, Duration.ofSeconds(10))) {
+            var result = fleet.run(node -> {
+                most.accumulateAndGet(active.incrementAndGet(), Math::max);
+                try {
+                    Thread.sleep(50);
+                } catch (InterruptedException e) {
+                    throw new IllegalStateException(e);
+                } finally {
+                    active.decrementAndGet();
+                }
+                return true;
+            });
+            assertTrue(result.complete());
+            assertEquals(10, result.values().size());
+            assertEquals(3, most.get());
+        }
+    }
+
+    @Test
+    void testTimeoutInterruptsAndReleases() throws Exception {
+        var calls = new AtomicInteger();
+        var interrupted = new CountDownLatch(1);
+        try (var fleet = fleet(2, 1, Duration.ofMillis(200))) {
+            var result = fleet.run(node -> {
+                if (calls.incrementAndGet() == 1) {
+                    try {
+                        Thread.sleep(10000);
+                    } catch (InterruptedException e) {
+                        interrupted.countDown();
+                    }
+                }
+                return calls.get();
+            });
+            assertEquals(List.of("node0"), List.copyOf(result.failures().keySet()));
+            assertInstanceOf(TimeoutException.class, result.failures().get("node0"));
+            assertEquals(List.of("node1"), List.copyOf(result.values().keySet()));
+            assertTrue(interrupted.await(10, TimeUnit.SECONDS));
+        }
+    }
+
+    @Test
+    void testNodeIgnoringInterruptDoesNotHoldUpOthers() throws Exception {
+        var calls = new AtomicInteger();
+        var hung = new CountDownLatch(1);
+        try (var fleet = fleet(3, 1, Duration.ofMillis(200))) {
+            var result = fleet.run(node -> {
+                if (calls.incrementAndGet() == 1) {
+                    while (true) {
+                        try {
+                            if (hung.await(10, TimeUnit.SECONDS))
+                                break;
+                        } catch (InterruptedException e) {
+                            // ignored
+                        }
+                    }
+                }
+                return true;
+            });
+            assertEquals(1, result.failures().size());
+            assertEquals(2, result.values().size());
+        } finally {
+            hung.countDown();
+        }
+    }
+
+    @Test
+    void testCloseFailsWaiting() throws Exception {
+        var started = new CountDownLatch(1);
+        var release = new CountDownLatch(1);
+        var fleet = fleet(3, 1, Duration.ofSeconds(10));
+        var future = fleet.submit(node -> {
+            started.countDown();
+            try {
+                return release.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        assertTrue(started.await(10, TimeUnit.SECONDS));
+        fleet.close();
+        release.countDown();
+
+        /* The node already started carries on, those waiting do not */
+        var result = future.get(10, TimeUnit.SECONDS);
+        assertEquals(List.of("node0"), List.copyOf(result.values().keySet()));
+        assertEquals(List.of("node1", "node2"), List.copyOf(result.failures().keySet()));
+        result.failures().values().forEach(e -> assertInstanceOf(IllegalStateException.class, e));
+
+        var after = fleet.run(node -> true);
+        assertEquals(3, after.failures().size());
+    }
+
+    private static NodeFleet fleet(int nodes, int maxConcurrency, Duration timeout) {
+        var builder = new NodeFleet.Builder().withMaxConcurrency(maxConcurrency).withTimeout(timeout);
+        for (int i = 0; i < nodes; i++)
+            builder.withNode("node" + i, null);
+        return builder.build();
+    }
+}
@@ -0,0 +1,71 @@
+package com.logonbox.vpn.drivers.remote.controller;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class ReadCacheTest {
+
+    @Test
+    void testKeptUntilInvalidated() {
+        var cache = new ReadCache(Duration.ofHours(1));
+        var loads = new AtomicInteger();
+        assertEquals(1, cache.get("a", loads::incrementAndGet));
+        assertEquals(1, cache.get("a", loads::incrementAndGet));
+        assertEquals(2, cache.get("b", loads::incrementAndGet));
+
+        cache.invalidate();
+        assertEquals(3, cache.get("a", loads::incrementAndGet));
+        assertEquals(3, cache.get("a", loads::incrementAndGet));
+    }
+
+    @Test
+    void testExpires() throws Exception {
+        var cache = new ReadCache(Duration.ofMillis(50));
+        var loads = new AtomicInteger();
+        assertEquals(1, cache.get("a", loads::incrementAndGet));
+        Thread.sleep(100);
+        assertEquals(2, cache.get("a", loads::incrementAndGet));
+    }
+
+    @Test
+    void testFailureNotKept() {
+        var cache = new ReadCache(Duration.ofHours(1));
+        assertThrows(IllegalStateException.class, () -> cache.get("a", () -> {
+            throw new IllegalStateException();
+        }));
+        assertEquals("ok", cache.get("a", () -> "ok"));
+    }
+
+    @Test
+    void testResultReadAcrossInvalidateNotKept() throws Exception {
+        var cache = new ReadCache(Duration.ofHours(1));
+        var loading = new CountDownLatch(1);
+        var release = new CountDownLatch(1);
+        var stale = CompletableFuture.supplyAsync(() -> cache.get("a", () -> {
+            loading.countDown();
+            try {
+                assertTrue(release.await(10, TimeUnit.SECONDS));
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+            return "old";
+        }));
+        assertTrue(loading.await(10, TimeUnit.SECONDS));
+        cache.invalidate();
+        release.countDown();
+
+        /* The caller that asked still gets what it read, but nobody else does */
+        assertEquals("old", stale.get(10, TimeUnit.SECONDS));
+        assertEquals("new", cache.get("a", () -> "new"));
+        assertEquals("new", cache.get("a", () -> "newer"));
+    }
+}
@@ -0,0 +1,159 @@
+package com.logonbox.vpn.drivers.remote.controller;
+
+import static com.logonbox.vpn.drivers.remote.controller.TestPlatformService.iface;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.logonbox.vpn.drivers.remote.lib.RemotePlatformService;
+import com.logonbox.vpn.drivers.remote.lib.RemoteVpnAddress;
+import com.logonbox.vpn.drivers.remote.node.RemotePlatformServiceDelegate;
+
+import org.freedesktop.dbus.bin.EmbeddedDBusDaemon;
+import org.freedesktop.dbus.connections.BusAddress;
+import org.freedesktop.dbus.connections.impl.DBusConnection;
+import org.freedesktop.dbus.connections.impl.DBusConnectionBuilder;
+import org.freedesktop.dbus.connections.transports.TransportBuilder;
+import org.freedesktop.dbus.errors.UnknownMethod;
+import org.freedesktop.dbus.errors.UnknownObject;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Optional;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+/**
+ * Address objects exported by a node only when asked for, and used by a
+ * controller across them being unexported as idle.
+ */
+public class RemoteAddressTest {
+
+    private final static Duration INTERVAL = Duration.ofMillis(100);
+
+    private ScheduledExecutorService queue;
+    private TestPlatformService platform;
+    private EmbeddedDBusDaemon daemon;
+    private DBusConnection nodeConnection;
+    private RemotePlatformServiceDelegate node;
+    private DBusConnection controllerConnection;
+    private BusRemotePlatformService controller;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        queue = Executors.newSingleThreadScheduledExecutor(r -> {
+            var t = new Thread(r, "test-node-queue");
+            t.setDaemon(true);
+            return t;
+        });
+        platform = new TestPlatformService(queue, INTERVAL, INTERVAL.multipliedBy(2));
+        platform.set(iface("wg0"));
+
+        var address = TransportBuilder.createDynamicSession("UNIX", false);
+        var busAddress = BusAddress.of(address);
+        daemon = new EmbeddedDBusDaemon(busAddress.isListeningSocket() ? busAddress : busAddress.getListenerAddress());
+        daemon.startInBackgroundAndWait(Duration.ofSeconds(10).toMillis());
+
+        nodeConnection = DBusConnectionBuilder.forAddress(address).withShared(false).build();
+        nodeConnection.requestBusName(RemotePlatformService.BUS_NAME);
+        /* Everything is idle at the first reconciliation */
+        node = new RemotePlatformServiceDelegate(platform, nodeConnection, a -> true, Duration.ZERO);
+
+        controllerConnection = DBusConnectionBuilder.forAddress(address).withShared(false).build();
+        controller = new BusRemotePlatformService(RemotePlatformService.BUS_NAME, platform, controllerConnection);
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        var closeables = new ArrayList<AutoCloseable>();
+        closeables.add(controllerConnection);
+        closeables.add(node);
+        closeables.add(nodeConnection);
+        closeables.add(daemon);
+        for (var c : closeables) {
+            try {
+                if (c != null)
+                    c.close();
+            } catch (Exception e) {
+                // ignore
+            }
+        }
+        queue.shutdownNow();
+    }
+
+    @Test
+    void testAddressesDoesNotExport() throws Exception {
+        var addresses = controller.addresses();
+        assertEquals(1, addresses.size());
+        assertEquals("wg0", addresses.get(0).nativeName());
+        assertTrue(gone("wg0"));
+
+        assertEquals("wg0", addresses.get(0).displayName());
+        assertEquals("wg0", raw("wg0").name());
+    }
+
+    @Test
+    void testAddressUsableAfterIdleUnexport() throws Exception {
+        var addr = controller.address("wg0");
+        assertEquals("wg0", addr.name());
+
+        /* A change in adapters seen while subscribed reconciles the addresses */
+        var seen = new RemoteNodeListenerTest.Recorder();
+        controller.addRemoteNodeListener(seen);
+        RemoteNodeListenerTest.waitFor(() -> platform.reads() > 0);
+        platform.set(iface("wg0"), iface("wg1"));
+        assertEquals("UP wg1", seen.next());
+        RemoteNodeListenerTest.waitFor(() -> gone("wg0"));
+
+        assertEquals("wg0", addr.displayName());
+    }
+
+    @Test
+    void testAddressesFromNodeWithoutNames() throws Exception {
+        /* As a node from before addressNames(), which does not know the method */
+        var legacy = (RemotePlatformService) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[] { RemotePlatformService.class }, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                    case "getObjectPath":
+                        return "/legacy";
+                    case "addressNames":
+                        throw new UnknownMethod("Method \"addressNames\" does not exist.");
+                    default:
+                        try {
+                            return method.invoke(node, args);
+                        } catch (InvocationTargetException ite) {
+                            throw ite.getCause();
+                        }
+                    }
+                });
+        nodeConnection.exportObject(legacy);
+        var old = new BusRemotePlatformService(platform, controllerConnection.getRemoteObject(
+                RemotePlatformService.BUS_NAME, "/legacy", RemotePlatformService.class), Optional.empty(),
+                Optional.of(controllerConnection), Optional.empty());
+
+        var addresses = old.addresses();
+        assertEquals(1, addresses.size());
+        assertEquals("wg0", addresses.get(0).nativeName());
+        assertEquals("wg0", addresses.get(0).displayName());
+    }
+
+    private boolean gone(String nativeName) {
+        try {
+            raw(nativeName).name();
+            return false;
+        } catch (UnknownObject uo) {
+            return true;
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private RemoteVpnAddress raw(String nativeName) throws Exception {
+        return controllerConnection.getRemoteObject(RemotePlatformService.BUS_NAME,
+                RemoteVpnAddress.OBJECT_PATH + "/" + nativeName, RemoteVpnAddress.class);
+    }
+}
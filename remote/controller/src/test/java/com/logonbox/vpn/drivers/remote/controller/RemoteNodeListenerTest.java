@@ -0,0 +1,210 @@
+package com.logonbox.vpn.drivers.remote.controller;
+
+import static com.logonbox.vpn.drivers.remote.controller.TestPlatformService.iface;
+import static com.logonbox.vpn.drivers.remote.controller.TestPlatformService.peer;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.logonbox.vpn.drivers.lib.PeerEvent;
+import com.logonbox.vpn.drivers.remote.lib.RemotePlatformService;
+import com.logonbox.vpn.drivers.remote.node.RemotePlatformServiceDelegate;
+
+import org.freedesktop.dbus.bin.EmbeddedDBusDaemon;
+import org.freedesktop.dbus.connections.BusAddress;
+import org.freedesktop.dbus.connections.impl.DBusConnection;
+import org.freedesktop.dbus.connections.impl.DBusConnectionBuilder;
+import org.freedesktop.dbus.connections.transports.TransportBuilder;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Signals sent by a node and received by a controller, each on their own
+ * connection to an embedded bus daemon.
+ */
+public class RemoteNodeListenerTest {
+
+    private final static Duration INTERVAL = Duration.ofMillis(100);
+
+    final static class Recorder implements RemoteNodeListener {
+        private final BlockingQueue<String> seen = new LinkedBlockingQueue<>();
+
+        @Override
+        public void adapterUp(String nativeName) {
+            seen.add("UP " + nativeName);
+        }
+
+        @Override
+        public void adapterDown(String nativeName) {
+            seen.add("DOWN " + nativeName);
+        }
+
+        @Override
+        public void peerEvent(PeerEvent event) {
+            seen.add(event.type() + " " + event.interfaceName() + " " + event.publicKey());
+        }
+
+        @Override
+        public void statDeltas(Duration interval, List<StatDelta> deltas) {
+            for (var delta : deltas)
+                seen.add("STATS " + delta.interfaceName() + " " + delta.publicKey() + " " + delta.rx() + " "
+                        + delta.tx());
+        }
+
+        String next() throws InterruptedException {
+            var s = seen.poll(10, TimeUnit.SECONDS);
+            assertNotNull(s, "Timed out waiting for a signal.");
+            return s;
+        }
+    }
+
+    private ScheduledExecutorService queue;
+    private TestPlatformService platform;
+    private EmbeddedDBusDaemon daemon;
+    private DBusConnection nodeConnection;
+    private RemotePlatformServiceDelegate node;
+    private DBusConnection controllerConnection;
+    private BusRemotePlatformService controller;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        queue = Executors.newSingleThreadScheduledExecutor(r -> {
+            var t = new Thread(r, "test-node-queue");
+            t.setDaemon(true);
+            return t;
+        });
+        platform = new TestPlatformService(queue, INTERVAL, INTERVAL.multipliedBy(2));
+        platform.set(iface("wg0", peer("a", 0, 0, Instant.EPOCH)));
+
+        var address = TransportBuilder.createDynamicSession("UNIX", false);
+        var busAddress = BusAddress.of(address);
+        daemon = new EmbeddedDBusDaemon(busAddress.isListeningSocket() ? busAddress : busAddress.getListenerAddress());
+        daemon.startInBackgroundAndWait(Duration.ofSeconds(10).toMillis());
+
+        nodeConnection = DBusConnectionBuilder.forAddress(address).withShared(false).build();
+        nodeConnection.requestBusName(RemotePlatformService.BUS_NAME);
+        node = new RemotePlatformServiceDelegate(platform, nodeConnection);
+
+        controllerConnection = DBusConnectionBuilder.forAddress(address).withShared(false).build();
+        controller = new BusRemotePlatformService(RemotePlatformService.BUS_NAME, platform, controllerConnection);
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        var closeables = new ArrayList<AutoCloseable>();
+        closeables.add(controllerConnection);
+        closeables.add(node);
+        closeables.add(nodeConnection);
+        closeables.add(daemon);
+        for (var c : closeables) {
+            try {
+                if (c != null)
+                    c.close();
+            } catch (Exception e) {
+                // ignore
+            }
+        }
+        queue.shutdownNow();
+    }
+
+    @Test
+    void testNodeOnlyReadsAdaptersWhileSubscribed() throws Exception {
+        Thread.sleep(INTERVAL.toMillis() * 5);
+        assertEquals(0, platform.reads());
+
+        var listener = new Recorder();
+        controller.addRemoteNodeListener(listener);
+        waitFor(() -> platform.reads() > 2);
+
+        controller.removeRemoteNodeListener(listener);
+        Thread.sleep(INTERVAL.toMillis() * 2);
+        var reads = platform.reads();
+        Thread.sleep(INTERVAL.toMillis() * 5);
+        assertEquals(reads, platform.reads());
+    }
+
+    @Test
+    void testSignals() throws Exception {
+        var listener = new Recorder();
+        controller.addRemoteNodeListener(listener);
+        waitFor(() -> platform.reads() > 0);
+
+        var handshake = Instant.now();
+        platform.set(iface("wg0", peer("a", 0, 0, handshake), peer("b", 100, 200, Instant.EPOCH)),
+                iface("wg1"));
+        var seen = new ArrayList<String>();
+        for (int i = 0; i < 4; i++)
+            seen.add(listener.next());
+        assertTrue(seen.contains("UP wg1"), seen.toString());
+        assertTrue(seen.contains("HANDSHAKE wg0 a"), seen.toString());
+        assertTrue(seen.contains("ADDED wg0 b"), seen.toString());
+        assertTrue(seen.contains("STATS wg0 b 100 200"), seen.toString());
+
+        /* Same handshake, so the only change to wg0 is the transfer */
+        platform.set(iface("wg0", peer("a", 0, 0, handshake), peer("b", 150, 200, Instant.EPOCH)));
+        seen.clear();
+        for (int i = 0; i < 2; i++)
+            seen.add(listener.next());
+        assertTrue(seen.contains("DOWN wg1"), seen.toString());
+        assertTrue(seen.contains("STATS wg0 b 50 0"), seen.toString());
+    }
+
+    @Test
+    void testCacheClearedOnAdapterSignals() throws Exception {
+        /* Long enough that only the signals can clear it during the test */
+        var cached = new BusRemotePlatformService(platform,
+                controllerConnection.getRemoteObject(RemotePlatformService.BUS_NAME,
+                        RemotePlatformService.OBJECT_PATH, RemotePlatformService.class),
+                Optional.empty(), Optional.of(controllerConnection), Optional.of(Duration.ofHours(1)));
+        /* Added after the cache's own listener, so is told after it is cleared */
+        var listener = new Recorder();
+        cached.addRemoteNodeListener(listener);
+        assertEquals(List.of("wg0"), adapters(cached));
+
+        platform.set(iface("wg0", peer("a", 0, 0, Instant.EPOCH)), iface("wg1"));
+        assertEquals("UP wg1", listener.next());
+        assertEquals(List.of("wg0", "wg1"), adapters(cached));
+
+        platform.set(iface("wg0", peer("a", 0, 0, Instant.EPOCH)));
+        assertEquals("DOWN wg1", listener.next());
+        assertEquals(List.of("wg0"), adapters(cached));
+    }
+
+    @Test
+    void testSubscriptionDroppedWhenClientLeaves() throws Exception {
+        controller.addRemoteNodeListener(new Recorder());
+        waitFor(() -> platform.reads() > 2);
+
+        controllerConnection.disconnect();
+        Thread.sleep(INTERVAL.toMillis() * 5);
+        var reads = platform.reads();
+        Thread.sleep(INTERVAL.toMillis() * 5);
+        assertEquals(reads, platform.reads());
+    }
+
+    private static List<String> adapters(BusRemotePlatformService service) {
+        return service.adapters().stream().map(a -> a.address().nativeName()).sorted().toList();
+    }
+
+    static void waitFor(BooleanSupplier condition) throws InterruptedException {
+        var until = System.currentTimeMillis() + 10000;
+        while (!condition.getAsBoolean()) {
+            if (System.currentTimeMillis() > until)
+                throw new AssertionError("Timed out.");
+            Thread.sleep(10);
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package com.logonbox.vpn.drivers.remote.controller;
+
+import static com.logonbox.vpn.drivers.remote.controller.TestPlatformService.iface;
+import static com.logonbox.vpn.drivers.remote.controller.TestPlatformService.peer;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import com.logonbox.vpn.drivers.lib.VpnPeerInformation;
+import com.logonbox.vpn.drivers.remote.lib.RemotePlatformService;
+import com.logonbox.vpn.drivers.remote.node.RemotePlatformServiceDelegate;
+
+import org.freedesktop.dbus.bin.EmbeddedDBusDaemon;
+import org.freedesktop.dbus.connections.BusAddress;
+import org.freedesktop.dbus.connections.impl.DBusConnection;
+import org.freedesktop.dbus.connections.impl.DBusConnectionBuilder;
+import org.freedesktop.dbus.connections.transports.TransportBuilder;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+/**
+ * Peers read by a controller from a node a page at a time.
+ */
+public class RemotePeersPageTest {
+
+    private final static Duration INTERVAL = Duration.ofMillis(100);
+    private final static int PEERS = 2500;
+
+    private ScheduledExecutorService queue;
+    private TestPlatformService platform;
+    private EmbeddedDBusDaemon daemon;
+    private DBusConnection nodeConnection;
+    private RemotePlatformServiceDelegate node;
+    private DBusConnection controllerConnection;
+    private BusRemotePlatformService controller;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        queue = Executors.newSingleThreadScheduledExecutor(r -> {
+            var t = new Thread(r, "test-node-queue");
+            t.setDaemon(true);
+            return t;
+        });
+        platform = new TestPlatformService(queue, INTERVAL, INTERVAL.multipliedBy(2));
+        var peers = new ArrayList<VpnPeerInformation>();
+        for (int i = 0; i < PEERS; i++)
+            peers.add(peer(String.format("%04d", (i * 7919) % PEERS), 0, 0, Instant.EPOCH));
+        platform.set(iface("wg0", peers.toArray(new VpnPeerInformation[0])));
+
+        var address = TransportBuilder.createDynamicSession("UNIX", false);
+        var busAddress = BusAddress.of(address);
+        daemon = new EmbeddedDBusDaemon(busAddress.isListeningSocket() ? busAddress : busAddress.getListenerAddress());
+        daemon.startInBackgroundAndWait(Duration.ofSeconds(10).toMillis());
+
+        nodeConnection = DBusConnectionBuilder.forAddress(address).withShared(false).build();
+        nodeConnection.requestBusName(RemotePlatformService.BUS_NAME);
+        node = new RemotePlatformServiceDelegate(platform, nodeConnection);
+
+        controllerConnection = DBusConnectionBuilder.forAddress(address).withShared(false).build();
+        controller = new BusRemotePlatformService(RemotePlatformService.BUS_NAME, platform, controllerConnection);
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        var closeables = new ArrayList<AutoCloseable>();
+        closeables.add(controllerConnection);
+        closeables.add(node);
+        closeables.add(nodeConnection);
+        closeables.add(daemon);
+        for (var c : closeables) {
+            try {
+                if (c != null)
+                    c.close();
+            } catch (Exception e) {
+                // ignore
+            }
+        }
+        queue.shutdownNow();
+    }
+
+    @Test
+    void testPagesReadPeersOnce() throws Exception {
+        var adapter = controller.adapter("wg0");
+        var reads = platform.reads();
+
+        var keys = controller.peers(adapter, 1000, false, false).map(VpnPeerInformation::publicKey).toList();
+        assertEquals(PEERS, keys.size());
+        assertEquals(PEERS, new HashSet<>(keys).size());
+        assertEquals(keys.stream().sorted().toList(), keys);
+        assertEquals(reads + 1, platform.reads());
+    }
+
+    @Test
+    void testPagesAcrossChanges() throws Exception {
+        var adapter = controller.adapter("wg0");
+        var page = node.peersPage("wg0", "", 10, 0);
+        assertEquals(10, page.peers().length);
+        assertEquals("0009", page.cursor());
+
+        /* A new first page takes a new snapshot, which the old cursor carries on in */
+        platform.set(iface("wg0", peer("0005", 0, 0, Instant.EPOCH), peer("0010", 0, 0, Instant.EPOCH),
+                peer("0011", 0, 0, Instant.EPOCH)));
+        assertEquals(3, controller.peers(adapter, 1000, false, false).count());
+        page = node.peersPage("wg0", page.cursor(), 10, 0);
+        assertEquals(2, page.peers().length);
+        assertEquals("0010", page.peers()[0].toNative().publicKey());
+        assertEquals("", page.cursor());
+    }
+}
@@ -0,0 +1,99 @@
+package com.logonbox.vpn.drivers.remote.controller;
+
+import static com.logonbox.vpn.drivers.remote.controller.TestPlatformService.iface;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.logonbox.vpn.drivers.remote.lib.RemotePlatformService;
+import com.logonbox.vpn.drivers.remote.node.RemotePlatformServiceDelegate;
+
+import org.freedesktop.dbus.bin.EmbeddedDBusDaemon;
+import org.freedesktop.dbus.connections.BusAddress;
+import org.freedesktop.dbus.connections.impl.DBusConnection;
+import org.freedesktop.dbus.connections.impl.DBusConnectionBuilder;
+import org.freedesktop.dbus.connections.transports.TransportBuilder;
+import org.freedesktop.dbus.exceptions.DBusExecutionException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+/**
+ * Top talker requests a node refuses before doing any work.
+ */
+public class RemoteTopTalkersTest {
+
+    private final static Duration INTERVAL = Duration.ofMillis(100);
+
+    private ScheduledExecutorService queue;
+    private EmbeddedDBusDaemon daemon;
+    private DBusConnection nodeConnection;
+    private RemotePlatformServiceDelegate node;
+    private DBusConnection controllerConnection;
+    private RemotePlatformService remote;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        queue = Executors.newSingleThreadScheduledExecutor(r -> {
+            var t = new Thread(r, "test-node-queue");
+            t.setDaemon(true);
+            return t;
+        });
+        var platform = new TestPlatformService(queue, INTERVAL, INTERVAL.multipliedBy(2));
+        platform.set(iface("wg0"));
+
+        var address = TransportBuilder.createDynamicSession("UNIX", false);
+        var busAddress = BusAddress.of(address);
+        daemon = new EmbeddedDBusDaemon(busAddress.isListeningSocket() ? busAddress : busAddress.getListenerAddress());
+        daemon.startInBackgroundAndWait(Duration.ofSeconds(10).toMillis());
+
+        nodeConnection = DBusConnectionBuilder.forAddress(address).withShared(false).build();
+        nodeConnection.requestBusName(RemotePlatformService.BUS_NAME);
+        node = new RemotePlatformServiceDelegate(platform, nodeConnection);
+
+        controllerConnection = DBusConnectionBuilder.forAddress(address).withShared(false).build();
+        remote = controllerConnection.getRemoteObject(RemotePlatformService.BUS_NAME,
+                RemotePlatformService.OBJECT_PATH, RemotePlatformService.class);
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        var closeables = new ArrayList<AutoCloseable>();
+        closeables.add(controllerConnection);
+        closeables.add(node);
+        closeables.add(nodeConnection);
+        closeables.add(daemon);
+        for (var c : closeables) {
+            try {
+                if (c != null)
+                    c.close();
+            } catch (Exception e) {
+                // ignore
+            }
+        }
+        queue.shutdownNow();
+    }
+
+    @Test
+    void testUnknownMeasure() {
+        var e = assertThrows(DBusExecutionException.class, () -> remote.topTalkers(10, "BYTES", "BOTH"));
+        assertTrue(e.getMessage().contains("Unknown measure 'BYTES'"), e.getMessage());
+        assertTrue(e.getMessage().contains("TOTAL"), e.getMessage());
+    }
+
+    @Test
+    void testUnknownDirection() {
+        var e = assertThrows(DBusExecutionException.class, () -> remote.topTalkers(10, "TOTAL", "up"));
+        assertTrue(e.getMessage().contains("Unknown direction 'up'"), e.getMessage());
+    }
+
+    @Test
+    void testLimitBelowOne() {
+        var e = assertThrows(DBusExecutionException.class, () -> remote.topTalkers(0, "TOTAL", "BOTH"));
+        assertTrue(e.getMessage().contains("Limit must be at least 1"), e.getMessage());
+    }
+}
@@ -0,0 +1,364 @@
+package com.logonbox.vpn.drivers.remote.controller;
+
+import com.logonbox.vpn.drivers.lib.BasePlatformService;
+import com.logonbox.vpn.drivers.lib.DNSProvider;
+import com.logonbox.vpn.drivers.lib.NATMode;
+import com.logonbox.vpn.drivers.lib.NativeComponents;
+import com.logonbox.vpn.drivers.lib.StartRequest;
+import com.logonbox.vpn.drivers.lib.SystemConfiguration;
+import com.logonbox.vpn.drivers.lib.SystemContext;
+import com.logonbox.vpn.drivers.lib.VpnAdapter;
+import com.logonbox.vpn.drivers.lib.VpnAdapterConfiguration;
+import com.logonbox.vpn.drivers.lib.VpnAddress;
+import com.logonbox.vpn.drivers.lib.VpnConfiguration;
+import com.logonbox.vpn.drivers.lib.VpnInterfaceInformation;
+import com.logonbox.vpn.drivers.lib.VpnPeer;
+import com.logonbox.vpn.drivers.lib.VpnPeerInformation;
+import com.sshtools.liftlib.commands.SystemCommands;
+
+import java.lang.reflect.Proxy;
+import java.net.InetSocketAddress;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A platform service whose adapters are whatever the test says they are, for
+ * exporting through a node. Only reading adapters is supported.
+ */
+final class TestPlatformService extends BasePlatformService<VpnAddress> implements SystemContext {
+
+    private final ScheduledExecutorService queue;
+    private final SystemConfiguration configuration;
+    private final AtomicInteger reads = new AtomicInteger();
+
+    private volatile List<VpnInterfaceInformation> current = List.of();
+
+    TestPlatformService(ScheduledExecutorService queue, Duration peerEventInterval, Duration statsInterval) {
+        this.queue = queue;
+        this.configuration = new SystemConfiguration.DefaultSystemConfiguration() {
+            @Override
+            public Duration peerEventInterval() {
+                return peerEventInterval;
+            }
+
+            @Override
+            public Duration statsInterval() {
+                return statsInterval;
+            }
+        };
+    }
+
+    /**
+     * Set the adapters and their information.
+     *
+     * @param information information of each adapter
+     */
+    void set(VpnInterfaceInformation... information) {
+        current = List.of(information);
+    }
+
+    /**
+     * Get how many times the adapters have been listed.
+     *
+     * @return reads
+     */
+    int reads() {
+        return reads.get();
+    }
+
+    static VpnInterfaceInformation iface(String name, VpnPeerInformation... peers) {
+        var peerList = List.of(peers);
+        return new VpnInterfaceInformation() {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            public String interfaceName() {
+                return name;
+            }
+
+            @Override
+            public long tx() {
+                return peerList.stream().mapToLong(VpnPeerInformation::tx).sum();
+            }
+
+            @Override
+            public long rx() {
+                return peerList.stream().mapToLong(VpnPeerInformation::rx).sum();
+            }
+
+            @Override
+            public List<VpnPeerInformation> peers() {
+                return peerList;
+            }
+
+            @Override
+            public Instant lastHandshake() {
+                return Instant.EPOCH;
+            }
+
+            @Override
+            public String publicKey() {
+                return "";
+            }
+
+            @Override
+            public String privateKey() {
+                return "";
+            }
+
+            @Override
+            public Optional<Integer> listenPort() {
+                return Optional.empty();
+            }
+
+            @Override
+            public Optional<Integer> fwmark() {
+                return Optional.empty();
+            }
+
+            @Override
+            public Optional<String> error() {
+                return Optional.empty();
+            }
+        };
+    }
+
+    static VpnPeerInformation peer(String publicKey, long rx, long tx, Instant lastHandshake) {
+        return new VpnPeerInformation() {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            public List<String> allowedIps() {
+                return List.of();
+            }
+
+            @Override
+            public Optional<InetSocketAddress> remoteAddress() {
+                return Optional.of(new InetSocketAddress("127.0.0.1", 51820));
+            }
+
+            @Override
+            public String publicKey() {
+                return publicKey;
+            }
+
+            @Override
+            public Optional<String> presharedKey() {
+                return Optional.empty();
+            }
+
+            @Override
+            public long tx() {
+                return tx;
+            }
+
+            @Override
+            public long rx() {
+                return rx;
+            }
+
+            @Override
+            public Instant lastHandshake() {
+                return lastHandshake;
+            }
+
+            @Override
+            public Optional<String> error() {
+                return Optional.empty();
+            }
+        };
+    }
+
+    @Override
+    public ScheduledExecutorService queue() {
+        return queue;
+    }
+
+    @Override
+    public SystemConfiguration configuration() {
+        return configuration;
+    }
+
+    @Override
+    public void addScriptEnvironmentVariables(VpnAdapter connection, Map<String, String> env) {
+    }
+
+    @Override
+    public SystemCommands commands() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public NativeComponents nativeComponents() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void alert(String message, Object... args) {
+    }
+
+    @Override
+    public SystemContext context() {
+        return this;
+    }
+
+    @Override
+    public List<VpnAddress> addresses() {
+        return current.stream().map(i -> newAddress(i.interfaceName())).toList();
+    }
+
+    @Override
+    public List<VpnAdapter> adapters() {
+        reads.incrementAndGet();
+        return current.stream().map(i -> new VpnAdapter(this, Optional.of(newAddress(i.interfaceName())))).toList();
+    }
+
+    @Override
+    public VpnAddress address(String name) {
+        return newAddress(name);
+    }
+
+    @Override
+    public VpnInterfaceInformation information(VpnAdapter adapter) {
+        var name = adapter.address().nativeName();
+        return current.stream().filter(i -> i.interfaceName().equals(name)).findFirst()
+                .orElseThrow(() -> new IllegalArgumentException(name));
+    }
+
+    @Override
+    public VpnAdapterConfiguration configuration(VpnAdapter adapter) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Optional<DNSProvider> dns() {
+        return Optional.empty();
+    }
+
+    @Override
+    public VpnAdapter start(StartRequest startRequest) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void openToEveryone(Path path) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void restrictToUser(Path path) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void runHook(VpnConfiguration configuration, VpnAdapter session, String... hookScript) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Optional<VpnPeer> defaultGatewayPeer() {
+        return Optional.empty();
+    }
+
+    @Override
+    public void defaultGatewayPeer(VpnPeer peer) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void resetDefaultGatewayPeer() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void reconfigure(VpnAdapter vpnAdapter, VpnAdapterConfiguration cfg) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void sync(VpnAdapter vpnAdapter, VpnAdapterConfiguration cfg) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void append(VpnAdapter vpnAdapter, VpnAdapterConfiguration cfg) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void remove(VpnAdapter vpnAdapter, String publicKey) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Optional<String> interfaceNameToNativeName(String name) {
+        return Optional.of(name);
+    }
+
+    @Override
+    public Optional<String> nativeNameToInterfaceName(String name) {
+        return Optional.of(name);
+    }
+
+    @Override
+    public boolean isValidNativeInterfaceName(String name) {
+        return true;
+    }
+
+    @Override
+    public boolean isIpForwardingEnabledOnSystem() {
+        return false;
+    }
+
+    @Override
+    public void setIpForwardingEnabledOnSystem(boolean ipForwarding) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void setNat(String iface, Optional<NATMode> nat) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Optional<NATMode> getNat(String iface) {
+        return Optional.empty();
+    }
+
+    @Override
+    public Optional<Gateway> defaultGateway() {
+        return Optional.empty();
+    }
+
+    @Override
+    public void defaultGateway(Optional<Gateway> iface) {
+        throw new UnsupportedOperationException();
+    }
+
+    private static VpnAddress newAddress(String name) {
+        return (VpnAddress) Proxy.newProxyInstance(TestPlatformService.class.getClassLoader(),
+                new Class<?>[] { VpnAddress.class }, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                    case "name":
+                    case "nativeName":
+                    case "shortName":
+                    case "displayName":
+                        return name;
+                    case "hashCode":
+                        return name.hashCode();
+                    case "equals":
+                        return proxy == args[0];
+                    case "toString":
+                        return name;
+                    default:
+                        throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+    }
+}
@@ -0,0 +1,65 @@
+/**
+ * Copyright © 2023 LogonBox Limited (support@logonbox.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the “Software”), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies
+ * or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.logonbox.vpn.drivers.remote.lib;
+
+import org.freedesktop.dbus.Struct;
+import org.freedesktop.dbus.annotations.Position;
+
+import uk.co.bithatch.nativeimage.annotations.Reflectable;
+import uk.co.bithatch.nativeimage.annotations.TypeReflect;
+
+/**
+ * A page of peers returned by
+ * {@link RemotePlatformService#peersPage(String, String, int, int)}.
+ */
+@Reflectable
+@TypeReflect(fields = true, constructors = true)
+public class RemotePeerPage extends Struct {
+
+    @Position(0)
+    private String cursor = "";
+
+    @Position(1)
+    private RemoteVpnPeerInformation[] peers = new RemoteVpnPeerInformation[0];
+
+    public RemotePeerPage() {
+    }
+
+    public RemotePeerPage(String cursor, RemoteVpnPeerInformation[] peers) {
+        super();
+        this.cursor = cursor;
+        this.peers = peers;
+    }
+
+    /**
+     * Get the cursor to pass to get the next page, or empty if this is the
+     * last.
+     *
+     * @return cursor
+     */
+    public String cursor() {
+        return cursor;
+    }
+
+    public RemoteVpnPeerInformation[] peers() {
+        return peers;
+    }
+}
@@ -3,7 +3,11 @@ package com.logonbox.vpn.drivers.remote.lib;
 import com.logonbox.vpn.drivers.lib.PlatformService;
 
 import org.freedesktop.dbus.annotations.DBusBoundProperty;
+import org.freedesktop.dbus.exceptions.DBusException;
 import org.freedesktop.dbus.interfaces.DBusInterface;
+import org.freedesktop.dbus.messages.DBusSignal;
+
+import java.util.List;
 
 import uk.co.bithatch.nativeimage.annotations.Proxy;
 import uk.co.bithatch.nativeimage.annotations.Reflectable;
@@ -24,6 +28,234 @@ public interface RemotePlatformService extends DBusInterface {
     String OBJECT_PATH = "/" + DBUS_INTERFACE_NAME.replace('.', '/');
     String BUS_NAME = "com.logonbox.vpn.drivers.Remote";
 
+    /**
+     * Flag for {@link #informationAll(int)} to include the interface private key
+     * and peer preshared keys. These are secrets, so are only sent when asked
+     * for explicitly, and are never part of {@link #INFORMATION_DEFAULT}.
+     */
+    int INFORMATION_KEYS = 1;
+
+    /**
+     * Flag for {@link #informationAll(int)} to include the allowed IPs of each
+     * peer.
+     */
+    int INFORMATION_ALLOWED_IPS = 2;
+
+    /**
+     * Flags for {@link #informationAll(int)} to include everything, including
+     * the keys.
+     */
+    int INFORMATION_ALL = INFORMATION_KEYS | INFORMATION_ALLOWED_IPS;
+
+    /**
+     * Flags used when none are given, everything but the keys.
+     */
+    int INFORMATION_DEFAULT = INFORMATION_ALLOWED_IPS;
+
+    /**
+     * Flag for {@link #informationAll(int)} to leave out the peers, which may
+     * then be fetched a page at a time with
+     * {@link #peersPage(String, String, int, int)}. Not part of
+     * {@link #INFORMATION_ALL}.
+     */
+    int INFORMATION_NO_PEERS = 4;
+
+    /**
+     * The most peers {@link #peersPage(String, String, int, int)} will return
+     * in a single page.
+     */
+    int MAX_PEERS_PAGE = 1000;
+
+    /**
+     * Sent by the node when an adapter appears.
+     */
+    @Reflectable
+    @TypeReflect(fields = true, constructors = true)
+    class AdapterUp extends DBusSignal {
+        private final String nativeName;
+
+        public AdapterUp(String path, String nativeName) throws DBusException {
+            super(path, nativeName);
+            this.nativeName = nativeName;
+        }
+
+        public String getNativeName() {
+            return nativeName;
+        }
+    }
+
+    /**
+     * Sent by the node when an adapter goes away.
+     */
+    @Reflectable
+    @TypeReflect(fields = true, constructors = true)
+    class AdapterDown extends DBusSignal {
+        private final String nativeName;
+
+        public AdapterDown(String path, String nativeName) throws DBusException {
+            super(path, nativeName);
+            this.nativeName = nativeName;
+        }
+
+        public String getNativeName() {
+            return nativeName;
+        }
+    }
+
+    /**
+     * Sent by the node when a peer completes a new handshake. The endpoint is in
+     * the form <code>host:port</code>, with IPv6 hosts in square brackets, or
+     * empty if not known.
+     */
+    @Reflectable
+    @TypeReflect(fields = true, constructors = true)
+    class PeerHandshake extends DBusSignal {
+        private final String nativeName;
+        private final String publicKey;
+        private final long lastHandshake;
+        private final String endpoint;
+
+        public PeerHandshake(String path, String nativeName, String publicKey, long lastHandshake, String endpoint)
+                throws DBusException {
+            super(path, nativeName, publicKey, lastHandshake, endpoint);
+            this.nativeName = nativeName;
+            this.publicKey = publicKey;
+            this.lastHandshake = lastHandshake;
+            this.endpoint = endpoint;
+        }
+
+        public String getNativeName() {
+            return nativeName;
+        }
+
+        public String getPublicKey() {
+            return publicKey;
+        }
+
+        public long getLastHandshake() {
+            return lastHandshake;
+        }
+
+        public String getEndpoint() {
+            return endpoint;
+        }
+    }
+
+    /**
+     * Sent by the node when a peer is added to an adapter.
+     */
+    @Reflectable
+    @TypeReflect(fields = true, constructors = true)
+    class PeerAdded extends DBusSignal {
+        private final String nativeName;
+        private final String publicKey;
+
+        public PeerAdded(String path, String nativeName, String publicKey) throws DBusException {
+            super(path, nativeName, publicKey);
+            this.nativeName = nativeName;
+            this.publicKey = publicKey;
+        }
+
+        public String getNativeName() {
+            return nativeName;
+        }
+
+        public String getPublicKey() {
+            return publicKey;
+        }
+    }
+
+    /**
+     * Sent by the node when a peer is removed from an adapter. Peers of adapters
+     * that go away are not sent individually, just {@link AdapterDown}.
+     */
+    @Reflectable
+    @TypeReflect(fields = true, constructors = true)
+    class PeerRemoved extends DBusSignal {
+        private final String nativeName;
+        private final String publicKey;
+
+        public PeerRemoved(String path, String nativeName, String publicKey) throws DBusException {
+            super(path, nativeName, publicKey);
+            this.nativeName = nativeName;
+            this.publicKey = publicKey;
+        }
+
+        public String getNativeName() {
+            return nativeName;
+        }
+
+        public String getPublicKey() {
+            return publicKey;
+        }
+    }
+
+    /**
+     * Sent by the node at most once per
+     * {@link com.logonbox.vpn.drivers.lib.SystemConfiguration#statsInterval()},
+     * with the bytes transferred by every peer that transferred anything since
+     * the last batch. The lists are all the same length, with one element per
+     * peer.
+     */
+    @Reflectable
+    @TypeReflect(fields = true, constructors = true)
+    class StatDeltas extends DBusSignal {
+        private final long interval;
+        private final List<String> nativeNames;
+        private final List<String> publicKeys;
+        private final List<Long> rx;
+        private final List<Long> tx;
+
+        public StatDeltas(String path, long interval, List<String> nativeNames, List<String> publicKeys,
+                List<Long> rx, List<Long> tx) throws DBusException {
+            super(path, interval, nativeNames, publicKeys, rx, tx);
+            this.interval = interval;
+            this.nativeNames = nativeNames;
+            this.publicKeys = publicKeys;
+            this.rx = rx;
+            this.tx = tx;
+        }
+
+        /**
+         * Get the time in milliseconds the deltas were collected over.
+         * 
+         * @return interval
+         */
+        public long getInterval() {
+            return interval;
+        }
+
+        public List<String> getNativeNames() {
+            return nativeNames;
+        }
+
+        public List<String> getPublicKeys() {
+            return publicKeys;
+        }
+
+        public List<Long> getRx() {
+            return rx;
+        }
+
+        public List<Long> getTx() {
+            return tx;
+        }
+    }
+
+    /**
+     * Ask for the signals of this interface to be sent. The node only watches
+     * its adapters for changes while it has at least one subscription, so a
+     * client should subscribe once it has added its signal handlers and
+     * {@link #unsubscribe()} once it no longer needs them. The subscriptions
+     * of a client that leaves the bus are dropped.
+     */
+    void subscribe();
+
+    /**
+     * Drop a subscription made by {@link #subscribe()}.
+     */
+    void unsubscribe();
+
     /**
      * Get if any adapter exists with the logical name. See
      * {@link PlatformService#adapterExists(String)}.
@@ -114,11 +346,22 @@ public interface RemotePlatformService extends DBusInterface {
 
     /**
      * Get all available addresses. See {@link PlatformService#addresses()}.
+     * This exports an object for every address, so {@link #addressNames()} is
+     * preferred where the node has it.
      * 
      * @return addresses
      */
     RemoteVpnAddress[] addresses();
 
+    /**
+     * Get the native names of all available addresses. See
+     * {@link PlatformService#addresses()}. The object for an address is only
+     * exported once asked for with {@link #address(String)}.
+     * 
+     * @return native names of addresses
+     */
+    String[] addressNames();
+
     /**
      * Append a new VPN peer configuration to the interface. See
      * {@link PlatformService#append(com.logonbox.vpn.drivers.lib.VpnAdapter, com.logonbox.vpn.drivers.lib.VpnAdapterConfiguration)}.
@@ -155,6 +398,56 @@ public interface RemotePlatformService extends DBusInterface {
      */
     void remove(String nativeName, String publicKey);
 
+    /**
+     * Add peers to the interface, without sending or parsing a whole
+     * configuration. Peers that already exist are updated as for
+     * {@link #updatePeers(String, RemoteVpnPeer[])}.
+     * 
+     * @param nativeName native interface name
+     * @param peers      peers to add
+     */
+    void addPeers(String nativeName, RemoteVpnPeer[] peers);
+
+    /**
+     * Remove peers with the given public keys from the interface, in a single
+     * operation. See
+     * {@link PlatformService#remove(com.logonbox.vpn.drivers.lib.VpnAdapter, java.util.Collection)}.
+     * 
+     * @param nativeName native interface name
+     * @param publicKeys public keys of peers to remove
+     */
+    void removePeers(String nativeName, String[] publicKeys);
+
+    /**
+     * Replace the configuration of peers on the interface, so for example allowed
+     * IPs no longer in the new configuration are dropped rather than merged.
+     * Peers that do not exist are added. Replaced peers keep their sessions. See
+     * {@link PlatformService#update(com.logonbox.vpn.drivers.lib.VpnAdapter, java.util.Collection)}.
+     * 
+     * @param nativeName native interface name
+     * @param peers      peers to replace
+     */
+    void updatePeers(String nativeName, RemoteVpnPeer[] peers);
+
+    /**
+     * Get the peers transferring the most across all adapters. See
+     * {@link com.logonbox.vpn.drivers.lib.TopTalkers}. Only the requested number
+     * of peers cross the bus, however many peers the adapters have.
+     * <p>
+     * For {@link com.logonbox.vpn.drivers.lib.TopTalkers.Measure#TRANSFER} and
+     * {@link com.logonbox.vpn.drivers.lib.TopTalkers.Measure#RATE}, the node
+     * starts sampling on the first such request and keeps sampling, so the first
+     * results will be empty until enough samples have been taken.
+     * 
+     * @param limit     maximum number of peers to return
+     * @param measure   name of {@link com.logonbox.vpn.drivers.lib.TopTalkers.Measure} to rank by
+     * @param direction name of {@link com.logonbox.vpn.drivers.lib.TopTalkers.Direction} to rank by
+     * @return peers, highest first
+     * @throws org.freedesktop.dbus.exceptions.DBusExecutionException if the limit
+     *         is less than 1, or the measure or direction is not known
+     */
+    RemoteTalker[] topTalkers(int limit, String measure, String direction);
+
     /**
      * Convert a logical interface name to a native interface name if possible. If
      * not possible or applicable, an empty string will be returned. See
@@ -190,12 +483,49 @@ public interface RemotePlatformService extends DBusInterface {
     /**
      * Get information about the specified interface. See
      * {@link PlatformService#information(com.logonbox.vpn.drivers.lib.VpnAdapter)}.
+     * The private and preshared keys are left out, use
+     * {@link #informationAll(int)} with {@link #INFORMATION_KEYS} if they are
+     * needed.
      * 
      * @param nativeName native name
      * @return vpn interface information
      */
     RemoteVpnInterfaceInformation information(String nativeName);
 
+    /**
+     * Get information about all adapters in a single call, rather than
+     * {@link #adapters()} followed by {@link #information(String)} for each.
+     * The private and preshared keys and the allowed IPs make up much of the
+     * message for large adapters, so may be left out if not needed, in which
+     * case they will be empty.
+     * <p>
+     * Adapters whose information cannot be read are left out.
+     * 
+     * @param fields bit mask of {@link #INFORMATION_KEYS} and {@link #INFORMATION_ALLOWED_IPS}
+     * @return vpn interface information for all adapters
+     */
+    RemoteVpnInterfaceInformation[] informationAll(int fields);
+
+    /**
+     * Get a page of the peers of the specified interface, for interfaces with
+     * too many peers to send in a single message. Peers are ordered by public
+     * key. Start with an empty cursor, then pass the cursor of each page to get
+     * the next, until the returned cursor is empty.
+     * <p>
+     * The node reads the peers once for the first page, and serves the pages
+     * that follow from that snapshot until it has gone unused for a short
+     * while. Peers added or removed between pages may or may not be seen, but
+     * no peer present throughout is missed or returned twice.
+     * 
+     * @param nativeName native name
+     * @param cursor     cursor from the previous page, or empty for the first
+     * @param limit      maximum number of peers to return, at most
+     *                   {@link #MAX_PEERS_PAGE}
+     * @param fields     bit mask of {@link #INFORMATION_KEYS} and {@link #INFORMATION_ALLOWED_IPS}
+     * @return page of peers
+     */
+    RemotePeerPage peersPage(String nativeName, String cursor, int limit, int fields);
+
     /**
      * Get the configuration of the specified interface as an INI format
      * configuration file. See
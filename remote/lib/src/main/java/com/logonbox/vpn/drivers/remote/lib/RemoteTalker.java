@@ -0,0 +1,84 @@
+/**
+ * Copyright © 2023 LogonBox Limited (support@logonbox.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the “Software”), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies
+ * or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.logonbox.vpn.drivers.remote.lib;
+
+import com.logonbox.vpn.drivers.lib.TopTalkers;
+
+import org.freedesktop.dbus.Struct;
+import org.freedesktop.dbus.annotations.Position;
+
+import uk.co.bithatch.nativeimage.annotations.Reflectable;
+import uk.co.bithatch.nativeimage.annotations.TypeReflect;
+
+@Reflectable
+@TypeReflect(fields = true, constructors = true)
+public class RemoteTalker extends Struct {
+
+    @Position(0)
+    private String interfaceName = "";
+
+    @Position(1)
+    private String publicKey = "";
+
+    @Position(2)
+    private double rx;
+
+    @Position(3)
+    private double tx;
+
+    public RemoteTalker() {
+    }
+
+    public RemoteTalker(TopTalkers.Talker talker) {
+        this.interfaceName = talker.interfaceName();
+        this.publicKey = talker.publicKey();
+        this.rx = talker.rx();
+        this.tx = talker.tx();
+    }
+
+    public RemoteTalker(String interfaceName, String publicKey, double rx, double tx) {
+        super();
+        this.interfaceName = interfaceName;
+        this.publicKey = publicKey;
+        this.rx = rx;
+        this.tx = tx;
+    }
+
+    public String interfaceName() {
+        return interfaceName;
+    }
+
+    public String publicKey() {
+        return publicKey;
+    }
+
+    public double rx() {
+        return rx;
+    }
+
+    public double tx() {
+        return tx;
+    }
+
+    public TopTalkers.Talker toNative() {
+        return new TopTalkers.Talker(interfaceName, publicKey, rx, tx);
+    }
+}
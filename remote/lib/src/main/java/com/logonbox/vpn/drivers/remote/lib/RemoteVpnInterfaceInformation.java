@@ -66,15 +66,41 @@ public class RemoteVpnInterfaceInformation extends Struct {
         this.error = error;
     }
 
+    /**
+     * Create from native information, leaving out the private and preshared
+     * keys. See {@link RemotePlatformService#INFORMATION_DEFAULT}.
+     * 
+     * @param information native information
+     */
     public RemoteVpnInterfaceInformation(VpnInterfaceInformation information) {
+        this(information, RemotePlatformService.INFORMATION_DEFAULT);
+    }
+
+    /**
+     * Create from native information, including only the optional parts
+     * requested. See {@link RemotePlatformService#informationAll(int)}.
+     * 
+     * @param information native information
+     * @param fields bit mask of <code>RemotePlatformService.INFORMATION_*</code> flags
+     */
+    public RemoteVpnInterfaceInformation(VpnInterfaceInformation information, int fields) {
+        var keys = (fields & RemotePlatformService.INFORMATION_KEYS) != 0;
         this.interfaceName = information.interfaceName();
         this.tx = information.tx();
         this.rx = information.rx();
-        this.peers = information.peers().
-                stream().
-                map(RemoteVpnPeerInformation::new).
-                toList().
-                toArray(new RemoteVpnPeerInformation[0]);
+        if((fields & RemotePlatformService.INFORMATION_NO_PEERS) == 0) {
+            var peerList = information.peers();
+            this.peers = new RemoteVpnPeerInformation[peerList.size()];
+            for(int i = 0 ; i < peers.length; i++) {
+                peers[i] = new RemoteVpnPeerInformation(peerList.get(i), fields);
+            }
+        }
+        this.lastHandshake = information.lastHandshake().toEpochMilli();
+        this.publicKey = information.publicKey();
+        this.privateKey = keys ? information.privateKey() : "";
+        this.listenPort = information.listenPort().orElse(0);
+        this.fwmark = information.fwmark().orElse(0);
+        this.error = information.error().orElse("");
     }
 
     public String getInterfaceName() {
@@ -138,7 +164,7 @@ public class RemoteVpnInterfaceInformation extends Struct {
 
             @Override
             public String privateKey() {
-                return publicKey;
+                return privateKey;
             }
 
             @Override
@@ -50,6 +50,7 @@ public class RemoteVpnPeer extends Struct {
         this.endpointAddress = peer.endpointAddress().orElse("");
         this.endpointPort = peer.endpointPort().orElse(0);
         this.persistentKeepalive = peer.persistentKeepalive().orElse(0);
+        this.allowedIps = peer.allowedIps().toArray(new String[0]);
         this.presharedKey = peer.presharedKey().orElse("");
     }
 
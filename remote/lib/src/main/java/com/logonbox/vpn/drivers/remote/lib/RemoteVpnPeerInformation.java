@@ -45,11 +45,30 @@ public class RemoteVpnPeerInformation extends Struct {
     public RemoteVpnPeerInformation() {
     }
     
+    /**
+     * Create from native information, leaving out the preshared key. See
+     * {@link RemotePlatformService#INFORMATION_DEFAULT}.
+     * 
+     * @param info native information
+     */
     public RemoteVpnPeerInformation(VpnPeerInformation info) {
-        this.allowedIps = info.allowedIps().toArray(new String[0]);
+        this(info, RemotePlatformService.INFORMATION_DEFAULT);
+    }
+    
+    /**
+     * Create from native information, including only the optional parts
+     * requested. See {@link RemotePlatformService#informationAll(int)}.
+     * 
+     * @param info native information
+     * @param fields bit mask of <code>RemotePlatformService.INFORMATION_*</code> flags
+     */
+    public RemoteVpnPeerInformation(VpnPeerInformation info, int fields) {
+        if((fields & RemotePlatformService.INFORMATION_ALLOWED_IPS) != 0)
+            this.allowedIps = info.allowedIps().toArray(new String[0]);
         this.remoteAddress = info.remoteAddress().map(InetSocketAddress::toString).orElse("");
         this.publicKey = info.publicKey();
-        this.presharedKey = info.presharedKey().orElse("");
+        if((fields & RemotePlatformService.INFORMATION_KEYS) != 0)
+            this.presharedKey = info.presharedKey().orElse("");
         this.tx = info.tx();
         this.rx = info.rx();
         this.lastHandshake = info.lastHandshake().toEpochMilli();
@@ -0,0 +1,234 @@
+package com.logonbox.vpn.drivers.remote.node;
+
+import com.logonbox.vpn.drivers.lib.PlatformService;
+import com.logonbox.vpn.drivers.lib.VpnAddress;
+import com.logonbox.vpn.drivers.remote.lib.RemoteVpnAddress;
+
+import org.freedesktop.dbus.connections.AbstractConnection;
+import org.freedesktop.dbus.exceptions.DBusException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+
+/**
+ * Manages the D-Bus objects for the addresses of a {@link PlatformService}.
+ * Rather than exporting an object for every address up front, an address is
+ * only exported when asked for with {@link #get(String)}, or along with all
+ * others by {@link #all()}. It is unexported again once it has not been used
+ * for the idle timeout, or when it no longer exists. Asking for it again
+ * exports it at the same path, so proxies already held by clients work again.
+ * <p>
+ * Which addresses exist is refreshed in the background on
+ * {@link com.logonbox.vpn.drivers.lib.SystemContext#queue()}, whenever a
+ * change in adapters is seen and otherwise every {@link #RECONCILE_INTERVAL}.
+ * Addresses rejected by the filter are never exported.
+ */
+final class AddressExporter implements Closeable {
+
+    private final static Logger LOG = LoggerFactory.getLogger(AddressExporter.class);
+
+    final static Duration RECONCILE_INTERVAL = Duration.ofSeconds(30);
+
+    private final PlatformService<?> delegate;
+    private final AbstractConnection connection;
+    private final Predicate<VpnAddress> filter;
+    private final long idleTimeout;
+    private final Map<String, RemoteVpnAddressDelegate> exported = new HashMap<>();
+    /* Addresses accepted by the filter as of the last reconciliation */
+    private final Map<String, VpnAddress> known = new LinkedHashMap<>();
+
+    private ScheduledFuture<?> task;
+
+    AddressExporter(PlatformService<?> delegate, AbstractConnection connection, Predicate<VpnAddress> filter,
+            Duration idleTimeout) {
+        this.delegate = delegate;
+        this.connection = connection;
+        this.filter = filter;
+        this.idleTimeout = idleTimeout.toNanos();
+    }
+
+    /**
+     * Reconcile now, then periodically in the background if there is a queue.
+     *
+     * @return this for chaining
+     */
+    AddressExporter start() {
+        reconcile();
+        var queue = delegate.context().queue();
+        if (queue == null)
+            LOG.warn("No queue available, addresses will only be refreshed when started through this node.");
+        else {
+            var interval = RECONCILE_INTERVAL.toMillis();
+            synchronized (this) {
+                task = queue.scheduleWithFixedDelay(this::scheduledReconcile, interval, interval,
+                        TimeUnit.MILLISECONDS);
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Get the object for an address, exporting it if it is not already.
+     *
+     * @param nativeName native name
+     * @return object
+     * @throws IllegalArgumentException if there is no such address, or it is
+     *                                  filtered out
+     */
+    RemoteVpnAddress get(String nativeName) {
+        synchronized (this) {
+            var ra = exported.get(nativeName);
+            if (ra != null) {
+                ra.used();
+                return ra;
+            }
+            var addr = known.get(nativeName);
+            if (addr != null)
+                return export(addr);
+        }
+
+        /* May be newer than the last reconciliation */
+        if (!delegate.addressExists(nativeName))
+            throw new IllegalArgumentException(String.format("No address %s", nativeName));
+        var addr = delegate.address(nativeName);
+        if (!filter.test(addr))
+            throw new IllegalArgumentException(String.format("No address %s", nativeName));
+        synchronized (this) {
+            known.put(nativeName, addr);
+            var ra = exported.get(nativeName);
+            if (ra != null) {
+                ra.used();
+                return ra;
+            }
+            return export(addr);
+        }
+    }
+
+    /**
+     * Get the objects for all addresses, exporting any that are not already.
+     *
+     * @return objects
+     */
+    synchronized RemoteVpnAddress[] all() {
+        var all = new ArrayList<RemoteVpnAddress>(known.size());
+        for (var addr : known.values()) {
+            var ra = exported.get(addr.nativeName());
+            if (ra == null) {
+                try {
+                    ra = export(addr);
+                } catch (IllegalStateException ise) {
+                    LOG.warn("Failed to export {}.", addr.nativeName(), ise);
+                    continue;
+                }
+            } else
+                ra.used();
+            all.add(ra);
+        }
+        return all.toArray(new RemoteVpnAddress[0]);
+    }
+
+    /**
+     * Get the native names of all addresses, without exporting any.
+     *
+     * @return native names
+     */
+    synchronized String[] names() {
+        return known.keySet().toArray(new String[0]);
+    }
+
+    /**
+     * Make a newly created address known and export it straight away, as it is
+     * about to be asked for.
+     *
+     * @param address address
+     */
+    synchronized void added(VpnAddress address) {
+        if (filter.test(address)) {
+            known.put(address.nativeName(), address);
+            if (!exported.containsKey(address.nativeName()))
+                export(address);
+        }
+    }
+
+    /**
+     * Refresh which addresses exist, and unexport any that have gone or have
+     * been idle for too long.
+     */
+    void reconcile() {
+        var current = new LinkedHashMap<String, VpnAddress>();
+        for (var addr : delegate.addresses()) {
+            if (filter.test(addr))
+                current.put(addr.nativeName(), addr);
+        }
+
+        synchronized (this) {
+            known.clear();
+            known.putAll(current);
+            var now = System.nanoTime();
+            for (var it = exported.values().iterator(); it.hasNext();) {
+                var ra = it.next();
+                if (!known.containsKey(ra.nativeName()) || now - ra.lastUsed() > idleTimeout) {
+                    it.remove();
+                    unexport(ra);
+                }
+            }
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        if (task != null) {
+            task.cancel(false);
+            task = null;
+        }
+        for (var ra : exported.values()) {
+            unexport(ra);
+        }
+        exported.clear();
+    }
+
+    private void scheduledReconcile() {
+        try {
+            reconcile();
+        } catch (RuntimeException re) {
+            LOG.error("Failed to refresh addresses.", re);
+        }
+    }
+
+    /* Called with lock held */
+    private RemoteVpnAddressDelegate export(VpnAddress address) {
+        var ra = new RemoteVpnAddressDelegate(address, this::deleted);
+        LOG.info("Exporting for {}", ra.nativeName());
+        try {
+            connection.exportObject(ra);
+        } catch (DBusException dbe) {
+            throw new IllegalStateException(String.format("Failed to export %s.", ra.nativeName()), dbe);
+        }
+        exported.put(ra.nativeName(), ra);
+        return ra;
+    }
+
+    private void unexport(RemoteVpnAddressDelegate ra) {
+        LOG.info("Unexporting for {}", ra.nativeName());
+        try {
+            connection.unExportObject(ra.getObjectPath());
+        } catch (RuntimeException re) {
+            LOG.debug("Failed to unexport {}.", ra.nativeName(), re);
+        }
+    }
+
+    private synchronized void deleted(RemoteVpnAddressDelegate ra) {
+        known.remove(ra.nativeName());
+        if (exported.remove(ra.nativeName()) != null)
+            unexport(ra);
+    }
+}
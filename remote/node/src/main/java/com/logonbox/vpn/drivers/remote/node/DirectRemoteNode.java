@@ -0,0 +1,296 @@
+package com.logonbox.vpn.drivers.remote.node;
+
+import com.logonbox.vpn.drivers.lib.PlatformService;
+import com.logonbox.vpn.drivers.lib.VpnAddress;
+
+import org.freedesktop.dbus.connections.BusAddress;
+import org.freedesktop.dbus.connections.IDisconnectCallback;
+import org.freedesktop.dbus.connections.impl.DirectConnection;
+import org.freedesktop.dbus.connections.impl.DirectConnectionBuilder;
+import org.freedesktop.dbus.connections.transports.TransportBuilder.SaslAuthMode;
+import org.freedesktop.dbus.exceptions.DBusException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.function.Predicate;
+
+/**
+ * Serves a {@link PlatformService} to a controller that connects directly,
+ * peer to peer, rather than through a bus daemon, so each call is a single hop.
+ * The node listens on a unix socket or TCP address, for example
+ * <code>unix:path=/run/lbv-node.socket</code> or
+ * <code>tcp:host=127.0.0.1,port=12345</code>, and the controller connects to
+ * the same address with a {@link DirectConnection}.
+ * <p>
+ * Clients authenticate with SASL, by default <code>EXTERNAL</code> for unix
+ * sockets, where the peer's user is checked, and <code>DBUS_COOKIE_SHA1</code>
+ * for TCP, where both ends must share the user's cookie keyring.
+ * <p>
+ * D-Bus over TCP is not encrypted, and anyone who gets through authentication
+ * has the full platform service, which typically runs privileged and can run
+ * hook scripts as root. So TCP addresses must be on a loopback interface
+ * unless {@link Builder#withRemoteTcp(boolean)} is set, which should only be
+ * done on a trusted network, or with the traffic otherwise protected, for
+ * example over an SSH tunnel or VPN. A unix socket is preferred where possible.
+ * <p>
+ * Only one controller is served at a time. Once it disconnects, the node
+ * listens again for the next.
+ */
+public final class DirectRemoteNode implements Closeable {
+
+    private final static Logger LOG = LoggerFactory.getLogger(DirectRemoteNode.class);
+
+    public final static class Builder {
+        private final PlatformService<?> platform;
+        private final String address;
+        private Optional<SaslAuthMode> authMode = Optional.empty();
+        private Predicate<VpnAddress> addressFilter = a -> true;
+        private Duration idleTimeout = RemotePlatformServiceDelegate.DEFAULT_IDLE_TIMEOUT;
+        private boolean remoteTcp;
+
+        /**
+         * Constructor.
+         *
+         * @param platform platform service to serve
+         * @param address  address to listen on
+         */
+        public Builder(PlatformService<?> platform, String address) {
+            this.platform = platform;
+            this.address = address;
+        }
+
+        /**
+         * How clients must authenticate. If not set, the default for the
+         * transport is used.
+         *
+         * @param authMode authentication mode
+         * @return this for chaining
+         */
+        public Builder withAuthMode(SaslAuthMode authMode) {
+            return withAuthMode(Optional.of(authMode));
+        }
+
+        /**
+         * How clients must authenticate. If empty, the default for the transport
+         * is used.
+         *
+         * @param authMode authentication mode
+         * @return this for chaining
+         */
+        public Builder withAuthMode(Optional<SaslAuthMode> authMode) {
+            this.authMode = authMode;
+            return this;
+        }
+
+        /**
+         * Which addresses to export. See
+         * {@link RemotePlatformServiceDelegate#RemotePlatformServiceDelegate(PlatformService, org.freedesktop.dbus.connections.AbstractConnection, Predicate, Duration)}.
+         *
+         * @param addressFilter address filter
+         * @return this for chaining
+         */
+        public Builder withAddressFilter(Predicate<VpnAddress> addressFilter) {
+            this.addressFilter = addressFilter;
+            return this;
+        }
+
+        /**
+         * How long an exported address may go unused before it is unexported.
+         *
+         * @param idleTimeout idle timeout
+         * @return this for chaining
+         */
+        public Builder withIdleTimeout(Duration idleTimeout) {
+            this.idleTimeout = idleTimeout;
+            return this;
+        }
+
+        /**
+         * Allow listening on a TCP address that is not on a loopback interface.
+         * Off by default, as the traffic is not encrypted, so controllers on
+         * other hosts could be seen and impersonated on the network. See
+         * {@link DirectRemoteNode}.
+         *
+         * @param remoteTcp allow non-loopback TCP addresses
+         * @return this for chaining
+         */
+        public Builder withRemoteTcp(boolean remoteTcp) {
+            this.remoteTcp = remoteTcp;
+            return this;
+        }
+
+        public DirectRemoteNode build() {
+            return new DirectRemoteNode(this);
+        }
+    }
+
+    private final PlatformService<?> platform;
+    private final BusAddress address;
+    private final Optional<SaslAuthMode> authMode;
+    private final Predicate<VpnAddress> addressFilter;
+    private final Duration idleTimeout;
+
+    private Thread thread;
+    private DirectConnection current;
+    private boolean closed;
+
+    private DirectRemoteNode(Builder builder) {
+        platform = builder.platform;
+        var busAddress = BusAddress.of(builder.address);
+        if (!builder.remoteTcp && busAddress.isBusType("TCP") && !isLoopback(busAddress))
+            throw new IllegalArgumentException(String.format(
+                    "Refusing to listen on %s, as it is not a loopback address and D-Bus over TCP is not encrypted. Remote TCP access must be explicitly allowed.",
+                    builder.address));
+        address = busAddress.isListeningSocket() ? busAddress : busAddress.getListenerAddress();
+        authMode = builder.authMode;
+        addressFilter = builder.addressFilter;
+        idleTimeout = builder.idleTimeout;
+    }
+
+    /**
+     * Get the address a controller should connect to.
+     *
+     * @return address
+     */
+    public String address() {
+        return BusAddress.of(address).removeParameter("listen").toString();
+    }
+
+    /**
+     * Start listening for controllers in the background.
+     *
+     * @return this for chaining
+     */
+    public synchronized DirectRemoteNode start() {
+        if (thread != null)
+            throw new IllegalStateException("Already started.");
+        if (closed)
+            throw new IllegalStateException("Closed.");
+        thread = new Thread(this::serve, "DirectRemoteNode");
+        thread.setDaemon(true);
+        thread.start();
+        return this;
+    }
+
+    @Override
+    public void close() throws IOException {
+        DirectConnection conx;
+        Thread thr;
+        synchronized (this) {
+            if (closed)
+                return;
+            closed = true;
+            conx = current;
+            thr = thread;
+        }
+        if (conx != null)
+            conx.close();
+        if (thr != null) {
+            thr.interrupt();
+            try {
+                thr.join(Duration.ofSeconds(10).toMillis());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private void serve() {
+        while (!isClosed()) {
+            try {
+                serveOne();
+            } catch (DBusException | IOException | RuntimeException e) {
+                if (isClosed())
+                    break;
+                LOG.error("Failed to serve controller on {}, will listen again shortly.", address, e);
+                try {
+                    Thread.sleep(Duration.ofSeconds(1).toMillis());
+                } catch (InterruptedException ie) {
+                    break;
+                }
+            }
+        }
+    }
+
+    private void serveOne() throws DBusException, IOException {
+        var disconnected = new CountDownLatch(1);
+        var transport = DirectConnectionBuilder.forAddress(address.toString())
+                .withDisconnectCallback(new IDisconnectCallback() {
+                    @Override
+                    public void disconnectOnError(IOException ex) {
+                        disconnected.countDown();
+                    }
+
+                    @Override
+                    public void requestedDisconnect(Integer connectionId) {
+                        disconnected.countDown();
+                    }
+
+                    @Override
+                    public void clientDisconnect() {
+                        disconnected.countDown();
+                    }
+                })
+                .transportConfig()
+                .withAutoConnect(false);
+        authMode.ifPresent(m -> transport.configureSasl().withAuthMode(m));
+        var conx = transport.back().build();
+
+        try {
+            synchronized (this) {
+                if (closed)
+                    return;
+                current = conx;
+            }
+
+            try (var rs = new RemotePlatformServiceDelegate(platform, conx, addressFilter, idleTimeout)) {
+                LOG.info("Listening for controller on {}", address);
+                conx.listen();
+                LOG.info("Controller connected on {}", address);
+                disconnected.await();
+                LOG.info("Controller disconnected from {}", address);
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                synchronized (this) {
+                    closed = true;
+                }
+            }
+        } finally {
+            synchronized (this) {
+                current = null;
+            }
+            conx.close();
+        }
+    }
+
+    private synchronized boolean isClosed() {
+        return closed;
+    }
+
+    private static boolean isLoopback(BusAddress address) {
+        return isLoopback(address.getParameterValue("host"))
+                && (!address.hasParameter("bind") || isLoopback(address.getParameterValue("bind")));
+    }
+
+    /* Without a host, a TCP listener binds to all interfaces */
+    private static boolean isLoopback(String host) {
+        if (host == null || host.isEmpty())
+            return false;
+        try {
+            for (var addr : InetAddress.getAllByName(host)) {
+                if (!addr.isLoopbackAddress())
+                    return false;
+            }
+            return true;
+        } catch (UnknownHostException uhe) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package com.logonbox.vpn.drivers.remote.node;
+
+import com.logonbox.vpn.drivers.lib.PlatformService;
+import com.logonbox.vpn.drivers.lib.VpnPeerInformation;
+import com.logonbox.vpn.drivers.remote.lib.RemotePeerPage;
+import com.logonbox.vpn.drivers.remote.lib.RemotePlatformService;
+import com.logonbox.vpn.drivers.remote.lib.RemoteVpnPeerInformation;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Serves {@link RemotePlatformService#peersPage(String, String, int, int)}.
+ * The peers of an interface are read once, when the first page is asked for,
+ * and kept sorted by public key so each following page is a binary search and
+ * a copy. A snapshot is dropped once it has not been used for the time to
+ * live, after which the next page reads the peers again.
+ * <p>
+ * There is one snapshot per interface, replaced whenever a first page is asked
+ * for. As pages are found by key rather than position, a client part way
+ * through just carries on in the newer snapshot.
+ */
+final class PeerPager {
+
+    final static Duration SNAPSHOT_TTL = Duration.ofSeconds(30);
+
+    private final static class Snapshot {
+        private final VpnPeerInformation[] peers;
+        private long lastUsed = System.nanoTime();
+
+        private Snapshot(VpnPeerInformation[] peers) {
+            this.peers = peers;
+        }
+    }
+
+    private final PlatformService<?> delegate;
+    private final long ttl;
+    private final Map<String, Snapshot> snapshots = new HashMap<>();
+
+    PeerPager(PlatformService<?> delegate, Duration ttl) {
+        this.delegate = delegate;
+        this.ttl = ttl.toNanos();
+    }
+
+    /**
+     * Get a page of peers.
+     *
+     * @param nativeName native name
+     * @param cursor     public key of the last peer of the previous page, or
+     *                   empty for the first
+     * @param limit      maximum number of peers to return
+     * @param fields     fields to include
+     * @return page
+     */
+    RemotePeerPage page(String nativeName, String cursor, int limit, int fields) {
+        var peers = snapshot(nativeName, cursor.isEmpty());
+        var from = cursor.isEmpty() ? 0 : after(peers, cursor);
+        var to = (int) Math.min(peers.length, (long) from + limit);
+        var page = new RemoteVpnPeerInformation[to - from];
+        for (int i = 0; i < page.length; i++) {
+            page[i] = new RemoteVpnPeerInformation(peers[from + i], fields);
+        }
+        return new RemotePeerPage(to < peers.length ? peers[to - 1].publicKey() : "", page);
+    }
+
+    /**
+     * Drop all snapshots.
+     */
+    synchronized void clear() {
+        snapshots.clear();
+    }
+
+    private VpnPeerInformation[] snapshot(String nativeName, boolean fresh) {
+        synchronized (this) {
+            var now = System.nanoTime();
+            snapshots.values().removeIf(s -> now - s.lastUsed > ttl);
+            var snapshot = snapshots.get(nativeName);
+            if (snapshot != null && !fresh) {
+                snapshot.lastUsed = now;
+                return snapshot.peers;
+            }
+        }
+
+        /* Read without holding the lock, so other interfaces are not held up */
+        var peers = delegate.information(delegate.adapter(nativeName)).peers()
+                .toArray(new VpnPeerInformation[0]);
+        Arrays.sort(peers, Comparator.comparing(VpnPeerInformation::publicKey));
+        synchronized (this) {
+            snapshots.put(nativeName, new Snapshot(peers));
+        }
+        return peers;
+    }
+
+    /* Index of the first peer with a key after the cursor */
+    private static int after(VpnPeerInformation[] peers, String cursor) {
+        int lo = 0;
+        int hi = peers.length;
+        while (lo < hi) {
+            var mid = (lo + hi) >>> 1;
+            if (peers[mid].publicKey().compareTo(cursor) <= 0)
+                lo = mid + 1;
+            else
+                hi = mid;
+        }
+        return lo;
+    }
+}
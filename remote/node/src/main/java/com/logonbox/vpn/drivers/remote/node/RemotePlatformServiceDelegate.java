@@ -4,27 +4,33 @@ import java.io.Closeable;
 import java.io.IOException;
 import java.io.UncheckedIOException;
 import java.text.ParseException;
+import java.time.Duration;
 import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.LinkedHashSet;
-import java.util.Map;
+import java.util.Arrays;
 import java.util.Optional;
 import java.util.function.Predicate;
 
 import org.freedesktop.dbus.annotations.DBusInterfaceName;
-import org.freedesktop.dbus.connections.impl.DBusConnection;
+import org.freedesktop.dbus.connections.AbstractConnection;
 import org.freedesktop.dbus.exceptions.DBusException;
+import org.freedesktop.dbus.exceptions.DBusExecutionException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.logonbox.vpn.drivers.lib.PlatformService;
 import com.logonbox.vpn.drivers.lib.PlatformService.Gateway;
+import com.logonbox.vpn.drivers.lib.TopTalkers;
+import com.logonbox.vpn.drivers.lib.TrafficSampler;
+import com.logonbox.vpn.drivers.lib.VpnAdapter;
 import com.logonbox.vpn.drivers.lib.VpnAdapterConfiguration;
 import com.logonbox.vpn.drivers.lib.VpnAddress;
 import com.logonbox.vpn.drivers.lib.VpnConfiguration;
+import com.logonbox.vpn.drivers.lib.VpnPeer;
 import com.logonbox.vpn.drivers.remote.lib.RemoteNATMode;
+import com.logonbox.vpn.drivers.remote.lib.RemotePeerPage;
 import com.logonbox.vpn.drivers.remote.lib.RemotePlatformService;
 import com.logonbox.vpn.drivers.remote.lib.RemoteStartRequest;
+import com.logonbox.vpn.drivers.remote.lib.RemoteTalker;
 import com.logonbox.vpn.drivers.remote.lib.RemoteVpnAddress;
 import com.logonbox.vpn.drivers.remote.lib.RemoteVpnInterfaceInformation;
 import com.logonbox.vpn.drivers.remote.lib.RemoteVpnPeer;
@@ -40,21 +46,45 @@ import uk.co.bithatch.nativeimage.annotations.TypeReflect;
 public class RemotePlatformServiceDelegate implements RemotePlatformService, Closeable {
 	
 	private final static Logger LOG = LoggerFactory.getLogger(RemotePlatformServiceDelegate.class);
+
+	/**
+	 * How long an exported address object may go unused before it is unexported
+	 * again, if not otherwise specified.
+	 */
+	public final static Duration DEFAULT_IDLE_TIMEOUT = Duration.ofMinutes(5);
     
     private final PlatformService<?> delegate;
-    private final DBusConnection connection;
-    private final Map<String, RemoteVpnAddressDelegate> addresses = new HashMap<>();
+    private final AbstractConnection connection;
+    private final AddressExporter addresses;
+    private final PeerPager pager;
     private final RemoteDNSProviderDelegate rdns;
-	private final Predicate<VpnAddress> addressFilter;
+	private final SignalEmitter signals;
+	
+	private TrafficSampler sampler;
 
-    public RemotePlatformServiceDelegate(PlatformService<?> delegate, DBusConnection connection) throws DBusException {
+    public RemotePlatformServiceDelegate(PlatformService<?> delegate, AbstractConnection connection) throws DBusException {
     	this(delegate, connection, a -> true);
     }
 
-    public RemotePlatformServiceDelegate(PlatformService<?> delegate, DBusConnection connection, Predicate<VpnAddress> addressFilter) throws DBusException {
+    public RemotePlatformServiceDelegate(PlatformService<?> delegate, AbstractConnection connection, Predicate<VpnAddress> addressFilter) throws DBusException {
+    	this(delegate, connection, addressFilter, DEFAULT_IDLE_TIMEOUT);
+    }
+
+    /**
+     * Constructor. Address objects are only exported when first asked for, and
+     * unexported again once unused for the idle timeout. A controller holding
+     * on to an address should ask for it again if its object has gone, as
+     * {@code BusVpnAddress} does.
+     *
+     * @param delegate platform service to export
+     * @param connection connection to export on
+     * @param addressFilter which addresses to export
+     * @param idleTimeout how long an address object may go unused
+     * @throws DBusException on error
+     */
+    public RemotePlatformServiceDelegate(PlatformService<?> delegate, AbstractConnection connection, Predicate<VpnAddress> addressFilter, Duration idleTimeout) throws DBusException {
         this.delegate = delegate;
         this.connection = connection;
-        this.addressFilter = addressFilter;
 
         connection.exportObject(this);
         if(delegate.dns().isPresent())
@@ -62,9 +92,28 @@ public class RemotePlatformServiceDelegate implements RemotePlatformService, Clo
         else
         	rdns = null;
         
-        updateAddresses();
+        addresses = new AddressExporter(delegate, connection, addressFilter, idleTimeout).start();
+        pager = new PeerPager(delegate, PeerPager.SNAPSHOT_TTL);
         
-        /* TODO update addresses in the background in case of external changes */
+        if(delegate.context().queue() == null) {
+            LOG.warn("No queue available, signals will not be sent.");
+            signals = null;
+        }
+        else
+            signals = new SignalEmitter(delegate, connection, getObjectPath(), addresses::reconcile);
+    }
+
+    @Override
+    public void subscribe() {
+        if(signals == null)
+            throw new IllegalStateException("Signals are not available from this node.");
+        signals.subscribe(sender());
+    }
+
+    @Override
+    public void unsubscribe() {
+        if(signals != null)
+            signals.unsubscribe(sender());
     }
     
     @Override
@@ -84,7 +133,12 @@ public class RemotePlatformServiceDelegate implements RemotePlatformService, Clo
 
     @Override
     public RemoteVpnAddress[] addresses() {
-        return addresses.values().toArray(new RemoteVpnAddress[0]);
+        return addresses.all();
+    }
+
+    @Override
+    public String[] addressNames() {
+        return addresses.names();
     }
 
     @Override
@@ -174,6 +228,28 @@ public class RemotePlatformServiceDelegate implements RemotePlatformService, Clo
         return new RemoteVpnInterfaceInformation(delegate.information(delegate.adapter(nativeName)));
     }
 
+    @Override
+    public RemoteVpnInterfaceInformation[] informationAll(int fields) {
+        var adapters = delegate.adapters();
+        var infos = new ArrayList<RemoteVpnInterfaceInformation>(adapters.size());
+        for(var adapter : adapters) {
+            try {
+                infos.add(new RemoteVpnInterfaceInformation(adapter.information(), fields));
+            }
+            catch(RuntimeException re) {
+                LOG.debug("Failed to read information for {}.", adapter.address().nativeName(), re);
+            }
+        }
+        return infos.toArray(new RemoteVpnInterfaceInformation[0]);
+    }
+
+    @Override
+    public RemotePeerPage peersPage(String nativeName, String cursor, int limit, int fields) {
+        if(limit < 1)
+            throw new IllegalArgumentException("Limit must be at least 1.");
+        return pager.page(nativeName, cursor, Math.min(limit, MAX_PEERS_PAGE), fields);
+    }
+
     @Override
     public String interfaceNameToNativeName(String name) {
         return delegate.interfaceNameToNativeName(name).orElse("");
@@ -215,6 +291,33 @@ public class RemotePlatformServiceDelegate implements RemotePlatformService, Clo
         }
     }
 
+    @Override
+    public void addPeers(String nativeName, RemoteVpnPeer[] peers) {
+        updatePeers(nativeName, peers);
+    }
+
+    @Override
+    public void removePeers(String nativeName, String[] publicKeys) {
+        try {
+            delegate.remove(delegate.adapter(nativeName), Arrays.asList(publicKeys));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void updatePeers(String nativeName, RemoteVpnPeer[] peers) {
+        var list = new ArrayList<VpnPeer>(peers.length);
+        for(var peer : peers) {
+            list.add(peer.toNative());
+        }
+        try {
+            delegate.update(delegate.adapter(nativeName), list);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
     @Override
     public void resetDefaultGatewayPeer() {
         try {
@@ -259,12 +362,10 @@ public class RemotePlatformServiceDelegate implements RemotePlatformService, Clo
     public String start(RemoteStartRequest remoteStartRequest) {
         try {
             var address = delegate.start(remoteStartRequest.toNative()).address();
-            exportAndAdd(new RemoteVpnAddressDelegate(address, (a) ->unexportAndRemove(a)));
+            addresses.added(address);
             return address.nativeName();
         } catch (IOException e) {
             throw new UncheckedIOException(e);
-        } catch(DBusException dbe) {
-            throw new IllegalStateException(dbe);
         }
     }
 
@@ -281,70 +382,54 @@ public class RemotePlatformServiceDelegate implements RemotePlatformService, Clo
 
     }
 
-    private void unexportAndRemove(RemoteVpnAddressDelegate ra)  {
-        addresses.remove(ra.nativeName());
-        connection.unExportObject(ra.getObjectPath());
+    @Override
+    public RemoteTalker[] topTalkers(int limit, String measure, String direction) {
+        if (limit < 1)
+            throw new DBusExecutionException("Limit must be at least 1, not " + limit + ".");
+        var m = option(TopTalkers.Measure.class, "measure", measure);
+        var d = option(TopTalkers.Direction.class, "direction", direction);
+        var top = m == TopTalkers.Measure.TOTAL ? delegate.topTalkers(limit, d) : sampler().top(limit, m, d);
+        return top.stream().map(RemoteTalker::new).toList().toArray(new RemoteTalker[0]);
     }
 
-    private void exportAndAdd(RemoteVpnAddressDelegate ra) throws DBusException {
-    	LOG.info("Exporting for {}", ra.nativeName());
-        connection.exportObject(ra);
-        addresses.put(ra.nativeName(), ra);
+    private static <E extends Enum<E>> E option(Class<E> type, String what, String value) {
+        try {
+            return Enum.valueOf(type, value);
+        } catch (IllegalArgumentException iae) {
+            throw new DBusExecutionException(String.format("Unknown %s '%s', expected one of %s.", what, value,
+                    Arrays.toString(type.getEnumConstants())));
+        }
     }
 
-    private void updateAddresses() throws DBusException {
-        var addrNames = new LinkedHashSet<String>();
-        var exceptions = new ArrayList<Exception>();
-        for(var addr : delegate.addresses().stream().filter(addressFilter).toList()) {
-            addrNames.add(addr.nativeName());
-            if(!addresses.containsKey(addr.nativeName())) {
-                try {
-                    exportAndAdd(new RemoteVpnAddressDelegate(addr, (a) -> unexportAndRemove(a)));
-                }
-                catch(Exception dbe) {
-                    exceptions.add(dbe);
-                }
-            }
-        }
-        
-        for(var it = addresses.entrySet().iterator(); it.hasNext(); ) {
-            var ent = it.next();
-            if(!addrNames.contains(ent.getKey())) {
-                try {
-                    connection.unExportObject(ent.getValue().getObjectPath());
-                }
-                catch(Exception dbe) {
-                    exceptions.add(dbe);
-                }
-                it.remove();
-            }
+    private synchronized TrafficSampler sampler() {
+        if(sampler == null) {
+            LOG.info("Starting traffic sampling for top talkers.");
+            sampler = new TrafficSampler.Builder().withPlatformService(delegate).build().start();
         }
-        
-        if(exceptions.size() == 1) {
-            var first = exceptions.get(0);
-            if(first instanceof DBusException dbe)
-                throw dbe;
-            else if(first instanceof RuntimeException rt)
-                throw rt;
-            else 
-                 throw new IllegalStateException("Failed to update addresses.", first);
-        }
-        else if(exceptions.isEmpty()) {
-            return;
-        }
-        
-        throw new DBusException("Multiple exceptions occured while update addresses.", exceptions.get(0));
+        return sampler;
     }
 
+	private static String sender() {
+		var info = AbstractConnection.getCallInfo();
+		return info == null || info.getSource() == null ? "" : info.getSource();
+	}
+
 	@Override
 	public void close() throws IOException {
+		if(signals != null)
+			signals.close();
+		
+		addresses.close();
+		pager.clear();
+		
+		synchronized(this) {
+			if(sampler != null)
+				sampler.close();
+		}
+		
 		connection.unExportObject(getObjectPath());
 		
 		if(rdns != null)
 			connection.unExportObject(rdns.getObjectPath());
-
-		for(var conx : addresses.values()) {
-            connection.unExportObject(conx.getObjectPath());
-        }
 	}
 }
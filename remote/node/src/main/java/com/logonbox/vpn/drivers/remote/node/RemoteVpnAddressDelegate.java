@@ -22,10 +22,30 @@ public class RemoteVpnAddressDelegate implements RemoteVpnAddress {
     
     private final VpnAddress delegate;
     private final Consumer<RemoteVpnAddressDelegate> onDelete;
+    private final String nativeName;
+
+    private volatile long lastUsed = System.nanoTime();
 
     RemoteVpnAddressDelegate(VpnAddress delegate, Consumer<RemoteVpnAddressDelegate> onDelete) {
         this.delegate = delegate;
         this.onDelete = onDelete;
+        this.nativeName = delegate.nativeName();
+    }
+
+    /**
+     * Mark this object as used now, so it is not unexported as idle.
+     */
+    void used() {
+        lastUsed = System.nanoTime();
+    }
+
+    /**
+     * Get when this object was last used, as per {@link System#nanoTime()}.
+     *
+     * @return last used
+     */
+    long lastUsed() {
+        return lastUsed;
     }
 
     @Override
@@ -35,23 +55,23 @@ public class RemoteVpnAddressDelegate implements RemoteVpnAddress {
 
     @Override
     public boolean isUp() {
-        return delegate.isUp();
+        return delegate().isUp();
     }
 
     @Override
     public boolean isDefaultGateway() {
-        return delegate.isDefaultGateway();
+        return delegate().isDefaultGateway();
     }
 
     @Override
     public void setDefaultGateway(String address) {
-        delegate.setDefaultGateway(address);
+        delegate().setDefaultGateway(address);
     }
 
     @Override
     public void delete() throws IOException {
         try {
-            delegate.delete();
+            delegate().delete();
         }
         finally {
             onDelete.accept(this);
@@ -60,67 +80,72 @@ public class RemoteVpnAddressDelegate implements RemoteVpnAddress {
 
     @Override
     public void down() throws IOException {
-        delegate.down();
+        delegate().down();
     }
 
     @Override
     public String getMac() {
-        return ofNullable(delegate.getMac()).orElse("");
+        return ofNullable(delegate().getMac()).orElse("");
     }
 
     @Override
     public boolean isLoopback() {
-        return delegate.isLoopback();
+        return delegate().isLoopback();
     }
 
     @Override
     public int getMtu() {
-        return delegate.getMtu();
+        return delegate().getMtu();
     }
 
     @Override
     public String name() {
-        return delegate.name();
+        return delegate().name();
     }
 
     @Override
     public String displayName() {
-        return delegate.displayName();
+        return delegate().displayName();
     }
 
     @Override
     public String nativeName() {
-        return delegate.nativeName();
+        return nativeName;
     }
 
     @Override
     public String peer() {
-        return ofNullable(delegate.peer()).orElse("");
+        return ofNullable(delegate().peer()).orElse("");
     }
 
     @Override
     public String table() {
-        return delegate.table();
+        return delegate().table();
     }
 
     @Override
     public void mtu(int mtu) {
-        delegate.mtu(mtu);
+        delegate().mtu(mtu);
     }
 
     @Override
     public void up() throws IOException {
-        delegate.up();
+        delegate().up();
     }
 
     @Override
     public String shortName() {
-        return delegate.shortName();
+        return delegate().shortName();
     }
 
     @Override
     public boolean hasVirtualName() {
-        return delegate.hasVirtualName();
+        return delegate().hasVirtualName();
+    }
+
+    private VpnAddress delegate() {
+        used();
+        return delegate;
     }
 
 }
@@ -0,0 +1,261 @@
+package com.logonbox.vpn.drivers.remote.node;
+
+import com.logonbox.vpn.drivers.lib.PeerEvent;
+import com.logonbox.vpn.drivers.lib.PeerListener;
+import com.logonbox.vpn.drivers.lib.PlatformService;
+import com.logonbox.vpn.drivers.remote.lib.RemotePlatformService;
+
+import org.freedesktop.dbus.connections.AbstractConnection;
+import org.freedesktop.dbus.connections.impl.DBusConnection;
+import org.freedesktop.dbus.exceptions.DBusException;
+import org.freedesktop.dbus.interfaces.DBus;
+import org.freedesktop.dbus.messages.DBusSignal;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sends the signals of {@link RemotePlatformService} for the changes seen by the
+ * {@link PeerListener} of a {@link PlatformService}. Adapter and peer signals
+ * are sent as soon as they are seen, traffic deltas are added up and sent as a
+ * single {@link RemotePlatformService.StatDeltas} at most once per
+ * {@link com.logonbox.vpn.drivers.lib.SystemConfiguration#statsInterval()}.
+ * <p>
+ * Nothing is watched unless there is at least one subscription made with
+ * {@link #subscribe(String)}, so a node nobody is listening to does not keep
+ * reading its adapters. When on a bus, the subscriptions of a client are
+ * dropped within a stats interval of it leaving. Whenever an adapter is seen to
+ * come up or go down, the optional change callback is run.
+ */
+final class SignalEmitter implements PeerListener, Closeable {
+
+    private final static Logger LOG = LoggerFactory.getLogger(SignalEmitter.class);
+
+    @FunctionalInterface
+    private interface Signal {
+        DBusSignal create() throws DBusException;
+    }
+
+    private record PeerKey(String nativeName, String publicKey) {
+    }
+
+    private final PlatformService<?> delegate;
+    private final AbstractConnection connection;
+    private final String path;
+    private final long statsInterval;
+    private final Runnable onAdaptersChanged;
+    /* Traffic since the last batch, in the order first seen */
+    private final Map<PeerKey, long[]> pending = new LinkedHashMap<>();
+    /* Number of subscriptions of each client, keyed by unique bus name */
+    private final Map<String, Integer> subscribers = new HashMap<>();
+
+    private DBus bus;
+    private ScheduledFuture<?> statsTask;
+    private long lastStats;
+
+    SignalEmitter(PlatformService<?> delegate, AbstractConnection connection, String path) {
+        this(delegate, connection, path, () -> {
+        });
+    }
+
+    SignalEmitter(PlatformService<?> delegate, AbstractConnection connection, String path, Runnable onAdaptersChanged) {
+        this.delegate = delegate;
+        this.connection = connection;
+        this.path = path;
+        this.onAdaptersChanged = onAdaptersChanged;
+        this.statsInterval = delegate.context().configuration().statsInterval().toMillis();
+    }
+
+    /**
+     * Add a subscription for a client, starting to watch for changes if this is
+     * the first.
+     *
+     * @param sender unique bus name of client, or empty when not on a bus
+     */
+    synchronized void subscribe(String sender) {
+        var queue = delegate.context().queue();
+        if (queue == null)
+            throw new IllegalStateException("No queue available to send signals from.");
+        subscribers.merge(sender, 1, Integer::sum);
+        if (statsTask != null)
+            return;
+
+        LOG.info("Sending signals from {}.", path);
+        lastStats = System.currentTimeMillis();
+        statsTask = queue.scheduleAtFixedRate(this::scheduledStats, statsInterval, statsInterval,
+                TimeUnit.MILLISECONDS);
+        delegate.addPeerListener(this);
+    }
+
+    /**
+     * Drop a subscription of a client, no longer watching for changes if it was
+     * the last.
+     *
+     * @param sender unique bus name of client, or empty when not on a bus
+     */
+    synchronized void unsubscribe(String sender) {
+        if (subscribers.computeIfPresent(sender, (k, v) -> v == 1 ? null : v - 1) == null && subscribers.isEmpty())
+            stop();
+    }
+
+    @Override
+    public synchronized void close() {
+        subscribers.clear();
+        stop();
+    }
+
+    @Override
+    public synchronized void peerEvent(PeerEvent event) {
+        if (statsTask == null)
+            return;
+        var name = event.interfaceName();
+        var key = event.publicKey();
+        switch (event.type()) {
+        case ADDED:
+            send(() -> new RemotePlatformService.PeerAdded(path, name, key));
+            break;
+        case REMOVED:
+            send(() -> new RemotePlatformService.PeerRemoved(path, name, key));
+            break;
+        case HANDSHAKE:
+            send(() -> new RemotePlatformService.PeerHandshake(path, name, key, event.lastHandshake().toEpochMilli(),
+                    event.endpoint().map(SignalEmitter::endpoint).orElse("")));
+            break;
+        default:
+            break;
+        }
+    }
+
+    @Override
+    public void adapterUp(String interfaceName) {
+        synchronized (this) {
+            if (statsTask == null)
+                return;
+            send(() -> new RemotePlatformService.AdapterUp(path, interfaceName));
+        }
+        adaptersChanged();
+    }
+
+    @Override
+    public void adapterDown(String interfaceName) {
+        synchronized (this) {
+            if (statsTask == null)
+                return;
+            send(() -> new RemotePlatformService.AdapterDown(path, interfaceName));
+        }
+        adaptersChanged();
+    }
+
+    @Override
+    public synchronized void transfer(String interfaceName, String publicKey, long rx, long tx) {
+        if (statsTask == null)
+            return;
+        var totals = pending.computeIfAbsent(new PeerKey(interfaceName, publicKey), k -> new long[2]);
+        totals[0] += rx;
+        totals[1] += tx;
+    }
+
+    /* Called with lock held */
+    private void stop() {
+        if (statsTask == null)
+            return;
+        LOG.info("No longer sending signals from {}.", path);
+        delegate.removePeerListener(this);
+        statsTask.cancel(false);
+        statsTask = null;
+        pending.clear();
+    }
+
+    private synchronized void dropped(String sender) {
+        if (subscribers.remove(sender) != null) {
+            LOG.info("Dropping subscriptions of {}, as it has left.", sender);
+            if (subscribers.isEmpty())
+                stop();
+        }
+    }
+
+    private void adaptersChanged() {
+        try {
+            onAdaptersChanged.run();
+        } catch (RuntimeException re) {
+            LOG.warn("Failed to handle change in adapters.", re);
+        }
+    }
+
+    private void scheduledStats() {
+        try {
+            stats();
+            prune();
+        } catch (RuntimeException re) {
+            LOG.error("Failed to send stat deltas.", re);
+        }
+    }
+
+    /* Drop the subscriptions of clients no longer on the bus */
+    private void prune() {
+        if (!(connection instanceof DBusConnection conx))
+            return;
+        List<String> senders;
+        synchronized (this) {
+            if (bus == null) {
+                try {
+                    bus = conx.getRemoteObject("org.freedesktop.DBus", "/org/freedesktop/DBus", DBus.class);
+                } catch (DBusException dbe) {
+                    throw new IllegalStateException("Failed to get bus.", dbe);
+                }
+            }
+            senders = new ArrayList<>(subscribers.keySet());
+        }
+        for (var sender : senders) {
+            if (!sender.isEmpty() && !bus.NameHasOwner(sender))
+                dropped(sender);
+        }
+    }
+
+    private synchronized void stats() {
+        if (statsTask == null)
+            return;
+        var now = System.currentTimeMillis();
+        if (!pending.isEmpty())
+            sendStats(now - lastStats);
+        lastStats = now;
+    }
+
+    private void sendStats(long interval) {
+        var size = pending.size();
+        var nativeNames = new ArrayList<String>(size);
+        var publicKeys = new ArrayList<String>(size);
+        var rx = new ArrayList<Long>(size);
+        var tx = new ArrayList<Long>(size);
+        for (var en : pending.entrySet()) {
+            nativeNames.add(en.getKey().nativeName());
+            publicKeys.add(en.getKey().publicKey());
+            rx.add(en.getValue()[0]);
+            tx.add(en.getValue()[1]);
+        }
+        pending.clear();
+        send(() -> new RemotePlatformService.StatDeltas(path, interval, nativeNames, publicKeys, rx, tx));
+    }
+
+    private static String endpoint(InetSocketAddress addr) {
+        var host = addr.getHostString();
+        return (host.indexOf(':') == -1 ? host : "[" + host + "]") + ":" + addr.getPort();
+    }
+
+    private void send(Signal signal) {
+        try {
+            connection.sendMessage(signal.create());
+        } catch (DBusException | RuntimeException e) {
+            LOG.warn("Failed to send signal.", e);
+        }
+    }
+}
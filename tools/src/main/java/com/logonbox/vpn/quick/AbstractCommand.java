@@ -7,6 +7,8 @@ import org.slf4j.bridge.SLF4JBridgeHandler;
 import java.util.List;
 import java.util.Optional;
 import java.util.concurrent.Callable;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.logging.Handler;
 import java.util.logging.LogManager;
 import java.util.logging.Logger;
@@ -88,6 +90,23 @@ public abstract class AbstractCommand implements Callable<Integer> {
     	}
 	}
 
+    /**
+     * Create the single threaded queue for a command's
+     * {@link com.logonbox.vpn.drivers.lib.SystemContext#queue()}. Its thread is
+     * a daemon, so never keeps the JVM alive, but it should still be shut down
+     * once the command finishes.
+     *
+     * @param name thread name
+     * @return queue
+     */
+    static ScheduledExecutorService newQueue(String name) {
+        return Executors.newSingleThreadScheduledExecutor(r -> {
+            var t = new Thread(r, name);
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
 	boolean verboseExceptions() {
         return verboseExceptions;
     }
@@ -1,9 +1,12 @@
 package com.logonbox.vpn.quick;
 
+import com.logonbox.vpn.drivers.lib.CommandStatistics;
 import com.logonbox.vpn.drivers.lib.NativeComponents;
 import com.logonbox.vpn.drivers.lib.PlatformService;
 import com.logonbox.vpn.drivers.lib.SystemConfiguration;
 import com.logonbox.vpn.drivers.lib.SystemContext;
+import com.logonbox.vpn.drivers.lib.TopTalkers;
+import com.logonbox.vpn.drivers.lib.TrafficSampler;
 import com.logonbox.vpn.drivers.lib.Vpn;
 import com.logonbox.vpn.drivers.lib.VpnAdapter;
 import com.logonbox.vpn.drivers.lib.VpnAdapterConfiguration;
@@ -21,6 +24,8 @@ import java.nio.file.Path;
 import java.text.MessageFormat;
 import java.time.Duration;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.concurrent.Callable;
@@ -31,11 +36,12 @@ import java.util.stream.Collectors;
 import picocli.CommandLine;
 import picocli.CommandLine.Command;
 import picocli.CommandLine.Help.Ansi;
+import picocli.CommandLine.Option;
 import picocli.CommandLine.Parameters;
 import picocli.CommandLine.ParentCommand;
 
 @Command(name = "lbv", description = "Set and retrieve configuration of wireguard interfaces, a Java clone of the 'wg' command.", mixinStandardHelpOptions = true, subcommands = {
-        Lbv.Show.class, Lbv.ShowConf.class, Lbv.SetConf.class, Lbv.SyncConf.class, Lbv.AddConf.class, Lbv.GenKey.class, Lbv.GenPsk.class, Lbv.PubKey.class })
+        Lbv.Show.class, Lbv.Top.class, Lbv.ShowConf.class, Lbv.SetConf.class, Lbv.SyncConf.class, Lbv.AddConf.class, Lbv.GenKey.class, Lbv.GenPsk.class, Lbv.PubKey.class })
 public class Lbv extends AbstractCommand implements SystemContext {
 
     final static PrintStream out = System.out;
@@ -48,6 +54,7 @@ public class Lbv extends AbstractCommand implements SystemContext {
     private PlatformService<?> platformService;
     private SystemConfiguration configuration;
     private ScheduledExecutorService queue;
+    private final CommandStatistics commandStatistics = new CommandStatistics();
     private SystemCommands commands;
     private NativeComponents nativeComponents;
 
@@ -60,10 +67,15 @@ public class Lbv extends AbstractCommand implements SystemContext {
     @Override
     public SystemCommands commands() {
         if (commands == null)
-            commands = new ElevatableSystemCommands();
+            commands = commandStatistics.counting(new ElevatableSystemCommands());
         return commands;
     }
 
+    @Override
+    public Optional<CommandStatistics> commandStatistics() {
+        return Optional.of(commandStatistics);
+    }
+
 	@Override
 	public void alert(String message, Object... args) {
         System.out.format("[+] %s%n", MessageFormat.format(message, args));
@@ -540,6 +552,59 @@ public class Lbv extends AbstractCommand implements SystemContext {
         }
     }
 
+    @Command(name = "top", description = "Shows the peers transferring the most, across all or the given interfaces")
+    public final static class Top implements Callable<Integer> {
+
+        @ParentCommand
+        private Lbv parent;
+
+        @Option(names = { "-n", "--limit" }, paramLabel = "PEERS", description = "The maximum number of peers to show. Defaults to 10.")
+        private int limit = 10;
+
+        @Option(names = { "-b", "--by" }, description = "What to rank peers by, one of ${COMPLETION-CANDIDATES}. TOTAL is since each peer was added, TRANSFER and RATE are measured over the window. Defaults to TOTAL.")
+        private TopTalkers.Measure measure = TopTalkers.Measure.TOTAL;
+
+        @Option(names = { "-d", "--direction" }, description = "The direction to rank peers by, one of ${COMPLETION-CANDIDATES}. Defaults to BOTH.")
+        private TopTalkers.Direction direction = TopTalkers.Direction.BOTH;
+
+        @Option(names = { "-w", "--window" }, paramLabel = "SECONDS", description = "The number of seconds to measure TRANSFER or RATE over. Defaults to 5.")
+        private int window = 5;
+
+        @Parameters(arity = "0..*")
+        private List<String> ifaces = new ArrayList<>();
+
+        @Override
+        public Integer call() throws Exception {
+            parent.initCommand();
+            var platform = parent.platform();
+            var adapters = ifaces.isEmpty() ? platform.adapters() : ifaces.stream().map(platform::adapter).toList();
+            
+            List<TopTalkers.Talker> top;
+            if(measure == TopTalkers.Measure.TOTAL) {
+                top = TopTalkers.top(adapters.stream().map(VpnAdapter::information).toList(), limit, direction);
+            }
+            else {
+                try(var sampler = new TrafficSampler.Builder().
+                        withAdapters(adapters.toArray(new VpnAdapter[0])).
+                        withQueue(parent.queue()).
+                        build()) {
+                    sampler.sample();
+                    Thread.sleep(Duration.ofSeconds(window).toMillis());
+                    sampler.sample();
+                    top = sampler.top(limit, measure, direction);
+                }
+            }
+            
+            var suffix = measure == TopTalkers.Measure.RATE ? "/s" : "";
+            for(var talker : top) {
+                out.format("%s\t%s\t%s%s\t%s%s%n", talker.interfaceName(), talker.publicKey(), 
+                        Util.toHumanSize((long)talker.rx()), suffix, 
+                        Util.toHumanSize((long)talker.tx()), suffix);
+            }
+            return 0;
+        }
+    }
+
     @Command(name = "showconf", description = "Shows the current configuration of a given WireGuard interface, for use with `setconf'")
     public final static class ShowConf implements Callable<Integer> {
 
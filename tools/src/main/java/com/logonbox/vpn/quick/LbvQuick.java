@@ -8,6 +8,7 @@ import com.jadaptive.oauth.client.OAuth2Objects.BearerToken;
 import com.jadaptive.oauth.client.OAuth2Objects.DeviceCode;
 import com.jadaptive.oauth.client.OAuthClient;
 import com.jadaptive.oauth.client.ResponseException;
+import com.logonbox.vpn.drivers.lib.CommandStatistics;
 import com.logonbox.vpn.drivers.lib.DNSProvider;
 import com.logonbox.vpn.drivers.lib.NativeComponents;
 import com.logonbox.vpn.drivers.lib.PlatformService;
@@ -120,7 +121,9 @@ public class LbvQuick extends AbstractCommand implements SystemContext {
 
     public static void main(String[] args) throws Exception {
         var cmd = new LbvQuick();
-        System.exit(new CommandLine(cmd).setExecutionExceptionHandler(new ExceptionHandler(cmd)).execute(args));
+        var ret = new CommandLine(cmd).setExecutionExceptionHandler(new ExceptionHandler(cmd)).execute(args);
+        cmd.queue.shutdown();
+        System.exit(ret);
     }
 
     @Option(names = { "-s",
@@ -151,7 +154,8 @@ public class LbvQuick extends AbstractCommand implements SystemContext {
     private Optional<Integer> connectTimeout;
     
     private SystemConfiguration configuration;
-    private ScheduledExecutorService queue;
+    private final ScheduledExecutorService queue = newQueue("lbv-quick-queue");
+    private final CommandStatistics commandStatistics = new CommandStatistics();
     private SystemCommands commands;
     private NativeComponents nativeComponents;
 
@@ -210,10 +214,15 @@ public class LbvQuick extends AbstractCommand implements SystemContext {
     @Override
     public SystemCommands commands() {
         if(commands == null)
-            commands = new ElevatableSystemCommands();
+            commands = commandStatistics.counting(new ElevatableSystemCommands());
         return commands;
     }
 
+    @Override
+    public Optional<CommandStatistics> commandStatistics() {
+        return Optional.of(commandStatistics);
+    }
+
     @Override
     public NativeComponents nativeComponents() {
         if(nativeComponents == null)
@@ -395,6 +404,8 @@ public class LbvQuick extends AbstractCommand implements SystemContext {
                 "--native-iface" }, paramLabel = "NAME", description = "The native interface name to use. This is platform specific, for example on Mac OS this would default to `utun[number]`. On Windows it would be `net[number]`. On Linux, network interface names are more flexible, and this will default to the name derived from the configuration file name")
         private Optional<String> nativeName;
 
+        @Option(names = { "--timings" }, description = "Print how long each phase of bringing the interface up took, and how many commands each ran.")
+        private boolean timings;
 
         @Override
 		protected void onBuild(Builder bldr) {
@@ -404,6 +415,8 @@ public class LbvQuick extends AbstractCommand implements SystemContext {
 		@Override
         protected Integer onCall(Vpn vpn, Optional<Path> configFile, Optional<String> interfaceName) throws Exception {
             vpn.open();
+            if(timings)
+            	vpn.adapter().startReport().ifPresent(out::println);
             if(expire.isPresent()) 
             	expire(parent, vpn, parseWhenToSeconds(expire.get()));
             return 0;
@@ -12,16 +12,22 @@ import java.util.Map;
 import java.util.Optional;
 import java.util.ResourceBundle;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
 
 import org.freedesktop.dbus.connections.impl.DBusConnection;
 import org.freedesktop.dbus.connections.impl.DBusConnectionBuilder;
+import org.freedesktop.dbus.connections.transports.TransportBuilder.SaslAuthMode;
 
+import com.logonbox.vpn.drivers.lib.CommandStatistics;
 import com.logonbox.vpn.drivers.lib.NativeComponents;
 import com.logonbox.vpn.drivers.lib.PlatformService;
 import com.logonbox.vpn.drivers.lib.SystemConfiguration;
 import com.logonbox.vpn.drivers.lib.SystemContext;
 import com.logonbox.vpn.drivers.lib.VpnAdapter;
+import com.logonbox.vpn.drivers.lib.VpnAddress;
 import com.logonbox.vpn.drivers.remote.lib.RemotePlatformService;
+import com.logonbox.vpn.drivers.remote.node.DirectRemoteNode;
 import com.logonbox.vpn.drivers.remote.node.RemotePlatformServiceDelegate;
 import com.sshtools.liftlib.commands.ElevatableSystemCommands;
 import com.sshtools.liftlib.commands.SystemCommands;
@@ -83,7 +89,9 @@ public class LbvRemoteNodeAgent extends AbstractCommand implements SystemContext
 
     public static void main(String[] args) throws Exception {
         var cmd = new LbvRemoteNodeAgent();
-        System.exit(new CommandLine(cmd).setExecutionExceptionHandler(new ExceptionHandler(cmd)).execute(args));
+        var ret = new CommandLine(cmd).setExecutionExceptionHandler(new ExceptionHandler(cmd)).execute(args);
+        cmd.queue.shutdown();
+        System.exit(ret);
     }
 
     @Option(names = { "-s",
@@ -116,9 +124,34 @@ public class LbvRemoteNodeAgent extends AbstractCommand implements SystemContext
 	@Option(names = {
 			"--dbus-address" }, description = "Address of DBus daemon. Otherwise session bus willl be used. It is not recommended the system bus be used without additional security configuration.", paramLabel = "<arg>")
 	private Optional<String> dbusAddress;
+
+    @Option(names = {
+            "--export-addresses" }, paramLabel = "REGEX", description = "Only export addresses whose native name matches this regular expression. By default, all addresses are exported.")
+    private Optional<Pattern> exportAddresses;
+
+    @Option(names = {
+            "--export-idle" }, paramLabel = "SECONDS", description = "How long an exported address may go unused before it is unexported again. It will be exported again next time it is asked for.")
+    private Optional<Integer> exportIdle;
+
+    @Option(names = {
+            "--listen" }, paramLabel = "ADDRESS", description = "Rather than connecting to a bus, listen on this address for a controller to connect to directly, e.g. unix:path=/run/lbv-node.socket or tcp:host=127.0.0.1,port=12345. This saves a hop on every call. Only one controller is served at a time. TCP addresses must be loopback unless --listen-remote is also given.")
+    private Optional<String> listen;
+
+    @Option(names = {
+            "--listen-remote" }, description = "Allow --listen on a TCP address that is not loopback. D-Bus over TCP is NOT encrypted, and a controller gets full control of this node, including running hook scripts as root. Only use this on a trusted network, or with the traffic otherwise protected, e.g. over an SSH tunnel.")
+    private boolean listenRemote;
+
+    @Option(names = {
+            "--listen-auth" }, paramLabel = "METHOD", description = "How controllers connecting directly must authenticate, either EXTERNAL (unix sockets only) or COOKIE. Defaults to EXTERNAL for unix sockets and COOKIE for TCP.")
+    private Optional<ListenAuth> listenAuth;
+
+    public enum ListenAuth {
+        EXTERNAL, COOKIE
+    }
     
     private SystemConfiguration configuration;
-    private ScheduledExecutorService queue;
+    private final ScheduledExecutorService queue = newQueue("lbv-node-queue");
+    private final CommandStatistics commandStatistics = new CommandStatistics();
     private SystemCommands commands;
     private NativeComponents nativeComponents;
 
@@ -128,6 +161,26 @@ public class LbvRemoteNodeAgent extends AbstractCommand implements SystemContext
         var ps = PlatformService.create(this);
         alert(BUNDLE.getString("platform"), ps.getClass().getName());
         
+        Predicate<VpnAddress> addressFilter = a -> exportAddresses.map(p -> p.matcher(a.nativeName()).matches()).orElse(true);
+        var idleTimeout = exportIdle.map(Duration::ofSeconds).orElse(RemotePlatformServiceDelegate.DEFAULT_IDLE_TIMEOUT);
+        
+        if(listen.isPresent()) {
+            /* Direct to controllers, no bus */
+            try(var node = new DirectRemoteNode.Builder(ps, listen.get()).
+                    withAuthMode(listenAuth.map(a -> a == ListenAuth.EXTERNAL ? SaslAuthMode.AUTH_EXTERNAL : SaslAuthMode.AUTH_COOKIE)).
+                    withAddressFilter(addressFilter).
+                    withIdleTimeout(idleTimeout).
+                    withRemoteTcp(listenRemote).
+                    build().start()) {
+                
+                /* Lets go! */
+                alert(BUNDLE.getString("ready"), node.address());
+                
+                while(true)
+                    sleep(Integer.MAX_VALUE);
+            }
+        }
+        
         DBusConnection conx;
         if(dbusAddress.isPresent()) {
         	var busname = dbusAddress.get();
@@ -146,7 +199,7 @@ public class LbvRemoteNodeAgent extends AbstractCommand implements SystemContext
         conx.requestBusName(RemotePlatformService.BUS_NAME);
         
         /* Build and export services */
-        try(var rs = new RemotePlatformServiceDelegate(ps, conx)) {
+        try(var rs = new RemotePlatformServiceDelegate(ps, conx, addressFilter, idleTimeout)) {
         
 	        /* Lets go! */
 	        alert(BUNDLE.getString("ready"), conx.getAddress());
@@ -178,10 +231,15 @@ public class LbvRemoteNodeAgent extends AbstractCommand implements SystemContext
     @Override
     public SystemCommands commands() {
         if(commands == null)
-            commands = new ElevatableSystemCommands();
+            commands = commandStatistics.counting(new ElevatableSystemCommands());
         return commands;
     }
 
+    @Override
+    public Optional<CommandStatistics> commandStatistics() {
+        return Optional.of(commandStatistics);
+    }
+
     @Override
     public NativeComponents nativeComponents() {
         if(nativeComponents == null)
@@ -37,6 +37,7 @@ import java.util.List;
 import java.util.Optional;
 import java.util.Set;
 import java.util.StringTokenizer;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.prefs.Preferences;
 import java.util.stream.Collectors;
@@ -51,6 +52,7 @@ import com.logonbox.vpn.drivers.lib.SystemContext;
 import com.logonbox.vpn.drivers.lib.VpnAdapter;
 import com.logonbox.vpn.drivers.lib.VpnAdapterConfiguration;
 import com.logonbox.vpn.drivers.lib.VpnConfiguration;
+import com.logonbox.vpn.drivers.lib.VpnEvents;
 import com.logonbox.vpn.drivers.lib.VpnInterfaceInformation;
 import com.logonbox.vpn.drivers.lib.VpnPeer;
 import com.logonbox.vpn.drivers.lib.VpnPeerInformation;
@@ -337,18 +339,27 @@ public class WindowsPlatformService extends AbstractDesktopPlatformService<Windo
 		/* Install service for the network interface */
 		context.alert("Installing service for {0}", ip.nativeName());
 		var tool = Paths.get(context().nativeComponents().tool(Tool.NETWORK_CONFIGURATION_SERVICE));
-		var install = context().commands().privileged().logged().task(new InstallService(
-			ip.nativeName(), 
-			cwd.toAbsolutePath().toString(), 
-			confDir.toAbsolutePath().toString(), 
-			tool.toAbsolutePath().toString(), 
-			transformedConfiguration.write())
-		).booleanValue();
+		var install = new AtomicBoolean();
+		phase(ip, VpnEvents.Phase.SETCONF, configuration.peers().size(), () -> {
+			try {
+				install.set(context().commands().privileged().logged().task(new InstallService(
+					ip.nativeName(), 
+					cwd.toAbsolutePath().toString(), 
+					confDir.toAbsolutePath().toString(), 
+					tool.toAbsolutePath().toString(), 
+					transformedConfiguration.write())
+				).booleanValue());
+			} catch (IOException | RuntimeException e) {
+				throw e;
+			} catch (Exception e) {
+				throw new IOException("Failed to install service.", e);
+			}
+		});
 		/*
 		 * About to start connection. The "last handshake" should be this value or later
 		 * if we get a valid connection
 		 */
-		var connectionStarted = Instant.ofEpochMilli(((System.currentTimeMillis() / 1000l) - 1) * 1000l);
+		var connectionStarted = connectionStarted();
 
 		LOG.info("Waiting {} seconds for service to settle.", context.configuration().serviceWait().toSeconds());
 		try {
@@ -363,11 +374,13 @@ public class WindowsPlatformService extends AbstractDesktopPlatformService<Windo
 		} else {
 			LOG.info("Bringing up {}", ip.shortName());
 			try {
-				ip.mtu(configuration.mtu().or(() -> context.configuration().defaultMTU()).orElse(0));
-				ip.up();
+				phase(ip, VpnEvents.Phase.UP, configuration.peers().size(), () -> {
+					ip.mtu(configuration.mtu().or(() -> context.configuration().defaultMTU()).orElse(0));
+					ip.up();
+				});
 			} catch (IOException | RuntimeException ioe) {
 				/* Just installed service failed, clean it up */
-				if (install) {
+				if (install.get()) {
 					ip.delete();
 				}
 				throw ioe;